@@ -121,6 +121,63 @@ public interface IBus {
     rawWritePortByte(portNum, data);
   }
 
+  /**
+   * Copy {@code length} bytes of memory (with CPU side effects), as the CPU does for repeated
+   * `LDIR` instructions (reading from {@code source} and writing to {@code dest}, then incrementing
+   * both) or `LDDR` instructions (then decrementing both). Neither range wraps around the 16-bit
+   * address space. To be used by the emulator when emulating CPU memory access.
+   *
+   * <p>The result must be the same as copying one byte at a time, even when the ranges overlap, so
+   * override this (e.g. with `System.arraycopy`) only for memory where that can be done in bulk.
+   *
+   * @param source 16-bit memory address of the first byte to read.
+   * @param dest 16-bit memory address of the first byte to write.
+   * @param length number of bytes to copy.
+   * @param increment true to copy upwards from the addresses, false to copy downwards.
+   */
+  default void cpuCopyMemBytes(
+      final int source, final int dest, final int length, final boolean increment) {
+    final int delta = increment ? 1 : -1;
+    for (int i = 0; i < length; ++i) {
+      cpuWriteMemByte(dest + i * delta, cpuReadMemByte(source + i * delta));
+    }
+  }
+
+  /**
+   * Count the bytes of memory (with CPU side effects) that aren't equal to {@code value}, up to
+   * {@code length} bytes or the first that is, as the CPU does for repeated `CPIR` instructions
+   * (incrementing the address) or `CPDR` instructions (decrementing it). The range doesn't wrap
+   * around the 16-bit address space. To be used by the emulator when emulating CPU memory access.
+   *
+   * <p>The emulator reads the byte after the ones counted itself, so override this only for memory
+   * where reads have no side effects; stopping short of such memory (or of the first byte equal to
+   * {@code value}) is allowed. The default doesn't read anything and returns 0.
+   *
+   * @param address 16-bit memory address of the first byte to read.
+   * @param length maximum number of bytes to count.
+   * @param value 8 bits of data to look for.
+   * @param increment true to read upwards from the address, false to read downwards.
+   * @return int number of bytes counted, all not equal to {@code value} (at most {@code length}).
+   */
+  default int cpuFindMemByte(
+      final int address, final int length, final int value, final boolean increment) {
+    return 0;
+  }
+
+  /**
+   * Whether the emulator may keep what the CPU reads from memory at {@code address} (e.g. decoded
+   * or compiled instructions) until the CPU writes to that same address with `cpuWrite*`. Override
+   * this to return false for any address whose reads have side effects, or whose contents can
+   * change in some other way (e.g. memory that's mirrored at another address, or memory-mapped
+   * I/O).
+   *
+   * @param address 16-bit memory address.
+   * @return boolean true if reads of the address can be cached.
+   */
+  default boolean isCacheable(final int address) {
+    return true;
+  }
+
   // ----------------------------------------------------------------------------------------------
   // ---------- Override the `rawRead*` and `rawWrite*` methods to change implementation ----------
   // ----------------------------------------------------------------------------------------------
@@ -0,0 +1,135 @@
+package com.davidconneely.eightbit;
+
+/**
+ * A 16-bit address space split into pages (of 256 bytes or 1 kiB), for `IBus` implementations to
+ * build their memory maps from, so that a memory access is a page table lookup instead of a series
+ * of range checks on the address. {@link PagedMemory} keeps the pages in Java arrays, and {@link
+ * SegmentMemory} keeps them in a `MemorySegment` (off the heap, or in a mapped file).
+ *
+ * <p>Each page has separate memory for CPU reads and CPU writes: normally both are the page's own
+ * memory, but the CPU's writes to a read-only page go to scratch memory that's never read, and
+ * pages can share memory to mirror other pages. A page can instead have a {@link Hook} that handles
+ * the CPU's reads and writes (e.g. for memory-mapped I/O). The `raw*` methods always access the
+ * page's own memory, so they can write to read-only pages and don't call hooks.
+ *
+ * <p>Initially, every page has its own memory and is writable.
+ *
+ * <p>Optionally, the memory can record which pages have been written to (e.g. so that a renderer, a
+ * snapshot or a code cache only has to look again at the pages that changed). While it's on, the
+ * CPU's first write to each page after {@link #collectDirty(long[])} takes the same slower path as
+ * a hooked page does, and the rest are as fast as when it's off.
+ */
+public interface IMemory {
+  /** Handles the CPU's reads and writes of a page (e.g. for memory-mapped I/O). */
+  interface Hook {
+    /**
+     * Read a byte of data for the CPU.
+     *
+     * @param address 16-bit memory address.
+     * @return int 8 bits of data read.
+     */
+    int read(int address);
+
+    /**
+     * Write a byte of data for the CPU.
+     *
+     * @param address 16-bit memory address.
+     * @param data 8 bits of data to write.
+     */
+    void write(int address, int data);
+  }
+
+  /** The size of each page, 0x100 (256 bytes) or 0x400 (1 kiB). */
+  int pageSize();
+
+  /** Start (or stop) recording which pages are written to, starting with none. */
+  void trackDirty(boolean enabled);
+
+  /**
+   * Copy the set of pages written to since the last collect (or since tracking started) into {@code
+   * into}, and clear it. Page {@code n} is bit {@code n % 64} of {@code into[n / 64]}. Raw writes
+   * and the CPU's writes both count, for the page they're made through (not the pages that mirror
+   * it), except the CPU's writes to read-only and hooked pages.
+   *
+   * @param into at least (0x10000 / pageSize / 64) words.
+   * @return int number of pages written to.
+   */
+  int collectDirty(long[] into);
+
+  /**
+   * A copy of this memory, with the same pages, mirrors, read-only pages, hooks and contents, that
+   * the CPU and raw writes then change independently of this one (dirty tracking is off in it).
+   * {@link PagedMemory} shares the pages' memory with the copy until either writes to them, so
+   * forking is cheap; {@link SegmentMemory} copies the whole segment.
+   */
+  IMemory fork();
+
+  /** Give the pages at {@code address..address+length-1} their own memory (not shared). */
+  void map(int address, int length, boolean readOnly);
+
+  /**
+   * Make the pages at {@code address..address+length-1} share the memory of the pages at {@code
+   * source..source+length-1}, so they're a mirror of them.
+   */
+  void mirror(int address, int length, int source, boolean readOnly);
+
+  /** Let {@code hook} handle the CPU's reads and writes of the pages at {@code address..}. */
+  void hook(int address, int length, Hook hook);
+
+  /** Whether the CPU's writes to {@code address} are ignored. */
+  boolean isReadOnly(int address);
+
+  /**
+   * Read a byte of memory for the CPU.
+   *
+   * @param address 16-bit memory address.
+   * @return int 8 bits of data read.
+   */
+  int read(int address);
+
+  /**
+   * Write a byte of memory for the CPU (ignored if the page is read-only).
+   *
+   * @param address 16-bit memory address.
+   * @param data 8 bits of data to write.
+   */
+  void write(int address, int data);
+
+  /**
+   * Copy {@code length} bytes for the CPU, with the same result as reading and writing them one at
+   * a time upwards (or downwards) from {@code source} and {@code dest}, but in bulk for each part
+   * of the copy that lies within one page of each. Neither range wraps around.
+   */
+  void copy(int source, int dest, int length, boolean increment);
+
+  /**
+   * Count the bytes that the CPU reads from {@code address} upwards (or downwards) that aren't
+   * equal to {@code value}, up to {@code length} bytes or the first that is. Stops early (without
+   * reading it) at a hooked page. The range doesn't wrap around.
+   *
+   * @return int number of bytes counted.
+   */
+  int find(int address, int length, int value, boolean increment);
+
+  /**
+   * Read a byte of memory (bypassing hooks).
+   *
+   * @param address 16-bit memory address.
+   * @return int 8 bits of data read.
+   */
+  int rawRead(int address);
+
+  /**
+   * Write a byte of memory (even if the page is read-only, and bypassing hooks).
+   *
+   * @param address 16-bit memory address.
+   * @param data 8 bits of data to write.
+   */
+  void rawWrite(int address, int data);
+
+  /** Read {@code length} bytes of memory into {@code dest} (bypassing hooks). */
+  void rawRead(int address, byte[] dest, int offset, int length);
+
+  /** Write {@code length} bytes of memory from {@code source} (even if read-only, and hooked). */
+  void rawWrite(int address, byte[] source, int offset, int length);
+}
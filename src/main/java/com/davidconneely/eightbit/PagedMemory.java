@@ -0,0 +1,327 @@
+package com.davidconneely.eightbit;
+
+import java.util.Arrays;
+
+/**
+ * An {@link IMemory} that keeps each page in a Java array, so that a memory access is one shift,
+ * one array load and one index.
+ *
+ * <p>{@link #fork()} shares the arrays copy-on-write: both memories treat every page as shared, and
+ * the first write to a shared page (the CPU's or a raw write) gives it (and the pages that mirror
+ * it) a copy of its own. So a fork costs a few small arrays, and pages that are never written (e.g.
+ * ROM) are shared by every fork.
+ */
+public final class PagedMemory implements IMemory {
+  private static final int MEMORY_SIZE = 0x10000;
+
+  private final int pageSize;
+  private final int shift;
+  private final int mask;
+  private final byte[] discard; // the CPU's writes to read-only pages go here.
+  private final byte[][] pages; // the memory of each page.
+  private final byte[][] reads; // the array the CPU reads each page from (null if hooked).
+  private final byte[][] writes; // where the CPU writes each page (null if hooked/shared/clean).
+  private final Hook[] hooks;
+  private final boolean[] shared; // whether the memory of each page is shared with a fork.
+  private final long[] dirty; // bitset of the pages written to, if tracking.
+  private boolean tracking;
+
+  /**
+   * An address space that's all RAM (initially zero). Memory given to pages by {@link #map(int,
+   * int, boolean)} is new (and initially zero) too.
+   *
+   * @param pageSize 0x100 (256 bytes) or 0x400 (1 kiB).
+   */
+  public PagedMemory(final int pageSize) {
+    if (pageSize != 0x100 && pageSize != 0x400) {
+      throw new IllegalArgumentException("page size must be 0x100 or 0x400: " + pageSize);
+    }
+    this.pageSize = pageSize;
+    this.shift = Integer.numberOfTrailingZeros(pageSize);
+    this.mask = pageSize - 1;
+    this.discard = new byte[pageSize];
+    final int count = MEMORY_SIZE / pageSize;
+    this.pages = new byte[count][];
+    this.reads = new byte[count][];
+    this.writes = new byte[count][];
+    this.hooks = new Hook[count];
+    this.shared = new boolean[count];
+    this.dirty = new long[(count + 63) >>> 6];
+    map(0, MEMORY_SIZE, false);
+  }
+
+  // a fork of `parent`, which has just marked all its pages as shared.
+  private PagedMemory(final PagedMemory parent) {
+    this.pageSize = parent.pageSize;
+    this.shift = parent.shift;
+    this.mask = parent.mask;
+    this.discard = new byte[pageSize];
+    final int count = MEMORY_SIZE / pageSize;
+    this.pages = parent.pages.clone();
+    this.reads = parent.reads.clone();
+    this.writes = new byte[count][];
+    for (int page = 0; page < count; ++page) {
+      writes[page] = parent.writes[page] == parent.discard ? discard : null;
+    }
+    this.hooks = parent.hooks.clone();
+    this.shared = parent.shared.clone();
+    this.dirty = new long[(count + 63) >>> 6];
+  }
+
+  @Override
+  public int pageSize() {
+    return pageSize;
+  }
+
+  @Override
+  public void trackDirty(final boolean enabled) {
+    tracking = enabled;
+    Arrays.fill(dirty, 0L);
+    for (int page = 0; page < pages.length; ++page) {
+      if (hooks[page] == null && writes[page] != discard) {
+        // a clean page's first write marks it dirty.
+        writes[page] = enabled || shared[page] ? null : pages[page];
+      }
+    }
+  }
+
+  @Override
+  public int collectDirty(final long[] into) {
+    int count = 0;
+    for (int word = 0; word < dirty.length; ++word) {
+      long bits = dirty[word];
+      into[word] = bits;
+      dirty[word] = 0L;
+      count += Long.bitCount(bits);
+      for (; bits != 0L; bits &= bits - 1) {
+        final int page = (word << 6) | Long.numberOfTrailingZeros(bits);
+        if (writes[page] == pages[page]) {
+          writes[page] = null; // clean again.
+        }
+      }
+    }
+    return count;
+  }
+
+  @Override
+  public PagedMemory fork() {
+    Arrays.fill(shared, true);
+    for (int page = 0; page < pages.length; ++page) {
+      if (writes[page] == pages[page]) {
+        writes[page] = null; // copy on write.
+      }
+    }
+    return new PagedMemory(this);
+  }
+
+  @Override
+  public void map(final int address, final int length, final boolean readOnly) {
+    for (int page = first(address, length); page <= last(address, length); ++page) {
+      pages[page] = new byte[pageSize];
+      shared[page] = false;
+      set(page, readOnly);
+    }
+  }
+
+  @Override
+  public void mirror(
+      final int address, final int length, final int source, final boolean readOnly) {
+    final int offset = first(source, length) - first(address, length);
+    for (int page = first(address, length); page <= last(address, length); ++page) {
+      pages[page] = pages[page + offset];
+      shared[page] = shared[page + offset];
+      set(page, readOnly);
+    }
+  }
+
+  @Override
+  public void hook(final int address, final int length, final Hook hook) {
+    for (int page = first(address, length); page <= last(address, length); ++page) {
+      reads[page] = null;
+      writes[page] = null;
+      hooks[page] = hook;
+    }
+  }
+
+  @Override
+  public boolean isReadOnly(final int address) {
+    return writes[address >>> shift] == discard;
+  }
+
+  @Override
+  public int read(final int address) {
+    final byte[] page = reads[address >>> shift];
+    return page != null ? page[address & mask] & 0xFF : hooks[address >>> shift].read(address);
+  }
+
+  @Override
+  public void write(final int address, final int data) {
+    final byte[] page = writes[address >>> shift];
+    if (page != null) {
+      page[address & mask] = (byte) data;
+    } else {
+      slowWrite(address, data);
+    }
+  }
+
+  private void slowWrite(final int address, final int data) {
+    final Hook hook = hooks[address >>> shift];
+    if (hook != null) {
+      hook.write(address, data);
+    } else {
+      writable(address >>> shift)[address & mask] = (byte) data;
+    }
+  }
+
+  @Override
+  public void copy(final int source, final int dest, final int length, final boolean increment) {
+    int from = source;
+    int to = dest;
+    int remaining = length;
+    while (remaining > 0) {
+      byte[] writing = writes[to >>> shift];
+      if (writing == null && hooks[to >>> shift] == null) {
+        writing = writable(to >>> shift); // before reading, in case it copies a shared page.
+      }
+      final byte[] reading = reads[from >>> shift];
+      final int fromOffset = from & mask;
+      final int toOffset = to & mask;
+      final int chunk;
+      if (increment) {
+        chunk = Math.min(remaining, pageSize - Math.max(fromOffset, toOffset));
+      } else {
+        chunk = Math.min(remaining, Math.min(fromOffset, toOffset) + 1);
+      }
+      final int delta = increment ? toOffset - fromOffset : fromOffset - toOffset;
+      if (reading == null
+          || writing == null
+          || (reading == writing && delta > 0 && delta < chunk)) {
+        // hooked, or it would copy bytes that were written earlier in the same chunk.
+        final int step = increment ? 1 : -1;
+        for (int i = 0; i < chunk; ++i) {
+          write(to + i * step, read(from + i * step));
+        }
+      } else if (increment) {
+        System.arraycopy(reading, fromOffset, writing, toOffset, chunk);
+      } else {
+        System.arraycopy(reading, fromOffset - chunk + 1, writing, toOffset - chunk + 1, chunk);
+      }
+      from += increment ? chunk : -chunk;
+      to += increment ? chunk : -chunk;
+      remaining -= chunk;
+    }
+  }
+
+  @Override
+  public int find(final int address, final int length, final int value, final boolean increment) {
+    final int step = increment ? 1 : -1;
+    for (int i = 0; i < length; ++i) {
+      final int current = address + i * step;
+      final byte[] page = reads[current >>> shift];
+      if (page == null || (page[current & mask] & 0xFF) == value) {
+        return i;
+      }
+    }
+    return length;
+  }
+
+  @Override
+  public int rawRead(final int address) {
+    return pages[address >>> shift][address & mask] & 0xFF;
+  }
+
+  @Override
+  public void rawWrite(final int address, final int data) {
+    if (shared[address >>> shift]) {
+      unshare(address >>> shift);
+    }
+    if (tracking) {
+      dirty[address >>> (shift + 6)] |= 1L << (address >>> shift);
+    }
+    pages[address >>> shift][address & mask] = (byte) data;
+  }
+
+  @Override
+  public void rawRead(final int address, final byte[] dest, final int offset, final int length) {
+    for (int done = 0; done < length; ) {
+      final int current = address + done;
+      final int chunk = Math.min(length - done, pageSize - (current & mask));
+      System.arraycopy(pages[current >>> shift], current & mask, dest, offset + done, chunk);
+      done += chunk;
+    }
+  }
+
+  @Override
+  public void rawWrite(final int address, final byte[] source, final int offset, final int length) {
+    for (int done = 0; done < length; ) {
+      final int current = address + done;
+      final int chunk = Math.min(length - done, pageSize - (current & mask));
+      if (shared[current >>> shift]) {
+        unshare(current >>> shift);
+      }
+      if (tracking) {
+        dirty[current >>> (shift + 6)] |= 1L << (current >>> shift);
+      }
+      System.arraycopy(source, offset + done, pages[current >>> shift], current & mask, chunk);
+      done += chunk;
+    }
+  }
+
+  private void set(final int page, final boolean readOnly) {
+    reads[page] = pages[page];
+    writes[page] = readOnly ? discard : tracking || shared[page] ? null : pages[page];
+    hooks[page] = null;
+    if (tracking) {
+      dirty[page >>> 6] |= 1L << page; // the page's memory changed.
+    }
+  }
+
+  /**
+   * Let the CPU write to a (writable, not hooked) page directly again, after copying it if it's
+   * shared, and marking it dirty if tracking.
+   */
+  private byte[] writable(final int page) {
+    if (shared[page]) {
+      unshare(page);
+    }
+    if (tracking) {
+      dirty[page >>> 6] |= 1L << page;
+    }
+    return writes[page] = pages[page];
+  }
+
+  /** Give a shared page (and the pages that mirror it) a copy of its memory, not shared. */
+  private void unshare(final int page) {
+    final byte[] memory = pages[page];
+    final byte[] copy = memory.clone();
+    for (int other = 0; other < pages.length; ++other) {
+      if (pages[other] == memory) {
+        pages[other] = copy;
+        shared[other] = false;
+        if (reads[other] == memory) {
+          reads[other] = copy;
+        }
+      }
+    }
+  }
+
+  private int first(final int address, final int length) {
+    checkRange(address, length);
+    return address >>> shift;
+  }
+
+  private int last(final int address, final int length) {
+    return (address + length - 1) >>> shift;
+  }
+
+  private void checkRange(final int address, final int length) {
+    if (address < 0
+        || length <= 0
+        || address + length > MEMORY_SIZE
+        || (address & mask) != 0
+        || (length & mask) != 0) {
+      throw new IllegalArgumentException(
+          "not whole pages: 0x%04x+0x%04x".formatted(address, length));
+    }
+  }
+}
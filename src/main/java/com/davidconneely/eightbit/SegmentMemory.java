@@ -0,0 +1,344 @@
+package com.davidconneely.eightbit;
+
+import static java.lang.foreign.ValueLayout.JAVA_BYTE;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+import java.io.IOException;
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+/**
+ * An {@link IMemory} that keeps its pages in a `MemorySegment`, so emulated memory can live off the
+ * heap or in a mapped file, and be shared without copying (e.g. with another thread or process).
+ *
+ * <p>The segment is laid out like the address space: each page's own memory is at the offset in the
+ * segment that's equal to its address, and the CPU's writes to read-only pages go to scratch memory
+ * after the end of the address space. Giving a page its own memory with {@link #map(int, int,
+ * boolean)} keeps what's already there (e.g. in a mapped file).
+ */
+public final class SegmentMemory implements IMemory {
+  private static final int MEMORY_SIZE = 0x10000;
+  private static final int HOOKED = -1;
+  private static final int CLEAN = -2;
+
+  private final MemorySegment segment;
+  private final int pageSize;
+  private final int shift;
+  private final int mask;
+  private final int discard; // the offset the CPU's writes to read-only pages go to.
+  private final int[] pages; // the offset of the memory of each page.
+  private final int[] reads; // the offset the CPU reads each page from (`HOOKED` if hooked).
+  private final int[] writes; // the offset the CPU writes each page to (or `HOOKED`, `CLEAN`).
+  private final Hook[] hooks;
+  private final long[] dirty; // bitset of the pages written to, if tracking.
+  private boolean tracking;
+
+  /**
+   * An address space that's all RAM, kept in {@code segment}.
+   *
+   * @param pageSize 0x100 (256 bytes) or 0x400 (1 kiB).
+   * @param segment at least {@link #size(int)} bytes.
+   */
+  public SegmentMemory(final int pageSize, final MemorySegment segment) {
+    if (pageSize != 0x100 && pageSize != 0x400) {
+      throw new IllegalArgumentException("page size must be 0x100 or 0x400: " + pageSize);
+    }
+    if (segment.byteSize() < size(pageSize)) {
+      throw new IllegalArgumentException("segment too small: " + segment.byteSize());
+    }
+    this.segment = segment;
+    this.pageSize = pageSize;
+    this.shift = Integer.numberOfTrailingZeros(pageSize);
+    this.mask = pageSize - 1;
+    this.discard = MEMORY_SIZE;
+    final int count = MEMORY_SIZE / pageSize;
+    this.pages = new int[count];
+    this.reads = new int[count];
+    this.writes = new int[count];
+    this.hooks = new Hook[count];
+    this.dirty = new long[(count + 63) >>> 6];
+    map(0, MEMORY_SIZE, false);
+  }
+
+  // a copy of `parent`, in `segment` (which has a copy of its memory).
+  private SegmentMemory(final SegmentMemory parent, final MemorySegment segment) {
+    this.segment = segment;
+    this.pageSize = parent.pageSize;
+    this.shift = parent.shift;
+    this.mask = parent.mask;
+    this.discard = parent.discard;
+    this.pages = parent.pages.clone();
+    this.reads = parent.reads.clone();
+    this.writes = parent.writes.clone();
+    for (int page = 0; page < writes.length; ++page) {
+      if (writes[page] == CLEAN) {
+        writes[page] = pages[page];
+      }
+    }
+    this.hooks = parent.hooks.clone();
+    this.dirty = new long[parent.dirty.length];
+  }
+
+  /** The number of bytes of segment needed for pages of {@code pageSize}. */
+  public static long size(final int pageSize) {
+    return MEMORY_SIZE + pageSize;
+  }
+
+  /** An address space in (zeroed) memory allocated from {@code arena}. */
+  public static SegmentMemory allocate(final int pageSize, final Arena arena) {
+    return new SegmentMemory(pageSize, arena.allocate(size(pageSize)));
+  }
+
+  /**
+   * An address space in {@code file} (created if it doesn't exist), mapped into memory until {@code
+   * arena} is closed.
+   */
+  public static SegmentMemory map(final int pageSize, final Path file, final Arena arena)
+      throws IOException {
+    try (final FileChannel channel = FileChannel.open(file, CREATE, READ, WRITE)) {
+      return new SegmentMemory(
+          pageSize, channel.map(FileChannel.MapMode.READ_WRITE, 0L, size(pageSize), arena));
+    }
+  }
+
+  /** A copy of this memory, in memory allocated from {@code arena}. */
+  public SegmentMemory fork(final Arena arena) {
+    final MemorySegment copy = arena.allocate(size(pageSize));
+    copy.copyFrom(segment.asSlice(0L, size(pageSize)));
+    return new SegmentMemory(this, copy);
+  }
+
+  /** The segment the memory is kept in. */
+  public MemorySegment segment() {
+    return segment;
+  }
+
+  @Override
+  public int pageSize() {
+    return pageSize;
+  }
+
+  @Override
+  public void trackDirty(final boolean enabled) {
+    tracking = enabled;
+    Arrays.fill(dirty, 0L);
+    for (int page = 0; page < pages.length; ++page) {
+      if (writes[page] != HOOKED && writes[page] != discard) {
+        writes[page] = enabled ? CLEAN : pages[page]; // a clean page's first write marks it dirty.
+      }
+    }
+  }
+
+  @Override
+  public int collectDirty(final long[] into) {
+    int count = 0;
+    for (int word = 0; word < dirty.length; ++word) {
+      long bits = dirty[word];
+      into[word] = bits;
+      dirty[word] = 0L;
+      count += Long.bitCount(bits);
+      for (; bits != 0L; bits &= bits - 1) {
+        final int page = (word << 6) | Long.numberOfTrailingZeros(bits);
+        if (writes[page] == pages[page]) {
+          writes[page] = CLEAN;
+        }
+      }
+    }
+    return count;
+  }
+
+  /** A copy of this memory, in memory allocated from an automatic arena. */
+  @Override
+  public SegmentMemory fork() {
+    return fork(Arena.ofAuto());
+  }
+
+  @Override
+  public void map(final int address, final int length, final boolean readOnly) {
+    for (int page = first(address, length); page <= last(address, length); ++page) {
+      pages[page] = page << shift;
+      set(page, readOnly);
+    }
+  }
+
+  @Override
+  public void mirror(
+      final int address, final int length, final int source, final boolean readOnly) {
+    final int offset = first(source, length) - first(address, length);
+    for (int page = first(address, length); page <= last(address, length); ++page) {
+      pages[page] = pages[page + offset];
+      set(page, readOnly);
+    }
+  }
+
+  @Override
+  public void hook(final int address, final int length, final Hook hook) {
+    for (int page = first(address, length); page <= last(address, length); ++page) {
+      reads[page] = HOOKED;
+      writes[page] = HOOKED;
+      hooks[page] = hook;
+    }
+  }
+
+  @Override
+  public boolean isReadOnly(final int address) {
+    return writes[address >>> shift] == discard;
+  }
+
+  @Override
+  public int read(final int address) {
+    final int page = reads[address >>> shift];
+    if (page != HOOKED) {
+      return segment.get(JAVA_BYTE, page + (address & mask)) & 0xFF;
+    }
+    return hooks[address >>> shift].read(address);
+  }
+
+  @Override
+  public void write(final int address, final int data) {
+    final int page = writes[address >>> shift];
+    if (page >= 0) {
+      segment.set(JAVA_BYTE, page + (address & mask), (byte) data);
+    } else {
+      slowWrite(address, data);
+    }
+  }
+
+  private void slowWrite(final int address, final int data) {
+    if (writes[address >>> shift] == HOOKED) {
+      hooks[address >>> shift].write(address, data);
+    } else {
+      segment.set(JAVA_BYTE, dirty(address >>> shift) + (address & mask), (byte) data);
+    }
+  }
+
+  @Override
+  public void copy(final int source, final int dest, final int length, final boolean increment) {
+    int from = source;
+    int to = dest;
+    int remaining = length;
+    while (remaining > 0) {
+      final int reading = reads[from >>> shift];
+      int writing = writes[to >>> shift];
+      if (writing == CLEAN) {
+        writing = dirty(to >>> shift);
+      }
+      final int fromOffset = from & mask;
+      final int toOffset = to & mask;
+      final int chunk;
+      if (increment) {
+        chunk = Math.min(remaining, pageSize - Math.max(fromOffset, toOffset));
+      } else {
+        chunk = Math.min(remaining, Math.min(fromOffset, toOffset) + 1);
+      }
+      final int fromAt = reading + fromOffset;
+      final int toAt = writing + toOffset;
+      final int delta = increment ? toAt - fromAt : fromAt - toAt;
+      if (reading == HOOKED || writing == HOOKED || (delta > 0 && delta < chunk)) {
+        // hooked, or it would copy bytes that were written earlier in the same chunk.
+        final int step = increment ? 1 : -1;
+        for (int i = 0; i < chunk; ++i) {
+          write(to + i * step, read(from + i * step));
+        }
+      } else if (increment) {
+        MemorySegment.copy(segment, fromAt, segment, toAt, chunk);
+      } else {
+        MemorySegment.copy(segment, fromAt - chunk + 1, segment, toAt - chunk + 1, chunk);
+      }
+      from += increment ? chunk : -chunk;
+      to += increment ? chunk : -chunk;
+      remaining -= chunk;
+    }
+  }
+
+  @Override
+  public int find(final int address, final int length, final int value, final boolean increment) {
+    final int step = increment ? 1 : -1;
+    for (int i = 0; i < length; ++i) {
+      final int current = address + i * step;
+      final int page = reads[current >>> shift];
+      if (page == HOOKED || (segment.get(JAVA_BYTE, page + (current & mask)) & 0xFF) == value) {
+        return i;
+      }
+    }
+    return length;
+  }
+
+  @Override
+  public int rawRead(final int address) {
+    return segment.get(JAVA_BYTE, pages[address >>> shift] + (address & mask)) & 0xFF;
+  }
+
+  @Override
+  public void rawWrite(final int address, final int data) {
+    if (tracking) {
+      dirty[address >>> (shift + 6)] |= 1L << (address >>> shift);
+    }
+    segment.set(JAVA_BYTE, pages[address >>> shift] + (address & mask), (byte) data);
+  }
+
+  @Override
+  public void rawRead(final int address, final byte[] dest, final int offset, final int length) {
+    for (int done = 0; done < length; ) {
+      final int current = address + done;
+      final int chunk = Math.min(length - done, pageSize - (current & mask));
+      final long at = pages[current >>> shift] + (current & mask);
+      MemorySegment.copy(segment, JAVA_BYTE, at, dest, offset + done, chunk);
+      done += chunk;
+    }
+  }
+
+  @Override
+  public void rawWrite(final int address, final byte[] source, final int offset, final int length) {
+    for (int done = 0; done < length; ) {
+      final int current = address + done;
+      final int chunk = Math.min(length - done, pageSize - (current & mask));
+      final long at = pages[current >>> shift] + (current & mask);
+      if (tracking) {
+        dirty[current >>> (shift + 6)] |= 1L << (current >>> shift);
+      }
+      MemorySegment.copy(source, offset + done, segment, JAVA_BYTE, at, chunk);
+      done += chunk;
+    }
+  }
+
+  private void set(final int page, final boolean readOnly) {
+    reads[page] = pages[page];
+    writes[page] = readOnly ? discard : tracking ? CLEAN : pages[page];
+    hooks[page] = null;
+    if (tracking) {
+      dirty[page >>> 6] |= 1L << page; // the page's memory changed.
+    }
+  }
+
+  /** Mark a (writable, not hooked) page dirty, and let the CPU write to it directly again. */
+  private int dirty(final int page) {
+    dirty[page >>> 6] |= 1L << page;
+    return writes[page] = pages[page];
+  }
+
+  private int first(final int address, final int length) {
+    checkRange(address, length);
+    return address >>> shift;
+  }
+
+  private int last(final int address, final int length) {
+    return (address + length - 1) >>> shift;
+  }
+
+  private void checkRange(final int address, final int length) {
+    if (address < 0
+        || length <= 0
+        || address + length > MEMORY_SIZE
+        || (address & mask) != 0
+        || (length & mask) != 0) {
+      throw new IllegalArgumentException(
+          "not whole pages: 0x%04x+0x%04x".formatted(address, length));
+    }
+  }
+}
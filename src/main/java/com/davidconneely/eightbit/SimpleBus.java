@@ -2,32 +2,86 @@ package com.davidconneely.eightbit;
 
 public class SimpleBus implements IBus {
   private static final int MEMORY_SIZE = 0x10000;
-  private final byte[] memory = new byte[MEMORY_SIZE];
+  private final IMemory memory;
+
+  /** A bus with 64 kiB of RAM kept in Java arrays. */
+  public SimpleBus() {
+    this(new PagedMemory(0x100));
+  }
+
+  /** A bus with 64 kiB of RAM kept in {@code memory} (e.g. a {@link SegmentMemory}). */
+  public SimpleBus(final IMemory memory) {
+    this.memory = memory;
+  }
+
+  @Override
+  public int cpuReadMemByte(final int address) {
+    return memory.read(address);
+  }
+
+  @Override
+  public void cpuWriteMemByte(final int address, final int data) {
+    memory.write(address, data);
+  }
 
   @Override
   public int rawReadMemByte(final int address) {
-    checkAddress(address, 1, 0, 1);
-    return memory[address] & 0xFF;
+    return memory.rawRead(address); // throws `IndexOutOfBoundsException` if out of range.
   }
 
   @Override
   public void rawReadMemBytes(
       final int address, final byte[] dest, final int offset, final int length) {
     checkAddress(address, dest.length, offset, length);
-    System.arraycopy(memory, address, dest, offset, length);
+    memory.rawRead(address, dest, offset, length);
   }
 
   @Override
   public void rawWriteMemByte(final int address, final int data) {
-    checkAddress(address, 1, 0, 1);
-    memory[address] = (byte) (data & 0xFF);
+    memory.rawWrite(address, data);
   }
 
   @Override
   public void rawWriteMemBytes(
       final int address, final byte[] source, final int offset, final int length) {
     checkAddress(address, source.length, offset, length);
-    System.arraycopy(source, offset, memory, address, length);
+    memory.rawWrite(address, source, offset, length);
+  }
+
+  /**
+   * Subclasses that override {@link #cpuReadMemByte(int)} or {@link #cpuWriteMemByte(int, int)}
+   * must override this too.
+   */
+  @Override
+  public void cpuCopyMemBytes(
+      final int source, final int dest, final int length, final boolean increment) {
+    memory.copy(source, dest, length, increment);
+  }
+
+  /** Subclasses that override {@link #cpuReadMemByte(int)} must override this too. */
+  @Override
+  public int cpuFindMemByte(
+      final int address, final int length, final int value, final boolean increment) {
+    return memory.find(address, length, value, increment);
+  }
+
+  /** The size of the pages that {@link #collectDirty(long[])} reports. */
+  public int pageSize() {
+    return memory.pageSize();
+  }
+
+  /** Start (or stop) recording which pages are written to (see {@link IMemory}). */
+  public void trackDirty(final boolean enabled) {
+    memory.trackDirty(enabled);
+  }
+
+  /**
+   * Copy the set of pages written to since the last collect into {@code into}, and clear it.
+   *
+   * @see IMemory#collectDirty(long[])
+   */
+  public int collectDirty(final long[] into) {
+    return memory.collectDirty(into);
   }
 
   private void checkAddress(
@@ -0,0 +1,630 @@
+package com.davidconneely.eightbit.z80;
+
+import static java.lang.constant.ConstantDescs.CD_Object;
+import static java.lang.constant.ConstantDescs.CD_boolean;
+import static java.lang.constant.ConstantDescs.CD_int;
+import static java.lang.constant.ConstantDescs.CD_void;
+import static java.lang.constant.ConstantDescs.INIT_NAME;
+import static java.lang.constant.ConstantDescs.MTD_void;
+
+import com.davidconneely.eightbit.IBus;
+import java.lang.classfile.ClassFile;
+import java.lang.classfile.CodeBuilder;
+import java.lang.classfile.Label;
+import java.lang.constant.ClassDesc;
+import java.lang.constant.MethodTypeDesc;
+import java.lang.invoke.MethodHandles;
+import java.util.Arrays;
+
+/**
+ * Block threading for {@link Core} (the `BLOCK_THREADING` option): counts how often each `PC`
+ * address is reached by the interpreter, and once an address is hot, generates a hidden class for
+ * the block of straight-line code starting there (up to and including the next jump, call, return,
+ * restart, repeating block instruction or `HALT`).
+ *
+ * <p>The common instructions are translated into the calls of the `State` accessors, `IBus` methods
+ * and `Core` helpers that the interpreter would have made, with their operands (immediate values,
+ * addresses, displacements and branch targets) as constants: the loads, `INC`/`DEC`, the ALU
+ * instructions, `JR`/`JP`/`CALL` (conditional or not), `DJNZ`, `BIT`/`SET`/`RES`, and the `IX`/`IY`
+ * forms of them that the ZX81 ROM uses for its system variables, e.g. `LD A,(IY+d)` and `BIT
+ * b,(IY+d)`. Every other instruction is a call of the interpreter's decoder with the op-code as a
+ * constant, which fetches the rest of the instruction through the bus. A block is discarded when a
+ * CPU write touches its bytes (see {@link WatchedBus}), and if that happens part way through the
+ * block, the block stops after the instruction that did the write.
+ */
+final class BlockCompiler {
+  /** A compiled block of instructions. */
+  interface Block {
+    /**
+     * Execute the instructions of the block.
+     *
+     * @return the number of instructions executed.
+     */
+    int execute(Core core, BlockCompiler compiler);
+  }
+
+  static final int MAX_INSTRUCTIONS = 32;
+  static final int MAX_BYTES = 128;
+  static final int MAX_RECOMPILES = 4; // then leave self-modifying code to the interpreter.
+
+  private static final ClassDesc CD_CORE = Core.class.describeConstable().orElseThrow();
+  private static final ClassDesc CD_BLOCK = Block.class.describeConstable().orElseThrow();
+  private static final ClassDesc CD_COMPILER =
+      BlockCompiler.class.describeConstable().orElseThrow();
+  private static final ClassDesc CD_STATE = State.class.describeConstable().orElseThrow();
+  private static final ClassDesc CD_IBUS = IBus.class.describeConstable().orElseThrow();
+  private static final MethodTypeDesc MTD_EXECUTE = MethodTypeDesc.of(CD_int, CD_CORE, CD_COMPILER);
+  private static final MethodTypeDesc MTD_GET = MethodTypeDesc.of(CD_int);
+  private static final MethodTypeDesc MTD_SET = MethodTypeDesc.of(CD_void, CD_int);
+  private static final MethodTypeDesc MTD_TEST = MethodTypeDesc.of(CD_boolean);
+  private static final MethodTypeDesc MTD_READ = MethodTypeDesc.of(CD_int, CD_int);
+  private static final MethodTypeDesc MTD_WRITE = MethodTypeDesc.of(CD_void, CD_int, CD_int);
+  private static final MethodTypeDesc MTD_BIT = MethodTypeDesc.of(CD_void, CD_int, CD_int);
+  private static final MethodTypeDesc MTD_BIT_XY =
+      MethodTypeDesc.of(CD_void, CD_int, CD_int, CD_int);
+  private static final MethodTypeDesc MTD_SET_RES = MethodTypeDesc.of(CD_int, CD_int, CD_int);
+  private static final String[] REGISTERS = {"b", "c", "d", "e", "h", "l", null, "a"};
+  private static final String[] PAIRS = {"bc", "de", "hl", "sp"};
+  private static final String[] CONDITIONS = {"zf", "zf", "cf", "cf", "pf", "pf", "sf", "sf"};
+  private static final String[] ALU = {
+    "add_a_n", "adc_a_n", "sub_n", "sbc_a_n", "and_n", "xor_n", "or_n", "cp_n"
+  };
+
+  private final MethodHandles.Lookup lookup; // of `Core`, so blocks can call its private methods.
+  private final int threshold;
+  private final int[] counts = new int[0x10000];
+  private final Block[] blocks = new Block[0x10000];
+  private final int[] ends = new int[0x10000]; // end (exclusive) of the block starting at each PC.
+  private final short[] coverage = new short[0x10000]; // number of blocks covering each address.
+  private final byte[] recompiles = new byte[0x10000];
+
+  /** Set when a block is discarded, so a block that's executing stops after the instruction. */
+  boolean invalidated;
+
+  BlockCompiler(final MethodHandles.Lookup lookup, final int threshold) {
+    this.lookup = lookup;
+    this.threshold = threshold;
+  }
+
+  /** The compiled block starting at {@code pc}, or null if there isn't one. */
+  Block block(final int pc) {
+    return blocks[pc];
+  }
+
+  /** Count an interpreted execution of {@code pc}, and return true if the block there is hot. */
+  boolean hot(final int pc) {
+    return ++counts[pc] >= threshold;
+  }
+
+  /** Copy the bytes that a block starting at {@code start} could occupy, before recording it. */
+  byte[] source(final IBus bus, final int start) {
+    final byte[] source = new byte[Math.min(MAX_BYTES, 0x10000 - start)];
+    bus.rawReadMemBytes(start, source, 0, source.length);
+    return source;
+  }
+
+  /**
+   * Returns true if the instruction at {@code pc} (whose op-code was {@code opCode}) ends a block:
+   * it may change `PC` other than by stepping over itself. Prefixed op-codes are treated as though
+   * unprefixed, which is pessimistic (`DD C3` is a `JP` to this test, but not to the decoder).
+   */
+  static boolean isBranch(final IBus bus, final int pc, final int opCode) {
+    return switch (opCode) {
+      case 0x10, 0x18, 0x20, 0x28, 0x30, 0x38 -> true; // DJNZ, JR
+      case 0x76 -> true; // HALT
+      case 0xC0, 0xC2, 0xC3, 0xC4, 0xC7, 0xC8, 0xC9, 0xCA, 0xCC, 0xCD, 0xCF -> true;
+      case 0xD0, 0xD2, 0xD4, 0xD7, 0xD8, 0xDA, 0xDC, 0xDF -> true;
+      case 0xE0, 0xE2, 0xE4, 0xE7, 0xE8, 0xE9, 0xEA, 0xEC, 0xEF -> true;
+      case 0xF0, 0xF2, 0xF4, 0xF7, 0xF8, 0xFA, 0xFC, 0xFF -> true;
+      case 0xDD, 0xFD -> isBranch(bus, pc + 1, bus.rawReadMemByte((pc + 1) & 0xFFFF));
+      case 0xED ->
+          switch (bus.rawReadMemByte((pc + 1) & 0xFFFF)) {
+            case 0x45, 0x4D, 0x55, 0x5D, 0x65, 0x6D, 0x75, 0x7D -> true; // RETN, RETI
+            case 0xB0, 0xB1, 0xB2, 0xB3, 0xB8, 0xB9, 0xBA, 0xBB -> true; // LDIR, CPIR, etc.
+            default -> false;
+          };
+      default -> false;
+    };
+  }
+
+  /**
+   * The number of bytes of the branch {@code opCode} (which ends a block) that the compiled block
+   * depends on: all of them for the `JR`, `DJNZ`, `JP nn` and `CALL nn` that are translated with
+   * their operands as constants, and just the op-code for the rest, which fetch their operands.
+   */
+  static int branchLength(final int opCode) {
+    return switch (opCode) {
+      case 0x10, 0x18, 0x20, 0x28, 0x30, 0x38 -> 2; // DJNZ, JR
+      case 0xC2, 0xC3, 0xC4, 0xCA, 0xCC, 0xCD, 0xD2, 0xD4, 0xDA, 0xDC -> 3; // JP, CALL
+      case 0xE2, 0xE4, 0xEA, 0xEC, 0xF2, 0xF4, 0xFA, 0xFC -> 3;
+      default -> 1;
+    };
+  }
+
+  /**
+   * Compile the block of {@code count} instructions at {@code start..end-1}, whose op-codes and
+   * addresses were recorded as they were interpreted. It isn't compiled if its bytes changed while
+   * it was being recorded (compared with {@code source}), if it's too long, or if any of its bytes
+   * can't be cached (so can't be compiled in as constants).
+   */
+  void compile(
+      final IBus bus,
+      final int start,
+      final int end,
+      final int[] opCodes,
+      final int[] addresses,
+      final int count,
+      final byte[] source) {
+    counts[start] = 0;
+    if (end <= start || end - start > source.length) {
+      return;
+    }
+    final byte[] current = new byte[end - start];
+    bus.rawReadMemBytes(start, current, 0, current.length);
+    if (!Arrays.equals(current, 0, current.length, source, 0, current.length)) {
+      return;
+    }
+    for (int address = start; address < end; ++address) {
+      if (!bus.isCacheable(address)) {
+        return;
+      }
+    }
+    final Instruction[] instructions = new Instruction[count];
+    for (int i = 0; i < count; ++i) {
+      final int next = (i + 1 < count) ? addresses[i + 1] : end;
+      final int offset = addresses[i] - start;
+      instructions[i] = new Instruction(opCodes[i], current, offset, next - addresses[i], next);
+    }
+    blocks[start] = define(start, instructions);
+    ends[start] = end;
+    for (int address = start; address < end; ++address) {
+      ++coverage[address];
+    }
+  }
+
+  /** Discard the compiled blocks that cover any address in {@code from..to-1}. */
+  void invalidate(final int from, final int to) {
+    for (int start = Math.max(0, from - MAX_BYTES + 1); start < to && start < 0x10000; ++start) {
+      if (blocks[start] != null && ends[start] > from) {
+        for (int address = start; address < ends[start]; ++address) {
+          --coverage[address];
+        }
+        blocks[start] = null;
+        counts[start] = (++recompiles[start] < MAX_RECOMPILES) ? 0 : Integer.MIN_VALUE;
+        invalidated = true;
+      }
+    }
+  }
+
+  /** Discard the compiled blocks that cover {@code address}, after the CPU wrote to it. */
+  void written(final int address) {
+    if (coverage[address] != 0) {
+      invalidate(address, address + 1);
+    }
+  }
+
+  /**
+   * An instruction of a block: its op-code as it was fetched, the bytes of the block (from {@code
+   * offset}, the rest of the instruction), how many of them the block covers (only the prefix of a
+   * prefixed branch), and the address of the instruction after it.
+   */
+  private record Instruction(int opCode, byte[] code, int offset, int length, int next) {
+    /** The {@code i}th byte of the instruction (where the op-code is the 0th). */
+    int byteAt(final int i) {
+      return code[offset + i] & 0xFF;
+    }
+
+    /** The 16-bit operand that starts at the {@code i}th byte of the instruction. */
+    int wordAt(final int i) {
+      return byteAt(i) | (byteAt(i + 1) << 8);
+    }
+
+    /** Where a `JR` or `DJNZ` goes, if it's taken. */
+    int relative() {
+      return (next + (byte) byteAt(1)) & 0xFFFF;
+    }
+  }
+
+  /**
+   * Generate and load a hidden class (a nestmate of `Core`) for the block. For each instruction:
+   *
+   * <pre>
+   *   core.decode(opCode); // or the body of the instruction, if it's translated.
+   *   if (compiler.invalidated) return instructionsSoFar; // if it could write to memory.
+   * </pre>
+   */
+  private Block define(final int start, final Instruction[] instructions) {
+    final byte[] bytes =
+        ClassFile.of()
+            .build(
+                ClassDesc.of(Core.class.getPackageName(), "Block_%04X".formatted(start)),
+                clb ->
+                    clb.withFlags(ClassFile.ACC_PUBLIC | ClassFile.ACC_FINAL)
+                        .withSuperclass(CD_Object)
+                        .withInterfaceSymbols(CD_BLOCK)
+                        .withMethodBody(
+                            INIT_NAME,
+                            MTD_void,
+                            ClassFile.ACC_PUBLIC,
+                            cob ->
+                                cob.aload(0)
+                                    .invokespecial(CD_Object, INIT_NAME, MTD_void)
+                                    .return_())
+                        .withMethodBody(
+                            "execute",
+                            MTD_EXECUTE,
+                            ClassFile.ACC_PUBLIC,
+                            cob -> execute(cob, instructions)));
+    try {
+      return (Block)
+          lookup
+              .defineHiddenClass(bytes, true, MethodHandles.Lookup.ClassOption.NESTMATE)
+              .lookupClass()
+              .getDeclaredConstructor()
+              .newInstance();
+    } catch (final ReflectiveOperationException ex) {
+      throw new IllegalStateException(ex);
+    }
+  }
+
+  /** Generate the body of `Block.execute(core, compiler)`. */
+  private static void execute(final CodeBuilder cob, final Instruction[] instructions) {
+    cob.aload(1).getfield(CD_CORE, "state", CD_STATE).astore(3);
+    cob.aload(1).getfield(CD_CORE, "bus", CD_IBUS).astore(4);
+    for (int i = 0; i < instructions.length; ++i) {
+      final boolean writes = instruction(cob, instructions[i]);
+      if (writes && i + 1 < instructions.length) {
+        final Label next = cob.newLabel();
+        cob.aload(2).getfield(CD_COMPILER, "invalidated", CD_boolean).ifeq(next);
+        cob.loadConstant(i + 1).ireturn().labelBinding(next);
+      }
+    }
+    cob.loadConstant(instructions.length).ireturn();
+  }
+
+  /**
+   * Generate the code for one instruction (locals: 1 `core`, 3 `core.state`, 4 `core.bus`, 5 an
+   * indexed address, 6 the byte there), and return true if it could write to memory.
+   */
+  private static boolean instruction(final CodeBuilder cob, final Instruction in) {
+    final int opCode = in.opCode();
+    final int dst = (opCode >>> 3) & 0x07;
+    final int src = opCode & 0x07;
+    final int cycles = TStates.MAIN[opCode];
+    if ((opCode & 0xC0) == 0x40 && opCode != 0x76 /*HALT*/) {
+      prologue(cob, in, cycles);
+      if (dst == 6) { // LD (HL),r
+        cob.aload(4).aload(3).invokevirtual(CD_STATE, "hl", MTD_GET);
+        register(cob, src);
+        cob.invokeinterface(CD_IBUS, "cpuWriteMemByte", MTD_WRITE);
+        return true;
+      }
+      cob.aload(3); // LD r,r' or LD r,(HL)
+      register(cob, src);
+      cob.invokevirtual(CD_STATE, REGISTERS[dst], MTD_SET);
+      return false;
+    } else if ((opCode & 0xC0) == 0x80) { // ADD A,r etc.
+      prologue(cob, in, cycles);
+      cob.aload(1);
+      register(cob, src);
+      cob.invokevirtual(CD_CORE, ALU[dst], MTD_SET);
+      return false;
+    } else if ((opCode & 0xC7) == 0xC6) { // ADD A,n etc.
+      prologue(cob, in, cycles);
+      cob.aload(1).loadConstant(in.byteAt(1)).invokevirtual(CD_CORE, ALU[dst], MTD_SET);
+      return false;
+    } else if ((opCode & 0xC7) == 0x06) { // LD r,n
+      prologue(cob, in, cycles);
+      if (dst == 6) { // LD (HL),n
+        cob.aload(4).aload(3).invokevirtual(CD_STATE, "hl", MTD_GET);
+        cob.loadConstant(in.byteAt(1)).invokeinterface(CD_IBUS, "cpuWriteMemByte", MTD_WRITE);
+        return true;
+      }
+      cob.aload(3).loadConstant(in.byteAt(1)).invokevirtual(CD_STATE, REGISTERS[dst], MTD_SET);
+      return false;
+    } else if ((opCode & 0xC6) == 0x04) { // INC r or DEC r
+      prologue(cob, in, cycles);
+      final String method = (opCode & 0x01) == 0 ? "inc_n" : "dec_n";
+      if (dst == 6) { // INC (HL) or DEC (HL)
+        cob.aload(4).aload(3).invokevirtual(CD_STATE, "hl", MTD_GET).aload(1);
+        register(cob, 6);
+        cob.invokevirtual(CD_CORE, method, MTD_READ);
+        cob.invokeinterface(CD_IBUS, "cpuWriteMemByte", MTD_WRITE);
+        return true;
+      }
+      cob.aload(3).aload(1);
+      register(cob, dst);
+      cob.invokevirtual(CD_CORE, method, MTD_READ);
+      cob.invokevirtual(CD_STATE, REGISTERS[dst], MTD_SET);
+      return false;
+    } else if ((opCode & 0xC7) == 0x03) { // INC rr or DEC rr
+      prologue(cob, in, cycles);
+      final String pair = PAIRS[dst >>> 1];
+      cob.aload(3).aload(1).aload(3).invokevirtual(CD_STATE, pair, MTD_GET);
+      cob.invokevirtual(CD_CORE, (opCode & 0x08) == 0 ? "inc_nn" : "dec_nn", MTD_READ);
+      cob.invokevirtual(CD_STATE, pair, MTD_SET);
+      return false;
+    } else if ((opCode & 0xCF) == 0x01) { // LD rr,nn
+      prologue(cob, in, cycles);
+      cob.aload(3).loadConstant(in.wordAt(1)).invokevirtual(CD_STATE, PAIRS[dst >>> 1], MTD_SET);
+      return false;
+    }
+    return switch (opCode) {
+      case 0x00 /*NOP*/ -> {
+        prologue(cob, in, cycles);
+        yield false;
+      }
+      case 0x02 /*LD (BC),A*/, 0x12 /*LD (DE),A*/ -> {
+        prologue(cob, in, cycles);
+        cob.aload(4).aload(3).invokevirtual(CD_STATE, PAIRS[dst >>> 1], MTD_GET);
+        cob.aload(3).invokevirtual(CD_STATE, "a", MTD_GET);
+        cob.invokeinterface(CD_IBUS, "cpuWriteMemByte", MTD_WRITE);
+        yield true;
+      }
+      case 0x0A /*LD A,(BC)*/, 0x1A /*LD A,(DE)*/ -> {
+        prologue(cob, in, cycles);
+        cob.aload(3).aload(4).aload(3).invokevirtual(CD_STATE, PAIRS[dst >>> 1], MTD_GET);
+        cob.invokeinterface(CD_IBUS, "cpuReadMemByte", MTD_READ);
+        cob.invokevirtual(CD_STATE, "a", MTD_SET);
+        yield false;
+      }
+      case 0x22 /*LD (nn),HL*/ -> {
+        prologue(cob, in, cycles);
+        cob.aload(4).loadConstant(in.wordAt(1)).aload(3).invokevirtual(CD_STATE, "hl", MTD_GET);
+        cob.invokeinterface(CD_IBUS, "cpuWriteMemWord", MTD_WRITE);
+        yield true;
+      }
+      case 0x2A /*LD HL,(nn)*/ -> {
+        prologue(cob, in, cycles);
+        cob.aload(3).aload(4).loadConstant(in.wordAt(1));
+        cob.invokeinterface(CD_IBUS, "cpuReadMemWord", MTD_READ);
+        cob.invokevirtual(CD_STATE, "hl", MTD_SET);
+        yield false;
+      }
+      case 0x32 /*LD (nn),A*/ -> {
+        prologue(cob, in, cycles);
+        cob.aload(4).loadConstant(in.wordAt(1)).aload(3).invokevirtual(CD_STATE, "a", MTD_GET);
+        cob.invokeinterface(CD_IBUS, "cpuWriteMemByte", MTD_WRITE);
+        yield true;
+      }
+      case 0x3A /*LD A,(nn)*/ -> {
+        prologue(cob, in, cycles);
+        cob.aload(3).aload(4).loadConstant(in.wordAt(1));
+        cob.invokeinterface(CD_IBUS, "cpuReadMemByte", MTD_READ);
+        cob.invokevirtual(CD_STATE, "a", MTD_SET);
+        yield false;
+      }
+      case 0x10 /*DJNZ n*/ -> {
+        prologue(cob, in, cycles);
+        final Label notTaken = cob.newLabel();
+        cob.aload(3).aload(3).invokevirtual(CD_STATE, "b", MTD_GET).iconst_1().isub();
+        cob.invokevirtual(CD_STATE, "b", MTD_SET);
+        cob.aload(3).invokevirtual(CD_STATE, "b", MTD_GET).ifeq(notTaken);
+        jump(cob, TStates.JR_TAKEN, in.relative());
+        cob.labelBinding(notTaken);
+        yield false;
+      }
+      case 0x18 /*JR n*/ -> {
+        prologue(cob, in, cycles);
+        jump(cob, 0, in.relative());
+        yield false;
+      }
+      case 0x20 /*JR NZ,n*/, 0x28 /*JR Z,n*/, 0x30 /*JR NC,n*/, 0x38 /*JR C,n*/ -> {
+        prologue(cob, in, cycles);
+        final Label notTaken = condition(cob, dst & 0x03);
+        jump(cob, TStates.JR_TAKEN, in.relative());
+        cob.labelBinding(notTaken);
+        yield false;
+      }
+      case 0xC3 /*JP nn*/ -> {
+        prologue(cob, in, cycles);
+        jump(cob, 0, in.wordAt(1));
+        yield false;
+      }
+      case 0xC2, 0xCA, 0xD2, 0xDA, 0xE2, 0xEA, 0xF2, 0xFA /*JP cc,nn*/ -> {
+        prologue(cob, in, cycles);
+        final Label notTaken = condition(cob, dst);
+        jump(cob, 0, in.wordAt(1));
+        cob.labelBinding(notTaken);
+        yield false;
+      }
+      case 0xCD /*CALL nn*/ -> {
+        prologue(cob, in, cycles);
+        call(cob, 0, in);
+        yield true;
+      }
+      case 0xC4, 0xCC, 0xD4, 0xDC, 0xE4, 0xEC, 0xF4, 0xFC /*CALL cc,nn*/ -> {
+        prologue(cob, in, cycles);
+        final Label notTaken = condition(cob, dst);
+        call(cob, TStates.CALL_TAKEN, in);
+        cob.labelBinding(notTaken);
+        yield true;
+      }
+      case 0xCB /*[0xCB],...*/ -> bitInstruction(cob, in);
+      case 0xDD /*[0xDD],...*/, 0xFD /*[0xFD],...*/ ->
+          in.length() > 1 ? indexedInstruction(cob, in) : decode(cob, opCode);
+      default -> decode(cob, opCode);
+    };
+  }
+
+  /** Generate `BIT`, `SET` or `RES` on a register or `(HL)`; the rest of 0xCB calls the decoder. */
+  private static boolean bitInstruction(final CodeBuilder cob, final Instruction in) {
+    final int opCode = in.byteAt(1);
+    final int bit = (opCode >>> 3) & 0x07;
+    final int r = opCode & 0x07;
+    if (opCode < 0x40) { // the shifts and rotates.
+      return decode(cob, in.opCode());
+    }
+    prologue(cob, in, TStates.MAIN[0xCB] + TStates.CB[opCode]);
+    if (opCode < 0x80) { // BIT b,r
+      cob.aload(1).loadConstant(bit);
+      register(cob, r);
+      cob.invokevirtual(CD_CORE, "bit_m_n", MTD_BIT);
+      return false;
+    }
+    final String method = opCode < 0xC0 ? "res_m_n" : "set_m_n";
+    if (r == 6) { // RES b,(HL) or SET b,(HL)
+      cob.aload(4).aload(3).invokevirtual(CD_STATE, "hl", MTD_GET).aload(1).loadConstant(bit);
+      register(cob, 6);
+      cob.invokevirtual(CD_CORE, method, MTD_SET_RES);
+      cob.invokeinterface(CD_IBUS, "cpuWriteMemByte", MTD_WRITE);
+      return true;
+    }
+    cob.aload(3).aload(1).loadConstant(bit);
+    register(cob, r);
+    cob.invokevirtual(CD_CORE, method, MTD_SET_RES);
+    cob.invokevirtual(CD_STATE, REGISTERS[r], MTD_SET);
+    return false;
+  }
+
+  /**
+   * Generate the `IX`/`IY` instructions that the ZX81 ROM uses all the time: `LD IXY,nn`, `INC
+   * IXY`, `DEC IXY`, and the loads, `INC`, `DEC`, ALU instructions, `BIT`, `SET` and `RES` on
+   * `(IXY+d)`. The rest of 0xDD and 0xFD call the decoder.
+   */
+  private static boolean indexedInstruction(final CodeBuilder cob, final Instruction in) {
+    final String index = in.opCode() == 0xDD ? "ix" : "iy";
+    final int opCode = in.byteAt(1);
+    final int dst = (opCode >>> 3) & 0x07;
+    final int src = opCode & 0x07;
+    final int cycles = TStates.MAIN[in.opCode()] + TStates.XY[opCode];
+    if (opCode == 0x21) { // LD IXY,nn
+      prologue(cob, in, cycles);
+      cob.aload(3).loadConstant(in.wordAt(2)).invokevirtual(CD_STATE, index, MTD_SET);
+      return false;
+    } else if (opCode == 0x23 || opCode == 0x2B) { // INC IXY or DEC IXY
+      prologue(cob, in, cycles);
+      cob.aload(3).aload(1).aload(3).invokevirtual(CD_STATE, index, MTD_GET);
+      cob.invokevirtual(CD_CORE, opCode == 0x23 ? "inc_nn" : "dec_nn", MTD_READ);
+      cob.invokevirtual(CD_STATE, index, MTD_SET);
+      return false;
+    } else if (opCode == 0x34 || opCode == 0x35) { // INC (IXY+d) or DEC (IXY+d)
+      prologue(cob, in, cycles);
+      indexed(cob, index, in.byteAt(2));
+      cob.aload(4).iload(5).aload(1).aload(4).iload(5);
+      cob.invokeinterface(CD_IBUS, "cpuReadMemByte", MTD_READ);
+      cob.invokevirtual(CD_CORE, opCode == 0x34 ? "inc_n" : "dec_n", MTD_READ);
+      cob.invokeinterface(CD_IBUS, "cpuWriteMemByte", MTD_WRITE);
+      return true;
+    } else if (opCode == 0x36) { // LD (IXY+d),n
+      prologue(cob, in, cycles);
+      indexed(cob, index, in.byteAt(2));
+      cob.aload(4).iload(5).loadConstant(in.byteAt(3));
+      cob.invokeinterface(CD_IBUS, "cpuWriteMemByte", MTD_WRITE);
+      return true;
+    } else if ((opCode & 0xC7) == 0x46 && opCode != 0x76) { // LD r,(IXY+d)
+      prologue(cob, in, cycles);
+      indexed(cob, index, in.byteAt(2));
+      cob.aload(3).aload(4).iload(5).invokeinterface(CD_IBUS, "cpuReadMemByte", MTD_READ);
+      cob.invokevirtual(CD_STATE, REGISTERS[dst], MTD_SET);
+      return false;
+    } else if ((opCode & 0xF8) == 0x70 && opCode != 0x76) { // LD (IXY+d),r
+      prologue(cob, in, cycles);
+      indexed(cob, index, in.byteAt(2));
+      cob.aload(4).iload(5);
+      register(cob, src);
+      cob.invokeinterface(CD_IBUS, "cpuWriteMemByte", MTD_WRITE);
+      return true;
+    } else if ((opCode & 0xC7) == 0x86) { // ADD A,(IXY+d) etc.
+      prologue(cob, in, cycles);
+      indexed(cob, index, in.byteAt(2));
+      cob.aload(1).aload(4).iload(5).invokeinterface(CD_IBUS, "cpuReadMemByte", MTD_READ);
+      cob.invokevirtual(CD_CORE, ALU[dst], MTD_SET);
+      return false;
+    } else if (opCode == 0xCB) {
+      return indexedBitInstruction(cob, in, index);
+    }
+    return decode(cob, in.opCode());
+  }
+
+  /**
+   * Generate `BIT b,(IXY+d)`, and the documented `SET b,(IXY+d)` and `RES b,(IXY+d)`; the rest of
+   * 0xDD 0xCB and 0xFD 0xCB call the decoder.
+   */
+  private static boolean indexedBitInstruction(
+      final CodeBuilder cob, final Instruction in, final String index) {
+    final int opCode = in.byteAt(3);
+    final int bit = (opCode >>> 3) & 0x07;
+    if (opCode < 0x40 || (opCode >= 0x80 && (opCode & 0x07) != 6)) {
+      return decode(cob, in.opCode());
+    }
+    prologue(cob, in, TStates.MAIN[in.opCode()] + TStates.XY[0xCB] + TStates.XYCB[opCode]);
+    indexed(cob, index, in.byteAt(2));
+    cob.aload(4).iload(5).invokeinterface(CD_IBUS, "cpuReadMemByte", MTD_READ).istore(6);
+    if (opCode < 0x80) { // BIT b,(IXY+d)
+      cob.aload(1).loadConstant(bit).iload(6).iload(5).loadConstant(8).iushr();
+      cob.invokevirtual(CD_CORE, "bit_m_n", MTD_BIT_XY);
+      return false;
+    }
+    cob.aload(4).iload(5).aload(1).loadConstant(bit).iload(6);
+    cob.invokevirtual(CD_CORE, opCode < 0xC0 ? "res_m_n" : "set_m_n", MTD_SET_RES);
+    cob.invokeinterface(CD_IBUS, "cpuWriteMemByte", MTD_WRITE);
+    return true;
+  }
+
+  /** Generate a call of `Core.decode`, which could do anything (including write to memory). */
+  private static boolean decode(final CodeBuilder cob, final int opCode) {
+    cob.aload(1).loadConstant(opCode).invokevirtual(CD_CORE, "decode", MTD_SET);
+    return true;
+  }
+
+  /**
+   * What `Core.decode` does before it dispatches on the op-code, and what fetching the rest of the
+   * instruction does to `PC`: add 1 to `R`, move `PC` to the next instruction, and count the
+   * T-states.
+   */
+  private static void prologue(final CodeBuilder cob, final Instruction in, final int cycles) {
+    cob.aload(3).invokevirtual(CD_STATE, "rInc", MTD_void);
+    cob.aload(3).loadConstant(in.next()).invokevirtual(CD_STATE, "pc", MTD_SET);
+    cob.aload(3).loadConstant(cycles).invokevirtual(CD_STATE, "cyclesAdd", MTD_SET);
+  }
+
+  /** Push the value of register {@code r} (or `(HL)` if it's 6). */
+  private static void register(final CodeBuilder cob, final int r) {
+    if (r == 6) {
+      cob.aload(4).aload(3).invokevirtual(CD_STATE, "hl", MTD_GET);
+      cob.invokeinterface(CD_IBUS, "cpuReadMemByte", MTD_READ);
+    } else {
+      cob.aload(3).invokevirtual(CD_STATE, REGISTERS[r], MTD_GET);
+    }
+  }
+
+  /** Store the address `IXY+d` in local 5. */
+  private static void indexed(final CodeBuilder cob, final String index, final int d) {
+    cob.aload(3).invokevirtual(CD_STATE, index, MTD_GET).loadConstant((int) (byte) d).iadd();
+    cob.loadConstant(0xFFFF).iand().istore(5);
+  }
+
+  /**
+   * Test condition {@code cc} (0-7 for `NZ`, `Z`, `NC`, `C`, `PO`, `PE`, `P`, `M`), and return the
+   * label to jump to if it isn't met.
+   */
+  private static Label condition(final CodeBuilder cob, final int cc) {
+    final Label notMet = cob.newLabel();
+    cob.aload(3).invokevirtual(CD_STATE, CONDITIONS[cc], MTD_TEST);
+    if ((cc & 0x01) == 0) {
+      cob.ifne(notMet);
+    } else {
+      cob.ifeq(notMet);
+    }
+    return notMet;
+  }
+
+  /** Take a jump to {@code target}, which takes {@code cycles} more T-states. */
+  private static void jump(final CodeBuilder cob, final int cycles, final int target) {
+    if (cycles != 0) {
+      cob.aload(3).loadConstant(cycles).invokevirtual(CD_STATE, "cyclesAdd", MTD_SET);
+    }
+    cob.aload(3).loadConstant(target).invokevirtual(CD_STATE, "pc", MTD_SET);
+  }
+
+  /** Take a call, which takes {@code cycles} more T-states: push the return address and jump. */
+  private static void call(final CodeBuilder cob, final int cycles, final Instruction in) {
+    if (cycles != 0) {
+      cob.aload(3).loadConstant(cycles).invokevirtual(CD_STATE, "cyclesAdd", MTD_SET);
+    }
+    cob.aload(4).aload(3).invokevirtual(CD_STATE, "spDec2", MTD_GET).loadConstant(in.next());
+    cob.invokeinterface(CD_IBUS, "cpuWriteMemWord", MTD_WRITE);
+    jump(cob, 0, in.wordAt(1));
+  }
+}
@@ -1,67 +1,366 @@
 package com.davidconneely.eightbit.z80;
 
+import static com.davidconneely.eightbit.z80.Flags.CF;
+import static com.davidconneely.eightbit.z80.Flags.HF;
+import static com.davidconneely.eightbit.z80.Flags.NF;
+import static com.davidconneely.eightbit.z80.Flags.PF;
+import static com.davidconneely.eightbit.z80.Flags.SF;
+import static com.davidconneely.eightbit.z80.Flags.SZ;
+import static com.davidconneely.eightbit.z80.Flags.SZP;
+import static com.davidconneely.eightbit.z80.Flags.XF;
+import static com.davidconneely.eightbit.z80.Flags.YF;
+import static com.davidconneely.eightbit.z80.Flags.ZF;
+
 import com.davidconneely.eightbit.IBus;
-import java.util.function.IntConsumer;
-import java.util.function.IntSupplier;
+import java.lang.invoke.MethodHandles;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
 public final class Core {
+  /** Optional behaviour, chosen when the `Core` is constructed. */
+  public enum Option {
+    /**
+     * Record the operands and result of each arithmetic/logical operation, and only build the flags
+     * from them when an instruction (or the debugger) reads them, instead of after every operation.
+     */
+    LAZY_FLAGS,
+    /**
+     * Once a block of straight-line code has been executed often, generate a hidden class for it
+     * that executes its common instructions (loads, `INC`/`DEC`, ALU, `JR`/`JP`/`CALL`, `DJNZ`,
+     * `BIT`/`SET`/`RES`, and their `(IX+d)`/`(IY+d)` forms) directly, with their operands as
+     * constants, and calls the interpreter's handler for the rest, instead of fetching and
+     * dispatching the op-codes one at a time.
+     */
+    BLOCK_THREADING,
+    /**
+     * Keep the bytes of each instruction the first time it's executed, so the next time the op-code
+     * and operands come from the cache instead of being fetched through the bus.
+     */
+    DECODE_CACHE
+  }
+
+  /** How many times the interpreter must reach an address before the block there is compiled. */
+  private static final int BLOCK_THRESHOLD = 64;
+
+  /** The value of `fetchedPc` when the operands of the instruction aren't in `fetched`. */
+  private static final int NOT_FETCHED = Integer.MIN_VALUE;
+
+  /** A handler for a trapped `PC` address, registered with {@link #trap(int, int, Trap)}. */
+  @FunctionalInterface
+  public interface Trap {
+    /**
+     * Called before the instruction at a trapped address is executed. The handler may change the
+     * state (for example, setting `PC` to emulate a `RET`); if it changes `PC` the instruction at
+     * the new address is checked for a trap in turn, otherwise the trapped instruction is executed.
+     *
+     * @return true to stop {@link #runUntil(long)} or {@link #run(long)} before the instruction.
+     */
+    boolean trap(State state);
+  }
+
   private final IBus bus;
   private final State state;
+  private final long[] trapped = new long[0x10000 / Long.SIZE]; // one bit per `PC` address.
+  private final List<TrapRange> traps = new ArrayList<>(); // searched from the latest registered.
+  private final BlockCompiler compiler; // null unless `BLOCK_THREADING` was chosen.
+  private final DecodeCache cache; // null unless `DECODE_CACHE` was chosen.
+  private long fetched; // the `DecodeCache` record of the instruction being executed.
+  private int fetchedPc = NOT_FETCHED; // the address it was fetched from.
+  private long cycleLimit; // a block instruction doesn't repeat in bulk past this many T-states,
+  private long repeatLimit; // or more times than this (see `repeats`).
+  private long repeated; // how many times block instructions have repeated in bulk.
+  private long executed; // how many instructions have been executed.
+
+  public Core(final IBus bus, final Option... options) {
+    this(bus, BLOCK_THRESHOLD, options);
+  }
 
-  public Core(final IBus bus) {
-    this.bus = bus;
-    this.state = new State();
+  /**
+   * @param blockThreshold with `BLOCK_THREADING`, how many times an address must be reached before
+   *     the block there is compiled (e.g. 1 to test that every block compiles correctly).
+   */
+  Core(final IBus bus, final int blockThreshold, final Option... options) {
+    final List<Option> list = Arrays.asList(options);
+    if (list.contains(Option.BLOCK_THREADING)) {
+      this.compiler = new BlockCompiler(MethodHandles.lookup(), blockThreshold);
+    } else {
+      this.compiler = null;
+    }
+    this.cache = list.contains(Option.DECODE_CACHE) ? new DecodeCache() : null;
+    this.bus = (compiler != null || cache != null) ? new WatchedBus(bus, this::written) : bus;
+    this.state = new State(list.contains(Option.LAZY_FLAGS));
   }
 
   public State state() {
     return state;
   }
 
-  public void step() {
-    decode(bus.cpuReadMemInstr(state.pc()));
+  /**
+   * The number of instructions executed since the `Core` was created (each time a block instruction
+   * repeats counts as one).
+   */
+  public long instructions() {
+    return executed;
+  }
+
+  /**
+   * Execute one instruction.
+   *
+   * @return the number of T-states it took.
+   */
+  public int step() {
+    final long start = state.cycles();
+    repeatLimit = 0L;
+    decode(fetchInstr(state.pc()));
+    ++executed;
+    return (int) (state.cycles() - start);
+  }
+
+  /**
+   * Execute instructions until at least {@code cycleBudget} T-states have passed, or the handler
+   * for a trapped `PC` address asks to stop. A `HALT` keeps using up T-states (as on a real Z80)
+   * until the budget is spent. With `BLOCK_THREADING`, a compiled block runs to its end even if the
+   * budget runs out part way through. Repeated block instructions (`LDIR`, `CPIR`, etc.) may be
+   * executed in bulk, but never past the budget.
+   *
+   * @return the overshoot: how many T-states past the budget the last instruction finished, which
+   *     the caller can deduct from the next time slice (negative if a trap stopped it early).
+   */
+  public long run(final long cycleBudget) {
+    final long end = state.cycles() + cycleBudget;
+    cycleLimit = end;
+    repeatLimit = Long.MAX_VALUE;
+    repeated = 0L;
+    long instructions = 0L;
+    while (state.cycles() < end) {
+      final int pc = state.pc();
+      if ((trapped[pc >>> 6] & (1L << pc)) != 0) {
+        if (trap(pc).trap(state)) {
+          break;
+        } else if (state.pc() != pc) {
+          continue;
+        }
+      }
+      if (compiler == null) {
+        decode(fetchInstr(pc));
+        ++instructions;
+      } else {
+        instructions += execute(pc);
+      }
+    }
+    executed += instructions + repeated;
+    return state.cycles() - end;
+  }
+
+  /**
+   * Execute instructions until {@code instructionLimit} have been executed, a `HALT` is executed,
+   * or the handler for a trapped `PC` address asks to stop. With `BLOCK_THREADING`, a compiled
+   * block runs to its end, so up to {@link BlockCompiler#MAX_INSTRUCTIONS} more may be executed.
+   * Each time a block instruction (`LDIR`, `CPIR`, etc.) repeats counts as an instruction, even
+   * when the repeats are executed in bulk.
+   *
+   * @return the number of instructions executed.
+   */
+  public long runUntil(final long instructionLimit) {
+    long instructions = 0L;
+    cycleLimit = Long.MAX_VALUE;
+    while (instructions < instructionLimit) {
+      final int pc = state.pc();
+      if ((trapped[pc >>> 6] & (1L << pc)) != 0) {
+        if (trap(pc).trap(state)) {
+          break;
+        } else if (state.pc() != pc) {
+          continue;
+        }
+      }
+      repeatLimit = instructionLimit - instructions - 1;
+      repeated = 0L;
+      if (compiler == null) {
+        decode(fetchInstr(pc));
+        ++instructions;
+      } else {
+        instructions += execute(pc);
+      }
+      instructions += repeated;
+      if (state.halted()) {
+        break;
+      }
+    }
+    executed += instructions;
+    return instructions;
+  }
+
+  /** Register a handler to be called when `PC` reaches {@code address}. */
+  public void trap(final int address, final Trap handler) {
+    trap(address, address, handler);
+  }
+
+  /** Register a handler to be called when `PC` reaches any address in {@code from..to}. */
+  public void trap(final int from, final int to, final Trap handler) {
+    for (int address = from & 0xFFFF; address <= (to & 0xFFFF); ) {
+      if ((address & 63) == 0 && address + 63 <= (to & 0xFFFF)) {
+        trapped[address >>> 6] = -1L; // all 64 addresses.
+        address += 64;
+      } else {
+        trapped[address >>> 6] |= 1L << address;
+        ++address;
+      }
+    }
+    traps.add(new TrapRange(from & 0xFFFF, to & 0xFFFF, handler));
+    invalidate(from & 0xFFFF, (to & 0xFFFF) - (from & 0xFFFF) + 1);
+  }
+
+  // a few ranges rather than a handler for every address, to keep a `Core` small.
+  private record TrapRange(int from, int to, Trap handler) {}
+
+  /** The (latest registered) handler for a trapped {@code address}. */
+  private Trap trap(final int address) {
+    for (int i = traps.size() - 1; ; --i) {
+      final TrapRange range = traps.get(i);
+      if (address >= range.from() && address <= range.to()) {
+        return range.handler();
+      }
+    }
+  }
+
+  /**
+   * Tell the `Core` that memory at {@code address..address+length-1} was changed other than by the
+   * CPU (for example, a program loaded with `rawWriteMemBytes`), so any code compiled from it is
+   * discarded.
+   */
+  public void invalidate(final int address, final int length) {
+    final int from = address & 0xFFFF;
+    final int to = Math.min(from + length, 0x10000);
+    if (cache != null) {
+      cache.invalidate(from, to);
+    }
+    if (compiler != null) {
+      compiler.invalidate(from, to);
+    }
+  }
+
+  /** Called by the {@link WatchedBus} after the CPU writes to {@code address}. */
+  private void written(final int address) {
+    if (cache != null) {
+      cache.written(address);
+    }
+    if (compiler != null) {
+      compiler.written(address);
+    }
+  }
+
+  /**
+   * Execute the compiled block at {@code pc}; or if there isn't one, interpret the instruction, or
+   * the whole block if it's hot (recording its op-codes and compiling it for the next time).
+   *
+   * @return the number of instructions executed.
+   */
+  private int execute(final int pc) {
+    final BlockCompiler.Block block = compiler.block(pc);
+    if (block != null) {
+      fetchedPc = NOT_FETCHED;
+      compiler.invalidated = false;
+      return block.execute(this, compiler);
+    } else if (!compiler.hot(pc) || !bus.isCacheable(pc)) {
+      decode(fetchInstr(pc));
+      return 1;
+    }
+    final int[] opCodes = new int[BlockCompiler.MAX_INSTRUCTIONS];
+    final int[] addresses = new int[BlockCompiler.MAX_INSTRUCTIONS];
+    final byte[] source = compiler.source(bus, pc);
+    int count = 0;
+    int address = pc;
+    while (true) {
+      final int opCode = fetchInstr(address);
+      final boolean branch = BlockCompiler.isBranch(bus, address, opCode);
+      opCodes[count] = opCode;
+      addresses[count++] = address;
+      decode(opCode);
+      if (branch) {
+        address += BlockCompiler.branchLength(opCode); // the block ends after the branch.
+        break;
+      }
+      final int last = address;
+      address = state.pc();
+      if (count == BlockCompiler.MAX_INSTRUCTIONS
+          || address <= last // wrapped around.
+          || address - pc >= BlockCompiler.MAX_BYTES
+          || (trapped[address >>> 6] & (1L << address)) != 0
+          || !bus.isCacheable(address)) {
+        break;
+      }
+    }
+    compiler.compile(bus, pc, address, opCodes, addresses, count, source);
+    return count;
+  }
+
+  /** Fetch the op-code at {@code pc} (from the `DecodeCache`, if there is one and it can). */
+  private int fetchInstr(final int pc) {
+    if (cache != null) {
+      final long record = cache.record(bus, pc);
+      if (record != 0L) {
+        fetched = record;
+        fetchedPc = pc;
+        return (int) record & 0xFF;
+      }
+      fetchedPc = NOT_FETCHED;
+    }
+    return bus.cpuReadMemInstr(pc);
+  }
+
+  /** Fetch the next byte of the instruction (a prefixed op-code, displacement or operand). */
+  private int fetchByte() {
+    final int address = state.pcInc1();
+    final int offset = address - fetchedPc;
+    if (offset > 0 && offset < DecodeCache.LENGTH) {
+      return (int) (fetched >>> (offset * 8)) & 0xFF;
+    }
+    return bus.cpuReadMemByte(address);
+  }
+
+  /** Fetch the next two bytes of the instruction (a 16-bit operand). */
+  private int fetchWord() {
+    final int address = state.pcInc2();
+    final int offset = address - fetchedPc;
+    if (offset > 0 && offset < DecodeCache.LENGTH - 1) {
+      return (int) (fetched >>> (offset * 8)) & 0xFFFF;
+    }
+    return bus.cpuReadMemWord(address);
   }
 
   // ------------------------------------------------------------------------
   // ---------- un-prefixed op-codes: general-purpose instructions ----------
   // ------------------------------------------------------------------------
 
-  // Decode (00xC0-0xFF) op-codes: general-purpose instructions.
+  // Each op-code space is split into quarters on its top two bits, and each quarter is decoded by a
+  // single dense `switch` (compiled by javac to a `tableswitch`), so every op-code is an indexed
+  // jump straight to its handler. A single 256-way `switch` per op-code space would be over 4kB of
+  // bytecode, which exhausts HotSpot's inlining budget (`DesiredMethodLimit`) and runs slower.
+
+  // Decode (0x00-0xFF) op-codes: general-purpose instructions.
   private void decode(int opCode) {
     state.rInc();
-    if (opCode == 0x76) {
-      /* `HALT` ZUM(173) HTP(257) */
-      state.halted(true);
-      return; // note that the `PC` register is not changed.
-    }
     state.pcInc1();
-    int qtr = (opCode & 0xC0); // values 0x00|0x40|0x80|0xC0
-    switch (qtr) {
+    state.cyclesAdd(TStates.MAIN[opCode]);
+    switch (opCode & 0xC0) {
       case 0x00 /*[0x00-0x3F]*/ -> decodeQ0(opCode);
-      case 0x40 /*[0x40-0x7F]*/ ->
-          setRegister(
-              (opCode & 0x38) >>> 3,
-              getRegister(
-                  opCode)); /* `LD r,r'` ZUM(81) HTP(297-298), `LD r,(HL)` ZUM(83) HTP(356-357), `LD (HL),r` ZUM(86) HTP(303-304) */
-      case 0x80 /*[0x80-0xBF]*/ ->
-          alu_acc_n(
-              opCode,
-              getRegister(
-                  opCode)); /* `ADD A,r` ZUM(140-141) HTP(201-202), `ADC A,r` ZUM(146-147) HTP(190-191),`SUB r` ZUM(148-149) HTP(434-435), `SBC A,r` ZUM(150-151) HTP(420-421), `AND r` ZUM(152-153) HTP(209-210), `XOR r` ZUM(156-157) HTP(436-437), `OR r` ZUM(154-155) HTP(360-361), `CP r` ZUM(158-159) HTP(225-226) */
+      case 0x40 /*[0x40-0x7F]*/ -> decodeQ1(opCode);
+      case 0x80 /*[0x80-0xBF]*/ -> decodeQ2(opCode);
       case 0xC0 /*[0xC0-0xFF]*/ -> decodeQ3(opCode);
     }
   }
 
-  // Decode (00x00-0x3F) op-codes.
+  // Decode (0x00-0x3F) op-codes.
   private void decodeQ0(int opCode) {
     switch (opCode) {
       case 0x00 /*NOP*/ -> nop(); // ZUM(172) HTP(359)
-      case 0x01 /*LD BC,nn*/ ->
-          state.bc(bus.cpuReadMemWord(state.pcInc2())); // ZUM(102) HTP(293-294)
+      case 0x01 /*LD BC,nn*/ -> state.bc(fetchWord()); // ZUM(102) HTP(293-294)
       case 0x02 /*LD (BC),A*/ -> bus.cpuWriteMemByte(state.bc(), state.a()); // ZUM(95) HTP(299)
       case 0x03 /*INC BC*/ -> state.bc(inc_nn(state.bc())); // ZUM(184) HTP(265-266)
       case 0x04 /*INC B*/ -> state.b(inc_n(state.b())); // ZUM(160) HTP(264)
       case 0x05 /*DEC B*/ -> state.b(dec_n(state.b())); // ZUM(164-165) HTP(238-239)
-      case 0x06 /*LD B,n*/ -> state.b(bus.cpuReadMemByte(state.pcInc1())); // ZUM(82) HTP(295-296)
+      case 0x06 /*LD B,n*/ -> state.b(fetchByte()); // ZUM(82) HTP(295-296)
       case 0x07 /*RLCA*/ -> rlca(); // ZUM(190) HTP(399)
       case 0x08 /*EX AF,AF'*/ -> ex_af_aaf(); // ZUM(123) HTP(248)
       case 0x09 /*ADD HL,BC*/ -> add_hl_nn(state.bc()); // ZUM(179) HTP(203-204)
@@ -69,16 +368,15 @@ public final class Core {
       case 0x0B /*DEC BC*/ -> state.bc(dec_nn(state.bc())); // ZUM(187) HTP(240-241)
       case 0x0C /*INC C*/ -> state.c(inc_n(state.c())); // ZUM(160) HTP(264)
       case 0x0D /*DEC C*/ -> state.c(dec_n(state.c())); // ZUM(164-165) HTP(238-239)
-      case 0x0E /*LD C,n*/ -> state.c(bus.cpuReadMemByte(state.pcInc1())); // ZUM(82) HTP(295-296)
+      case 0x0E /*LD C,n*/ -> state.c(fetchByte()); // ZUM(82) HTP(295-296)
       case 0x0F /*RRCA*/ -> rrca(); // ZUM(192) HTP(415)
       case 0x10 /*DJNZ n*/ -> djnz(); // ZUM(253-254) HTP(245-246)
-      case 0x11 /*LD DE,nn*/ ->
-          state.de(bus.cpuReadMemWord(state.pcInc2())); // ZUM(102) HTP(293-294)
+      case 0x11 /*LD DE,nn*/ -> state.de(fetchWord()); // ZUM(102) HTP(293-294)
       case 0x12 /*LD (DE),A*/ -> bus.cpuWriteMemByte(state.de(), state.a()); // ZUM(96) HTP(300)
       case 0x13 /*INC DE*/ -> state.de(inc_nn(state.de())); // ZUM(184) HTP(265-266)
       case 0x14 /*INC D*/ -> state.d(inc_n(state.d())); // ZUM(160) HTP(264)
       case 0x15 /*DEC D*/ -> state.d(dec_n(state.d())); // ZUM(164-165) HTP(238-239)
-      case 0x16 /*LD D,n*/ -> state.d(bus.cpuReadMemByte(state.pcInc1())); // ZUM(82) HTP(295-296)
+      case 0x16 /*LD D,n*/ -> state.d(fetchByte()); // ZUM(82) HTP(295-296)
       case 0x17 /*RLA*/ -> rla(); // ZUM(191) HTP(398)
       case 0x18 /*JR n*/ -> jr(); // ZUM(241) HTP(290)
       case 0x19 /*ADD HL,DE*/ -> add_hl_nn(state.de()); // ZUM(179) HTP(203-204)
@@ -86,34 +384,30 @@ public final class Core {
       case 0x1B /*DEC DE*/ -> state.de(dec_nn(state.de())); // ZUM(187) HTP(240-241)
       case 0x1C /*INC E*/ -> state.e(inc_n(state.e())); // ZUM(160) HTP(264)
       case 0x1D /*DEC E*/ -> state.e(dec_n(state.e())); // ZUM(164-165) HTP(238-239)
-      case 0x1E /*LD E,n*/ -> state.e(bus.cpuReadMemByte(state.pcInc1())); // ZUM(82) HTP(295-296)
+      case 0x1E /*LD E,n*/ -> state.e(fetchByte()); // ZUM(82) HTP(295-296)
       case 0x1F /*RRA*/ -> rra(); // ZUM(193) HTP(412)
       case 0x20 /*JR NZ,n*/ -> jr_t(!state.zf()); // ZUM(248-249) HTP(288-289)
-      case 0x21 /*LD HL,nn*/ ->
-          state.hl(bus.cpuReadMemWord(state.pcInc2())); // ZUM(102) HTP(293-294)
+      case 0x21 /*LD HL,nn*/ -> state.hl(fetchWord()); // ZUM(102) HTP(293-294)
       case 0x22 /*LD (nn),HL*/ ->
-          bus.cpuWriteMemWord(
-              bus.cpuReadMemWord(state.pcInc2()), state.hl()); // ZUM(109) HTP(323-324)
+          bus.cpuWriteMemWord(fetchWord(), state.hl()); // ZUM(109) HTP(323-324)
       case 0x23 /*INC HL*/ -> state.hl(inc_nn(state.hl())); // ZUM(184) HTP(265-266)
       case 0x24 /*INC H*/ -> state.h(inc_n(state.h())); // ZUM(160) HTP(264)
       case 0x25 /*DEC H*/ -> state.h(dec_n(state.h())); // ZUM(164-165) HTP(238-239)
-      case 0x26 /*LD H,n*/ -> state.h(bus.cpuReadMemByte(state.pcInc1())); // ZUM(82) HTP(295-296)
+      case 0x26 /*LD H,n*/ -> state.h(fetchByte()); // ZUM(82) HTP(295-296)
       case 0x27 /*DAA*/ -> daa(); // ZUM(166) HTP(236-237)
       case 0x28 /*JR Z,n*/ -> jr_t(state.zf()); // ZUM(246-247) HTP(288-289)
       case 0x29 /*ADD HL,HL*/ -> add_hl_nn(state.hl()); // ZUM(179) HTP(203-204)
       case 0x2A /*LD HL,(nn)*/ ->
-          state.hl(bus.cpuReadMemWord(bus.cpuReadMemWord(state.pcInc2()))); // ZUM(105) HTP(334-335)
+          state.hl(bus.cpuReadMemWord(fetchWord())); // ZUM(105) HTP(334-335)
       case 0x2B /*DEC HL*/ -> state.hl(dec_nn(state.hl())); // ZUM(187) HTP(240-241)
       case 0x2C /*INC L*/ -> state.l(inc_n(state.l())); // ZUM(160) HTP(264)
       case 0x2D /*DEC L*/ -> state.l(dec_n(state.l())); // ZUM(164-165) HTP(238-239)
-      case 0x2E /*LD L,n*/ -> state.l(bus.cpuReadMemByte(state.pcInc1())); // ZUM(82) HTP(295-296)
+      case 0x2E /*LD L,n*/ -> state.l(fetchByte()); // ZUM(82) HTP(295-296)
       case 0x2F /*CPL*/ -> cpl(); // ZUM(168) HTP(235)
       case 0x30 /*JR NC,n*/ -> jr_t(!state.cf()); // ZUM(244-245) HTP(288-289)
-      case 0x31 /*LD SP,nn*/ ->
-          state.sp(bus.cpuReadMemWord(state.pcInc2())); // ZUM(102) HTP(293-294)
+      case 0x31 /*LD SP,nn*/ -> state.sp(fetchWord()); // ZUM(102) HTP(293-294)
       case 0x32 /*LD (nn),A*/ ->
-          bus.cpuWriteMemByte(
-              bus.cpuReadMemWord(state.pcInc2()), state.a()); // ZUM(97) HTP(319-320)
+          bus.cpuWriteMemByte(fetchWord(), state.a()); // ZUM(97) HTP(319-320)
       case 0x33 /*INC SP*/ -> state.sp(inc_nn(state.sp())); // ZUM(184) HTP(265-266)
       case 0x34 /*INC (HL)*/ ->
           bus.cpuWriteMemByte(
@@ -122,22 +416,163 @@ public final class Core {
           bus.cpuWriteMemByte(
               state.hl(), dec_n(bus.cpuReadMemByte(state.hl()))); // ZUM(164-165) HTP(238-239)
       case 0x36 /*LD (HL),n*/ ->
-          bus.cpuWriteMemByte(
-              state.hl(), bus.cpuReadMemByte(state.pcInc1())); // ZUM(86) HTP(301-302)
+          bus.cpuWriteMemByte(state.hl(), fetchByte()); // ZUM(86) HTP(301-302)
       case 0x37 /*SCF*/ -> scf(); // ZUM(171) HTP(424)
       case 0x38 /*JR C,n*/ -> jr_t(state.cf()); // ZUM(242-243) HTP(288-289)
       case 0x39 /*ADD HL,SP*/ -> add_hl_nn(state.sp()); // ZUM(179) HTP(203-204)
-      case 0x3A /*LD A,(nn)*/ ->
-          state.a(bus.cpuReadMemByte(bus.cpuReadMemWord(state.pcInc2()))); // ZUM(94) HTP(317-318)
+      case 0x3A /*LD A,(nn)*/ -> state.a(bus.cpuReadMemByte(fetchWord())); // ZUM(94) HTP(317-318)
       case 0x3B /*DEC SP*/ -> state.sp(dec_nn(state.sp())); // ZUM(187) HTP(240-241)
       case 0x3C /*INC A*/ -> state.a(inc_n(state.a())); // ZUM(160) HTP(264)
       case 0x3D /*DEC A*/ -> state.a(dec_n(state.a())); // ZUM(164-165) HTP(238-239)
-      case 0x3E /*LD A,n*/ -> state.a(bus.cpuReadMemByte(state.pcInc1())); // ZUM(82) HTP(295-296)
+      case 0x3E /*LD A,n*/ -> state.a(fetchByte()); // ZUM(82) HTP(295-296)
       case 0x3F /*CCF*/ -> ccf(); // ZUM(170) HTP(224)
     }
   }
 
-  // Decode (00xC0-0xBF) op-codes.
+  // Decode (0x40-0x7F) op-codes.
+  private void decodeQ1(int opCode) {
+    switch (opCode) {
+      case 0x40 /*LD B,B*/ -> state.b(state.b()); // ZUM(81) HTP(297-298)
+      case 0x41 /*LD B,C*/ -> state.b(state.c()); // ZUM(81) HTP(297-298)
+      case 0x42 /*LD B,D*/ -> state.b(state.d()); // ZUM(81) HTP(297-298)
+      case 0x43 /*LD B,E*/ -> state.b(state.e()); // ZUM(81) HTP(297-298)
+      case 0x44 /*LD B,H*/ -> state.b(state.h()); // ZUM(81) HTP(297-298)
+      case 0x45 /*LD B,L*/ -> state.b(state.l()); // ZUM(81) HTP(297-298)
+      case 0x46 /*LD B,(HL)*/ -> state.b(bus.cpuReadMemByte(state.hl())); // ZUM(83) HTP(356-357)
+      case 0x47 /*LD B,A*/ -> state.b(state.a()); // ZUM(81) HTP(297-298)
+      case 0x48 /*LD C,B*/ -> state.c(state.b()); // ZUM(81) HTP(297-298)
+      case 0x49 /*LD C,C*/ -> state.c(state.c()); // ZUM(81) HTP(297-298)
+      case 0x4A /*LD C,D*/ -> state.c(state.d()); // ZUM(81) HTP(297-298)
+      case 0x4B /*LD C,E*/ -> state.c(state.e()); // ZUM(81) HTP(297-298)
+      case 0x4C /*LD C,H*/ -> state.c(state.h()); // ZUM(81) HTP(297-298)
+      case 0x4D /*LD C,L*/ -> state.c(state.l()); // ZUM(81) HTP(297-298)
+      case 0x4E /*LD C,(HL)*/ -> state.c(bus.cpuReadMemByte(state.hl())); // ZUM(83) HTP(356-357)
+      case 0x4F /*LD C,A*/ -> state.c(state.a()); // ZUM(81) HTP(297-298)
+      case 0x50 /*LD D,B*/ -> state.d(state.b()); // ZUM(81) HTP(297-298)
+      case 0x51 /*LD D,C*/ -> state.d(state.c()); // ZUM(81) HTP(297-298)
+      case 0x52 /*LD D,D*/ -> state.d(state.d()); // ZUM(81) HTP(297-298)
+      case 0x53 /*LD D,E*/ -> state.d(state.e()); // ZUM(81) HTP(297-298)
+      case 0x54 /*LD D,H*/ -> state.d(state.h()); // ZUM(81) HTP(297-298)
+      case 0x55 /*LD D,L*/ -> state.d(state.l()); // ZUM(81) HTP(297-298)
+      case 0x56 /*LD D,(HL)*/ -> state.d(bus.cpuReadMemByte(state.hl())); // ZUM(83) HTP(356-357)
+      case 0x57 /*LD D,A*/ -> state.d(state.a()); // ZUM(81) HTP(297-298)
+      case 0x58 /*LD E,B*/ -> state.e(state.b()); // ZUM(81) HTP(297-298)
+      case 0x59 /*LD E,C*/ -> state.e(state.c()); // ZUM(81) HTP(297-298)
+      case 0x5A /*LD E,D*/ -> state.e(state.d()); // ZUM(81) HTP(297-298)
+      case 0x5B /*LD E,E*/ -> state.e(state.e()); // ZUM(81) HTP(297-298)
+      case 0x5C /*LD E,H*/ -> state.e(state.h()); // ZUM(81) HTP(297-298)
+      case 0x5D /*LD E,L*/ -> state.e(state.l()); // ZUM(81) HTP(297-298)
+      case 0x5E /*LD E,(HL)*/ -> state.e(bus.cpuReadMemByte(state.hl())); // ZUM(83) HTP(356-357)
+      case 0x5F /*LD E,A*/ -> state.e(state.a()); // ZUM(81) HTP(297-298)
+      case 0x60 /*LD H,B*/ -> state.h(state.b()); // ZUM(81) HTP(297-298)
+      case 0x61 /*LD H,C*/ -> state.h(state.c()); // ZUM(81) HTP(297-298)
+      case 0x62 /*LD H,D*/ -> state.h(state.d()); // ZUM(81) HTP(297-298)
+      case 0x63 /*LD H,E*/ -> state.h(state.e()); // ZUM(81) HTP(297-298)
+      case 0x64 /*LD H,H*/ -> state.h(state.h()); // ZUM(81) HTP(297-298)
+      case 0x65 /*LD H,L*/ -> state.h(state.l()); // ZUM(81) HTP(297-298)
+      case 0x66 /*LD H,(HL)*/ -> state.h(bus.cpuReadMemByte(state.hl())); // ZUM(83) HTP(356-357)
+      case 0x67 /*LD H,A*/ -> state.h(state.a()); // ZUM(81) HTP(297-298)
+      case 0x68 /*LD L,B*/ -> state.l(state.b()); // ZUM(81) HTP(297-298)
+      case 0x69 /*LD L,C*/ -> state.l(state.c()); // ZUM(81) HTP(297-298)
+      case 0x6A /*LD L,D*/ -> state.l(state.d()); // ZUM(81) HTP(297-298)
+      case 0x6B /*LD L,E*/ -> state.l(state.e()); // ZUM(81) HTP(297-298)
+      case 0x6C /*LD L,H*/ -> state.l(state.h()); // ZUM(81) HTP(297-298)
+      case 0x6D /*LD L,L*/ -> state.l(state.l()); // ZUM(81) HTP(297-298)
+      case 0x6E /*LD L,(HL)*/ -> state.l(bus.cpuReadMemByte(state.hl())); // ZUM(83) HTP(356-357)
+      case 0x6F /*LD L,A*/ -> state.l(state.a()); // ZUM(81) HTP(297-298)
+      case 0x70 /*LD (HL),B*/ -> bus.cpuWriteMemByte(state.hl(), state.b()); // ZUM(86) HTP(303-304)
+      case 0x71 /*LD (HL),C*/ -> bus.cpuWriteMemByte(state.hl(), state.c()); // ZUM(86) HTP(303-304)
+      case 0x72 /*LD (HL),D*/ -> bus.cpuWriteMemByte(state.hl(), state.d()); // ZUM(86) HTP(303-304)
+      case 0x73 /*LD (HL),E*/ -> bus.cpuWriteMemByte(state.hl(), state.e()); // ZUM(86) HTP(303-304)
+      case 0x74 /*LD (HL),H*/ -> bus.cpuWriteMemByte(state.hl(), state.h()); // ZUM(86) HTP(303-304)
+      case 0x75 /*LD (HL),L*/ -> bus.cpuWriteMemByte(state.hl(), state.l()); // ZUM(86) HTP(303-304)
+      case 0x76 /*HALT*/ -> halt(); // ZUM(173) HTP(257)
+      case 0x77 /*LD (HL),A*/ -> bus.cpuWriteMemByte(state.hl(), state.a()); // ZUM(86) HTP(303-304)
+      case 0x78 /*LD A,B*/ -> state.a(state.b()); // ZUM(81) HTP(297-298)
+      case 0x79 /*LD A,C*/ -> state.a(state.c()); // ZUM(81) HTP(297-298)
+      case 0x7A /*LD A,D*/ -> state.a(state.d()); // ZUM(81) HTP(297-298)
+      case 0x7B /*LD A,E*/ -> state.a(state.e()); // ZUM(81) HTP(297-298)
+      case 0x7C /*LD A,H*/ -> state.a(state.h()); // ZUM(81) HTP(297-298)
+      case 0x7D /*LD A,L*/ -> state.a(state.l()); // ZUM(81) HTP(297-298)
+      case 0x7E /*LD A,(HL)*/ -> state.a(bus.cpuReadMemByte(state.hl())); // ZUM(83) HTP(356-357)
+      case 0x7F /*LD A,A*/ -> state.a(state.a()); // ZUM(81) HTP(297-298)
+    }
+  }
+
+  // Decode (0x80-0xBF) op-codes.
+  private void decodeQ2(int opCode) {
+    switch (opCode) {
+      case 0x80 /*ADD A,B*/ -> add_a_n(state.b()); // ZUM(140-141) HTP(201-202)
+      case 0x81 /*ADD A,C*/ -> add_a_n(state.c()); // ZUM(140-141) HTP(201-202)
+      case 0x82 /*ADD A,D*/ -> add_a_n(state.d()); // ZUM(140-141) HTP(201-202)
+      case 0x83 /*ADD A,E*/ -> add_a_n(state.e()); // ZUM(140-141) HTP(201-202)
+      case 0x84 /*ADD A,H*/ -> add_a_n(state.h()); // ZUM(140-141) HTP(201-202)
+      case 0x85 /*ADD A,L*/ -> add_a_n(state.l()); // ZUM(140-141) HTP(201-202)
+      case 0x86 /*ADD A,(HL)*/ ->
+          add_a_n(bus.cpuReadMemByte(state.hl())); // ZUM(140-141) HTP(201-202)
+      case 0x87 /*ADD A,A*/ -> add_a_n(state.a()); // ZUM(140-141) HTP(201-202)
+      case 0x88 /*ADC A,B*/ -> adc_a_n(state.b()); // ZUM(146-147) HTP(190-191)
+      case 0x89 /*ADC A,C*/ -> adc_a_n(state.c()); // ZUM(146-147) HTP(190-191)
+      case 0x8A /*ADC A,D*/ -> adc_a_n(state.d()); // ZUM(146-147) HTP(190-191)
+      case 0x8B /*ADC A,E*/ -> adc_a_n(state.e()); // ZUM(146-147) HTP(190-191)
+      case 0x8C /*ADC A,H*/ -> adc_a_n(state.h()); // ZUM(146-147) HTP(190-191)
+      case 0x8D /*ADC A,L*/ -> adc_a_n(state.l()); // ZUM(146-147) HTP(190-191)
+      case 0x8E /*ADC A,(HL)*/ ->
+          adc_a_n(bus.cpuReadMemByte(state.hl())); // ZUM(146-147) HTP(190-191)
+      case 0x8F /*ADC A,A*/ -> adc_a_n(state.a()); // ZUM(146-147) HTP(190-191)
+      case 0x90 /*SUB B*/ -> sub_n(state.b()); // ZUM(148-149) HTP(434-435)
+      case 0x91 /*SUB C*/ -> sub_n(state.c()); // ZUM(148-149) HTP(434-435)
+      case 0x92 /*SUB D*/ -> sub_n(state.d()); // ZUM(148-149) HTP(434-435)
+      case 0x93 /*SUB E*/ -> sub_n(state.e()); // ZUM(148-149) HTP(434-435)
+      case 0x94 /*SUB H*/ -> sub_n(state.h()); // ZUM(148-149) HTP(434-435)
+      case 0x95 /*SUB L*/ -> sub_n(state.l()); // ZUM(148-149) HTP(434-435)
+      case 0x96 /*SUB (HL)*/ -> sub_n(bus.cpuReadMemByte(state.hl())); // ZUM(148-149) HTP(434-435)
+      case 0x97 /*SUB A*/ -> sub_n(state.a()); // ZUM(148-149) HTP(434-435)
+      case 0x98 /*SBC A,B*/ -> sbc_a_n(state.b()); // ZUM(150-151) HTP(420-421)
+      case 0x99 /*SBC A,C*/ -> sbc_a_n(state.c()); // ZUM(150-151) HTP(420-421)
+      case 0x9A /*SBC A,D*/ -> sbc_a_n(state.d()); // ZUM(150-151) HTP(420-421)
+      case 0x9B /*SBC A,E*/ -> sbc_a_n(state.e()); // ZUM(150-151) HTP(420-421)
+      case 0x9C /*SBC A,H*/ -> sbc_a_n(state.h()); // ZUM(150-151) HTP(420-421)
+      case 0x9D /*SBC A,L*/ -> sbc_a_n(state.l()); // ZUM(150-151) HTP(420-421)
+      case 0x9E /*SBC A,(HL)*/ ->
+          sbc_a_n(bus.cpuReadMemByte(state.hl())); // ZUM(150-151) HTP(420-421)
+      case 0x9F /*SBC A,A*/ -> sbc_a_n(state.a()); // ZUM(150-151) HTP(420-421)
+      case 0xA0 /*AND B*/ -> and_n(state.b()); // ZUM(152-153) HTP(209-210)
+      case 0xA1 /*AND C*/ -> and_n(state.c()); // ZUM(152-153) HTP(209-210)
+      case 0xA2 /*AND D*/ -> and_n(state.d()); // ZUM(152-153) HTP(209-210)
+      case 0xA3 /*AND E*/ -> and_n(state.e()); // ZUM(152-153) HTP(209-210)
+      case 0xA4 /*AND H*/ -> and_n(state.h()); // ZUM(152-153) HTP(209-210)
+      case 0xA5 /*AND L*/ -> and_n(state.l()); // ZUM(152-153) HTP(209-210)
+      case 0xA6 /*AND (HL)*/ -> and_n(bus.cpuReadMemByte(state.hl())); // ZUM(152-153) HTP(209-210)
+      case 0xA7 /*AND A*/ -> and_n(state.a()); // ZUM(152-153) HTP(209-210)
+      case 0xA8 /*XOR B*/ -> xor_n(state.b()); // ZUM(156-157) HTP(436-437)
+      case 0xA9 /*XOR C*/ -> xor_n(state.c()); // ZUM(156-157) HTP(436-437)
+      case 0xAA /*XOR D*/ -> xor_n(state.d()); // ZUM(156-157) HTP(436-437)
+      case 0xAB /*XOR E*/ -> xor_n(state.e()); // ZUM(156-157) HTP(436-437)
+      case 0xAC /*XOR H*/ -> xor_n(state.h()); // ZUM(156-157) HTP(436-437)
+      case 0xAD /*XOR L*/ -> xor_n(state.l()); // ZUM(156-157) HTP(436-437)
+      case 0xAE /*XOR (HL)*/ -> xor_n(bus.cpuReadMemByte(state.hl())); // ZUM(156-157) HTP(436-437)
+      case 0xAF /*XOR A*/ -> xor_n(state.a()); // ZUM(156-157) HTP(436-437)
+      case 0xB0 /*OR B*/ -> or_n(state.b()); // ZUM(154-155) HTP(360-361)
+      case 0xB1 /*OR C*/ -> or_n(state.c()); // ZUM(154-155) HTP(360-361)
+      case 0xB2 /*OR D*/ -> or_n(state.d()); // ZUM(154-155) HTP(360-361)
+      case 0xB3 /*OR E*/ -> or_n(state.e()); // ZUM(154-155) HTP(360-361)
+      case 0xB4 /*OR H*/ -> or_n(state.h()); // ZUM(154-155) HTP(360-361)
+      case 0xB5 /*OR L*/ -> or_n(state.l()); // ZUM(154-155) HTP(360-361)
+      case 0xB6 /*OR (HL)*/ -> or_n(bus.cpuReadMemByte(state.hl())); // ZUM(154-155) HTP(360-361)
+      case 0xB7 /*OR A*/ -> or_n(state.a()); // ZUM(154-155) HTP(360-361)
+      case 0xB8 /*CP B*/ -> cp_n(state.b()); // ZUM(158-159) HTP(225-226)
+      case 0xB9 /*CP C*/ -> cp_n(state.c()); // ZUM(158-159) HTP(225-226)
+      case 0xBA /*CP D*/ -> cp_n(state.d()); // ZUM(158-159) HTP(225-226)
+      case 0xBB /*CP E*/ -> cp_n(state.e()); // ZUM(158-159) HTP(225-226)
+      case 0xBC /*CP H*/ -> cp_n(state.h()); // ZUM(158-159) HTP(225-226)
+      case 0xBD /*CP L*/ -> cp_n(state.l()); // ZUM(158-159) HTP(225-226)
+      case 0xBE /*CP (HL)*/ -> cp_n(bus.cpuReadMemByte(state.hl())); // ZUM(158-159) HTP(225-226)
+      case 0xBF /*CP A*/ -> cp_n(state.a()); // ZUM(158-159) HTP(225-226)
+    }
+  }
+
+  // Decode (0xC0-0xFF) op-codes.
   private void decodeQ3(int opCode) {
     switch (opCode) {
       case 0xC0 /*RET NZ*/ -> ret_t(!state.zf()); // ZUM(261-262) HTP(390-391)
@@ -147,41 +582,34 @@ public final class Core {
       case 0xC4 /*CALL NZ,nn*/ -> call_t(!state.zf()); // ZUM(257-259) HTP(219-221)
       case 0xC5 /*PUSH BC*/ ->
           bus.cpuWriteMemWord(state.spDec2(), state.bc()); // ZUM(116) HTP(379-380)
-      case 0xC6 /*ADD A,n*/ -> add_a_n(bus.cpuReadMemByte(state.pcInc1())); // ZUM(142) HTP(200)
+      case 0xC6 /*ADD A,n*/ -> add_a_n(fetchByte()); // ZUM(142) HTP(200)
       case 0xC7 /*RST 00H*/ -> rst_n(0x00); // ZUM(267-268) HTP(418-419)
       case 0xC8 /*RET Z*/ -> ret_t(state.zf()); // ZUM(261-262) HTP(390-391)
       case 0xC9 /*RET*/ -> ret(); // ZUM(260) HTP(388-389)
       case 0xCA /*JP Z,nn*/ -> jp_t(state.zf()); // ZUM(239-240) HTP(282-283)
-      case 0xCB /*[0xCB],...*/ -> decodeCB(bus.cpuReadMemByte(state.pcInc1()));
+      case 0xCB /*[0xCB],...*/ -> decodeCB(fetchByte());
       case 0xCC /*CALL Z,nn*/ -> call_t(state.zf()); // ZUM(257-259) HTP(219-221)
       case 0xCD /*CALL nn*/ -> call(); // ZUM(255-256) HTP(222-223)
-      case 0xCE /*ADC A,n*/ ->
-          adc_a_n(bus.cpuReadMemByte(state.pcInc1())); // ZUM(146-147) HTP(190-191)
+      case 0xCE /*ADC A,n*/ -> adc_a_n(fetchByte()); // ZUM(146-147) HTP(190-191)
       case 0xCF /*RST 08H*/ -> rst_n(0x08); // ZUM(267-268) HTP(418-419)
       case 0xD0 /*RET NC*/ -> ret_t(!state.cf()); // ZUM(261-262) HTP(390-391)
       case 0xD1 /*POP DE*/ -> state.de(bus.cpuReadMemWord(state.spInc2())); // ZUM(119) HTP(373-374)
       case 0xD2 /*JP NC,nn*/ -> jp_t(!state.cf()); // ZUM(239-240) HTP(282-283)
       case 0xD3 /*OUT (n),A*/ ->
-          bus.cpuWritePortByte(
-              (state.a() << 8) | bus.cpuReadMemByte(state.pcInc1()),
-              state.a()); // ZUM(279) HTP(368)
+          bus.cpuWritePortByte((state.a() << 8) | fetchByte(), state.a()); // ZUM(279) HTP(368)
       case 0xD4 /*CALL NC,nn*/ -> call_t(!state.cf()); // ZUM(257-259) HTP(219-221)
       case 0xD5 /*PUSH DE*/ ->
           bus.cpuWriteMemWord(state.spDec2(), state.de()); // ZUM(116) HTP(379-380)
-      case 0xD6 /*SUB n*/ -> sub_n(bus.cpuReadMemByte(state.pcInc1())); // ZUM(148-149) HTP(434-435)
+      case 0xD6 /*SUB n*/ -> sub_n(fetchByte()); // ZUM(148-149) HTP(434-435)
       case 0xD7 /*RST 10H*/ -> rst_n(0x10); // ZUM(267-268) HTP(418-419)
       case 0xD8 /*RET C*/ -> ret_t(state.cf()); // ZUM(261-262) HTP(390-391)
       case 0xD9 /*EXX*/ -> exx(); // ZUM(124) HTP(256)
       case 0xDA /*JP C,nn*/ -> jp_t(state.cf()); // ZUM(239-240) HTP(282-283)
       case 0xDB /*IN A,(n)*/ ->
-          state.a(
-              bus.cpuReadPortByte(
-                  (state.a() << 8) | bus.cpuReadMemByte(state.pcInc1()))); // ZUM(269) HTP(263)
+          state.a(bus.cpuReadPortByte((state.a() << 8) | fetchByte())); // ZUM(269) HTP(263)
       case 0xDC /*CALL C,nn*/ -> call_t(state.cf()); // ZUM(257-259) HTP(219-221)
-      case 0xDD /*[0xDD],...*/ ->
-          decodeXY(0xDD, bus.cpuReadMemByte(state.pcInc1()), state::ix, state::ix);
-      case 0xDE /*SBC A,n*/ ->
-          sbc_a_n(bus.cpuReadMemByte(state.pcInc1())); // ZUM(150-151) HTP(420-421)
+      case 0xDD /*[0xDD],...*/ -> decodeXY(0xDD, fetchByte());
+      case 0xDE /*SBC A,n*/ -> sbc_a_n(fetchByte()); // ZUM(150-151) HTP(420-421)
       case 0xDF /*RST 18H*/ -> rst_n(0x18); // ZUM(267-268) HTP(418-419)
       case 0xE0 /*RET PO*/ -> ret_t(!state.pf()); // ZUM(261-262) HTP(390-391)
       case 0xE1 /*POP HL*/ -> state.hl(bus.cpuReadMemWord(state.spInc2())); // ZUM(119) HTP(373-374)
@@ -190,15 +618,15 @@ public final class Core {
       case 0xE4 /*CALL PO,nn*/ -> call_t(!state.pf()); // ZUM(257-259) HTP(219-221)
       case 0xE5 /*PUSH HL*/ ->
           bus.cpuWriteMemWord(state.spDec2(), state.hl()); // ZUM(116) HTP(379-380)
-      case 0xE6 /*AND n*/ -> and_n(bus.cpuReadMemByte(state.pcInc1())); // ZUM(152-153) HTP(209-210)
+      case 0xE6 /*AND n*/ -> and_n(fetchByte()); // ZUM(152-153) HTP(209-210)
       case 0xE7 /*RST 20H*/ -> rst_n(0x20); // ZUM(267-268) HTP(418-419)
       case 0xE8 /*RET PE*/ -> ret_t(state.pf()); // ZUM(261-262) HTP(390-391)
       case 0xE9 /*JP (HL)*/ -> state.pc(state.hl()); // ZUM(250) HTP(285)
       case 0xEA /*JP PE,nn*/ -> jp_t(state.pf()); // ZUM(239-240) HTP(282-283)
       case 0xEB /*EX DE,HL*/ -> ex_de_hl(); // ZUM(122) HTP(249)
       case 0xEC /*CALL PE,nn*/ -> call_t(state.pf()); // ZUM(257-259) HTP(219-221)
-      case 0xED /*[0xED],...*/ -> decodeED(bus.cpuReadMemByte(state.pcInc1()));
-      case 0xEE /*XOR n*/ -> xor_n(bus.cpuReadMemByte(state.pcInc1()));
+      case 0xED /*[0xED],...*/ -> decodeED(fetchByte());
+      case 0xEE /*XOR n*/ -> xor_n(fetchByte());
       case 0xEF /*RST 28H*/ -> rst_n(0x28); // ZUM(267-268) HTP(418-419)
       case 0xF0 /*RET P*/ -> ret_t(!state.sf()); // ZUM(261-262) HTP(390-391)
       case 0xF1 /*POP AF*/ -> state.af(bus.cpuReadMemWord(state.spInc2())); // ZUM(119) HTP(373-374)
@@ -207,16 +635,15 @@ public final class Core {
       case 0xF4 /*CALL P,nn*/ -> call_t(!state.sf()); // ZUM(257-259) HTP(219-221)
       case 0xF5 /*PUSH AF*/ ->
           bus.cpuWriteMemWord(state.spDec2(), state.af()); // ZUM(116) HTP(379-380)
-      case 0xF6 /*OR n*/ -> or_n(bus.cpuReadMemByte(state.pcInc1()));
+      case 0xF6 /*OR n*/ -> or_n(fetchByte());
       case 0xF7 /*RST 30H*/ -> rst_n(0x30); // ZUM(267-268) HTP(418-419)
       case 0xF8 /*RET M*/ -> ret_t(state.sf()); // ZUM(261-262) HTP(390-391)
       case 0xF9 /*LD SP,HL*/ -> state.sp(state.hl()); // ZUM(113) HTP(345)
       case 0xFA /*JP M,nn*/ -> jp_t(state.sf()); // ZUM(239-240) HTP(282-283)
       case 0xFB /*EI*/ -> ei(); // ZUM(175) HTP(247)
       case 0xFC /*CALL M,nn*/ -> call_t(state.sf()); // ZUM(257-259) HTP(219-221)
-      case 0xFD /*[0xFD],...*/ ->
-          decodeXY(0xFD, bus.cpuReadMemByte(state.pcInc1()), state::iy, state::iy);
-      case 0xFE /*CP n*/ -> cp_n(bus.cpuReadMemByte(state.pcInc1()));
+      case 0xFD /*[0xFD],...*/ -> decodeXY(0xFD, fetchByte());
+      case 0xFE /*CP n*/ -> cp_n(fetchByte());
       case 0xFF /*RST 38H*/ -> rst_n(0x38); // ZUM(267-268) HTP(418-419)
     }
   }
@@ -228,33 +655,372 @@ public final class Core {
 
   // Decode (0xCB, 0x00-0xFF) op-codes: shift and rotate instructions.
   private void decodeCB(int opCode) {
-    int qtr = opCode & 0xC0;
-    switch (qtr) {
-      case 0x00 /*[0xCB],[0x00-0x3F]*/ ->
-          setRegister(
-              opCode,
-              shf_rot_n(
-                  opCode,
-                  getRegister(
-                      opCode))); /* `RLC r` ZUM(194-195) HTP(400-401), `RRC r` ZUM(205-207) HTP(413-414), `RL r` ZUM(202-204) HTP(396-397), `RR r` ZUM(208-210) HTP(410-411), `SLA r` ZUM(211-213) HTP(428-429), `SRA r` ZUM(214-216) HTP(430-431), `SL1 r` undocumented, `SRL r` ZUM(217-219) HTP(432-433) */
-      case 0x40 /*[0xCB],[0x40-0x7F]*/ ->
-          bit_m_n(
-              (opCode & 0x38) >>> 3,
-              getRegister(
-                  opCode)); /* `BIT m,r` ZUM(224-225) HTP(217-218), `BIT m,(HL)` ZUM(226-227) HTP(211-212) */
-      case 0x80 /*[0xCB],[0x80-0xBF]*/ ->
-          setRegister(
-              opCode,
-              res_m_n(
-                  (opCode & 0x38) >>> 3,
-                  getRegister(opCode))); /* `RES m,r` ZUM(236-237) HTP(385-387) */
-      case 0xC0 /*[0xCB],[0xC0-0xFF]*/ ->
-          setRegister(
-              opCode,
-              set_m_n(
-                  (opCode & 0x38) >>> 3,
-                  getRegister(
-                      opCode))); /* `SET m,r` ZUM(232) HTP(425-427), `SET m,(HL)` ZUM(233) HTP(425-427) */
+    state.cyclesAdd(TStates.CB[opCode]);
+    switch (opCode & 0xC0) {
+      case 0x00 /*[0xCB],[0x00-0x3F]*/ -> decodeCBQ0(opCode);
+      case 0x40 /*[0xCB],[0x40-0x7F]*/ -> decodeCBQ1(opCode);
+      case 0x80 /*[0xCB],[0x80-0xBF]*/ -> decodeCBQ2(opCode);
+      case 0xC0 /*[0xCB],[0xC0-0xFF]*/ -> decodeCBQ3(opCode);
+    }
+  }
+
+  // Decode (0xCB, 0x00-0x3F) op-codes.
+  private void decodeCBQ0(int opCode) {
+    switch (opCode) {
+      case 0x00 /*RLC B*/ -> state.b(rlc_n(state.b())); // ZUM(194-195) HTP(400-401)
+      case 0x01 /*RLC C*/ -> state.c(rlc_n(state.c())); // ZUM(194-195) HTP(400-401)
+      case 0x02 /*RLC D*/ -> state.d(rlc_n(state.d())); // ZUM(194-195) HTP(400-401)
+      case 0x03 /*RLC E*/ -> state.e(rlc_n(state.e())); // ZUM(194-195) HTP(400-401)
+      case 0x04 /*RLC H*/ -> state.h(rlc_n(state.h())); // ZUM(194-195) HTP(400-401)
+      case 0x05 /*RLC L*/ -> state.l(rlc_n(state.l())); // ZUM(194-195) HTP(400-401)
+      case 0x06 /*RLC (HL)*/ -> { // ZUM(194-195) HTP(400-401)
+        int address = state.hl();
+        bus.cpuWriteMemByte(address, rlc_n(bus.cpuReadMemByte(address)));
+      }
+      case 0x07 /*RLC A*/ -> state.a(rlc_n(state.a())); // ZUM(194-195) HTP(400-401)
+      case 0x08 /*RRC B*/ -> state.b(rrc_n(state.b())); // ZUM(205-207) HTP(413-414)
+      case 0x09 /*RRC C*/ -> state.c(rrc_n(state.c())); // ZUM(205-207) HTP(413-414)
+      case 0x0A /*RRC D*/ -> state.d(rrc_n(state.d())); // ZUM(205-207) HTP(413-414)
+      case 0x0B /*RRC E*/ -> state.e(rrc_n(state.e())); // ZUM(205-207) HTP(413-414)
+      case 0x0C /*RRC H*/ -> state.h(rrc_n(state.h())); // ZUM(205-207) HTP(413-414)
+      case 0x0D /*RRC L*/ -> state.l(rrc_n(state.l())); // ZUM(205-207) HTP(413-414)
+      case 0x0E /*RRC (HL)*/ -> { // ZUM(205-207) HTP(413-414)
+        int address = state.hl();
+        bus.cpuWriteMemByte(address, rrc_n(bus.cpuReadMemByte(address)));
+      }
+      case 0x0F /*RRC A*/ -> state.a(rrc_n(state.a())); // ZUM(205-207) HTP(413-414)
+      case 0x10 /*RL B*/ -> state.b(rl_n(state.b())); // ZUM(202-204) HTP(396-397)
+      case 0x11 /*RL C*/ -> state.c(rl_n(state.c())); // ZUM(202-204) HTP(396-397)
+      case 0x12 /*RL D*/ -> state.d(rl_n(state.d())); // ZUM(202-204) HTP(396-397)
+      case 0x13 /*RL E*/ -> state.e(rl_n(state.e())); // ZUM(202-204) HTP(396-397)
+      case 0x14 /*RL H*/ -> state.h(rl_n(state.h())); // ZUM(202-204) HTP(396-397)
+      case 0x15 /*RL L*/ -> state.l(rl_n(state.l())); // ZUM(202-204) HTP(396-397)
+      case 0x16 /*RL (HL)*/ -> { // ZUM(202-204) HTP(396-397)
+        int address = state.hl();
+        bus.cpuWriteMemByte(address, rl_n(bus.cpuReadMemByte(address)));
+      }
+      case 0x17 /*RL A*/ -> state.a(rl_n(state.a())); // ZUM(202-204) HTP(396-397)
+      case 0x18 /*RR B*/ -> state.b(rr_n(state.b())); // ZUM(208-210) HTP(410-411)
+      case 0x19 /*RR C*/ -> state.c(rr_n(state.c())); // ZUM(208-210) HTP(410-411)
+      case 0x1A /*RR D*/ -> state.d(rr_n(state.d())); // ZUM(208-210) HTP(410-411)
+      case 0x1B /*RR E*/ -> state.e(rr_n(state.e())); // ZUM(208-210) HTP(410-411)
+      case 0x1C /*RR H*/ -> state.h(rr_n(state.h())); // ZUM(208-210) HTP(410-411)
+      case 0x1D /*RR L*/ -> state.l(rr_n(state.l())); // ZUM(208-210) HTP(410-411)
+      case 0x1E /*RR (HL)*/ -> { // ZUM(208-210) HTP(410-411)
+        int address = state.hl();
+        bus.cpuWriteMemByte(address, rr_n(bus.cpuReadMemByte(address)));
+      }
+      case 0x1F /*RR A*/ -> state.a(rr_n(state.a())); // ZUM(208-210) HTP(410-411)
+      case 0x20 /*SLA B*/ -> state.b(sla_n(state.b())); // ZUM(211-213) HTP(428-429)
+      case 0x21 /*SLA C*/ -> state.c(sla_n(state.c())); // ZUM(211-213) HTP(428-429)
+      case 0x22 /*SLA D*/ -> state.d(sla_n(state.d())); // ZUM(211-213) HTP(428-429)
+      case 0x23 /*SLA E*/ -> state.e(sla_n(state.e())); // ZUM(211-213) HTP(428-429)
+      case 0x24 /*SLA H*/ -> state.h(sla_n(state.h())); // ZUM(211-213) HTP(428-429)
+      case 0x25 /*SLA L*/ -> state.l(sla_n(state.l())); // ZUM(211-213) HTP(428-429)
+      case 0x26 /*SLA (HL)*/ -> { // ZUM(211-213) HTP(428-429)
+        int address = state.hl();
+        bus.cpuWriteMemByte(address, sla_n(bus.cpuReadMemByte(address)));
+      }
+      case 0x27 /*SLA A*/ -> state.a(sla_n(state.a())); // ZUM(211-213) HTP(428-429)
+      case 0x28 /*SRA B*/ -> state.b(sra_n(state.b())); // ZUM(214-216) HTP(430-431)
+      case 0x29 /*SRA C*/ -> state.c(sra_n(state.c())); // ZUM(214-216) HTP(430-431)
+      case 0x2A /*SRA D*/ -> state.d(sra_n(state.d())); // ZUM(214-216) HTP(430-431)
+      case 0x2B /*SRA E*/ -> state.e(sra_n(state.e())); // ZUM(214-216) HTP(430-431)
+      case 0x2C /*SRA H*/ -> state.h(sra_n(state.h())); // ZUM(214-216) HTP(430-431)
+      case 0x2D /*SRA L*/ -> state.l(sra_n(state.l())); // ZUM(214-216) HTP(430-431)
+      case 0x2E /*SRA (HL)*/ -> { // ZUM(214-216) HTP(430-431)
+        int address = state.hl();
+        bus.cpuWriteMemByte(address, sra_n(bus.cpuReadMemByte(address)));
+      }
+      case 0x2F /*SRA A*/ -> state.a(sra_n(state.a())); // ZUM(214-216) HTP(430-431)
+      case 0x30 /*SL1 B*/ -> state.b(sl1_n(state.b())); // undocumented
+      case 0x31 /*SL1 C*/ -> state.c(sl1_n(state.c())); // undocumented
+      case 0x32 /*SL1 D*/ -> state.d(sl1_n(state.d())); // undocumented
+      case 0x33 /*SL1 E*/ -> state.e(sl1_n(state.e())); // undocumented
+      case 0x34 /*SL1 H*/ -> state.h(sl1_n(state.h())); // undocumented
+      case 0x35 /*SL1 L*/ -> state.l(sl1_n(state.l())); // undocumented
+      case 0x36 /*SL1 (HL)*/ -> { // undocumented
+        int address = state.hl();
+        bus.cpuWriteMemByte(address, sl1_n(bus.cpuReadMemByte(address)));
+      }
+      case 0x37 /*SL1 A*/ -> state.a(sl1_n(state.a())); // undocumented
+      case 0x38 /*SRL B*/ -> state.b(srl_n(state.b())); // ZUM(217-219) HTP(432-433)
+      case 0x39 /*SRL C*/ -> state.c(srl_n(state.c())); // ZUM(217-219) HTP(432-433)
+      case 0x3A /*SRL D*/ -> state.d(srl_n(state.d())); // ZUM(217-219) HTP(432-433)
+      case 0x3B /*SRL E*/ -> state.e(srl_n(state.e())); // ZUM(217-219) HTP(432-433)
+      case 0x3C /*SRL H*/ -> state.h(srl_n(state.h())); // ZUM(217-219) HTP(432-433)
+      case 0x3D /*SRL L*/ -> state.l(srl_n(state.l())); // ZUM(217-219) HTP(432-433)
+      case 0x3E /*SRL (HL)*/ -> { // ZUM(217-219) HTP(432-433)
+        int address = state.hl();
+        bus.cpuWriteMemByte(address, srl_n(bus.cpuReadMemByte(address)));
+      }
+      case 0x3F /*SRL A*/ -> state.a(srl_n(state.a())); // ZUM(217-219) HTP(432-433)
+    }
+  }
+
+  // Decode (0xCB, 0x40-0x7F) op-codes.
+  private void decodeCBQ1(int opCode) {
+    switch (opCode) {
+      case 0x40 /*BIT 0,B*/ -> bit_m_n(0, state.b()); // ZUM(224-225) HTP(217-218)
+      case 0x41 /*BIT 0,C*/ -> bit_m_n(0, state.c()); // ZUM(224-225) HTP(217-218)
+      case 0x42 /*BIT 0,D*/ -> bit_m_n(0, state.d()); // ZUM(224-225) HTP(217-218)
+      case 0x43 /*BIT 0,E*/ -> bit_m_n(0, state.e()); // ZUM(224-225) HTP(217-218)
+      case 0x44 /*BIT 0,H*/ -> bit_m_n(0, state.h()); // ZUM(224-225) HTP(217-218)
+      case 0x45 /*BIT 0,L*/ -> bit_m_n(0, state.l()); // ZUM(224-225) HTP(217-218)
+      case 0x46 /*BIT 0,(HL)*/ ->
+          bit_m_n(0, bus.cpuReadMemByte(state.hl())); // ZUM(226-227) HTP(211-212)
+      case 0x47 /*BIT 0,A*/ -> bit_m_n(0, state.a()); // ZUM(224-225) HTP(217-218)
+      case 0x48 /*BIT 1,B*/ -> bit_m_n(1, state.b()); // ZUM(224-225) HTP(217-218)
+      case 0x49 /*BIT 1,C*/ -> bit_m_n(1, state.c()); // ZUM(224-225) HTP(217-218)
+      case 0x4A /*BIT 1,D*/ -> bit_m_n(1, state.d()); // ZUM(224-225) HTP(217-218)
+      case 0x4B /*BIT 1,E*/ -> bit_m_n(1, state.e()); // ZUM(224-225) HTP(217-218)
+      case 0x4C /*BIT 1,H*/ -> bit_m_n(1, state.h()); // ZUM(224-225) HTP(217-218)
+      case 0x4D /*BIT 1,L*/ -> bit_m_n(1, state.l()); // ZUM(224-225) HTP(217-218)
+      case 0x4E /*BIT 1,(HL)*/ ->
+          bit_m_n(1, bus.cpuReadMemByte(state.hl())); // ZUM(226-227) HTP(211-212)
+      case 0x4F /*BIT 1,A*/ -> bit_m_n(1, state.a()); // ZUM(224-225) HTP(217-218)
+      case 0x50 /*BIT 2,B*/ -> bit_m_n(2, state.b()); // ZUM(224-225) HTP(217-218)
+      case 0x51 /*BIT 2,C*/ -> bit_m_n(2, state.c()); // ZUM(224-225) HTP(217-218)
+      case 0x52 /*BIT 2,D*/ -> bit_m_n(2, state.d()); // ZUM(224-225) HTP(217-218)
+      case 0x53 /*BIT 2,E*/ -> bit_m_n(2, state.e()); // ZUM(224-225) HTP(217-218)
+      case 0x54 /*BIT 2,H*/ -> bit_m_n(2, state.h()); // ZUM(224-225) HTP(217-218)
+      case 0x55 /*BIT 2,L*/ -> bit_m_n(2, state.l()); // ZUM(224-225) HTP(217-218)
+      case 0x56 /*BIT 2,(HL)*/ ->
+          bit_m_n(2, bus.cpuReadMemByte(state.hl())); // ZUM(226-227) HTP(211-212)
+      case 0x57 /*BIT 2,A*/ -> bit_m_n(2, state.a()); // ZUM(224-225) HTP(217-218)
+      case 0x58 /*BIT 3,B*/ -> bit_m_n(3, state.b()); // ZUM(224-225) HTP(217-218)
+      case 0x59 /*BIT 3,C*/ -> bit_m_n(3, state.c()); // ZUM(224-225) HTP(217-218)
+      case 0x5A /*BIT 3,D*/ -> bit_m_n(3, state.d()); // ZUM(224-225) HTP(217-218)
+      case 0x5B /*BIT 3,E*/ -> bit_m_n(3, state.e()); // ZUM(224-225) HTP(217-218)
+      case 0x5C /*BIT 3,H*/ -> bit_m_n(3, state.h()); // ZUM(224-225) HTP(217-218)
+      case 0x5D /*BIT 3,L*/ -> bit_m_n(3, state.l()); // ZUM(224-225) HTP(217-218)
+      case 0x5E /*BIT 3,(HL)*/ ->
+          bit_m_n(3, bus.cpuReadMemByte(state.hl())); // ZUM(226-227) HTP(211-212)
+      case 0x5F /*BIT 3,A*/ -> bit_m_n(3, state.a()); // ZUM(224-225) HTP(217-218)
+      case 0x60 /*BIT 4,B*/ -> bit_m_n(4, state.b()); // ZUM(224-225) HTP(217-218)
+      case 0x61 /*BIT 4,C*/ -> bit_m_n(4, state.c()); // ZUM(224-225) HTP(217-218)
+      case 0x62 /*BIT 4,D*/ -> bit_m_n(4, state.d()); // ZUM(224-225) HTP(217-218)
+      case 0x63 /*BIT 4,E*/ -> bit_m_n(4, state.e()); // ZUM(224-225) HTP(217-218)
+      case 0x64 /*BIT 4,H*/ -> bit_m_n(4, state.h()); // ZUM(224-225) HTP(217-218)
+      case 0x65 /*BIT 4,L*/ -> bit_m_n(4, state.l()); // ZUM(224-225) HTP(217-218)
+      case 0x66 /*BIT 4,(HL)*/ ->
+          bit_m_n(4, bus.cpuReadMemByte(state.hl())); // ZUM(226-227) HTP(211-212)
+      case 0x67 /*BIT 4,A*/ -> bit_m_n(4, state.a()); // ZUM(224-225) HTP(217-218)
+      case 0x68 /*BIT 5,B*/ -> bit_m_n(5, state.b()); // ZUM(224-225) HTP(217-218)
+      case 0x69 /*BIT 5,C*/ -> bit_m_n(5, state.c()); // ZUM(224-225) HTP(217-218)
+      case 0x6A /*BIT 5,D*/ -> bit_m_n(5, state.d()); // ZUM(224-225) HTP(217-218)
+      case 0x6B /*BIT 5,E*/ -> bit_m_n(5, state.e()); // ZUM(224-225) HTP(217-218)
+      case 0x6C /*BIT 5,H*/ -> bit_m_n(5, state.h()); // ZUM(224-225) HTP(217-218)
+      case 0x6D /*BIT 5,L*/ -> bit_m_n(5, state.l()); // ZUM(224-225) HTP(217-218)
+      case 0x6E /*BIT 5,(HL)*/ ->
+          bit_m_n(5, bus.cpuReadMemByte(state.hl())); // ZUM(226-227) HTP(211-212)
+      case 0x6F /*BIT 5,A*/ -> bit_m_n(5, state.a()); // ZUM(224-225) HTP(217-218)
+      case 0x70 /*BIT 6,B*/ -> bit_m_n(6, state.b()); // ZUM(224-225) HTP(217-218)
+      case 0x71 /*BIT 6,C*/ -> bit_m_n(6, state.c()); // ZUM(224-225) HTP(217-218)
+      case 0x72 /*BIT 6,D*/ -> bit_m_n(6, state.d()); // ZUM(224-225) HTP(217-218)
+      case 0x73 /*BIT 6,E*/ -> bit_m_n(6, state.e()); // ZUM(224-225) HTP(217-218)
+      case 0x74 /*BIT 6,H*/ -> bit_m_n(6, state.h()); // ZUM(224-225) HTP(217-218)
+      case 0x75 /*BIT 6,L*/ -> bit_m_n(6, state.l()); // ZUM(224-225) HTP(217-218)
+      case 0x76 /*BIT 6,(HL)*/ ->
+          bit_m_n(6, bus.cpuReadMemByte(state.hl())); // ZUM(226-227) HTP(211-212)
+      case 0x77 /*BIT 6,A*/ -> bit_m_n(6, state.a()); // ZUM(224-225) HTP(217-218)
+      case 0x78 /*BIT 7,B*/ -> bit_m_n(7, state.b()); // ZUM(224-225) HTP(217-218)
+      case 0x79 /*BIT 7,C*/ -> bit_m_n(7, state.c()); // ZUM(224-225) HTP(217-218)
+      case 0x7A /*BIT 7,D*/ -> bit_m_n(7, state.d()); // ZUM(224-225) HTP(217-218)
+      case 0x7B /*BIT 7,E*/ -> bit_m_n(7, state.e()); // ZUM(224-225) HTP(217-218)
+      case 0x7C /*BIT 7,H*/ -> bit_m_n(7, state.h()); // ZUM(224-225) HTP(217-218)
+      case 0x7D /*BIT 7,L*/ -> bit_m_n(7, state.l()); // ZUM(224-225) HTP(217-218)
+      case 0x7E /*BIT 7,(HL)*/ ->
+          bit_m_n(7, bus.cpuReadMemByte(state.hl())); // ZUM(226-227) HTP(211-212)
+      case 0x7F /*BIT 7,A*/ -> bit_m_n(7, state.a()); // ZUM(224-225) HTP(217-218)
+    }
+  }
+
+  // Decode (0xCB, 0x80-0xBF) op-codes.
+  private void decodeCBQ2(int opCode) {
+    switch (opCode) {
+      case 0x80 /*RES 0,B*/ -> state.b(res_m_n(0, state.b())); // ZUM(236-237) HTP(385-387)
+      case 0x81 /*RES 0,C*/ -> state.c(res_m_n(0, state.c())); // ZUM(236-237) HTP(385-387)
+      case 0x82 /*RES 0,D*/ -> state.d(res_m_n(0, state.d())); // ZUM(236-237) HTP(385-387)
+      case 0x83 /*RES 0,E*/ -> state.e(res_m_n(0, state.e())); // ZUM(236-237) HTP(385-387)
+      case 0x84 /*RES 0,H*/ -> state.h(res_m_n(0, state.h())); // ZUM(236-237) HTP(385-387)
+      case 0x85 /*RES 0,L*/ -> state.l(res_m_n(0, state.l())); // ZUM(236-237) HTP(385-387)
+      case 0x86 /*RES 0,(HL)*/ -> { // ZUM(236-237) HTP(385-387)
+        int address = state.hl();
+        bus.cpuWriteMemByte(address, res_m_n(0, bus.cpuReadMemByte(address)));
+      }
+      case 0x87 /*RES 0,A*/ -> state.a(res_m_n(0, state.a())); // ZUM(236-237) HTP(385-387)
+      case 0x88 /*RES 1,B*/ -> state.b(res_m_n(1, state.b())); // ZUM(236-237) HTP(385-387)
+      case 0x89 /*RES 1,C*/ -> state.c(res_m_n(1, state.c())); // ZUM(236-237) HTP(385-387)
+      case 0x8A /*RES 1,D*/ -> state.d(res_m_n(1, state.d())); // ZUM(236-237) HTP(385-387)
+      case 0x8B /*RES 1,E*/ -> state.e(res_m_n(1, state.e())); // ZUM(236-237) HTP(385-387)
+      case 0x8C /*RES 1,H*/ -> state.h(res_m_n(1, state.h())); // ZUM(236-237) HTP(385-387)
+      case 0x8D /*RES 1,L*/ -> state.l(res_m_n(1, state.l())); // ZUM(236-237) HTP(385-387)
+      case 0x8E /*RES 1,(HL)*/ -> { // ZUM(236-237) HTP(385-387)
+        int address = state.hl();
+        bus.cpuWriteMemByte(address, res_m_n(1, bus.cpuReadMemByte(address)));
+      }
+      case 0x8F /*RES 1,A*/ -> state.a(res_m_n(1, state.a())); // ZUM(236-237) HTP(385-387)
+      case 0x90 /*RES 2,B*/ -> state.b(res_m_n(2, state.b())); // ZUM(236-237) HTP(385-387)
+      case 0x91 /*RES 2,C*/ -> state.c(res_m_n(2, state.c())); // ZUM(236-237) HTP(385-387)
+      case 0x92 /*RES 2,D*/ -> state.d(res_m_n(2, state.d())); // ZUM(236-237) HTP(385-387)
+      case 0x93 /*RES 2,E*/ -> state.e(res_m_n(2, state.e())); // ZUM(236-237) HTP(385-387)
+      case 0x94 /*RES 2,H*/ -> state.h(res_m_n(2, state.h())); // ZUM(236-237) HTP(385-387)
+      case 0x95 /*RES 2,L*/ -> state.l(res_m_n(2, state.l())); // ZUM(236-237) HTP(385-387)
+      case 0x96 /*RES 2,(HL)*/ -> { // ZUM(236-237) HTP(385-387)
+        int address = state.hl();
+        bus.cpuWriteMemByte(address, res_m_n(2, bus.cpuReadMemByte(address)));
+      }
+      case 0x97 /*RES 2,A*/ -> state.a(res_m_n(2, state.a())); // ZUM(236-237) HTP(385-387)
+      case 0x98 /*RES 3,B*/ -> state.b(res_m_n(3, state.b())); // ZUM(236-237) HTP(385-387)
+      case 0x99 /*RES 3,C*/ -> state.c(res_m_n(3, state.c())); // ZUM(236-237) HTP(385-387)
+      case 0x9A /*RES 3,D*/ -> state.d(res_m_n(3, state.d())); // ZUM(236-237) HTP(385-387)
+      case 0x9B /*RES 3,E*/ -> state.e(res_m_n(3, state.e())); // ZUM(236-237) HTP(385-387)
+      case 0x9C /*RES 3,H*/ -> state.h(res_m_n(3, state.h())); // ZUM(236-237) HTP(385-387)
+      case 0x9D /*RES 3,L*/ -> state.l(res_m_n(3, state.l())); // ZUM(236-237) HTP(385-387)
+      case 0x9E /*RES 3,(HL)*/ -> { // ZUM(236-237) HTP(385-387)
+        int address = state.hl();
+        bus.cpuWriteMemByte(address, res_m_n(3, bus.cpuReadMemByte(address)));
+      }
+      case 0x9F /*RES 3,A*/ -> state.a(res_m_n(3, state.a())); // ZUM(236-237) HTP(385-387)
+      case 0xA0 /*RES 4,B*/ -> state.b(res_m_n(4, state.b())); // ZUM(236-237) HTP(385-387)
+      case 0xA1 /*RES 4,C*/ -> state.c(res_m_n(4, state.c())); // ZUM(236-237) HTP(385-387)
+      case 0xA2 /*RES 4,D*/ -> state.d(res_m_n(4, state.d())); // ZUM(236-237) HTP(385-387)
+      case 0xA3 /*RES 4,E*/ -> state.e(res_m_n(4, state.e())); // ZUM(236-237) HTP(385-387)
+      case 0xA4 /*RES 4,H*/ -> state.h(res_m_n(4, state.h())); // ZUM(236-237) HTP(385-387)
+      case 0xA5 /*RES 4,L*/ -> state.l(res_m_n(4, state.l())); // ZUM(236-237) HTP(385-387)
+      case 0xA6 /*RES 4,(HL)*/ -> { // ZUM(236-237) HTP(385-387)
+        int address = state.hl();
+        bus.cpuWriteMemByte(address, res_m_n(4, bus.cpuReadMemByte(address)));
+      }
+      case 0xA7 /*RES 4,A*/ -> state.a(res_m_n(4, state.a())); // ZUM(236-237) HTP(385-387)
+      case 0xA8 /*RES 5,B*/ -> state.b(res_m_n(5, state.b())); // ZUM(236-237) HTP(385-387)
+      case 0xA9 /*RES 5,C*/ -> state.c(res_m_n(5, state.c())); // ZUM(236-237) HTP(385-387)
+      case 0xAA /*RES 5,D*/ -> state.d(res_m_n(5, state.d())); // ZUM(236-237) HTP(385-387)
+      case 0xAB /*RES 5,E*/ -> state.e(res_m_n(5, state.e())); // ZUM(236-237) HTP(385-387)
+      case 0xAC /*RES 5,H*/ -> state.h(res_m_n(5, state.h())); // ZUM(236-237) HTP(385-387)
+      case 0xAD /*RES 5,L*/ -> state.l(res_m_n(5, state.l())); // ZUM(236-237) HTP(385-387)
+      case 0xAE /*RES 5,(HL)*/ -> { // ZUM(236-237) HTP(385-387)
+        int address = state.hl();
+        bus.cpuWriteMemByte(address, res_m_n(5, bus.cpuReadMemByte(address)));
+      }
+      case 0xAF /*RES 5,A*/ -> state.a(res_m_n(5, state.a())); // ZUM(236-237) HTP(385-387)
+      case 0xB0 /*RES 6,B*/ -> state.b(res_m_n(6, state.b())); // ZUM(236-237) HTP(385-387)
+      case 0xB1 /*RES 6,C*/ -> state.c(res_m_n(6, state.c())); // ZUM(236-237) HTP(385-387)
+      case 0xB2 /*RES 6,D*/ -> state.d(res_m_n(6, state.d())); // ZUM(236-237) HTP(385-387)
+      case 0xB3 /*RES 6,E*/ -> state.e(res_m_n(6, state.e())); // ZUM(236-237) HTP(385-387)
+      case 0xB4 /*RES 6,H*/ -> state.h(res_m_n(6, state.h())); // ZUM(236-237) HTP(385-387)
+      case 0xB5 /*RES 6,L*/ -> state.l(res_m_n(6, state.l())); // ZUM(236-237) HTP(385-387)
+      case 0xB6 /*RES 6,(HL)*/ -> { // ZUM(236-237) HTP(385-387)
+        int address = state.hl();
+        bus.cpuWriteMemByte(address, res_m_n(6, bus.cpuReadMemByte(address)));
+      }
+      case 0xB7 /*RES 6,A*/ -> state.a(res_m_n(6, state.a())); // ZUM(236-237) HTP(385-387)
+      case 0xB8 /*RES 7,B*/ -> state.b(res_m_n(7, state.b())); // ZUM(236-237) HTP(385-387)
+      case 0xB9 /*RES 7,C*/ -> state.c(res_m_n(7, state.c())); // ZUM(236-237) HTP(385-387)
+      case 0xBA /*RES 7,D*/ -> state.d(res_m_n(7, state.d())); // ZUM(236-237) HTP(385-387)
+      case 0xBB /*RES 7,E*/ -> state.e(res_m_n(7, state.e())); // ZUM(236-237) HTP(385-387)
+      case 0xBC /*RES 7,H*/ -> state.h(res_m_n(7, state.h())); // ZUM(236-237) HTP(385-387)
+      case 0xBD /*RES 7,L*/ -> state.l(res_m_n(7, state.l())); // ZUM(236-237) HTP(385-387)
+      case 0xBE /*RES 7,(HL)*/ -> { // ZUM(236-237) HTP(385-387)
+        int address = state.hl();
+        bus.cpuWriteMemByte(address, res_m_n(7, bus.cpuReadMemByte(address)));
+      }
+      case 0xBF /*RES 7,A*/ -> state.a(res_m_n(7, state.a())); // ZUM(236-237) HTP(385-387)
+    }
+  }
+
+  // Decode (0xCB, 0xC0-0xFF) op-codes.
+  private void decodeCBQ3(int opCode) {
+    switch (opCode) {
+      case 0xC0 /*SET 0,B*/ -> state.b(set_m_n(0, state.b())); // ZUM(232) HTP(425-427)
+      case 0xC1 /*SET 0,C*/ -> state.c(set_m_n(0, state.c())); // ZUM(232) HTP(425-427)
+      case 0xC2 /*SET 0,D*/ -> state.d(set_m_n(0, state.d())); // ZUM(232) HTP(425-427)
+      case 0xC3 /*SET 0,E*/ -> state.e(set_m_n(0, state.e())); // ZUM(232) HTP(425-427)
+      case 0xC4 /*SET 0,H*/ -> state.h(set_m_n(0, state.h())); // ZUM(232) HTP(425-427)
+      case 0xC5 /*SET 0,L*/ -> state.l(set_m_n(0, state.l())); // ZUM(232) HTP(425-427)
+      case 0xC6 /*SET 0,(HL)*/ -> { // ZUM(233) HTP(425-427)
+        int address = state.hl();
+        bus.cpuWriteMemByte(address, set_m_n(0, bus.cpuReadMemByte(address)));
+      }
+      case 0xC7 /*SET 0,A*/ -> state.a(set_m_n(0, state.a())); // ZUM(232) HTP(425-427)
+      case 0xC8 /*SET 1,B*/ -> state.b(set_m_n(1, state.b())); // ZUM(232) HTP(425-427)
+      case 0xC9 /*SET 1,C*/ -> state.c(set_m_n(1, state.c())); // ZUM(232) HTP(425-427)
+      case 0xCA /*SET 1,D*/ -> state.d(set_m_n(1, state.d())); // ZUM(232) HTP(425-427)
+      case 0xCB /*SET 1,E*/ -> state.e(set_m_n(1, state.e())); // ZUM(232) HTP(425-427)
+      case 0xCC /*SET 1,H*/ -> state.h(set_m_n(1, state.h())); // ZUM(232) HTP(425-427)
+      case 0xCD /*SET 1,L*/ -> state.l(set_m_n(1, state.l())); // ZUM(232) HTP(425-427)
+      case 0xCE /*SET 1,(HL)*/ -> { // ZUM(233) HTP(425-427)
+        int address = state.hl();
+        bus.cpuWriteMemByte(address, set_m_n(1, bus.cpuReadMemByte(address)));
+      }
+      case 0xCF /*SET 1,A*/ -> state.a(set_m_n(1, state.a())); // ZUM(232) HTP(425-427)
+      case 0xD0 /*SET 2,B*/ -> state.b(set_m_n(2, state.b())); // ZUM(232) HTP(425-427)
+      case 0xD1 /*SET 2,C*/ -> state.c(set_m_n(2, state.c())); // ZUM(232) HTP(425-427)
+      case 0xD2 /*SET 2,D*/ -> state.d(set_m_n(2, state.d())); // ZUM(232) HTP(425-427)
+      case 0xD3 /*SET 2,E*/ -> state.e(set_m_n(2, state.e())); // ZUM(232) HTP(425-427)
+      case 0xD4 /*SET 2,H*/ -> state.h(set_m_n(2, state.h())); // ZUM(232) HTP(425-427)
+      case 0xD5 /*SET 2,L*/ -> state.l(set_m_n(2, state.l())); // ZUM(232) HTP(425-427)
+      case 0xD6 /*SET 2,(HL)*/ -> { // ZUM(233) HTP(425-427)
+        int address = state.hl();
+        bus.cpuWriteMemByte(address, set_m_n(2, bus.cpuReadMemByte(address)));
+      }
+      case 0xD7 /*SET 2,A*/ -> state.a(set_m_n(2, state.a())); // ZUM(232) HTP(425-427)
+      case 0xD8 /*SET 3,B*/ -> state.b(set_m_n(3, state.b())); // ZUM(232) HTP(425-427)
+      case 0xD9 /*SET 3,C*/ -> state.c(set_m_n(3, state.c())); // ZUM(232) HTP(425-427)
+      case 0xDA /*SET 3,D*/ -> state.d(set_m_n(3, state.d())); // ZUM(232) HTP(425-427)
+      case 0xDB /*SET 3,E*/ -> state.e(set_m_n(3, state.e())); // ZUM(232) HTP(425-427)
+      case 0xDC /*SET 3,H*/ -> state.h(set_m_n(3, state.h())); // ZUM(232) HTP(425-427)
+      case 0xDD /*SET 3,L*/ -> state.l(set_m_n(3, state.l())); // ZUM(232) HTP(425-427)
+      case 0xDE /*SET 3,(HL)*/ -> { // ZUM(233) HTP(425-427)
+        int address = state.hl();
+        bus.cpuWriteMemByte(address, set_m_n(3, bus.cpuReadMemByte(address)));
+      }
+      case 0xDF /*SET 3,A*/ -> state.a(set_m_n(3, state.a())); // ZUM(232) HTP(425-427)
+      case 0xE0 /*SET 4,B*/ -> state.b(set_m_n(4, state.b())); // ZUM(232) HTP(425-427)
+      case 0xE1 /*SET 4,C*/ -> state.c(set_m_n(4, state.c())); // ZUM(232) HTP(425-427)
+      case 0xE2 /*SET 4,D*/ -> state.d(set_m_n(4, state.d())); // ZUM(232) HTP(425-427)
+      case 0xE3 /*SET 4,E*/ -> state.e(set_m_n(4, state.e())); // ZUM(232) HTP(425-427)
+      case 0xE4 /*SET 4,H*/ -> state.h(set_m_n(4, state.h())); // ZUM(232) HTP(425-427)
+      case 0xE5 /*SET 4,L*/ -> state.l(set_m_n(4, state.l())); // ZUM(232) HTP(425-427)
+      case 0xE6 /*SET 4,(HL)*/ -> { // ZUM(233) HTP(425-427)
+        int address = state.hl();
+        bus.cpuWriteMemByte(address, set_m_n(4, bus.cpuReadMemByte(address)));
+      }
+      case 0xE7 /*SET 4,A*/ -> state.a(set_m_n(4, state.a())); // ZUM(232) HTP(425-427)
+      case 0xE8 /*SET 5,B*/ -> state.b(set_m_n(5, state.b())); // ZUM(232) HTP(425-427)
+      case 0xE9 /*SET 5,C*/ -> state.c(set_m_n(5, state.c())); // ZUM(232) HTP(425-427)
+      case 0xEA /*SET 5,D*/ -> state.d(set_m_n(5, state.d())); // ZUM(232) HTP(425-427)
+      case 0xEB /*SET 5,E*/ -> state.e(set_m_n(5, state.e())); // ZUM(232) HTP(425-427)
+      case 0xEC /*SET 5,H*/ -> state.h(set_m_n(5, state.h())); // ZUM(232) HTP(425-427)
+      case 0xED /*SET 5,L*/ -> state.l(set_m_n(5, state.l())); // ZUM(232) HTP(425-427)
+      case 0xEE /*SET 5,(HL)*/ -> { // ZUM(233) HTP(425-427)
+        int address = state.hl();
+        bus.cpuWriteMemByte(address, set_m_n(5, bus.cpuReadMemByte(address)));
+      }
+      case 0xEF /*SET 5,A*/ -> state.a(set_m_n(5, state.a())); // ZUM(232) HTP(425-427)
+      case 0xF0 /*SET 6,B*/ -> state.b(set_m_n(6, state.b())); // ZUM(232) HTP(425-427)
+      case 0xF1 /*SET 6,C*/ -> state.c(set_m_n(6, state.c())); // ZUM(232) HTP(425-427)
+      case 0xF2 /*SET 6,D*/ -> state.d(set_m_n(6, state.d())); // ZUM(232) HTP(425-427)
+      case 0xF3 /*SET 6,E*/ -> state.e(set_m_n(6, state.e())); // ZUM(232) HTP(425-427)
+      case 0xF4 /*SET 6,H*/ -> state.h(set_m_n(6, state.h())); // ZUM(232) HTP(425-427)
+      case 0xF5 /*SET 6,L*/ -> state.l(set_m_n(6, state.l())); // ZUM(232) HTP(425-427)
+      case 0xF6 /*SET 6,(HL)*/ -> { // ZUM(233) HTP(425-427)
+        int address = state.hl();
+        bus.cpuWriteMemByte(address, set_m_n(6, bus.cpuReadMemByte(address)));
+      }
+      case 0xF7 /*SET 6,A*/ -> state.a(set_m_n(6, state.a())); // ZUM(232) HTP(425-427)
+      case 0xF8 /*SET 7,B*/ -> state.b(set_m_n(7, state.b())); // ZUM(232) HTP(425-427)
+      case 0xF9 /*SET 7,C*/ -> state.c(set_m_n(7, state.c())); // ZUM(232) HTP(425-427)
+      case 0xFA /*SET 7,D*/ -> state.d(set_m_n(7, state.d())); // ZUM(232) HTP(425-427)
+      case 0xFB /*SET 7,E*/ -> state.e(set_m_n(7, state.e())); // ZUM(232) HTP(425-427)
+      case 0xFC /*SET 7,H*/ -> state.h(set_m_n(7, state.h())); // ZUM(232) HTP(425-427)
+      case 0xFD /*SET 7,L*/ -> state.l(set_m_n(7, state.l())); // ZUM(232) HTP(425-427)
+      case 0xFE /*SET 7,(HL)*/ -> { // ZUM(233) HTP(425-427)
+        int address = state.hl();
+        bus.cpuWriteMemByte(address, set_m_n(7, bus.cpuReadMemByte(address)));
+      }
+      case 0xFF /*SET 7,A*/ -> state.a(set_m_n(7, state.a())); // ZUM(232) HTP(425-427)
     }
   }
 
@@ -265,17 +1031,7 @@ public final class Core {
 
   // Decode (0xED, 0x00-0xFF) op-codes: miscellaneous extended instructions.
   private void decodeED(int opCode) {
-    int qtr = opCode & 0xC0;
-    switch (qtr) {
-      case 0x00 /*[0xED],[0x00-0x3F]*/ -> nop_(0xED, opCode);
-      case 0x40 /*[0xED],[0x40-0x7F]*/ -> decodeEDQ1(opCode);
-      case 0x80 /*[0xED],[0x80-0xBF]*/ -> decodeEDQ2(opCode);
-      case 0xC0 /*[0xED],[0xC0-0xFF]*/ -> nop_(0xED, opCode);
-    }
-  }
-
-  // Decode (0xED, 0x40-0x7F) op-codes.
-  private void decodeEDQ1(int opCode) {
+    state.cyclesAdd(TStates.ED[opCode]);
     switch (opCode) {
       case 0x40 /*IN B,(C)*/ ->
           state.b(bus.cpuReadPortByte(state.bc())); // ZUM(270-271) HTP(261-262)
@@ -283,8 +1039,7 @@ public final class Core {
           bus.cpuWritePortByte(state.bc(), state.b()); // ZUM(280-281) HTP(366-367)
       case 0x42 /*SBC HL,BC*/ -> sbc_hl_nn(state.bc()); // ZUM(181) HTP(422-423)
       case 0x43 /*LD (nn),BC*/ ->
-          bus.cpuWriteMemWord(
-              bus.cpuReadMemWord(state.pcInc2()), state.bc()); // ZUM(110) HTP(321-322)
+          bus.cpuWriteMemWord(fetchWord(), state.bc()); // ZUM(110) HTP(321-322)
       case 0x44 /*NEG*/ -> neg(); // ZUM(169) HTP(358)
       case 0x45 /*RETN*/ -> retn(); // ZUM(265-266) HTP(394-395)
       case 0x46 /*IM 0*/ -> state.im(0); // ZUM(176) HTP(258)
@@ -295,7 +1050,7 @@ public final class Core {
           bus.cpuWritePortByte(state.bc(), state.c()); // ZUM(280-281) HTP(366-367)
       case 0x4A /*ADC HL,BC*/ -> adc_hl_nn(state.bc()); // ZUM(180) HTP(192-193)
       case 0x4B /*LD BC,(nn)*/ ->
-          state.bc(bus.cpuReadMemWord(bus.cpuReadMemWord(state.pcInc2()))); // ZUM(106) HTP(291-292)
+          state.bc(bus.cpuReadMemWord(fetchWord())); // ZUM(106) HTP(291-292)
       case 0x4C /*NEG'*/ -> neg(); // undocumented
       case 0x4D /*RETI*/ -> reti(); // ZUM(263-264) HTP(392-393)
       case 0x4E /*IM' 0*/ -> state.im(0); // undocumented
@@ -306,8 +1061,7 @@ public final class Core {
           bus.cpuWritePortByte(state.bc(), state.d()); // ZUM(280-281) HTP(366-367)
       case 0x52 /*SBC HL,DE*/ -> sbc_hl_nn(state.de()); // ZUM(181) HTP(422-423)
       case 0x53 /*LD (nn),DE*/ ->
-          bus.cpuWriteMemWord(
-              bus.cpuReadMemWord(state.pcInc2()), state.de()); // ZUM(110) HTP(321-322)
+          bus.cpuWriteMemWord(fetchWord(), state.de()); // ZUM(110) HTP(321-322)
       case 0x54 /*NEG'*/ -> neg(); // undocumented
       case 0x55 /*RETN'*/ -> retn(); // undocumented
       case 0x56 /*IM 1*/ -> state.im(1); // ZUM(177) HTP(259)
@@ -318,7 +1072,7 @@ public final class Core {
           bus.cpuWritePortByte(state.bc(), state.e()); // ZUM(280-281) HTP(366-367)
       case 0x5A /*ADC HL,DE*/ -> adc_hl_nn(state.de()); // ZUM(180) HTP(192-193)
       case 0x5B /*LD DE,(nn)*/ ->
-          state.de(bus.cpuReadMemWord(bus.cpuReadMemWord(state.pcInc2()))); // ZUM(106) HTP(291-292)
+          state.de(bus.cpuReadMemWord(fetchWord())); // ZUM(106) HTP(291-292)
       case 0x5C /*NEG'*/ -> neg(); // undocumented
       case 0x5D /*RETN'*/ -> retn(); // undocumented
       case 0x5E /*IM 2*/ -> state.im(2); // ZUM(178) HTP(260)
@@ -329,8 +1083,7 @@ public final class Core {
           bus.cpuWritePortByte(state.bc(), state.h()); // ZUM(280-281) HTP(366-367)
       case 0x62 /*SBC HL,HL*/ -> sbc_hl_nn(state.hl()); // ZUM(181) HTP(422-423)
       case 0x63 /*LD' (nn),HL*/ ->
-          bus.cpuWriteMemWord(
-              bus.cpuReadMemWord(state.pcInc2()), state.hl()); // ZUM(110) HTP(321-322)
+          bus.cpuWriteMemWord(fetchWord(), state.hl()); // ZUM(110) HTP(321-322)
       case 0x64 /*NEG'*/ -> neg(); // undocumented
       case 0x65 /*RETN'*/ -> retn(); // undocumented
       case 0x66 /*IM' 1*/ -> state.im(1); // undocumented
@@ -340,8 +1093,7 @@ public final class Core {
       case 0x69 /*OUT (C),L*/ ->
           bus.cpuWritePortByte(state.bc(), state.l()); // ZUM(280-281) HTP(366-367)
       case 0x6A /*ADC HL,HL*/ -> adc_hl_nn(state.hl()); // ZUM(180) HTP(192-193)
-      case 0x6B /*LD' HL,(nn)*/ ->
-          state.hl(bus.cpuReadMemWord(state.pcInc2())); // ZUM(106) HTP(291-292)
+      case 0x6B /*LD' HL,(nn)*/ -> state.hl(fetchWord()); // ZUM(106) HTP(291-292)
       case 0x6C /*NEG'*/ -> neg(); // undocumented
       case 0x6D /*RETN'*/ -> retn(); // undocumented
       case 0x6E /*IM' 1*/ -> state.im(1); // undocumented
@@ -350,8 +1102,7 @@ public final class Core {
       case 0x71 /*OUT' (C)-*/ -> bus.cpuWritePortByte(state.bc(), 0); // undocumented
       case 0x72 /*SBC HL,SP*/ -> sbc_hl_nn(state.sp()); // ZUM(181) HTP(422-423)
       case 0x73 /*LD (nn),SP*/ ->
-          bus.cpuWriteMemWord(
-              bus.cpuReadMemWord(state.pcInc2()), state.sp()); // ZUM(110) HTP(321-322)
+          bus.cpuWriteMemWord(fetchWord(), state.sp()); // ZUM(110) HTP(321-322)
       case 0x74 /*NEG'*/ -> neg(); // undocumented
       case 0x75 /*RETN'*/ -> retn(); // undocumented
       case 0x76 /*IM' 1*/ -> state.im(1); // undocumented
@@ -361,17 +1112,10 @@ public final class Core {
           bus.cpuWritePortByte(state.bc(), state.a()); // ZUM(280-281) HTP(366-367)
       case 0x7A /*ADC HL,SP*/ -> adc_hl_nn(state.sp()); // ZUM(180) HTP(192-193)
       case 0x7B /*LD SP,(nn)*/ ->
-          state.sp(bus.cpuReadMemWord(bus.cpuReadMemWord(state.pcInc2()))); // ZUM(106) HTP(291-292)
+          state.sp(bus.cpuReadMemWord(fetchWord())); // ZUM(106) HTP(291-292)
       case 0x7C /*NEG'*/ -> neg(); // undocumented
       case 0x7D /*RETN'*/ -> retn(); // undocumented
       case 0x7E /*IM' 2*/ -> state.im(2); // undocumented
-      default -> nop_(0xED, opCode); // e.g. [0xED],[0x77] and [0xED],[0x7F]
-    }
-  }
-
-  // Decode (0xED, 0x80-0xBF) op-codes.
-  private void decodeEDQ2(int opCode) {
-    switch (opCode) {
       case 0xA0 /*LDI*/ -> ldi(); // ZUM(128) HTP(352-353)
       case 0xA1 /*CPI*/ -> cpi(); // ZUM(134) HTP(231-232)
       case 0xA2 /*INI*/ -> ini(); // ZUM(272) HTP(278-279)
@@ -388,7 +1132,7 @@ public final class Core {
       case 0xB9 /*CPDR*/ -> cpdr(); // ZUM(138-139) HTP(229-230)
       case 0xBA /*INDR*/ -> indr(); // ZUM(277-278) HTP(276-277)
       case 0xBB /*OTDR*/ -> otdr(); // ZUM(286-287) HTP(362-363)
-      default -> nop_(0xED, opCode); // e.g. 0xED,0x80-0x9F
+      default -> nop_(0xED, opCode); // e.g. 0xED,0x00-0x3F, 0xED,0x77, 0xED,0x80-0x9F
     }
   }
 
@@ -398,157 +1142,245 @@ public final class Core {
   // ------------------------------------------------------------------------------------------------------
 
   // Decode (0xDD|0xFD, 0x00-0xFF) op-codes: IX or IY indexed instructions.
-  private void decodeXY(int prefix1, int opCode, IntSupplier rrGet, IntConsumer rrSet) {
-    int qtr = opCode & 0xC0;
-    switch (qtr) {
-      case 0x00 /*[0xDD|0xFD].[0x00-0x3F]*/ -> decodeXYQ0(prefix1, opCode, rrGet, rrSet);
-      case 0x40 /*[0xDD|0xFD],[0x40-0x7F]*/ -> decodeXYQ1(prefix1, opCode, rrGet, rrSet);
-      case 0x80 /*[0xDD|0xFD],[0x80-0xBF]*/ -> decodeXYQ2(opCode, rrGet);
-      case 0xC0 /*[0xDD|0xFD],[0xC0-0xFF]*/ -> decodeXYQ3(prefix1, opCode, rrGet, rrSet);
+  private void decodeXY(int prefix1, int opCode) {
+    state.cyclesAdd(TStates.XY[opCode]);
+    switch (opCode & 0xC0) {
+      case 0x00 /*[0xDD|0xFD],[0x00-0x3F]*/ -> decodeXYQ0(prefix1, opCode);
+      case 0x40 /*[0xDD|0xFD],[0x40-0x7F]*/ -> decodeXYQ1(prefix1, opCode);
+      case 0x80 /*[0xDD|0xFD],[0x80-0xBF]*/ -> decodeXYQ2(prefix1, opCode);
+      case 0xC0 /*[0xDD|0xFD],[0xC0-0xFF]*/ -> decodeXYQ3(prefix1, opCode);
     }
   }
 
   // Decode (0xDD|0xFD, 0x00-0x3F) op-codes.
-  private void decodeXYQ0(int prefix1, int opCode, IntSupplier rrGet, IntConsumer rrSet) {
+  private void decodeXYQ0(int prefix1, int opCode) {
     switch (opCode) {
       case 0x04 /*INC B*/ -> state.b(inc_n(state.b())); // undocumented
       case 0x05 /*DEC B*/ -> state.b(dec_n(state.b())); // undocumented
-      case 0x06 /*LD B,n*/ -> state.b(bus.cpuReadMemByte(state.pcInc1())); // undocumented
-      case 0x09 /*ADD IXY,BC*/ -> add_rr_nn(rrGet, rrSet, state.bc()); // ZUM(182-18) HTP(205-208)
+      case 0x06 /*LD B,n*/ -> state.b(fetchByte()); // undocumented
+      case 0x09 /*ADD IXY,BC*/ -> add_ixy_nn(prefix1, state.bc()); // ZUM(182-18) HTP(205-208)
       case 0x0C /*INC C*/ -> state.c(inc_n(state.c())); // undocumented
       case 0x0D /*DEC C*/ -> state.c(dec_n(state.c())); // undocumented
-      case 0x0E /*LD C,n*/ -> state.c(bus.cpuReadMemByte(state.pcInc1())); // undocumented
+      case 0x0E /*LD C,n*/ -> state.c(fetchByte()); // undocumented
       case 0x14 /*INC D*/ -> state.d(inc_n(state.d())); // undocumented
       case 0x15 /*DEC D*/ -> state.d(dec_n(state.d())); // undocumented
-      case 0x16 /*LD D,n*/ -> state.d(bus.cpuReadMemByte(state.pcInc1())); // undocumented
-      case 0x19 /*ADD IXY,DE*/ -> add_rr_nn(rrGet, rrSet, state.de()); // ZUM(182-18) HTP(205-208)
+      case 0x16 /*LD D,n*/ -> state.d(fetchByte()); // undocumented
+      case 0x19 /*ADD IXY,DE*/ -> add_ixy_nn(prefix1, state.de()); // ZUM(182-18) HTP(205-208)
       case 0x1C /*INC E*/ -> state.e(inc_n(state.e())); // undocumented
       case 0x1D /*DEC E*/ -> state.e(dec_n(state.e())); // undocumented
-      case 0x1E /*LD E,n*/ -> state.e(bus.cpuReadMemByte(state.pcInc1())); // undocumented
-      case 0x21 /*LD IXY,nn*/ ->
-          rrSet.accept(bus.cpuReadMemWord(state.pcInc2())); // ZUM(103) HTP(336-337)
+      case 0x1E /*LD E,n*/ -> state.e(fetchByte()); // undocumented
+      case 0x21 /*LD IXY,nn*/ -> state.ixy(prefix1, fetchWord()); // ZUM(103) HTP(336-337)
       case 0x22 /*LD (nn),IXY*/ ->
-          bus.cpuWriteMemWord(
-              bus.cpuReadMemWord(state.pcInc2()), rrGet.getAsInt()); // ZUM(111-112) HTP(325-328)
-      case 0x23 /*INC IXY*/ -> rrSet.accept(inc_nn(rrGet.getAsInt())); // ZUM(185) HTP(272)
-      case 0x24 /*INC IXYH*/ -> high(rrGet, rrSet, inc_n(high(rrGet))); // undocumented
-      case 0x25 /*DEC IXYH*/ -> high(rrGet, rrSet, dec_n(high(rrGet))); // undocumented
-      case 0x26 /*LD IXYH,n*/ ->
-          high(rrGet, rrSet, bus.cpuReadMemByte(state.pcInc1())); // undocumented
+          bus.cpuWriteMemWord(fetchWord(), state.ixy(prefix1)); // ZUM(111-112) HTP(325-328)
+      case 0x23 /*INC IXY*/ -> state.ixy(prefix1, inc_nn(state.ixy(prefix1))); // ZUM(185) HTP(272)
+      case 0x24 /*INC IXYH*/ -> ixyh(prefix1, inc_n(ixyh(prefix1))); // undocumented
+      case 0x25 /*DEC IXYH*/ -> ixyh(prefix1, dec_n(ixyh(prefix1))); // undocumented
+      case 0x26 /*LD IXYH,n*/ -> ixyh(prefix1, fetchByte()); // undocumented
       case 0x29 /*ADD IXY,IXY*/ ->
-          add_rr_nn(rrGet, rrSet, rrGet.getAsInt()); // ZUM(182-18) HTP(205-208)
+          add_ixy_nn(prefix1, state.ixy(prefix1)); // ZUM(182-18) HTP(205-208)
       case 0x2A /*LD IXY,(nn)*/ ->
-          rrSet.accept(
-              bus.cpuReadMemWord(
-                  bus.cpuReadMemWord(state.pcInc2()))); // ZUM(107-108) HTP(338-339,342-343)
-      case 0x2B /*DEC IXY*/ -> rrSet.accept(dec_nn(rrGet.getAsInt())); // ZUM(186) HTP(242-243)
-      case 0x2C /*INC IXYL*/ -> low(rrGet, rrSet, inc_n(low(rrGet))); // undocumented
-      case 0x2D /*DEC IXYL*/ -> low(rrGet, rrSet, dec_n(low(rrGet))); // undocumented
-      case 0x2E /*LD IXYL,n*/ ->
-          low(rrGet, rrSet, bus.cpuReadMemByte(state.pcInc1())); // undocumented
+          state.ixy(prefix1, bus.cpuReadMemWord(fetchWord())); // ZUM(107-108) HTP(338-339,342-343)
+      case 0x2B /*DEC IXY*/ ->
+          state.ixy(prefix1, dec_nn(state.ixy(prefix1))); // ZUM(186) HTP(242-243)
+      case 0x2C /*INC IXYL*/ -> ixyl(prefix1, inc_n(ixyl(prefix1))); // undocumented
+      case 0x2D /*DEC IXYL*/ -> ixyl(prefix1, dec_n(ixyl(prefix1))); // undocumented
+      case 0x2E /*LD IXYL,n*/ -> ixyl(prefix1, fetchByte()); // undocumented
       case 0x34 /*INC (IXY+n)*/ -> { // ZUM(162-163) HTP(268-271)
-        int address = indexed(rrGet.getAsInt());
+        int address = indexed(state.ixy(prefix1));
         bus.cpuWriteMemByte(address, inc_n(bus.cpuReadMemByte(address)));
       }
       case 0x35 /*DEC (IXY+n)*/ -> { // ZUM(164-165) HTP(238-239)
-        int address = indexed(rrGet.getAsInt());
+        int address = indexed(state.ixy(prefix1));
         bus.cpuWriteMemByte(address, dec_n(bus.cpuReadMemByte(address)));
       }
       case 0x36 /*LD (IXY+n),n*/ -> { // ZUM(90-91) HTP(309-312)
-        int address = indexed(rrGet.getAsInt());
-        bus.cpuWriteMemByte(address, bus.cpuReadMemByte(state.pcInc1()));
+        int address = indexed(state.ixy(prefix1));
+        bus.cpuWriteMemByte(address, fetchByte());
       }
-      case 0x39 /*ADD IXY,SP*/ -> add_rr_nn(rrGet, rrSet, state.sp()); // ZUM(182-18) HTP(205-208)
+      case 0x39 /*ADD IXY,SP*/ -> add_ixy_nn(prefix1, state.sp()); // ZUM(182-18) HTP(205-208)
       case 0x3C /*INC A*/ -> state.a(inc_n(state.a())); // undocumented
       case 0x3D /*DEC A*/ -> state.a(dec_n(state.a())); // undocumented
-      case 0x3E /*LD A,n*/ -> state.a(bus.cpuReadMemByte(state.pcInc1())); // undocumented
+      case 0x3E /*LD A,n*/ -> state.a(fetchByte()); // undocumented
       default -> nop_(prefix1, opCode);
     }
   }
 
   // Decode (0xDD|0xFD, 0x40-0x7F) op-codes.
-  private void decodeXYQ1(int prefix1, int opCode, IntSupplier rrGet, IntConsumer rrSet) {
-    if (opCode == 0x76) { // not a valid op-code
-      nop_(prefix1, opCode);
-      return;
-    }
-    int src = (opCode & 0x07);
-    int dst = (opCode & 0x38) >>> 3;
-    int val =
-        switch (src) {
-          case 0x00 /*LD r,B*/ -> state.b(); // undocumented
-          case 0x01 /*LD r,C*/ -> state.c(); // undocumented
-          case 0x02 /*LD r,D*/ -> state.d(); // undocumented
-          case 0x03 /*LD r,E*/ -> state.e(); // undocumented
-          case 0x04 /*LD r,H/IXYH*/ ->
-              dst == 0x06 ? state.h() : high(rrGet); // undocumented if IXYH
-          case 0x05 /*LD r,L/IXYL*/ -> dst == 0x06 ? state.l() : low(rrGet); // undocumented if IXYL
-          case 0x06 /*LD r,(IXY+n)*/ ->
-              bus.cpuReadMemByte(indexed(rrGet.getAsInt())); // ZUM(84-85) HTP(305-308)
-          case 0x07 /*LD r,A*/ -> state.a(); // undocumented
-          default -> 0; // unreachable
-        };
-    switch (dst) {
-      case 0x00 /*LD B,r*/ -> state.b(val); // undocumented
-      case 0x01 /*LD C,r*/ -> state.c(val); // undocumented
-      case 0x02 /*LD D,r*/ -> state.d(val); // undocumented
-      case 0x03 /*LD E,r*/ -> state.e(val); // undocumented
-      case 0x04 /*LD H/IXYH,r*/ -> {
-        if (src == 0x06) {
-          state.h(val);
-        } else {
-          high(rrGet, rrSet, val);
-        }
-      } // ZUM(84-85) HTP(305-308)
-      case 0x05 /*LD L/IXYL,r*/ -> {
-        if (src == 0x06) {
-          state.l(val);
-        } else {
-          low(rrGet, rrSet, val);
-        }
-      } // ZUM(84-85) HTP(305-308)
-      case 0x06 /*LD (IXY+n),r*/ ->
-          bus.cpuWriteMemByte(indexed(rrGet.getAsInt()), val); // ZUM(87-88) HTP(313-316)
-      case 0x07 /*LD A,r*/ -> state.a(val); // undocumented
+  private void decodeXYQ1(int prefix1, int opCode) {
+    switch (opCode) {
+      case 0x40 /*LD B,B*/ -> state.b(state.b()); // undocumented
+      case 0x41 /*LD B,C*/ -> state.b(state.c()); // undocumented
+      case 0x42 /*LD B,D*/ -> state.b(state.d()); // undocumented
+      case 0x43 /*LD B,E*/ -> state.b(state.e()); // undocumented
+      case 0x44 /*LD B,IXYH*/ -> state.b(ixyh(prefix1)); // undocumented
+      case 0x45 /*LD B,IXYL*/ -> state.b(ixyl(prefix1)); // undocumented
+      case 0x46 /*LD B,(IXY+n)*/ ->
+          state.b(bus.cpuReadMemByte(indexed(state.ixy(prefix1)))); // ZUM(84-85) HTP(305-308)
+      case 0x47 /*LD B,A*/ -> state.b(state.a()); // undocumented
+      case 0x48 /*LD C,B*/ -> state.c(state.b()); // undocumented
+      case 0x49 /*LD C,C*/ -> state.c(state.c()); // undocumented
+      case 0x4A /*LD C,D*/ -> state.c(state.d()); // undocumented
+      case 0x4B /*LD C,E*/ -> state.c(state.e()); // undocumented
+      case 0x4C /*LD C,IXYH*/ -> state.c(ixyh(prefix1)); // undocumented
+      case 0x4D /*LD C,IXYL*/ -> state.c(ixyl(prefix1)); // undocumented
+      case 0x4E /*LD C,(IXY+n)*/ ->
+          state.c(bus.cpuReadMemByte(indexed(state.ixy(prefix1)))); // ZUM(84-85) HTP(305-308)
+      case 0x4F /*LD C,A*/ -> state.c(state.a()); // undocumented
+      case 0x50 /*LD D,B*/ -> state.d(state.b()); // undocumented
+      case 0x51 /*LD D,C*/ -> state.d(state.c()); // undocumented
+      case 0x52 /*LD D,D*/ -> state.d(state.d()); // undocumented
+      case 0x53 /*LD D,E*/ -> state.d(state.e()); // undocumented
+      case 0x54 /*LD D,IXYH*/ -> state.d(ixyh(prefix1)); // undocumented
+      case 0x55 /*LD D,IXYL*/ -> state.d(ixyl(prefix1)); // undocumented
+      case 0x56 /*LD D,(IXY+n)*/ ->
+          state.d(bus.cpuReadMemByte(indexed(state.ixy(prefix1)))); // ZUM(84-85) HTP(305-308)
+      case 0x57 /*LD D,A*/ -> state.d(state.a()); // undocumented
+      case 0x58 /*LD E,B*/ -> state.e(state.b()); // undocumented
+      case 0x59 /*LD E,C*/ -> state.e(state.c()); // undocumented
+      case 0x5A /*LD E,D*/ -> state.e(state.d()); // undocumented
+      case 0x5B /*LD E,E*/ -> state.e(state.e()); // undocumented
+      case 0x5C /*LD E,IXYH*/ -> state.e(ixyh(prefix1)); // undocumented
+      case 0x5D /*LD E,IXYL*/ -> state.e(ixyl(prefix1)); // undocumented
+      case 0x5E /*LD E,(IXY+n)*/ ->
+          state.e(bus.cpuReadMemByte(indexed(state.ixy(prefix1)))); // ZUM(84-85) HTP(305-308)
+      case 0x5F /*LD E,A*/ -> state.e(state.a()); // undocumented
+      case 0x60 /*LD IXYH,B*/ -> ixyh(prefix1, state.b()); // undocumented
+      case 0x61 /*LD IXYH,C*/ -> ixyh(prefix1, state.c()); // undocumented
+      case 0x62 /*LD IXYH,D*/ -> ixyh(prefix1, state.d()); // undocumented
+      case 0x63 /*LD IXYH,E*/ -> ixyh(prefix1, state.e()); // undocumented
+      case 0x64 /*LD IXYH,IXYH*/ -> ixyh(prefix1, ixyh(prefix1)); // undocumented
+      case 0x65 /*LD IXYH,IXYL*/ -> ixyh(prefix1, ixyl(prefix1)); // undocumented
+      case 0x66 /*LD H,(IXY+n)*/ ->
+          state.h(bus.cpuReadMemByte(indexed(state.ixy(prefix1)))); // ZUM(84-85) HTP(305-308)
+      case 0x67 /*LD IXYH,A*/ -> ixyh(prefix1, state.a()); // undocumented
+      case 0x68 /*LD IXYL,B*/ -> ixyl(prefix1, state.b()); // undocumented
+      case 0x69 /*LD IXYL,C*/ -> ixyl(prefix1, state.c()); // undocumented
+      case 0x6A /*LD IXYL,D*/ -> ixyl(prefix1, state.d()); // undocumented
+      case 0x6B /*LD IXYL,E*/ -> ixyl(prefix1, state.e()); // undocumented
+      case 0x6C /*LD IXYL,IXYH*/ -> ixyl(prefix1, ixyh(prefix1)); // undocumented
+      case 0x6D /*LD IXYL,IXYL*/ -> ixyl(prefix1, ixyl(prefix1)); // undocumented
+      case 0x6E /*LD L,(IXY+n)*/ ->
+          state.l(bus.cpuReadMemByte(indexed(state.ixy(prefix1)))); // ZUM(84-85) HTP(305-308)
+      case 0x6F /*LD IXYL,A*/ -> ixyl(prefix1, state.a()); // undocumented
+      case 0x70 /*LD (IXY+n),B*/ ->
+          bus.cpuWriteMemByte(indexed(state.ixy(prefix1)), state.b()); // ZUM(87-88) HTP(313-316)
+      case 0x71 /*LD (IXY+n),C*/ ->
+          bus.cpuWriteMemByte(indexed(state.ixy(prefix1)), state.c()); // ZUM(87-88) HTP(313-316)
+      case 0x72 /*LD (IXY+n),D*/ ->
+          bus.cpuWriteMemByte(indexed(state.ixy(prefix1)), state.d()); // ZUM(87-88) HTP(313-316)
+      case 0x73 /*LD (IXY+n),E*/ ->
+          bus.cpuWriteMemByte(indexed(state.ixy(prefix1)), state.e()); // ZUM(87-88) HTP(313-316)
+      case 0x74 /*LD (IXY+n),H*/ ->
+          bus.cpuWriteMemByte(indexed(state.ixy(prefix1)), state.h()); // ZUM(87-88) HTP(313-316)
+      case 0x75 /*LD (IXY+n),L*/ ->
+          bus.cpuWriteMemByte(indexed(state.ixy(prefix1)), state.l()); // ZUM(87-88) HTP(313-316)
+      case 0x77 /*LD (IXY+n),A*/ ->
+          bus.cpuWriteMemByte(indexed(state.ixy(prefix1)), state.a()); // ZUM(87-88) HTP(313-316)
+      case 0x78 /*LD A,B*/ -> state.a(state.b()); // undocumented
+      case 0x79 /*LD A,C*/ -> state.a(state.c()); // undocumented
+      case 0x7A /*LD A,D*/ -> state.a(state.d()); // undocumented
+      case 0x7B /*LD A,E*/ -> state.a(state.e()); // undocumented
+      case 0x7C /*LD A,IXYH*/ -> state.a(ixyh(prefix1)); // undocumented
+      case 0x7D /*LD A,IXYL*/ -> state.a(ixyl(prefix1)); // undocumented
+      case 0x7E /*LD A,(IXY+n)*/ ->
+          state.a(bus.cpuReadMemByte(indexed(state.ixy(prefix1)))); // ZUM(84-85) HTP(305-308)
+      case 0x7F /*LD A,A*/ -> state.a(state.a()); // undocumented
+      default -> nop_(prefix1, opCode);
     }
   }
 
   // Decode (0xDD|0xFD, 0x80-0xBF) op-codes.
-  private void decodeXYQ2(int opCode, IntSupplier rrGet) {
-    /* `ADD A,r` ZUM(144-145) HTP(196-199), `ADC A,r` ZUM(146-147) HTP(190-191), `SUB r` ZUM(148-149) HTP(434-435),
-    `SBC A,r` ZUM(150-151) HTP(420-421), `AND r` ZUM(152-153) HTP(209-210), `XOR r` ZUM(156-157) HTP(436-437),
-    `OR r` ZUM(154-155) HTP(360-361), `CP r` ZUM(158-159) HTP(225-226), `(IXY+n)` ZUM(144-145) HTP(196-199) */
-    int val =
-        switch (opCode & 0x07) {
-          case 0x00 /*aop B*/ -> state.b();
-          case 0x01 /*aop C*/ -> state.c();
-          case 0x02 /*aop D*/ -> state.d();
-          case 0x03 /*aop E*/ -> state.e();
-          case 0x04 /*aop IXYH*/ -> high(rrGet);
-          case 0x05 /*aop IXYL*/ -> low(rrGet);
-          case 0x06 /*aop (IXY)*/ -> bus.cpuReadMemByte(indexed(rrGet.getAsInt())); //
-          case 0x07 /*aop A*/ -> state.a();
-          default -> 0; // unreachable
-        };
-    alu_acc_n(opCode, val);
+  private void decodeXYQ2(int prefix1, int opCode) {
+    switch (opCode) {
+      case 0x80 /*ADD A,B*/ -> add_a_n(state.b()); // undocumented
+      case 0x81 /*ADD A,C*/ -> add_a_n(state.c()); // undocumented
+      case 0x82 /*ADD A,D*/ -> add_a_n(state.d()); // undocumented
+      case 0x83 /*ADD A,E*/ -> add_a_n(state.e()); // undocumented
+      case 0x84 /*ADD A,IXYH*/ -> add_a_n(ixyh(prefix1)); // undocumented
+      case 0x85 /*ADD A,IXYL*/ -> add_a_n(ixyl(prefix1)); // undocumented
+      case 0x86 /*ADD A,(IXY+n)*/ ->
+          add_a_n(bus.cpuReadMemByte(indexed(state.ixy(prefix1)))); // ZUM(144-145) HTP(196-199)
+      case 0x87 /*ADD A,A*/ -> add_a_n(state.a()); // undocumented
+      case 0x88 /*ADC A,B*/ -> adc_a_n(state.b()); // undocumented
+      case 0x89 /*ADC A,C*/ -> adc_a_n(state.c()); // undocumented
+      case 0x8A /*ADC A,D*/ -> adc_a_n(state.d()); // undocumented
+      case 0x8B /*ADC A,E*/ -> adc_a_n(state.e()); // undocumented
+      case 0x8C /*ADC A,IXYH*/ -> adc_a_n(ixyh(prefix1)); // undocumented
+      case 0x8D /*ADC A,IXYL*/ -> adc_a_n(ixyl(prefix1)); // undocumented
+      case 0x8E /*ADC A,(IXY+n)*/ ->
+          adc_a_n(bus.cpuReadMemByte(indexed(state.ixy(prefix1)))); // ZUM(146-147) HTP(190-191)
+      case 0x8F /*ADC A,A*/ -> adc_a_n(state.a()); // undocumented
+      case 0x90 /*SUB B*/ -> sub_n(state.b()); // undocumented
+      case 0x91 /*SUB C*/ -> sub_n(state.c()); // undocumented
+      case 0x92 /*SUB D*/ -> sub_n(state.d()); // undocumented
+      case 0x93 /*SUB E*/ -> sub_n(state.e()); // undocumented
+      case 0x94 /*SUB IXYH*/ -> sub_n(ixyh(prefix1)); // undocumented
+      case 0x95 /*SUB IXYL*/ -> sub_n(ixyl(prefix1)); // undocumented
+      case 0x96 /*SUB (IXY+n)*/ ->
+          sub_n(bus.cpuReadMemByte(indexed(state.ixy(prefix1)))); // ZUM(148-149) HTP(434-435)
+      case 0x97 /*SUB A*/ -> sub_n(state.a()); // undocumented
+      case 0x98 /*SBC A,B*/ -> sbc_a_n(state.b()); // undocumented
+      case 0x99 /*SBC A,C*/ -> sbc_a_n(state.c()); // undocumented
+      case 0x9A /*SBC A,D*/ -> sbc_a_n(state.d()); // undocumented
+      case 0x9B /*SBC A,E*/ -> sbc_a_n(state.e()); // undocumented
+      case 0x9C /*SBC A,IXYH*/ -> sbc_a_n(ixyh(prefix1)); // undocumented
+      case 0x9D /*SBC A,IXYL*/ -> sbc_a_n(ixyl(prefix1)); // undocumented
+      case 0x9E /*SBC A,(IXY+n)*/ ->
+          sbc_a_n(bus.cpuReadMemByte(indexed(state.ixy(prefix1)))); // ZUM(150-151) HTP(420-421)
+      case 0x9F /*SBC A,A*/ -> sbc_a_n(state.a()); // undocumented
+      case 0xA0 /*AND B*/ -> and_n(state.b()); // undocumented
+      case 0xA1 /*AND C*/ -> and_n(state.c()); // undocumented
+      case 0xA2 /*AND D*/ -> and_n(state.d()); // undocumented
+      case 0xA3 /*AND E*/ -> and_n(state.e()); // undocumented
+      case 0xA4 /*AND IXYH*/ -> and_n(ixyh(prefix1)); // undocumented
+      case 0xA5 /*AND IXYL*/ -> and_n(ixyl(prefix1)); // undocumented
+      case 0xA6 /*AND (IXY+n)*/ ->
+          and_n(bus.cpuReadMemByte(indexed(state.ixy(prefix1)))); // ZUM(152-153) HTP(209-210)
+      case 0xA7 /*AND A*/ -> and_n(state.a()); // undocumented
+      case 0xA8 /*XOR B*/ -> xor_n(state.b()); // undocumented
+      case 0xA9 /*XOR C*/ -> xor_n(state.c()); // undocumented
+      case 0xAA /*XOR D*/ -> xor_n(state.d()); // undocumented
+      case 0xAB /*XOR E*/ -> xor_n(state.e()); // undocumented
+      case 0xAC /*XOR IXYH*/ -> xor_n(ixyh(prefix1)); // undocumented
+      case 0xAD /*XOR IXYL*/ -> xor_n(ixyl(prefix1)); // undocumented
+      case 0xAE /*XOR (IXY+n)*/ ->
+          xor_n(bus.cpuReadMemByte(indexed(state.ixy(prefix1)))); // ZUM(156-157) HTP(436-437)
+      case 0xAF /*XOR A*/ -> xor_n(state.a()); // undocumented
+      case 0xB0 /*OR B*/ -> or_n(state.b()); // undocumented
+      case 0xB1 /*OR C*/ -> or_n(state.c()); // undocumented
+      case 0xB2 /*OR D*/ -> or_n(state.d()); // undocumented
+      case 0xB3 /*OR E*/ -> or_n(state.e()); // undocumented
+      case 0xB4 /*OR IXYH*/ -> or_n(ixyh(prefix1)); // undocumented
+      case 0xB5 /*OR IXYL*/ -> or_n(ixyl(prefix1)); // undocumented
+      case 0xB6 /*OR (IXY+n)*/ ->
+          or_n(bus.cpuReadMemByte(indexed(state.ixy(prefix1)))); // ZUM(154-155) HTP(360-361)
+      case 0xB7 /*OR A*/ -> or_n(state.a()); // undocumented
+      case 0xB8 /*CP B*/ -> cp_n(state.b()); // undocumented
+      case 0xB9 /*CP C*/ -> cp_n(state.c()); // undocumented
+      case 0xBA /*CP D*/ -> cp_n(state.d()); // undocumented
+      case 0xBB /*CP E*/ -> cp_n(state.e()); // undocumented
+      case 0xBC /*CP IXYH*/ -> cp_n(ixyh(prefix1)); // undocumented
+      case 0xBD /*CP IXYL*/ -> cp_n(ixyl(prefix1)); // undocumented
+      case 0xBE /*CP (IXY+n)*/ ->
+          cp_n(bus.cpuReadMemByte(indexed(state.ixy(prefix1)))); // ZUM(158-159) HTP(225-226)
+      case 0xBF /*CP A*/ -> cp_n(state.a()); // undocumented
+    }
   }
 
   // Decode (0xDD|0xFD, 0xC0-0xFF) op-codes.
-  private void decodeXYQ3(int prefix1, int opCode, IntSupplier rrGet, IntConsumer rrSet) {
+  private void decodeXYQ3(int prefix1, int opCode) {
     switch (opCode) {
-      case 0xCB /*[0xDD|0xFD],[0xCB],...*/ -> decodeXYCB(indexed(rrGet.getAsInt()));
-      case 0xDD /*[0xDD|0xFD],[0xDD],...*/ ->
-          decodeXY(0xDD, bus.cpuReadMemByte(state.pcInc1()), state::ix, state::ix);
+      case 0xCB /*[0xDD|0xFD],[0xCB],...*/ -> decodeXYCB(indexed(state.ixy(prefix1)));
+      case 0xDD /*[0xDD|0xFD],[0xDD],...*/ -> decodeXY(0xDD, fetchByte());
       case 0xE1 /*POP IXY*/ ->
-          rrSet.accept(bus.cpuReadMemWord(state.spInc2())); // ZUM(120) HTP(375-376)
-      case 0xED /*[0xDD|0xFD],[0xED],...*/ -> decodeED(bus.cpuReadMemByte(state.pcInc1()));
-      case 0xE3 /*EX (SP),IXY*/ -> ex_csp_rr(rrGet, rrSet); // ZUM(126-127) HTP(252-255)
+          state.ixy(prefix1, bus.cpuReadMemWord(state.spInc2())); // ZUM(120) HTP(375-376)
+      case 0xED /*[0xDD|0xFD],[0xED],...*/ -> decodeED(fetchByte());
+      case 0xE3 /*EX (SP),IXY*/ -> ex_csp_ixy(prefix1); // ZUM(126-127) HTP(252-255)
       case 0xE5 /*PUSH IXY*/ ->
-          bus.cpuWriteMemWord(state.spDec2(), rrGet.getAsInt()); // ZUM(117) HTP(381-382)
-      case 0xE9 /*JP (IXY)*/ -> state.pc(rrGet.getAsInt()); // ZUM(251) HTP(286)
-      case 0xF9 /*LD SP,IXY*/ -> state.sp(rrGet.getAsInt()); // ZUM(114-115) HTP(346-347)
-      case 0xFD /*[0xDD|0xFD],[0xFD],...*/ ->
-          decodeXY(0xFD, bus.cpuReadMemByte(state.pcInc1()), state::iy, state::iy);
+          bus.cpuWriteMemWord(state.spDec2(), state.ixy(prefix1)); // ZUM(117) HTP(381-382)
+      case 0xE9 /*JP (IXY)*/ -> state.pc(state.ixy(prefix1)); // ZUM(251) HTP(286)
+      case 0xF9 /*LD SP,IXY*/ -> state.sp(state.ixy(prefix1)); // ZUM(114-115) HTP(346-347)
+      case 0xFD /*[0xDD|0xFD],[0xFD],...*/ -> decodeXY(0xFD, fetchByte());
       default -> nop_(prefix1, opCode);
     }
   }
@@ -560,35 +1392,317 @@ public final class Core {
 
   // Decode (0xDD|0xFD, 0xCB, index, 0x00-0xFF) op-codes: indexed bit instructions
   private void decodeXYCB(int address) {
-    int opCode = bus.cpuReadMemByte(state().pcInc1());
-    int qtr = opCode & 0xC0;
-    switch (qtr) {
-      case 0x00 /*[0xDD|0xFD],[0xCB],[0x00-0x3F]*/ ->
-          setAdditionalRegister(
-              address,
-              opCode,
-              shf_rot_n(
-                  opCode,
-                  bus.cpuReadMemByte(
-                      address))); /* `RLC (IXY+n),r` ZUM(198-201) HTP(404-407), `RRC (IXY+n),r` ZUM(205-207) HTP(413-414), `RL (IXY+n),r` ZUM(202-204) HTP(396-397), `RR (IXY+n),r` ZUM(208-210) HTP(410-411), `SLA (IXY+n),r` ZUM(211-213) HTP(428-429), `SRA (IXY+n),r` ZUM(214-216) HTP(430-431), `SL1 (IXY+n),r` undocumented, SRL (IXY+n),r` ZUM(217-219) HTP(432-433) */
-      case 0x40 /*[0xDD|0xFD],[0xCB],[0x40-0x7F]*/ ->
-          bit_m_n(
-              (opCode & 0x38) >>> 3,
-              bus.cpuReadMemByte(address)); /* `BIT m,(IXY+n)` ZUM(228-231) HTP(213-216) */
-      case 0x80 /*[0xDD|0xFD],[0xCB],[0x80-0xBF]*/ ->
-          setAdditionalRegister(
-              address,
-              opCode,
-              res_m_n(
-                  (opCode & 0x38) >>> 3,
-                  bus.cpuReadMemByte(address))); /* `RES m,(IXY+n),r` ZUM(236-237) HTP(385-387) */
-      case 0xC0 /*[0xDD|0xFD],[0xCB],[0xC0-0xFF]*/ ->
-          setAdditionalRegister(
-              address,
-              opCode,
-              set_m_n(
-                  (opCode & 0x38) >>> 3,
-                  bus.cpuReadMemByte(address))); /* `SET m,(IXY+n),r` ZUM(234-235) HTP(425-427) */
+    int opCode = fetchByte();
+    int n = bus.cpuReadMemByte(address);
+    state.cyclesAdd(TStates.XYCB[opCode]);
+    switch (opCode & 0xC0) {
+      case 0x00 /*[0xDD|0xFD],[0xCB],[0x00-0x3F]*/ -> decodeXYCBQ0(address, opCode, n);
+      case 0x40 /*[0xDD|0xFD],[0xCB],[0x40-0x7F]*/ -> decodeXYCBQ1(address, opCode, n);
+      case 0x80 /*[0xDD|0xFD],[0xCB],[0x80-0xBF]*/ -> decodeXYCBQ2(address, opCode, n);
+      case 0xC0 /*[0xDD|0xFD],[0xCB],[0xC0-0xFF]*/ -> decodeXYCBQ3(address, opCode, n);
+    }
+  }
+
+  // Decode (0xDD|0xFD, 0xCB, index, 0x00-0x3F) op-codes.
+  private void decodeXYCBQ0(int address, int opCode, int n) {
+    switch (opCode) {
+      case 0x00 /*RLC (IXY+n),B*/ -> state.b(store(address, rlc_n(n))); // undocumented
+      case 0x01 /*RLC (IXY+n),C*/ -> state.c(store(address, rlc_n(n))); // undocumented
+      case 0x02 /*RLC (IXY+n),D*/ -> state.d(store(address, rlc_n(n))); // undocumented
+      case 0x03 /*RLC (IXY+n),E*/ -> state.e(store(address, rlc_n(n))); // undocumented
+      case 0x04 /*RLC (IXY+n),H*/ -> state.h(store(address, rlc_n(n))); // undocumented
+      case 0x05 /*RLC (IXY+n),L*/ -> state.l(store(address, rlc_n(n))); // undocumented
+      case 0x06 /*RLC (IXY+n)*/ ->
+          bus.cpuWriteMemByte(address, rlc_n(n)); // ZUM(198-201) HTP(404-407)
+      case 0x07 /*RLC (IXY+n),A*/ -> state.a(store(address, rlc_n(n))); // undocumented
+      case 0x08 /*RRC (IXY+n),B*/ -> state.b(store(address, rrc_n(n))); // undocumented
+      case 0x09 /*RRC (IXY+n),C*/ -> state.c(store(address, rrc_n(n))); // undocumented
+      case 0x0A /*RRC (IXY+n),D*/ -> state.d(store(address, rrc_n(n))); // undocumented
+      case 0x0B /*RRC (IXY+n),E*/ -> state.e(store(address, rrc_n(n))); // undocumented
+      case 0x0C /*RRC (IXY+n),H*/ -> state.h(store(address, rrc_n(n))); // undocumented
+      case 0x0D /*RRC (IXY+n),L*/ -> state.l(store(address, rrc_n(n))); // undocumented
+      case 0x0E /*RRC (IXY+n)*/ ->
+          bus.cpuWriteMemByte(address, rrc_n(n)); // ZUM(205-207) HTP(413-414)
+      case 0x0F /*RRC (IXY+n),A*/ -> state.a(store(address, rrc_n(n))); // undocumented
+      case 0x10 /*RL (IXY+n),B*/ -> state.b(store(address, rl_n(n))); // undocumented
+      case 0x11 /*RL (IXY+n),C*/ -> state.c(store(address, rl_n(n))); // undocumented
+      case 0x12 /*RL (IXY+n),D*/ -> state.d(store(address, rl_n(n))); // undocumented
+      case 0x13 /*RL (IXY+n),E*/ -> state.e(store(address, rl_n(n))); // undocumented
+      case 0x14 /*RL (IXY+n),H*/ -> state.h(store(address, rl_n(n))); // undocumented
+      case 0x15 /*RL (IXY+n),L*/ -> state.l(store(address, rl_n(n))); // undocumented
+      case 0x16 /*RL (IXY+n)*/ ->
+          bus.cpuWriteMemByte(address, rl_n(n)); // ZUM(202-204) HTP(396-397)
+      case 0x17 /*RL (IXY+n),A*/ -> state.a(store(address, rl_n(n))); // undocumented
+      case 0x18 /*RR (IXY+n),B*/ -> state.b(store(address, rr_n(n))); // undocumented
+      case 0x19 /*RR (IXY+n),C*/ -> state.c(store(address, rr_n(n))); // undocumented
+      case 0x1A /*RR (IXY+n),D*/ -> state.d(store(address, rr_n(n))); // undocumented
+      case 0x1B /*RR (IXY+n),E*/ -> state.e(store(address, rr_n(n))); // undocumented
+      case 0x1C /*RR (IXY+n),H*/ -> state.h(store(address, rr_n(n))); // undocumented
+      case 0x1D /*RR (IXY+n),L*/ -> state.l(store(address, rr_n(n))); // undocumented
+      case 0x1E /*RR (IXY+n)*/ ->
+          bus.cpuWriteMemByte(address, rr_n(n)); // ZUM(208-210) HTP(410-411)
+      case 0x1F /*RR (IXY+n),A*/ -> state.a(store(address, rr_n(n))); // undocumented
+      case 0x20 /*SLA (IXY+n),B*/ -> state.b(store(address, sla_n(n))); // undocumented
+      case 0x21 /*SLA (IXY+n),C*/ -> state.c(store(address, sla_n(n))); // undocumented
+      case 0x22 /*SLA (IXY+n),D*/ -> state.d(store(address, sla_n(n))); // undocumented
+      case 0x23 /*SLA (IXY+n),E*/ -> state.e(store(address, sla_n(n))); // undocumented
+      case 0x24 /*SLA (IXY+n),H*/ -> state.h(store(address, sla_n(n))); // undocumented
+      case 0x25 /*SLA (IXY+n),L*/ -> state.l(store(address, sla_n(n))); // undocumented
+      case 0x26 /*SLA (IXY+n)*/ ->
+          bus.cpuWriteMemByte(address, sla_n(n)); // ZUM(211-213) HTP(428-429)
+      case 0x27 /*SLA (IXY+n),A*/ -> state.a(store(address, sla_n(n))); // undocumented
+      case 0x28 /*SRA (IXY+n),B*/ -> state.b(store(address, sra_n(n))); // undocumented
+      case 0x29 /*SRA (IXY+n),C*/ -> state.c(store(address, sra_n(n))); // undocumented
+      case 0x2A /*SRA (IXY+n),D*/ -> state.d(store(address, sra_n(n))); // undocumented
+      case 0x2B /*SRA (IXY+n),E*/ -> state.e(store(address, sra_n(n))); // undocumented
+      case 0x2C /*SRA (IXY+n),H*/ -> state.h(store(address, sra_n(n))); // undocumented
+      case 0x2D /*SRA (IXY+n),L*/ -> state.l(store(address, sra_n(n))); // undocumented
+      case 0x2E /*SRA (IXY+n)*/ ->
+          bus.cpuWriteMemByte(address, sra_n(n)); // ZUM(214-216) HTP(430-431)
+      case 0x2F /*SRA (IXY+n),A*/ -> state.a(store(address, sra_n(n))); // undocumented
+      case 0x30 /*SL1 (IXY+n),B*/ -> state.b(store(address, sl1_n(n))); // undocumented
+      case 0x31 /*SL1 (IXY+n),C*/ -> state.c(store(address, sl1_n(n))); // undocumented
+      case 0x32 /*SL1 (IXY+n),D*/ -> state.d(store(address, sl1_n(n))); // undocumented
+      case 0x33 /*SL1 (IXY+n),E*/ -> state.e(store(address, sl1_n(n))); // undocumented
+      case 0x34 /*SL1 (IXY+n),H*/ -> state.h(store(address, sl1_n(n))); // undocumented
+      case 0x35 /*SL1 (IXY+n),L*/ -> state.l(store(address, sl1_n(n))); // undocumented
+      case 0x36 /*SL1 (IXY+n)*/ -> bus.cpuWriteMemByte(address, sl1_n(n)); // undocumented
+      case 0x37 /*SL1 (IXY+n),A*/ -> state.a(store(address, sl1_n(n))); // undocumented
+      case 0x38 /*SRL (IXY+n),B*/ -> state.b(store(address, srl_n(n))); // undocumented
+      case 0x39 /*SRL (IXY+n),C*/ -> state.c(store(address, srl_n(n))); // undocumented
+      case 0x3A /*SRL (IXY+n),D*/ -> state.d(store(address, srl_n(n))); // undocumented
+      case 0x3B /*SRL (IXY+n),E*/ -> state.e(store(address, srl_n(n))); // undocumented
+      case 0x3C /*SRL (IXY+n),H*/ -> state.h(store(address, srl_n(n))); // undocumented
+      case 0x3D /*SRL (IXY+n),L*/ -> state.l(store(address, srl_n(n))); // undocumented
+      case 0x3E /*SRL (IXY+n)*/ ->
+          bus.cpuWriteMemByte(address, srl_n(n)); // ZUM(217-219) HTP(432-433)
+      case 0x3F /*SRL (IXY+n),A*/ -> state.a(store(address, srl_n(n))); // undocumented
+    }
+  }
+
+  // Decode (0xDD|0xFD, 0xCB, index, 0x40-0x7F) op-codes.
+  private void decodeXYCBQ1(int address, int opCode, int n) {
+    switch (opCode) {
+      case 0x40 /*BIT 0,(IXY+n)'*/ -> bit_m_n(0, n, address >>> 8); // undocumented
+      case 0x41 /*BIT 0,(IXY+n)'*/ -> bit_m_n(0, n, address >>> 8); // undocumented
+      case 0x42 /*BIT 0,(IXY+n)'*/ -> bit_m_n(0, n, address >>> 8); // undocumented
+      case 0x43 /*BIT 0,(IXY+n)'*/ -> bit_m_n(0, n, address >>> 8); // undocumented
+      case 0x44 /*BIT 0,(IXY+n)'*/ -> bit_m_n(0, n, address >>> 8); // undocumented
+      case 0x45 /*BIT 0,(IXY+n)'*/ -> bit_m_n(0, n, address >>> 8); // undocumented
+      case 0x46 /*BIT 0,(IXY+n)*/ -> bit_m_n(0, n, address >>> 8); // ZUM(228-231) HTP(213-216)
+      case 0x47 /*BIT 0,(IXY+n)'*/ -> bit_m_n(0, n, address >>> 8); // undocumented
+      case 0x48 /*BIT 1,(IXY+n)'*/ -> bit_m_n(1, n, address >>> 8); // undocumented
+      case 0x49 /*BIT 1,(IXY+n)'*/ -> bit_m_n(1, n, address >>> 8); // undocumented
+      case 0x4A /*BIT 1,(IXY+n)'*/ -> bit_m_n(1, n, address >>> 8); // undocumented
+      case 0x4B /*BIT 1,(IXY+n)'*/ -> bit_m_n(1, n, address >>> 8); // undocumented
+      case 0x4C /*BIT 1,(IXY+n)'*/ -> bit_m_n(1, n, address >>> 8); // undocumented
+      case 0x4D /*BIT 1,(IXY+n)'*/ -> bit_m_n(1, n, address >>> 8); // undocumented
+      case 0x4E /*BIT 1,(IXY+n)*/ -> bit_m_n(1, n, address >>> 8); // ZUM(228-231) HTP(213-216)
+      case 0x4F /*BIT 1,(IXY+n)'*/ -> bit_m_n(1, n, address >>> 8); // undocumented
+      case 0x50 /*BIT 2,(IXY+n)'*/ -> bit_m_n(2, n, address >>> 8); // undocumented
+      case 0x51 /*BIT 2,(IXY+n)'*/ -> bit_m_n(2, n, address >>> 8); // undocumented
+      case 0x52 /*BIT 2,(IXY+n)'*/ -> bit_m_n(2, n, address >>> 8); // undocumented
+      case 0x53 /*BIT 2,(IXY+n)'*/ -> bit_m_n(2, n, address >>> 8); // undocumented
+      case 0x54 /*BIT 2,(IXY+n)'*/ -> bit_m_n(2, n, address >>> 8); // undocumented
+      case 0x55 /*BIT 2,(IXY+n)'*/ -> bit_m_n(2, n, address >>> 8); // undocumented
+      case 0x56 /*BIT 2,(IXY+n)*/ -> bit_m_n(2, n, address >>> 8); // ZUM(228-231) HTP(213-216)
+      case 0x57 /*BIT 2,(IXY+n)'*/ -> bit_m_n(2, n, address >>> 8); // undocumented
+      case 0x58 /*BIT 3,(IXY+n)'*/ -> bit_m_n(3, n, address >>> 8); // undocumented
+      case 0x59 /*BIT 3,(IXY+n)'*/ -> bit_m_n(3, n, address >>> 8); // undocumented
+      case 0x5A /*BIT 3,(IXY+n)'*/ -> bit_m_n(3, n, address >>> 8); // undocumented
+      case 0x5B /*BIT 3,(IXY+n)'*/ -> bit_m_n(3, n, address >>> 8); // undocumented
+      case 0x5C /*BIT 3,(IXY+n)'*/ -> bit_m_n(3, n, address >>> 8); // undocumented
+      case 0x5D /*BIT 3,(IXY+n)'*/ -> bit_m_n(3, n, address >>> 8); // undocumented
+      case 0x5E /*BIT 3,(IXY+n)*/ -> bit_m_n(3, n, address >>> 8); // ZUM(228-231) HTP(213-216)
+      case 0x5F /*BIT 3,(IXY+n)'*/ -> bit_m_n(3, n, address >>> 8); // undocumented
+      case 0x60 /*BIT 4,(IXY+n)'*/ -> bit_m_n(4, n, address >>> 8); // undocumented
+      case 0x61 /*BIT 4,(IXY+n)'*/ -> bit_m_n(4, n, address >>> 8); // undocumented
+      case 0x62 /*BIT 4,(IXY+n)'*/ -> bit_m_n(4, n, address >>> 8); // undocumented
+      case 0x63 /*BIT 4,(IXY+n)'*/ -> bit_m_n(4, n, address >>> 8); // undocumented
+      case 0x64 /*BIT 4,(IXY+n)'*/ -> bit_m_n(4, n, address >>> 8); // undocumented
+      case 0x65 /*BIT 4,(IXY+n)'*/ -> bit_m_n(4, n, address >>> 8); // undocumented
+      case 0x66 /*BIT 4,(IXY+n)*/ -> bit_m_n(4, n, address >>> 8); // ZUM(228-231) HTP(213-216)
+      case 0x67 /*BIT 4,(IXY+n)'*/ -> bit_m_n(4, n, address >>> 8); // undocumented
+      case 0x68 /*BIT 5,(IXY+n)'*/ -> bit_m_n(5, n, address >>> 8); // undocumented
+      case 0x69 /*BIT 5,(IXY+n)'*/ -> bit_m_n(5, n, address >>> 8); // undocumented
+      case 0x6A /*BIT 5,(IXY+n)'*/ -> bit_m_n(5, n, address >>> 8); // undocumented
+      case 0x6B /*BIT 5,(IXY+n)'*/ -> bit_m_n(5, n, address >>> 8); // undocumented
+      case 0x6C /*BIT 5,(IXY+n)'*/ -> bit_m_n(5, n, address >>> 8); // undocumented
+      case 0x6D /*BIT 5,(IXY+n)'*/ -> bit_m_n(5, n, address >>> 8); // undocumented
+      case 0x6E /*BIT 5,(IXY+n)*/ -> bit_m_n(5, n, address >>> 8); // ZUM(228-231) HTP(213-216)
+      case 0x6F /*BIT 5,(IXY+n)'*/ -> bit_m_n(5, n, address >>> 8); // undocumented
+      case 0x70 /*BIT 6,(IXY+n)'*/ -> bit_m_n(6, n, address >>> 8); // undocumented
+      case 0x71 /*BIT 6,(IXY+n)'*/ -> bit_m_n(6, n, address >>> 8); // undocumented
+      case 0x72 /*BIT 6,(IXY+n)'*/ -> bit_m_n(6, n, address >>> 8); // undocumented
+      case 0x73 /*BIT 6,(IXY+n)'*/ -> bit_m_n(6, n, address >>> 8); // undocumented
+      case 0x74 /*BIT 6,(IXY+n)'*/ -> bit_m_n(6, n, address >>> 8); // undocumented
+      case 0x75 /*BIT 6,(IXY+n)'*/ -> bit_m_n(6, n, address >>> 8); // undocumented
+      case 0x76 /*BIT 6,(IXY+n)*/ -> bit_m_n(6, n, address >>> 8); // ZUM(228-231) HTP(213-216)
+      case 0x77 /*BIT 6,(IXY+n)'*/ -> bit_m_n(6, n, address >>> 8); // undocumented
+      case 0x78 /*BIT 7,(IXY+n)'*/ -> bit_m_n(7, n, address >>> 8); // undocumented
+      case 0x79 /*BIT 7,(IXY+n)'*/ -> bit_m_n(7, n, address >>> 8); // undocumented
+      case 0x7A /*BIT 7,(IXY+n)'*/ -> bit_m_n(7, n, address >>> 8); // undocumented
+      case 0x7B /*BIT 7,(IXY+n)'*/ -> bit_m_n(7, n, address >>> 8); // undocumented
+      case 0x7C /*BIT 7,(IXY+n)'*/ -> bit_m_n(7, n, address >>> 8); // undocumented
+      case 0x7D /*BIT 7,(IXY+n)'*/ -> bit_m_n(7, n, address >>> 8); // undocumented
+      case 0x7E /*BIT 7,(IXY+n)*/ -> bit_m_n(7, n, address >>> 8); // ZUM(228-231) HTP(213-216)
+      case 0x7F /*BIT 7,(IXY+n)'*/ -> bit_m_n(7, n, address >>> 8); // undocumented
+    }
+  }
+
+  // Decode (0xDD|0xFD, 0xCB, index, 0x80-0xBF) op-codes.
+  private void decodeXYCBQ2(int address, int opCode, int n) {
+    switch (opCode) {
+      case 0x80 /*RES 0,(IXY+n),B*/ -> state.b(store(address, res_m_n(0, n))); // undocumented
+      case 0x81 /*RES 0,(IXY+n),C*/ -> state.c(store(address, res_m_n(0, n))); // undocumented
+      case 0x82 /*RES 0,(IXY+n),D*/ -> state.d(store(address, res_m_n(0, n))); // undocumented
+      case 0x83 /*RES 0,(IXY+n),E*/ -> state.e(store(address, res_m_n(0, n))); // undocumented
+      case 0x84 /*RES 0,(IXY+n),H*/ -> state.h(store(address, res_m_n(0, n))); // undocumented
+      case 0x85 /*RES 0,(IXY+n),L*/ -> state.l(store(address, res_m_n(0, n))); // undocumented
+      case 0x86 /*RES 0,(IXY+n)*/ ->
+          bus.cpuWriteMemByte(address, res_m_n(0, n)); // ZUM(236-237) HTP(385-387)
+      case 0x87 /*RES 0,(IXY+n),A*/ -> state.a(store(address, res_m_n(0, n))); // undocumented
+      case 0x88 /*RES 1,(IXY+n),B*/ -> state.b(store(address, res_m_n(1, n))); // undocumented
+      case 0x89 /*RES 1,(IXY+n),C*/ -> state.c(store(address, res_m_n(1, n))); // undocumented
+      case 0x8A /*RES 1,(IXY+n),D*/ -> state.d(store(address, res_m_n(1, n))); // undocumented
+      case 0x8B /*RES 1,(IXY+n),E*/ -> state.e(store(address, res_m_n(1, n))); // undocumented
+      case 0x8C /*RES 1,(IXY+n),H*/ -> state.h(store(address, res_m_n(1, n))); // undocumented
+      case 0x8D /*RES 1,(IXY+n),L*/ -> state.l(store(address, res_m_n(1, n))); // undocumented
+      case 0x8E /*RES 1,(IXY+n)*/ ->
+          bus.cpuWriteMemByte(address, res_m_n(1, n)); // ZUM(236-237) HTP(385-387)
+      case 0x8F /*RES 1,(IXY+n),A*/ -> state.a(store(address, res_m_n(1, n))); // undocumented
+      case 0x90 /*RES 2,(IXY+n),B*/ -> state.b(store(address, res_m_n(2, n))); // undocumented
+      case 0x91 /*RES 2,(IXY+n),C*/ -> state.c(store(address, res_m_n(2, n))); // undocumented
+      case 0x92 /*RES 2,(IXY+n),D*/ -> state.d(store(address, res_m_n(2, n))); // undocumented
+      case 0x93 /*RES 2,(IXY+n),E*/ -> state.e(store(address, res_m_n(2, n))); // undocumented
+      case 0x94 /*RES 2,(IXY+n),H*/ -> state.h(store(address, res_m_n(2, n))); // undocumented
+      case 0x95 /*RES 2,(IXY+n),L*/ -> state.l(store(address, res_m_n(2, n))); // undocumented
+      case 0x96 /*RES 2,(IXY+n)*/ ->
+          bus.cpuWriteMemByte(address, res_m_n(2, n)); // ZUM(236-237) HTP(385-387)
+      case 0x97 /*RES 2,(IXY+n),A*/ -> state.a(store(address, res_m_n(2, n))); // undocumented
+      case 0x98 /*RES 3,(IXY+n),B*/ -> state.b(store(address, res_m_n(3, n))); // undocumented
+      case 0x99 /*RES 3,(IXY+n),C*/ -> state.c(store(address, res_m_n(3, n))); // undocumented
+      case 0x9A /*RES 3,(IXY+n),D*/ -> state.d(store(address, res_m_n(3, n))); // undocumented
+      case 0x9B /*RES 3,(IXY+n),E*/ -> state.e(store(address, res_m_n(3, n))); // undocumented
+      case 0x9C /*RES 3,(IXY+n),H*/ -> state.h(store(address, res_m_n(3, n))); // undocumented
+      case 0x9D /*RES 3,(IXY+n),L*/ -> state.l(store(address, res_m_n(3, n))); // undocumented
+      case 0x9E /*RES 3,(IXY+n)*/ ->
+          bus.cpuWriteMemByte(address, res_m_n(3, n)); // ZUM(236-237) HTP(385-387)
+      case 0x9F /*RES 3,(IXY+n),A*/ -> state.a(store(address, res_m_n(3, n))); // undocumented
+      case 0xA0 /*RES 4,(IXY+n),B*/ -> state.b(store(address, res_m_n(4, n))); // undocumented
+      case 0xA1 /*RES 4,(IXY+n),C*/ -> state.c(store(address, res_m_n(4, n))); // undocumented
+      case 0xA2 /*RES 4,(IXY+n),D*/ -> state.d(store(address, res_m_n(4, n))); // undocumented
+      case 0xA3 /*RES 4,(IXY+n),E*/ -> state.e(store(address, res_m_n(4, n))); // undocumented
+      case 0xA4 /*RES 4,(IXY+n),H*/ -> state.h(store(address, res_m_n(4, n))); // undocumented
+      case 0xA5 /*RES 4,(IXY+n),L*/ -> state.l(store(address, res_m_n(4, n))); // undocumented
+      case 0xA6 /*RES 4,(IXY+n)*/ ->
+          bus.cpuWriteMemByte(address, res_m_n(4, n)); // ZUM(236-237) HTP(385-387)
+      case 0xA7 /*RES 4,(IXY+n),A*/ -> state.a(store(address, res_m_n(4, n))); // undocumented
+      case 0xA8 /*RES 5,(IXY+n),B*/ -> state.b(store(address, res_m_n(5, n))); // undocumented
+      case 0xA9 /*RES 5,(IXY+n),C*/ -> state.c(store(address, res_m_n(5, n))); // undocumented
+      case 0xAA /*RES 5,(IXY+n),D*/ -> state.d(store(address, res_m_n(5, n))); // undocumented
+      case 0xAB /*RES 5,(IXY+n),E*/ -> state.e(store(address, res_m_n(5, n))); // undocumented
+      case 0xAC /*RES 5,(IXY+n),H*/ -> state.h(store(address, res_m_n(5, n))); // undocumented
+      case 0xAD /*RES 5,(IXY+n),L*/ -> state.l(store(address, res_m_n(5, n))); // undocumented
+      case 0xAE /*RES 5,(IXY+n)*/ ->
+          bus.cpuWriteMemByte(address, res_m_n(5, n)); // ZUM(236-237) HTP(385-387)
+      case 0xAF /*RES 5,(IXY+n),A*/ -> state.a(store(address, res_m_n(5, n))); // undocumented
+      case 0xB0 /*RES 6,(IXY+n),B*/ -> state.b(store(address, res_m_n(6, n))); // undocumented
+      case 0xB1 /*RES 6,(IXY+n),C*/ -> state.c(store(address, res_m_n(6, n))); // undocumented
+      case 0xB2 /*RES 6,(IXY+n),D*/ -> state.d(store(address, res_m_n(6, n))); // undocumented
+      case 0xB3 /*RES 6,(IXY+n),E*/ -> state.e(store(address, res_m_n(6, n))); // undocumented
+      case 0xB4 /*RES 6,(IXY+n),H*/ -> state.h(store(address, res_m_n(6, n))); // undocumented
+      case 0xB5 /*RES 6,(IXY+n),L*/ -> state.l(store(address, res_m_n(6, n))); // undocumented
+      case 0xB6 /*RES 6,(IXY+n)*/ ->
+          bus.cpuWriteMemByte(address, res_m_n(6, n)); // ZUM(236-237) HTP(385-387)
+      case 0xB7 /*RES 6,(IXY+n),A*/ -> state.a(store(address, res_m_n(6, n))); // undocumented
+      case 0xB8 /*RES 7,(IXY+n),B*/ -> state.b(store(address, res_m_n(7, n))); // undocumented
+      case 0xB9 /*RES 7,(IXY+n),C*/ -> state.c(store(address, res_m_n(7, n))); // undocumented
+      case 0xBA /*RES 7,(IXY+n),D*/ -> state.d(store(address, res_m_n(7, n))); // undocumented
+      case 0xBB /*RES 7,(IXY+n),E*/ -> state.e(store(address, res_m_n(7, n))); // undocumented
+      case 0xBC /*RES 7,(IXY+n),H*/ -> state.h(store(address, res_m_n(7, n))); // undocumented
+      case 0xBD /*RES 7,(IXY+n),L*/ -> state.l(store(address, res_m_n(7, n))); // undocumented
+      case 0xBE /*RES 7,(IXY+n)*/ ->
+          bus.cpuWriteMemByte(address, res_m_n(7, n)); // ZUM(236-237) HTP(385-387)
+      case 0xBF /*RES 7,(IXY+n),A*/ -> state.a(store(address, res_m_n(7, n))); // undocumented
+    }
+  }
+
+  // Decode (0xDD|0xFD, 0xCB, index, 0xC0-0xFF) op-codes.
+  private void decodeXYCBQ3(int address, int opCode, int n) {
+    switch (opCode) {
+      case 0xC0 /*SET 0,(IXY+n),B*/ -> state.b(store(address, set_m_n(0, n))); // undocumented
+      case 0xC1 /*SET 0,(IXY+n),C*/ -> state.c(store(address, set_m_n(0, n))); // undocumented
+      case 0xC2 /*SET 0,(IXY+n),D*/ -> state.d(store(address, set_m_n(0, n))); // undocumented
+      case 0xC3 /*SET 0,(IXY+n),E*/ -> state.e(store(address, set_m_n(0, n))); // undocumented
+      case 0xC4 /*SET 0,(IXY+n),H*/ -> state.h(store(address, set_m_n(0, n))); // undocumented
+      case 0xC5 /*SET 0,(IXY+n),L*/ -> state.l(store(address, set_m_n(0, n))); // undocumented
+      case 0xC6 /*SET 0,(IXY+n)*/ ->
+          bus.cpuWriteMemByte(address, set_m_n(0, n)); // ZUM(234-235) HTP(425-427)
+      case 0xC7 /*SET 0,(IXY+n),A*/ -> state.a(store(address, set_m_n(0, n))); // undocumented
+      case 0xC8 /*SET 1,(IXY+n),B*/ -> state.b(store(address, set_m_n(1, n))); // undocumented
+      case 0xC9 /*SET 1,(IXY+n),C*/ -> state.c(store(address, set_m_n(1, n))); // undocumented
+      case 0xCA /*SET 1,(IXY+n),D*/ -> state.d(store(address, set_m_n(1, n))); // undocumented
+      case 0xCB /*SET 1,(IXY+n),E*/ -> state.e(store(address, set_m_n(1, n))); // undocumented
+      case 0xCC /*SET 1,(IXY+n),H*/ -> state.h(store(address, set_m_n(1, n))); // undocumented
+      case 0xCD /*SET 1,(IXY+n),L*/ -> state.l(store(address, set_m_n(1, n))); // undocumented
+      case 0xCE /*SET 1,(IXY+n)*/ ->
+          bus.cpuWriteMemByte(address, set_m_n(1, n)); // ZUM(234-235) HTP(425-427)
+      case 0xCF /*SET 1,(IXY+n),A*/ -> state.a(store(address, set_m_n(1, n))); // undocumented
+      case 0xD0 /*SET 2,(IXY+n),B*/ -> state.b(store(address, set_m_n(2, n))); // undocumented
+      case 0xD1 /*SET 2,(IXY+n),C*/ -> state.c(store(address, set_m_n(2, n))); // undocumented
+      case 0xD2 /*SET 2,(IXY+n),D*/ -> state.d(store(address, set_m_n(2, n))); // undocumented
+      case 0xD3 /*SET 2,(IXY+n),E*/ -> state.e(store(address, set_m_n(2, n))); // undocumented
+      case 0xD4 /*SET 2,(IXY+n),H*/ -> state.h(store(address, set_m_n(2, n))); // undocumented
+      case 0xD5 /*SET 2,(IXY+n),L*/ -> state.l(store(address, set_m_n(2, n))); // undocumented
+      case 0xD6 /*SET 2,(IXY+n)*/ ->
+          bus.cpuWriteMemByte(address, set_m_n(2, n)); // ZUM(234-235) HTP(425-427)
+      case 0xD7 /*SET 2,(IXY+n),A*/ -> state.a(store(address, set_m_n(2, n))); // undocumented
+      case 0xD8 /*SET 3,(IXY+n),B*/ -> state.b(store(address, set_m_n(3, n))); // undocumented
+      case 0xD9 /*SET 3,(IXY+n),C*/ -> state.c(store(address, set_m_n(3, n))); // undocumented
+      case 0xDA /*SET 3,(IXY+n),D*/ -> state.d(store(address, set_m_n(3, n))); // undocumented
+      case 0xDB /*SET 3,(IXY+n),E*/ -> state.e(store(address, set_m_n(3, n))); // undocumented
+      case 0xDC /*SET 3,(IXY+n),H*/ -> state.h(store(address, set_m_n(3, n))); // undocumented
+      case 0xDD /*SET 3,(IXY+n),L*/ -> state.l(store(address, set_m_n(3, n))); // undocumented
+      case 0xDE /*SET 3,(IXY+n)*/ ->
+          bus.cpuWriteMemByte(address, set_m_n(3, n)); // ZUM(234-235) HTP(425-427)
+      case 0xDF /*SET 3,(IXY+n),A*/ -> state.a(store(address, set_m_n(3, n))); // undocumented
+      case 0xE0 /*SET 4,(IXY+n),B*/ -> state.b(store(address, set_m_n(4, n))); // undocumented
+      case 0xE1 /*SET 4,(IXY+n),C*/ -> state.c(store(address, set_m_n(4, n))); // undocumented
+      case 0xE2 /*SET 4,(IXY+n),D*/ -> state.d(store(address, set_m_n(4, n))); // undocumented
+      case 0xE3 /*SET 4,(IXY+n),E*/ -> state.e(store(address, set_m_n(4, n))); // undocumented
+      case 0xE4 /*SET 4,(IXY+n),H*/ -> state.h(store(address, set_m_n(4, n))); // undocumented
+      case 0xE5 /*SET 4,(IXY+n),L*/ -> state.l(store(address, set_m_n(4, n))); // undocumented
+      case 0xE6 /*SET 4,(IXY+n)*/ ->
+          bus.cpuWriteMemByte(address, set_m_n(4, n)); // ZUM(234-235) HTP(425-427)
+      case 0xE7 /*SET 4,(IXY+n),A*/ -> state.a(store(address, set_m_n(4, n))); // undocumented
+      case 0xE8 /*SET 5,(IXY+n),B*/ -> state.b(store(address, set_m_n(5, n))); // undocumented
+      case 0xE9 /*SET 5,(IXY+n),C*/ -> state.c(store(address, set_m_n(5, n))); // undocumented
+      case 0xEA /*SET 5,(IXY+n),D*/ -> state.d(store(address, set_m_n(5, n))); // undocumented
+      case 0xEB /*SET 5,(IXY+n),E*/ -> state.e(store(address, set_m_n(5, n))); // undocumented
+      case 0xEC /*SET 5,(IXY+n),H*/ -> state.h(store(address, set_m_n(5, n))); // undocumented
+      case 0xED /*SET 5,(IXY+n),L*/ -> state.l(store(address, set_m_n(5, n))); // undocumented
+      case 0xEE /*SET 5,(IXY+n)*/ ->
+          bus.cpuWriteMemByte(address, set_m_n(5, n)); // ZUM(234-235) HTP(425-427)
+      case 0xEF /*SET 5,(IXY+n),A*/ -> state.a(store(address, set_m_n(5, n))); // undocumented
+      case 0xF0 /*SET 6,(IXY+n),B*/ -> state.b(store(address, set_m_n(6, n))); // undocumented
+      case 0xF1 /*SET 6,(IXY+n),C*/ -> state.c(store(address, set_m_n(6, n))); // undocumented
+      case 0xF2 /*SET 6,(IXY+n),D*/ -> state.d(store(address, set_m_n(6, n))); // undocumented
+      case 0xF3 /*SET 6,(IXY+n),E*/ -> state.e(store(address, set_m_n(6, n))); // undocumented
+      case 0xF4 /*SET 6,(IXY+n),H*/ -> state.h(store(address, set_m_n(6, n))); // undocumented
+      case 0xF5 /*SET 6,(IXY+n),L*/ -> state.l(store(address, set_m_n(6, n))); // undocumented
+      case 0xF6 /*SET 6,(IXY+n)*/ ->
+          bus.cpuWriteMemByte(address, set_m_n(6, n)); // ZUM(234-235) HTP(425-427)
+      case 0xF7 /*SET 6,(IXY+n),A*/ -> state.a(store(address, set_m_n(6, n))); // undocumented
+      case 0xF8 /*SET 7,(IXY+n),B*/ -> state.b(store(address, set_m_n(7, n))); // undocumented
+      case 0xF9 /*SET 7,(IXY+n),C*/ -> state.c(store(address, set_m_n(7, n))); // undocumented
+      case 0xFA /*SET 7,(IXY+n),D*/ -> state.d(store(address, set_m_n(7, n))); // undocumented
+      case 0xFB /*SET 7,(IXY+n),E*/ -> state.e(store(address, set_m_n(7, n))); // undocumented
+      case 0xFC /*SET 7,(IXY+n),H*/ -> state.h(store(address, set_m_n(7, n))); // undocumented
+      case 0xFD /*SET 7,(IXY+n),L*/ -> state.l(store(address, set_m_n(7, n))); // undocumented
+      case 0xFE /*SET 7,(IXY+n)*/ ->
+          bus.cpuWriteMemByte(address, set_m_n(7, n)); // ZUM(234-235) HTP(425-427)
+      case 0xFF /*SET 7,(IXY+n),A*/ -> state.a(store(address, set_m_n(7, n))); // undocumented
     }
   }
 
@@ -604,23 +1718,20 @@ public final class Core {
     // do nothing.
   }
 
+  private void halt() { // ZUM(173) HTP(257)
+    state.halted(true);
+    state.pc(state.pc() - 1); // note that the `PC` register is not changed.
+  }
+
   private void ld_a_i() { // ZUM(98) HTP(331)
     int rm = state.i();
-    state.nf(false);
-    state.pf(state.iff2());
-    state.hf(false);
-    state.zf(rm == 0);
-    state.sf((rm & 0x80) != 0);
+    state.f((state.f() & CF) | SZ[rm] | (state.iff2() ? PF : 0));
     state.a(rm);
   }
 
   private void ld_a_r() { // ZUM(99) HTP(333)
     int rm = state.r();
-    state.nf(false);
-    state.pf(state.iff2());
-    state.hf(false);
-    state.zf(rm == 0);
-    state.sf((rm & 0x80) != 0);
+    state.f((state.f() & CF) | SZ[rm] | (state.iff2() ? PF : 0));
     state.a(rm);
   }
 
@@ -644,249 +1755,241 @@ public final class Core {
     bus.cpuWriteMemWord(state.sp(), nn);
   }
 
-  private void ex_csp_rr(IntSupplier rrGet, IntConsumer rrSet) { // ZUM(126-127) HTP(252-255)
-    int nn = rrGet.getAsInt();
-    rrSet.accept(bus.cpuReadMemWord(state.sp()));
+  private void ex_csp_ixy(int prefix1) { // ZUM(126-127) HTP(252-255)
+    int nn = state.ixy(prefix1);
+    state.ixy(prefix1, bus.cpuReadMemWord(state.sp()));
     bus.cpuWriteMemWord(state.sp(), nn);
   }
 
   private void ldi() { // ZUM(128) HTP(352-353)
-    bus.cpuWriteMemByte(state.de(), bus.cpuReadMemByte(state.hl()));
+    int n = bus.cpuReadMemByte(state.hl());
+    bus.cpuWriteMemByte(state.de(), n);
     state.de(state.de() + 1);
     state.hl(state.hl() + 1);
     state.bc(state.bc() - 1);
-
-    state.nf(false);
-    state.pf(state.bc() != 0);
-    state.hf(false);
+    ld_block_flags(n);
   }
 
   private void ldir() { // ZUM(129-130) HTP(354-355)
+    final int repeats = repeats(0xB0, state.hl(), state.de(), true);
+    if (repeats > 0) {
+      bus.cpuCopyMemBytes(state.hl(), state.de(), repeats, true);
+      state.de(state.de() + repeats);
+      state.hl(state.hl() + repeats);
+      state.bc(state.bc() - repeats);
+      repeated(0xB0, repeats);
+    }
     ldi();
     if (state.pf()) {
+      state.cyclesAdd(TStates.REPEAT);
       state.pc(state.pc() - 2); // repeat the instruction.
     }
   }
 
   private void ldd() { // ZUM(131) HTP(348-349)
-    bus.cpuWriteMemByte(state.de(), bus.cpuReadMemByte(state.hl()));
+    int n = bus.cpuReadMemByte(state.hl());
+    bus.cpuWriteMemByte(state.de(), n);
     state.de(state.de() - 1);
     state.hl(state.hl() - 1);
     state.bc(state.bc() - 1);
-
-    state.nf(false);
-    state.pf(state.bc() != 0);
-    state.hf(false);
+    ld_block_flags(n);
   }
 
   private void lddr() { // ZUM(132-133) HTP(350-351)
+    final int repeats = repeats(0xB8, state.hl(), state.de(), false);
+    if (repeats > 0) {
+      bus.cpuCopyMemBytes(state.hl(), state.de(), repeats, false);
+      state.de(state.de() - repeats);
+      state.hl(state.hl() - repeats);
+      state.bc(state.bc() - repeats);
+      repeated(0xB8, repeats);
+    }
     ldd();
     if (state.pf()) {
+      state.cyclesAdd(TStates.REPEAT);
       state.pc(state.pc() - 2); // repeat the instruction.
     }
   }
 
   private void cpi() { // ZUM(134) HTP(231-232)
     int n = bus.cpuReadMemByte(state.hl());
-    int rm = (state.a() - n) & 0xFF;
     state.hl(state.hl() + 1);
     state.bc(state.bc() - 1);
-
-    state.nf(true);
-    state.pf(state.bc() != 0);
-    state.hf((state.a() & 0xF) < (n & 0xF));
-    state.zf(rm == 0);
-    state.sf((rm & 0x80) != 0);
+    cp_block_flags(n);
   }
 
   private void cpir() { // ZUM(135-136) HTP(233-234)
+    final int limit = repeats(0xB1, state.hl(), state.hl(), true);
+    if (limit > 0) {
+      final int repeats = bus.cpuFindMemByte(state.hl(), limit, state.a(), true);
+      state.hl(state.hl() + repeats);
+      state.bc(state.bc() - repeats);
+      repeated(0xB1, repeats);
+    }
     cpi();
     if (!state.zf() && state.pf()) {
+      state.cyclesAdd(TStates.REPEAT);
       state.pc(state.pc() - 2);
     } // repeat the instruction.
   }
 
   private void cpd() { // ZUM(137) HTP(227-228)
     int n = bus.cpuReadMemByte(state.hl());
-    int rm = (state.a() - n) & 0xFF;
     state.hl(state.hl() - 1);
     state.bc(state.bc() - 1);
-
-    state.nf(true);
-    state.pf(state.bc() != 0);
-    state.hf((state.a() & 0xF) < (n & 0xF));
-    state.zf(rm == 0);
-    state.sf((rm & 0x80) != 0);
+    cp_block_flags(n);
   }
 
   private void cpdr() { // ZUM(138-139) HTP(229-230)
+    final int limit = repeats(0xB9, state.hl(), state.hl(), false);
+    if (limit > 0) {
+      final int repeats = bus.cpuFindMemByte(state.hl(), limit, state.a(), false);
+      state.hl(state.hl() - repeats);
+      state.bc(state.bc() - repeats);
+      repeated(0xB9, repeats);
+    }
     cpd();
     if (!state.zf() && state.pf()) {
+      state.cyclesAdd(TStates.REPEAT);
       state.pc(state.pc() - 2);
     } // repeat the instruction.
   }
 
+  /**
+   * How many times the block instruction {@code opCode} (`0xED`-prefixed), which is executing, can
+   * repeat in bulk before it's executed as usual for the last time, which sets the flags exactly as
+   * executing every repeat one at a time would have. So it must repeat every time: `BC` mustn't
+   * reach 0, `HL` and {@code de} mustn't wrap around, and `LDIR`/`LDDR` mustn't overwrite itself.
+   * And it mustn't repeat past the limits of `run` or `runUntil`, or at all if its address is
+   * trapped.
+   */
+  private int repeats(final int opCode, final int hl, final int de, final boolean increment) {
+    final int pc = (state.pc() - 2) & 0xFFFF;
+    if (repeatLimit <= 0L || (trapped[pc >>> 6] & (1L << pc)) != 0) {
+      return 0;
+    }
+    final int time = TStates.ED[opCode];
+    // each repeat must start before `cycleLimit`: the current time is already counted.
+    long repeats = Math.floorDiv(cycleLimit - state.cycles() + time - 1, time + TStates.REPEAT);
+    repeats = Math.min(repeats, repeatLimit);
+    repeats = Math.min(repeats, (state.bc() - 1) & 0xFFFF);
+    repeats = Math.min(repeats, increment ? 0xFFFF - Math.max(hl, de) : Math.min(hl, de));
+    if ((opCode & 0x01) == 0) { // `LDIR` or `LDDR`.
+      for (int i = 0; i < 2; ++i) {
+        final int address = (pc + i) & 0xFFFF;
+        if (increment ? address >= de : address <= de) {
+          repeats = Math.min(repeats, Math.abs(address - de));
+        }
+      }
+    }
+    return (int) Math.max(repeats, 0L);
+  }
+
+  /** Account for the block instruction {@code opCode} having repeated {@code repeats} times. */
+  private void repeated(final int opCode, final int repeats) {
+    state.rAdd(repeats);
+    state.cyclesAdd((TStates.ED[opCode] + TStates.REPEAT) * repeats);
+    repeated += repeats;
+  }
+
   private void add_a_n(int n) { // ZUM(140-145) HTP(194-202)
-    int ru = state.a() + n;
-    int rm = ru & 0xFF;
-    state.cf(rm != ru);
-    state.nf(false);
-    state.pf(((state.a() ^ ~n) & (state.a() ^ rm)) >= 0x80);
-    // state.hf((state.a() & 0xF) + (n & 0xF) >= 0x10);
-    state.hf(((state.a() ^ n ^ rm) & 0x10) != 0);
-    state.zf(rm == 0);
-    state.sf((rm & 0x80) != 0);
-    state.a(rm);
+    int a = state.a();
+    int ru = a + n;
+    state.flagsAdd(a, n, ru);
+    state.a(ru);
   }
 
   private void adc_a_n(int n) { // ZUM(146-147) HTP(190-191)
-    int ru = state.a() + n + (state.cf() ? 1 : 0);
-    int rm = ru & 0xFF;
-    state.cf(rm != ru);
-    state.nf(false);
-    state.pf(((state.a() ^ ~n) & (state.a() ^ rm)) >= 0x80);
-    state.hf(((state.a() ^ n ^ rm) & 0x10) != 0);
-    state.zf(rm == 0);
-    state.sf((rm & 0x80) != 0);
-    state.a(rm);
+    int a = state.a();
+    int ru = a + n + (state.cf() ? 1 : 0);
+    state.flagsAdd(a, n, ru);
+    state.a(ru);
   }
 
   private void sub_n(int n) { // ZUM(148-149) HTP(434-435)
-    int ru = state.a() - n;
-    int rm = ru & 0xFF;
-    state.cf(rm != ru);
-    state.nf(true);
-    state.pf(((state.a() ^ n) & (state.a() ^ rm)) >= 0x80);
-    // state.hf((state.a() & 0xF) < (n & 0xF));
-    state.hf(((state.a() ^ n ^ rm) & 0x10) != 0);
-    state.zf(rm == 0);
-    state.sf((rm & 0x80) != 0);
-    state.a(rm);
+    int a = state.a();
+    int ru = a - n;
+    state.flagsSub(a, n, ru);
+    state.a(ru);
   }
 
   private void sbc_a_n(int n) { // ZUM(150-151) HTP(420-421)
-    int ru = state.a() - n - (state.cf() ? 1 : 0);
-    int rm = ru & 0xFF;
-    state.cf(rm != ru);
-    state.nf(true);
-    state.pf(((state.a() ^ n) & (state.a() ^ rm)) >= 0x80);
-    state.hf(((state.a() ^ n ^ rm) & 0x10) != 0);
-    state.zf(rm == 0);
-    state.sf((rm & 0x80) != 0);
-    state.a(rm);
+    int a = state.a();
+    int ru = a - n - (state.cf() ? 1 : 0);
+    state.flagsSub(a, n, ru);
+    state.a(ru);
   }
 
   private void and_n(int n) { // ZUM(152-153) HTP(209-210)
     int rm = state.a() & n;
-    state.cf(false);
-    state.nf(false);
-    state.pf(parity(rm));
-    state.hf(true);
-    state.zf(rm == 0);
-    state.sf((rm & 0x80) != 0);
+    state.flagsSzp(rm, HF);
     state.a(rm);
   }
 
   private void or_n(int n) { // ZUM(154-155) HTP(360-361)
     int rm = state.a() | n;
-    state.cf(false);
-    state.nf(false);
-    state.pf(parity(rm));
-    state.hf(false);
-    state.zf(rm == 0);
-    state.sf((rm & 0x80) != 0);
+    state.flagsSzp(rm, 0);
     state.a(rm);
   }
 
   private void xor_n(int n) { // ZUM(156-157) HTP(436-437)
     int rm = state.a() ^ n;
-    state.cf(false);
-    state.nf(false);
-    state.pf(parity(rm));
-    state.hf(false);
-    state.zf(rm == 0);
-    state.sf((rm & 0x80) != 0);
+    state.flagsSzp(rm, 0);
     state.a(rm);
   }
 
   private void cp_n(int n) { // ZUM(158-159) HTP(225-226)
-    int ru = state.a() - n;
-    int rm = ru & 0xFF;
-    state.cf(rm != ru);
-    state.nf(true);
-    state.pf(((state.a() ^ n) & (state.a() ^ rm)) >= 0x80);
-    // state.hf((state.a() & 0xF) < (n & 0xF));
-    state.hf(((state.a() ^ n ^ rm) & 0x10) != 0);
-    state.zf(rm == 0);
-    state.sf((rm & 0x80) != 0);
+    int a = state.a();
+    state.flagsCp(a, n, a - n);
   }
 
   private int inc_n(int n) { // ZUM(160-163) HTP(264,267-271)
     int rm = (n + 1) & 0xFF;
-    state.nf(false);
-    state.pf(n == 0x7F); // 0x7F -> 0x80 is overflow
-    state.hf((n & 0x0F) == 0x0F);
-    state.zf(rm == 0);
-    state.sf((rm & 0x80) != 0);
+    state.flagsInc(rm);
     return rm;
   }
 
   private int dec_n(int n) { // ZUM(164-165) HTP(238-239)
     int rm = (n - 1) & 0xFF;
-    state.nf(true);
-    state.pf(n == 0x80); // 0x80 -> 0x7F is overflow
-    state.hf((n & 0x0F) == 0x00);
-    state.zf(rm == 0);
-    state.sf((rm & 0x80) != 0);
+    state.flagsDec(rm);
     return rm;
   }
 
   private void daa() { // ZUM(166-167) HTP(236-237)
     int ru = state.a();
-    int ff = (state.hf() || (ru & 0x0F) > 0x09) ? 0x06 : 0x00;
-    if (state.cf() || ru > 0x9F || (ru > 0x8F && (ru & 0x0F) > 0x09)) {
+    int f = state.f();
+    int ff = ((f & HF) != 0 || (ru & 0x0F) > 0x09) ? 0x06 : 0x00;
+    if ((f & CF) != 0 || ru > 0x9F || (ru > 0x8F && (ru & 0x0F) > 0x09)) {
       ff |= 0x60;
     }
-    int rm = (state.nf() ? (ru - ff) : (ru + ff)) & 0xFF;
-    if (ru > 0x99) {
-      state.cf(true);
-    }
-    state.pf(parity(rm));
-    state.hf(state.nf() ? (ff & 0x0F) > (ru & 0x0F) : (ru & 0x0F) + (ff & 0xF) >= 0x10);
-    state.zf(rm == 0);
-    state.sf((rm & 0x80) != 0);
+    boolean subtract = (f & NF) != 0;
+    int rm = (subtract ? (ru - ff) : (ru + ff)) & 0xFF;
+    int carry = (ru > 0x99) ? CF : (f & CF);
+    boolean half = subtract ? (ff & 0x0F) > (ru & 0x0F) : (ru & 0x0F) + (ff & 0xF) >= 0x10;
+    state.f(SZP[rm] | (f & NF) | (half ? HF : 0) | carry);
     state.a(rm);
   }
 
   private void cpl() { // ZUM(168) HTP(235)
-    state.nf(true);
-    state.hf(true);
-    state.a(state.a() ^ 0xFF);
+    int rm = state.a() ^ 0xFF;
+    state.f((state.f() & (SF | ZF | PF | CF)) | HF | NF | (rm & (YF | XF)));
+    state.a(rm);
   }
 
   private void neg() { // ZUM(169) HTP(358)
-    int ru = 0x100 - state.a();
-    int rm = ru & 0xFF;
-    state.cf(rm != 0x00);
-    state.nf(true);
-    state.pf(rm == 0x80); // i.e. state.a() == 0x80 for overflow
-    state.hf((state.a() & 0x0F) != 0x00);
-    state.zf(rm == 0x00);
-    state.sf((rm & 0x80) != 0);
-    state.a(rm);
+    int n = state.a();
+    int ru = -n;
+    state.flagsSub(0, n, ru);
+    state.a(ru);
   }
 
   private void ccf() { // ZUM(170) HTP(224)
-    boolean cf = state.cf();
-    state.cf(!cf);
-    state.nf(false);
-    state.hf(cf);
+    int f = state.f();
+    state.f((f & (SF | ZF | PF)) | ((f & CF) << 4) | ((f & CF) ^ CF) | (state.a() & (YF | XF)));
   }
 
   private void scf() { // ZUM(171) HTP(424)
-    state.cf(true);
-    state.nf(false);
-    state.hf(false);
+    state.f((state.f() & (SF | ZF | PF)) | CF | (state.a() & (YF | XF)));
   }
 
   private void di() { // ZUM(174) HTP(244)
@@ -902,45 +2005,38 @@ public final class Core {
   }
 
   private void add_hl_nn(int nn) { // ZUM(179) HTP(203-204)
-    int ru = state.hl() + nn;
+    int hl = state.hl();
+    int ru = hl + nn;
     int rm = ru & 0xFFFF;
-    state.cf(rm != ru);
-    state.nf(false);
-    state.hf((state.hl() & 0xFFF) + (nn & 0xFFF) >= 0x1000);
+    state.f(add_nn_flags(hl, nn, ru));
     state.hl(rm);
   }
 
-  private void add_rr_nn(
-      IntSupplier rrGet, IntConsumer rrSet, int nn) { // ZUM(182-183) HTP(205-208)
-    int ru = rrGet.getAsInt() + nn;
+  private void add_ixy_nn(int prefix1, int nn) { // ZUM(182-183) HTP(205-208)
+    int rr = state.ixy(prefix1);
+    int ru = rr + nn;
     int rm = ru & 0xFFFF;
-    state.cf(rm != ru);
-    state.nf(false);
-    state.hf((rrGet.getAsInt() & 0xFFF) + (nn & 0xFFF) >= 0x1000);
-    rrSet.accept(rm);
+    state.f(add_nn_flags(rr, nn, ru));
+    state.ixy(prefix1, rm);
   }
 
   private void adc_hl_nn(int nn) { // ZUM(180) HTP(192-193)
-    int ru = state.hl() + nn + (state.cf() ? 1 : 0);
+    int hl = state.hl();
+    int ru = hl + nn + (state.cf() ? 1 : 0);
     int rm = ru & 0xFFFF;
-    state.cf(rm != ru);
-    state.nf(false);
-    state.pf(((state.hl() ^ ~nn) & (state.hl() ^ rm)) >= 0x8000);
-    state.hf(((state.hl() ^ nn ^ rm) & 0x1000) != 0);
-    state.zf(rm == 0);
-    state.sf((rm & 0x8000) != 0);
+    int f = ((rm >>> 8) & (SF | YF | XF)) | (rm == 0 ? ZF : 0) | ((ru >>> 16) & CF);
+    f |= (((hl ^ ~nn) & (hl ^ rm)) & 0x8000) != 0 ? PF : 0;
+    state.f(f | (((hl ^ nn ^ rm) >>> 8) & HF));
     state.hl(rm);
   }
 
   private void sbc_hl_nn(int nn) { // ZUM(181) HTP(422-423)
-    int ru = state.hl() - nn - (state.cf() ? 1 : 0);
+    int hl = state.hl();
+    int ru = hl - nn - (state.cf() ? 1 : 0);
     int rm = ru & 0xFFFF;
-    state.cf(rm != ru);
-    state.nf(true);
-    state.pf(((state.hl() ^ nn) & (state.hl() ^ rm)) >= 0x8000);
-    state.hf(((state.hl() ^ nn ^ rm) & 0x1000) != 0);
-    state.zf(rm == 0);
-    state.sf((rm & 0x8000) != 0);
+    int f = ((rm >>> 8) & (SF | YF | XF)) | (rm == 0 ? ZF : 0) | ((ru >>> 16) & CF) | NF;
+    f |= (((hl ^ nn) & (hl ^ rm)) & 0x8000) != 0 ? PF : 0;
+    state.f(f | (((hl ^ nn ^ rm) >>> 8) & HF));
     state.hl(rm);
   }
 
@@ -953,135 +2049,80 @@ public final class Core {
   }
 
   private void rlca() { // ZUM(190) HTTP(399)
-    boolean bit7 = (state.a() & 0x80) != 0;
-    int rm = ((state.a() << 1) | (bit7 ? 1 : 0)) & 0xFF;
-    state.cf(bit7);
-    state.nf(false);
-    state.hf(false);
+    int a = state.a();
+    int rm = ((a << 1) | (a >>> 7)) & 0xFF;
+    state.f((state.f() & (SF | ZF | PF)) | (rm & (YF | XF)) | (a >>> 7));
     state.a(rm);
   }
 
   private void rla() { // ZUM(191) HTP(398)
-    boolean bit7 = (state.a() & 0x80) != 0;
-    int rm = ((state.a() << 1) | (state.cf() ? 1 : 0)) & 0xFF;
-    state.cf(bit7);
-    state.nf(false);
-    state.hf(false);
+    int a = state.a();
+    int f = state.f();
+    int rm = ((a << 1) | (f & CF)) & 0xFF;
+    state.f((f & (SF | ZF | PF)) | (rm & (YF | XF)) | (a >>> 7));
     state.a(rm);
   }
 
   private void rrca() { // ZUM(192) HTP(415)
-    boolean bit0 = (state.a() & 0x1) != 0;
-    int rm = (bit0 ? 0x80 : 0) | (state.a() >>> 1);
-    state.cf(bit0);
-    state.nf(false);
-    state.hf(false);
+    int a = state.a();
+    int rm = ((a & 0x01) << 7) | (a >>> 1);
+    state.f((state.f() & (SF | ZF | PF)) | (rm & (YF | XF)) | (a & CF));
     state.a(rm);
   }
 
   private void rra() { // ZUM(193) HTP(412)
-    boolean bit0 = (state.a() & 0x1) != 0;
-    int rm = (state.cf() ? 0x80 : 0) | (state.a() >>> 1);
-    state.cf(bit0);
-    state.nf(false);
-    state.hf(false);
+    int a = state.a();
+    int f = state.f();
+    int rm = ((f & CF) << 7) | (a >>> 1);
+    state.f((f & (SF | ZF | PF)) | (rm & (YF | XF)) | (a & CF));
     state.a(rm);
   }
 
   private int rlc_n(int n) { // ZUM(194-201) HTP(400-407)
-    boolean bit7 = (n & 0x80) != 0;
-    int rm = ((n << 1) | (bit7 ? 1 : 0)) & 0xFF;
-    state.cf(bit7);
-    state.nf(false);
-    state.pf(parity(rm));
-    state.hf(false);
-    state.zf(rm == 0);
-    state.sf((rm & 0x80) != 0);
+    int rm = ((n << 1) | (n >>> 7)) & 0xFF;
+    state.flagsSzp(rm, n >>> 7);
     return rm;
   }
 
   private int rl_n(int n) { // ZUM(202-204) HTP(396-397)
-    boolean bit7 = (n & 0x80) != 0;
     int rm = ((n << 1) | (state.cf() ? 1 : 0)) & 0xFF;
-    state.cf(bit7);
-    state.nf(false);
-    state.pf(parity(rm));
-    state.hf(false);
-    state.zf(rm == 0);
-    state.sf((rm & 0x80) != 0);
+    state.flagsSzp(rm, n >>> 7);
     return rm;
   }
 
   private int rrc_n(int n) { // ZUM(205-207) HTP(413-414)
-    boolean bit0 = (n & 0x1) != 0;
-    int rm = (bit0 ? 0x80 : 0) | (n >>> 1);
-    state.cf(bit0);
-    state.nf(false);
-    state.pf(parity(rm));
-    state.hf(false);
-    state.zf(rm == 0);
-    state.sf((rm & 0x80) != 0);
+    int rm = ((n & 0x01) << 7) | (n >>> 1);
+    state.flagsSzp(rm, n & CF);
     return rm;
   }
 
   private int rr_n(int n) { // ZUM(208-210) HTTP(410-411)
-    boolean bit0 = (n & 0x1) != 0;
     int rm = (state.cf() ? 0x80 : 0) | (n >>> 1);
-    state.cf(bit0);
-    state.nf(false);
-    state.pf(parity(rm));
-    state.hf(false);
-    state.zf(rm == 0);
-    state.sf((rm & 0x80) != 0);
+    state.flagsSzp(rm, n & CF);
     return rm;
   }
 
   private int sla_n(int n) { // ZUM(211-213) HTP(428-429)
-    boolean bit7 = (n & 0x80) != 0;
     int rm = (n << 1) & 0xFF;
-    state.cf(bit7);
-    state.nf(false);
-    state.pf(parity(rm));
-    state.hf(false);
-    state.zf(rm == 0);
-    state.sf((rm & 0x80) != 0);
+    state.flagsSzp(rm, n >>> 7);
     return rm;
   }
 
   private int sra_n(int n) { // ZUM(214-216) HTP(430-431)
-    boolean bit7 = (n & 0x80) != 0;
-    boolean bit0 = (n & 0x01) != 0;
-    int rm = (bit7 ? 0x80 : 0) | (n >>> 1) & 0xFF;
-    state.cf(bit0);
-    state.nf(false);
-    state.pf(parity(rm));
-    state.hf(false);
-    state.zf(rm == 0);
-    state.sf(bit7);
+    int rm = (n & 0x80) | (n >>> 1);
+    state.flagsSzp(rm, n & CF);
     return rm;
   }
 
   private int sl1_n(int n) { // undocumented
-    boolean bit7 = (n & 0x80) != 0;
     int rm = ((n << 1) & 0xFF) | 0x01; // the `| 0x01` is why it's undocumented !!
-    state.cf(bit7);
-    state.nf(false);
-    state.pf(parity(rm));
-    state.hf(false);
-    state.zf(false);
-    state.sf((rm & 0x80) != 0);
+    state.flagsSzp(rm, n >>> 7);
     return rm;
   }
 
   private int srl_n(int n) { // ZUM(217-219) HTP(432-433)
-    boolean bit0 = (n & 0x01) != 0;
-    int rm = (n >>> 1) & 0xFF;
-    state.cf(bit0);
-    state.nf(false);
-    state.pf(parity(rm));
-    state.hf(false);
-    state.zf(rm == 0);
-    state.sf(false);
+    int rm = n >>> 1;
+    state.flagsSzp(rm, n & CF);
     return rm;
   }
 
@@ -1089,11 +2130,7 @@ public final class Core {
     int n = bus.cpuReadMemByte(state.hl());
     bus.cpuWriteMemByte(state.hl(), ((n & 0x0F) << 4) | (state.a() & 0x0F));
     int rm = (state.a() & 0xF0) | ((n & 0xF0) >>> 4);
-    state.nf(false);
-    state.pf(parity(rm));
-    state.hf(false);
-    state.zf(rm == 0);
-    state.sf((rm & 0x80) != 0);
+    state.flagsSzp(rm, state.cf() ? CF : 0);
     state.a(rm);
   }
 
@@ -1101,21 +2138,21 @@ public final class Core {
     int n = bus.cpuReadMemByte(state.hl());
     bus.cpuWriteMemByte(state.hl(), ((state.a() & 0x0F) << 4) | ((n & 0xF0) >>> 4));
     int rm = (state.a() & 0xF0) | (n & 0x0F);
-    state.nf(false);
-    state.pf(parity(rm));
-    state.hf(false);
-    state.zf(rm == 0);
-    state.sf((rm & 0x80) != 0);
+    state.flagsSzp(rm, state.cf() ? CF : 0);
     state.a(rm);
   }
 
   private void bit_m_n(int m, int n) { // ZUM(224-231) HTP(211-218)
-    boolean bit = (n & (1 << (m & 0x07))) != 0;
-    state.nf(false);
-    state.pf(!bit);
-    state.hf(true);
-    state.zf(!bit);
-    state.sf(m == 7 && bit);
+    bit_m_n(m, n, n);
+  }
+
+  /**
+   * `BIT m,n` where the undocumented X and Y flags come from somewhere other than the operand. For
+   * `BIT m,(IXY+n)` that is the high byte of the address `IXY+n`.
+   */
+  private void bit_m_n(int m, int n, int xy) {
+    int rm = n & (1 << (m & 0x07));
+    state.f((state.f() & CF) | HF | (rm == 0 ? (ZF | PF) : (rm & SF)) | (xy & (YF | XF)));
   }
 
   private int set_m_n(int m, int n) { // ZUM(232-235) HTP(425-427)
@@ -1127,7 +2164,7 @@ public final class Core {
   }
 
   private void jp() { // ZUM(238) HTP(284)
-    state.pc(bus.cpuReadMemWord(state.pc()));
+    state.pc(fetchWord());
   }
 
   private void jp_t(boolean t) { // ZUM(239-240) HTP(282-283)
@@ -1144,6 +2181,7 @@ public final class Core {
 
   private void jr_t(boolean t) { // ZUM(242-249) HTP(288-289
     if (t) {
+      state.cyclesAdd(TStates.JR_TAKEN);
       jr();
     } else {
       state.pcInc1();
@@ -1153,6 +2191,7 @@ public final class Core {
   private void djnz() { // ZUM(253-254) HTP(245-246)
     state.b(state.b() - 1);
     if (state.b() != 0) {
+      state.cyclesAdd(TStates.JR_TAKEN);
       jr();
     } else {
       state.pcInc1();
@@ -1160,13 +2199,14 @@ public final class Core {
   }
 
   private void call() { // ZUM(255-256) HTP(222-223)
-    int address = bus.cpuReadMemWord(state.pcInc2());
+    int address = fetchWord();
     bus.cpuWriteMemWord(state.spDec2(), state.pc());
     state.pc(address);
   }
 
   private void call_t(boolean t) { // ZUM(257-259) HTP(219-221)
     if (t) {
+      state.cyclesAdd(TStates.CALL_TAKEN);
       call();
     } else {
       state.pcInc2();
@@ -1179,6 +2219,7 @@ public final class Core {
 
   private void ret_t(boolean t) { // ZUM(261-262) HTP(390-391)
     if (t) {
+      state.cyclesAdd(TStates.RET_TAKEN);
       ret();
     }
   }
@@ -1210,6 +2251,7 @@ public final class Core {
   private void inir() { // ZUM(273-274) HTP(280-281)
     ini();
     if (!state.zf()) {
+      state.cyclesAdd(TStates.REPEAT);
       state.pc(state.pc() - 2);
     } // repeat the instruction.
   }
@@ -1226,6 +2268,7 @@ public final class Core {
   private void indr() { // ZUM(277-278) HTP(276-277)
     ind();
     if (!state.zf()) {
+      state.cyclesAdd(TStates.REPEAT);
       state.pc(state.pc() - 2);
     } // repeat the instruction.
   }
@@ -1241,6 +2284,7 @@ public final class Core {
   private void otir() { // ZUM(283-284) HTP(364-365)
     outi();
     if (!state.zf()) {
+      state.cyclesAdd(TStates.REPEAT);
       state.pc(state.pc() - 2);
     } // repeat the instruction.
   }
@@ -1256,6 +2300,7 @@ public final class Core {
   private void otdr() { // ZUM(286-287) HTP(362-363)
     outd();
     if (!state.zf()) {
+      state.cyclesAdd(TStates.REPEAT);
       state.pc(state.pc() - 2);
     } // repeat the instruction.
   }
@@ -1265,160 +2310,96 @@ public final class Core {
   // ------------------------------------------------------------------
 
   /**
-   * Used by non-indexed instructions to retrieve the value of an 8-bit register.
-   *
-   * @param r The register to get as a bit-pattern (`(HL)` or `M` pseudo-register is 0b1110).
-   * @return The value gotten from the register.
-   */
-  private int getRegister(int r) {
-    return switch (r & 0x07) {
-      case 0x00 -> state.b();
-      case 0x01 -> state.c();
-      case 0x02 -> state.d();
-      case 0x03 -> state.e();
-      case 0x04 -> state.h();
-      case 0x05 -> state.l();
-      case 0x06 -> bus.cpuReadMemByte(state.hl());
-      case 0x07 -> state.a();
-      default -> 0; // unreachable
-    };
-  }
-
-  /**
-   * Used by non-indexed instructions to set an 8-bit register.
-   *
-   * @param r The register to set as a bit-pattern (`(HL)` or `M` pseudo-register is 0b1110).
-   * @param n THe value to set into the register.
-   */
-  private void setRegister(int r, int n) {
-    switch (r & 0x07) {
-      case 0x00 -> state.b(n);
-      case 0x01 -> state.c(n);
-      case 0x02 -> state.d(n);
-      case 0x03 -> state.e(n);
-      case 0x04 -> state.h(n);
-      case 0x05 -> state.l(n);
-      case 0x06 -> bus.cpuWriteMemByte(state.hl(), n);
-      case 0x07 -> state.a(n);
-    }
-  }
-
-  /**
-   * Used by some of the 0xDD,0xCB or 0xFD,0xCB prefixed instructions (undocumented ones) to set
+   * Used by some of the 0xDD,0xCB or 0xFD,0xCB prefixed instructions (undocumented ones) that set
    * another register, in addition to setting the memory value at `(IXY+n)`.
    *
-   * @param r The register to set as a bit-pattern (`(IXY+n)` is ignored as it will be set anyway).
-   * @param n THe value to set into the register (ignored for `(IX+n)` 0b1110).
+   * @param address The address of `(IXY+n)`.
+   * @param n The value to write to memory.
+   * @return The value written, so it can also be set into the additional register.
    */
-  private void setAdditionalRegister(int address, int r, int n) {
+  private int store(int address, int n) {
     bus.cpuWriteMemByte(address, n);
-    switch (r & 0x07) {
-      case 0x00 -> state.b(n);
-      case 0x01 -> state.c(n);
-      case 0x02 -> state.d(n);
-      case 0x03 -> state.e(n);
-      case 0x04 -> state.h(n);
-      case 0x05 -> state.l(n);
-      case 0x06 -> {}
-      case 0x07 -> state.a(n);
-    }
+    return n;
   }
 
   /**
-   * Arithmetic and logical operations that involve the accumulator (or `A` register).
+   * Retrieve the MSB (byte) of `IX` or `IY`.
    *
-   * @param opCode bits 3-5 determine which operation to select.
-   * @param n the parameter to the operation that is not the `A` register.
+   * @param prefix1 0xDD for `IX` or 0xFD for `IY`
+   * @return high 8-bits from the 16-bit register.
    */
-  private void alu_acc_n(int opCode, int n) {
-    switch ((opCode & 0x38) >> 3) {
-      case 0x00 /*ADD A,n*/ -> add_a_n(n); // ZUM(140-141) HTP(201-202)
-      case 0x01 /*ADC A,n*/ -> adc_a_n(n); // ZUM(146-147) HTP(190-191)
-      case 0x02 /*SUB n*/ -> sub_n(n); // ZUM(148-149) HTP(434-435)
-      case 0x03 /*SBC A,n*/ -> sbc_a_n(n); // ZUM(150-151) HTP(420-421)
-      case 0x04 /*AND n*/ -> and_n(n); // ZUM(152-153) HTP(209-210)
-      case 0x05 /*XOR n*/ -> xor_n(n); // ZUM(156-157) HTP(436-437)
-      case 0x06 /*OR n*/ -> or_n(n); // ZUM(154-155) HTP(360-361)
-      case 0x07 /*CP n*/ -> cp_n(n); // ZUM(158-159) HTP(225-226)
-    }
+  private int ixyh(int prefix1) {
+    return (state.ixy(prefix1) & 0xFF00) >>> 8;
   }
 
   /**
-   * Shift and rotate operations that involve 8 bit values.
+   * Retrieve the LSB (byte) of `IX` or `IY`.
    *
-   * @param opCode bits 3-5 determine which operation to select.
-   * @param n the parameter to the operation.
-   * @return the result of performing the operation on the parameter.
+   * @param prefix1 0xDD for `IX` or 0xFD for `IY`
+   * @return low 8-bits from the 16-bit register.
    */
-  private int shf_rot_n(int opCode, int n) {
-    return switch ((opCode & 0x38) >> 3) {
-      case 0x00 /*RLC n*/ -> rlc_n(n); // ZUM(194-195) HTP(400-401)
-      case 0x01 /*RRC n*/ -> rrc_n(n); // ZUM(205-207) HTP(413-414)
-      case 0x02 /*RL n*/ -> rl_n(n); // ZUM(202-204) HTP(396-397)
-      case 0x03 /*RR n*/ -> rr_n(n); // ZUM(208-210) HTP(410-411)
-      case 0x04 /*SLA n*/ -> sla_n(n); // ZUM(211-213) HTP(428-429)
-      case 0x05 /*SRA n*/ -> sra_n(n); // ZUM(214-216) HTP(430-431)
-      case 0x06 /*SL1 n*/ -> sl1_n(n); // undocumented
-      case 0x07 /*SRL n*/ -> srl_n(n); // ZUM(217-219) HTP(432-433)
-      default -> 0; // unreachable
-    };
+  private int ixyl(int prefix1) {
+    return state.ixy(prefix1) & 0xFF;
   }
 
   /**
-   * Retrieve the MSB (byte) from a 16-bit value.
+   * Set the MSB (byte) of `IX` or `IY`.
    *
-   * @param rrGet IntSupplier for 16-bit register in question
-   * @return high 8-bits from the 16-bit value.
+   * @param prefix1 0xDD for `IX` or 0xFD for `IY`
    */
-  private int high(IntSupplier rrGet) {
-    return (rrGet.getAsInt() & 0xFF00) >>> 8;
+  private void ixyh(int prefix1, int n) {
+    state.ixy(prefix1, ((n & 0xFF) << 8) | (state.ixy(prefix1) & 0xFF));
   }
 
   /**
-   * Retrieve the LSB (byte) from a 16-bit value.
+   * Set the LSB (byte) of `IX` or `IY`.
    *
-   * @param rrGet IntSupplier for 16-bit register in question
-   * @return low 8-bits from the 16-bit value.
+   * @param prefix1 0xDD for `IX` or 0xFD for `IY`
    */
-  private int low(IntSupplier rrGet) {
-    return rrGet.getAsInt() & 0xFF;
+  private void ixyl(int prefix1, int n) {
+    state.ixy(prefix1, (state.ixy(prefix1) & 0xFF00) | (n & 0xFF));
   }
 
   /**
-   * Set the MSB (byte) in the 16-bit value.
-   *
-   * @param rrGet IntSupplier for 16-bit register in question
-   * @param rrSet IntConsumer for 16-bit register in question
+   * @return the address added to the next byte in memory as a signed offset (in the range -128 to
+   *     +127). For example, `JR n` or `DJNZ n` (address would be `PC + 1`) or `LD A,(IX+n)`
+   *     (address would be `IX`) might use this function during instruction decoding.
    */
-  private void high(IntSupplier rrGet, IntConsumer rrSet, int n) {
-    rrSet.accept(((n & 0xFF) << 8) | (rrGet.getAsInt() & 0xFF));
+  private int indexed(int nn) {
+    return (nn + (int) (byte) fetchByte()) & 0xFFFF;
   }
 
   /**
-   * Set the LSB (byte) in the 16-bit value.
-   *
-   * @param rrGet IntSupplier for 16-bit register in question
-   * @param rrSet IntConsumer for 16-bit register in question
+   * Flags for `LDI` and `LDD`. The undocumented X and Y flags are bits 3 and 1 of `A` plus the byte
+   * that was transferred.
    */
-  private void low(IntSupplier rrGet, IntConsumer rrSet, int n) {
-    rrSet.accept((rrGet.getAsInt() & 0xFF00) | (n & 0xFF));
+  private void ld_block_flags(int n) {
+    int an = state.a() + n;
+    int pv = state.bc() != 0 ? PF : 0;
+    state.f((state.f() & (SF | ZF | CF)) | pv | (an & XF) | ((an << 4) & YF));
   }
 
   /**
-   * @return the address added to the next byte in memory as a signed offset (in the range -128 to
-   *     +127). For example, `JR n` or `DJNZ n` (address would be `PC + 1`) or `LD A,(IX+n)`
-   *     (address would be `IX`) might use this function during instruction decoding.
+   * Flags for `CPI` and `CPD`. The undocumented X and Y flags are bits 3 and 1 of `A - n - H`,
+   * where `H` is the half-carry from the comparison.
    */
-  private int indexed(int nn) {
-    return (nn + (int) (byte) bus.cpuReadMemByte(state.pcInc1())) & 0xFFFF;
+  private void cp_block_flags(int n) {
+    int a = state.a();
+    int rm = (a - n) & 0xFF;
+    int hf = (a ^ n ^ rm) & HF;
+    int xy = rm - (hf >>> 4);
+    int pv = state.bc() != 0 ? PF : 0;
+    state.f((state.f() & CF) | NF | (SZ[rm] & (SF | ZF)) | hf | pv | (xy & XF) | ((xy << 4) & YF));
   }
 
   /**
-   * @return true if n has even parity, false if n has odd parity (only rightmost 8 bits of n are
-   *     considered). Note this is the reverse of what you might normally expect because that is how
-   *     the Z80's P/V condition bit works.
+   * Flags for the 16-bit `ADD HL,nn` and `ADD IXY,nn`, which leave `S`, `Z` and `P/V` alone. The
+   * undocumented X and Y flags come from the high byte of the result.
+   *
+   * @param ru the unmasked 17-bit result.
    */
-  private boolean parity(int n) {
-    return ((0x6996 >>> ((n ^ (n >>> 4)) & 0x0F)) & 1) == 0;
+  private int add_nn_flags(int rr, int nn, int ru) {
+    int f = (state.f() & (SF | ZF | PF)) | ((ru >>> 8) & (YF | XF)) | ((ru >>> 16) & CF);
+    return f | (((rr ^ nn ^ ru) >>> 8) & HF);
   }
 }
@@ -0,0 +1,54 @@
+package com.davidconneely.eightbit.z80;
+
+import com.davidconneely.eightbit.IBus;
+
+/**
+ * The instruction at each `PC` address, as {@link Core} fetched it the first time it executed it,
+ * so it doesn't fetch the op-code (with the bus's M1 behaviour) and the bytes after it through the
+ * bus every time. Each record packs the op-code as fetched, which selects the handler, and the next
+ * three bytes: the operands, or the op-code and operands of a prefixed instruction. That covers
+ * every instruction except a run of redundant prefixes, whose extra bytes are read from the bus.
+ *
+ * <p>A CPU write discards the records of the instructions that could include the written byte, and
+ * addresses the bus says aren't cacheable (see {@link IBus#isCacheable(int)}) are never recorded.
+ */
+final class DecodeCache {
+  /** The number of instruction bytes in each record. */
+  static final int LENGTH = 4;
+
+  private static final long VALID = 1L << 32; // so that no valid record is 0.
+
+  private final long[] records = new long[0x10000];
+
+  /**
+   * The record for the instruction at {@code pc}: op-code in bits 0-7, the following bytes in bits
+   * 8-15, 16-23 and 24-31. Returns 0 if the instruction can't be cached.
+   */
+  long record(final IBus bus, final int pc) {
+    long record = records[pc];
+    if (record == 0L
+        && bus.isCacheable(pc)
+        && bus.isCacheable((pc + LENGTH - 1) & 0xFFFF)) {
+      record = VALID | bus.cpuReadMemInstr(pc);
+      for (int i = 1; i < LENGTH; ++i) {
+        record |= (long) bus.cpuReadMemByte((pc + i) & 0xFFFF) << (i * 8);
+      }
+      records[pc] = record;
+    }
+    return record;
+  }
+
+  /** Discard the records of the instructions that could include {@code address}. */
+  void written(final int address) {
+    for (int i = 0; i < LENGTH; ++i) {
+      records[(address - i) & 0xFFFF] = 0L;
+    }
+  }
+
+  /** Discard the records of the instructions that could include any of {@code from..to-1}. */
+  void invalidate(final int from, final int to) {
+    for (int address = from - LENGTH + 1; address < to; ++address) {
+      records[address & 0xFFFF] = 0L;
+    }
+  }
+}
@@ -0,0 +1,75 @@
+package com.davidconneely.eightbit.z80;
+
+/**
+ * Bit masks for the condition bits in the `F` register, and lookup tables of precomputed `F` values
+ * for the 8-bit arithmetic and logical operations. The hot paths in `Core` then set all the
+ * condition bits with a single array load instead of computing each of them separately.
+ *
+ * <p>The tables include the undocumented flags X (bit 3) and Y (bit 5), which the Z80 copies from
+ * bits 3 and 5 of the result of most operations.
+ */
+final class Flags {
+  static final int CF = 0x01; // carry
+  static final int NF = 0x02; // add/subtract
+  static final int PF = 0x04; // parity/overflow
+  static final int XF = 0x08; // undocumented, copy of bit 3
+  static final int HF = 0x10; // half-carry
+  static final int YF = 0x20; // undocumented, copy of bit 5
+  static final int ZF = 0x40; // zero
+  static final int SF = 0x80; // sign
+
+  /** `S`, `Z`, `Y` and `X` flags, indexed by an 8-bit result. */
+  static final int[] SZ = new int[0x100];
+
+  /** `S`, `Z`, `Y`, `X` and parity flags, indexed by an 8-bit result. */
+  static final int[] SZP = new int[0x100];
+
+  /** All flags except `C` for `INC n`, indexed by the 8-bit result. */
+  static final int[] SZHV_INC = new int[0x100];
+
+  /** All flags except `C` for `DEC n`, indexed by the 8-bit result. */
+  static final int[] SZHV_DEC = new int[0x100];
+
+  /** All flags for `ADD A,n` and `ADC A,n`, indexed by `carry << 16 | A << 8 | result`. */
+  static final byte[] SZHVC_ADD = new byte[0x20000];
+
+  /** All flags for `SUB n`, `SBC A,n` and `CP n`, indexed by `carry << 16 | A << 8 | result`. */
+  static final byte[] SZHVC_SUB = new byte[0x20000];
+
+  static {
+    for (int rm = 0; rm < 0x100; ++rm) {
+      SZ[rm] = (rm & (SF | YF | XF)) | (rm == 0 ? ZF : 0);
+      SZP[rm] = SZ[rm] | (parity(rm) ? PF : 0);
+      SZHV_INC[rm] = SZ[rm] | (rm == 0x80 ? PF : 0) | ((rm & 0x0F) == 0x00 ? HF : 0);
+      SZHV_DEC[rm] = SZ[rm] | (rm == 0x7F ? PF : 0) | ((rm & 0x0F) == 0x0F ? HF : 0) | NF;
+    }
+    for (int carry = 0; carry <= 1; ++carry) {
+      for (int a = 0; a < 0x100; ++a) {
+        for (int rm = 0; rm < 0x100; ++rm) {
+          final int index = (carry << 16) | (a << 8) | rm;
+          int n = (rm - a - carry) & 0xFF; // the operand that gives this result.
+          int f = SZ[rm] | ((a ^ n ^ rm) & HF);
+          f |= (a + n + carry > 0xFF) ? CF : 0;
+          f |= (((a ^ ~n) & (a ^ rm)) & 0x80) != 0 ? PF : 0;
+          SZHVC_ADD[index] = (byte) f;
+          n = (a - rm - carry) & 0xFF;
+          f = SZ[rm] | ((a ^ n ^ rm) & HF) | NF;
+          f |= (a - n - carry < 0) ? CF : 0;
+          f |= (((a ^ n) & (a ^ rm)) & 0x80) != 0 ? PF : 0;
+          SZHVC_SUB[index] = (byte) f;
+        }
+      }
+    }
+  }
+
+  private Flags() {}
+
+  /**
+   * @return true if n has even parity, false if n has odd parity (only rightmost 8 bits of n are
+   *     considered). Note this is the reverse of what you might normally expect because that is how
+   *     the Z80's P/V condition bit works.
+   */
+  private static boolean parity(int n) {
+    return ((0x6996 >>> ((n ^ (n >>> 4)) & 0x0F)) & 1) == 0;
+  }
+}
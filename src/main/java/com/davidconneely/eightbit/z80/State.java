@@ -1,12 +1,43 @@
 package com.davidconneely.eightbit.z80;
 
+import java.nio.ByteBuffer;
+
 public final class State {
-  private int a, b, c, d, e, h, l;
-  private boolean cf, nf, pf, hf, zf, sf;
+  /** The number of bytes {@link #save(ByteBuffer)} writes. */
+  public static final int SIZE = 36;
+
+  private int a, b, c, d, e, f, h, l;
   private int ix, iy, pc, sp;
   private int a_, b_, c_, d_, e_, f_, h_, l_;
   private int i, r06, im;
   private boolean r7, iff1, iff2, halted;
+  private long cycles;
+
+  // Lazy flags: the kind, operands and unmasked result of the last flag-setting operation, from
+  // which `f` is only built when something reads it. Kinds other than `LAZY_NONE` always cover the
+  // `S` and `Z` flags; the bits they don't cover are still held in `f`.
+  private static final int LAZY_NONE = 0;
+  private static final int LAZY_ADD = 1; // `ADD`/`ADC`: covers all the flags.
+  private static final int LAZY_SUB = 2; // `SUB`/`SBC`/`NEG`: covers all the flags.
+  private static final int LAZY_CP = 3; // `CP`: covers all the flags.
+  private static final int LAZY_INC = 4; // `INC`: covers all the flags except `C`.
+  private static final int LAZY_DEC = 5; // `DEC`: covers all the flags except `C`.
+  private static final int LAZY_SZP = 6; // logical/rotate/shift: covers `S`, `Z`, `Y`, `X` and `P`.
+  private final boolean lazyFlags;
+  private int lazyOp, lazyA, lazyN, lazyRu;
+
+  public State() {
+    this(false);
+  }
+
+  /**
+   * @param lazyFlags true to record each flag-setting operation and build `F` from it only on
+   *     demand (when an instruction or the debugger reads `F` or a condition), false to build `F`
+   *     eagerly.
+   */
+  State(final boolean lazyFlags) {
+    this.lazyFlags = lazyFlags;
+  }
 
   // --- 8-Bit Main Registers ---
 
@@ -69,69 +100,168 @@ public final class State {
   // --- Main Flags ---
 
   int f() {
-    return (cf ? 0x01 : 0)
-        | (nf ? 0x02 : 0)
-        | (pf ? 0x04 : 0)
-        | (hf ? 0x10 : 0)
-        | (zf ? 0x40 : 0)
-        | (sf ? 0x80 : 0);
+    if (lazyOp != LAZY_NONE) {
+      f = flags(lazyOp, lazyA, lazyN, lazyRu, f);
+      lazyOp = LAZY_NONE;
+    }
+    return f;
   }
 
   void f(final int n) {
-    cf = (n & 0x01) != 0;
-    nf = (n & 0x02) != 0;
-    pf = (n & 0x04) != 0;
-    hf = (n & 0x10) != 0;
-    zf = (n & 0x40) != 0;
-    sf = (n & 0x80) != 0;
+    lazyOp = LAZY_NONE;
+    f = n & 0xFF;
   }
 
   public boolean cf() {
-    return cf;
+    return switch (lazyOp) {
+      case LAZY_ADD, LAZY_SUB, LAZY_CP -> (lazyRu & 0x100) != 0;
+      default -> (f & Flags.CF) != 0;
+    };
   }
 
   void cf(final boolean t) {
-    cf = t;
+    flag(Flags.CF, t);
   }
 
   boolean nf() {
-    return nf;
+    return (f() & Flags.NF) != 0;
   }
 
   void nf(final boolean t) {
-    nf = t;
+    flag(Flags.NF, t);
   }
 
   boolean pf() {
-    return pf;
+    return (f() & Flags.PF) != 0;
   }
 
   void pf(final boolean t) {
-    pf = t;
+    flag(Flags.PF, t);
   }
 
   boolean hf() {
-    return hf;
+    return (f() & Flags.HF) != 0;
   }
 
   void hf(final boolean t) {
-    hf = t;
+    flag(Flags.HF, t);
   }
 
   boolean zf() {
-    return zf;
+    return lazyOp != LAZY_NONE ? (lazyRu & 0xFF) == 0 : (f & Flags.ZF) != 0;
   }
 
   void zf(final boolean t) {
-    zf = t;
+    flag(Flags.ZF, t);
   }
 
   boolean sf() {
-    return sf;
+    return lazyOp != LAZY_NONE ? (lazyRu & 0x80) != 0 : (f & Flags.SF) != 0;
   }
 
   void sf(final boolean t) {
-    sf = t;
+    flag(Flags.SF, t);
+  }
+
+  private void flag(final int mask, final boolean t) {
+    final int n = f();
+    f = t ? (n | mask) : (n & ~mask);
+  }
+
+  // --- Flag-Setting Operations ---
+
+  /** Flags for `ADD A,n` and `ADC A,n`, where `ru` is the unmasked result `a + n + carry`. */
+  void flagsAdd(final int a, final int n, final int ru) {
+    if (lazyFlags) {
+      defer(LAZY_ADD, a, n, ru);
+    } else {
+      f = flags(LAZY_ADD, a, n, ru, f);
+    }
+  }
+
+  /** Flags for `SUB n`, `SBC A,n` and `NEG`, where `ru` is the unmasked result `a - n - carry`. */
+  void flagsSub(final int a, final int n, final int ru) {
+    if (lazyFlags) {
+      defer(LAZY_SUB, a, n, ru);
+    } else {
+      f = flags(LAZY_SUB, a, n, ru, f);
+    }
+  }
+
+  /** Flags for `CP n`, where `ru` is the unmasked result `a - n`. */
+  void flagsCp(final int a, final int n, final int ru) {
+    if (lazyFlags) {
+      defer(LAZY_CP, a, n, ru);
+    } else {
+      f = flags(LAZY_CP, a, n, ru, f);
+    }
+  }
+
+  /** Flags for `INC n`, where `rm` is the 8-bit result. The `C` flag is unchanged. */
+  void flagsInc(final int rm) {
+    if (lazyFlags) {
+      keepCarry();
+      defer(LAZY_INC, 0, 0, rm);
+    } else {
+      f = flags(LAZY_INC, 0, 0, rm, f);
+    }
+  }
+
+  /** Flags for `DEC n`, where `rm` is the 8-bit result. The `C` flag is unchanged. */
+  void flagsDec(final int rm) {
+    if (lazyFlags) {
+      keepCarry();
+      defer(LAZY_DEC, 0, 0, rm);
+    } else {
+      f = flags(LAZY_DEC, 0, 0, rm, f);
+    }
+  }
+
+  /**
+   * Flags for the logical, rotate and shift operations that set `S`, `Z`, `Y`, `X` and `P` from the
+   * 8-bit result `rm`, and `H`, `N` and `C` to the bits given in `hnc`.
+   */
+  void flagsSzp(final int rm, final int hnc) {
+    if (lazyFlags) {
+      defer(LAZY_SZP, 0, 0, rm);
+      f = hnc;
+    } else {
+      f = Flags.SZP[rm] | hnc;
+    }
+  }
+
+  private void defer(final int op, final int a, final int n, final int ru) {
+    lazyOp = op;
+    lazyA = a;
+    lazyN = n;
+    lazyRu = ru;
+  }
+
+  /** Copy the `C` flag from a deferred operation into `f` before it is replaced by `INC`/`DEC`. */
+  private void keepCarry() {
+    switch (lazyOp) {
+      case LAZY_ADD, LAZY_SUB, LAZY_CP -> f = (f & ~Flags.CF) | ((lazyRu >>> 8) & Flags.CF);
+      default -> {}
+    }
+  }
+
+  /**
+   * @return the `F` register after operation `op` with operands `a` and `n` and unmasked result
+   *     `ru`, keeping any bits it doesn't cover from `f`.
+   */
+  private static int flags(final int op, final int a, final int n, final int ru, final int f) {
+    final int rm = ru & 0xFF;
+    return switch (op) {
+      case LAZY_ADD -> Flags.SZHVC_ADD[((ru - a - n) << 16) | (a << 8) | rm] & 0xFF;
+      case LAZY_SUB -> Flags.SZHVC_SUB[((a - n - ru) << 16) | (a << 8) | rm] & 0xFF;
+      case LAZY_CP -> // the undocumented X and Y flags come from the operand, not the result.
+          (Flags.SZHVC_SUB[(a << 8) | rm] & ~(Flags.YF | Flags.XF) & 0xFF)
+              | (n & (Flags.YF | Flags.XF));
+      case LAZY_INC -> (f & Flags.CF) | Flags.SZHV_INC[rm];
+      case LAZY_DEC -> (f & Flags.CF) | Flags.SZHV_DEC[rm];
+      case LAZY_SZP -> (f & (Flags.HF | Flags.NF | Flags.CF)) | Flags.SZP[rm];
+      default -> f;
+    };
   }
 
   // --- 16-Bit Main Pseudo Registers ---
@@ -190,6 +320,20 @@ public final class State {
     iy = nn & 0xFFFF;
   }
 
+  /** `IX` if `prefix1` is 0xDD, otherwise `IY` (for the 0xDD and 0xFD prefixed instructions). */
+  int ixy(final int prefix1) {
+    return prefix1 == 0xDD ? ix : iy;
+  }
+
+  /** Set `IX` if `prefix1` is 0xDD, otherwise set `IY`. */
+  void ixy(final int prefix1, final int nn) {
+    if (prefix1 == 0xDD) {
+      ix = nn & 0xFFFF;
+    } else {
+      iy = nn & 0xFFFF;
+    }
+  }
+
   public int pc() {
     return pc;
   }
@@ -249,6 +393,21 @@ public final class State {
     this.halted = true;
   }
 
+  // --- Timing ---
+
+  /** The number of T-states (clock cycles) executed since the `Core` was created. */
+  public long cycles() {
+    return cycles;
+  }
+
+  void cycles(final long n) {
+    cycles = n;
+  }
+
+  void cyclesAdd(final int n) {
+    cycles += n;
+  }
+
   // --- Alternate Registers ---
 
   void alt_af() {
@@ -283,11 +442,95 @@ public final class State {
 
   // --- Utility methods ---
 
+  /** Copy the registers, flags, interrupt state and cycle count of {@code other} (e.g. a fork). */
+  public void copyFrom(final State other) {
+    a = other.a;
+    b = other.b;
+    c = other.c;
+    d = other.d;
+    e = other.e;
+    f(other.f()); // `other` may have lazy flags when this doesn't, or vice versa.
+    h = other.h;
+    l = other.l;
+    ix = other.ix;
+    iy = other.iy;
+    pc = other.pc;
+    sp = other.sp;
+    a_ = other.a_;
+    b_ = other.b_;
+    c_ = other.c_;
+    d_ = other.d_;
+    e_ = other.e_;
+    f_ = other.f_;
+    h_ = other.h_;
+    l_ = other.l_;
+    i = other.i;
+    r06 = other.r06;
+    r7 = other.r7;
+    im = other.im;
+    iff1 = other.iff1;
+    iff2 = other.iff2;
+    halted = other.halted;
+    cycles = other.cycles;
+  }
+
+  /**
+   * Write the registers (main, alternate and index), flags, interrupt state and cycle count to
+   * {@code buffer} at its position, in {@link #SIZE} bytes (e.g. for a snapshot of the machine).
+   */
+  public void save(final ByteBuffer buffer) {
+    buffer.put((byte) a).put((byte) f()).put((byte) b).put((byte) c);
+    buffer.put((byte) d).put((byte) e).put((byte) h).put((byte) l);
+    buffer.put((byte) a_).put((byte) f_).put((byte) b_).put((byte) c_);
+    buffer.put((byte) d_).put((byte) e_).put((byte) h_).put((byte) l_);
+    buffer.putShort((short) ix).putShort((short) iy).putShort((short) sp).putShort((short) pc);
+    buffer.put((byte) i).put((byte) r()).put((byte) im);
+    buffer.put((byte) ((iff1 ? 0x01 : 0x00) | (iff2 ? 0x02 : 0x00) | (halted ? 0x04 : 0x00)));
+    buffer.putLong(cycles);
+  }
+
+  /** Read the state that {@link #save(ByteBuffer)} wrote from {@code buffer} at its position. */
+  public void restore(final ByteBuffer buffer) {
+    a = buffer.get() & 0xFF;
+    f(buffer.get());
+    b = buffer.get() & 0xFF;
+    c = buffer.get() & 0xFF;
+    d = buffer.get() & 0xFF;
+    e = buffer.get() & 0xFF;
+    h = buffer.get() & 0xFF;
+    l = buffer.get() & 0xFF;
+    a_ = buffer.get() & 0xFF;
+    f_ = buffer.get() & 0xFF;
+    b_ = buffer.get() & 0xFF;
+    c_ = buffer.get() & 0xFF;
+    d_ = buffer.get() & 0xFF;
+    e_ = buffer.get() & 0xFF;
+    h_ = buffer.get() & 0xFF;
+    l_ = buffer.get() & 0xFF;
+    ix = buffer.getShort() & 0xFFFF;
+    iy = buffer.getShort() & 0xFFFF;
+    sp = buffer.getShort() & 0xFFFF;
+    pc = buffer.getShort() & 0xFFFF;
+    i = buffer.get() & 0xFF;
+    r(buffer.get());
+    im(buffer.get());
+    final int interrupts = buffer.get();
+    iff1 = (interrupts & 0x01) != 0;
+    iff2 = (interrupts & 0x02) != 0;
+    halted = (interrupts & 0x04) != 0;
+    cycles = buffer.getLong();
+  }
+
   /** Increment the `R` refresh register (bits 0 to 6 - bit 7 is left alone). */
   void rInc() {
     r06 = (r06 + 1) & 0x7F;
   }
 
+  /** Add {@code n} to the `R` refresh register, as {@code n} calls to {@link #rInc()} would. */
+  void rAdd(final int n) {
+    r06 = (r06 + n) & 0x7F;
+  }
+
   /** Post-increment `PC` by 1 (used for immediate bytes). */
   int pcInc1() {
     int nn = pc;
@@ -315,12 +558,13 @@ public final class State {
   }
 
   String formatted(final int opCode) {
+    final int flags = f();
     return String.format(
         "pc=0x%04x,sp=0x%04x,op=0x%02x,"
             + "a=0x%02x,b=0x%02x,c=0x%02x,d=0x%02x,e=0x%02x,h=0x%02x,l=0x%02x,"
             + "a'=0x%02x,b'=0x%02x,c'=0x%02x,d'=0x%02x,e'=0x%02x,h'=0x%02x,l'=0x%02x,"
             + "ix=0x%04x,iy=0x%04x,i=0x%02x,r=0x%02x,"
-            + "c=%d,po=%d,hc=%d,n=%d,z=%d,s=%d,y=0,x=0",
+            + "c=%d,po=%d,hc=%d,n=%d,z=%d,s=%d,y=%d,x=%d",
         pc,
         sp,
         opCode,
@@ -342,11 +586,13 @@ public final class State {
         iy,
         0,
         0,
-        cf ? 1 : 0,
-        pf ? 1 : 0,
-        hf ? 1 : 0,
-        nf ? 1 : 0,
-        zf ? 1 : 0,
-        sf ? 1 : 0);
+        flags & Flags.CF,
+        (flags & Flags.PF) >>> 2,
+        (flags & Flags.HF) >>> 4,
+        (flags & Flags.NF) >>> 1,
+        (flags & Flags.ZF) >>> 6,
+        (flags & Flags.SF) >>> 7,
+        (flags & Flags.YF) >>> 5,
+        (flags & Flags.XF) >>> 3);
   }
 }
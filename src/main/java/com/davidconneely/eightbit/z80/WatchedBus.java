@@ -0,0 +1,108 @@
+package com.davidconneely.eightbit.z80;
+
+import com.davidconneely.eightbit.IBus;
+import java.util.function.IntConsumer;
+
+/**
+ * Wraps the bus used by {@link Core} to tell it about the CPU's writes to memory, so that it can
+ * discard anything it has decoded or compiled from the bytes that were written.
+ */
+final class WatchedBus implements IBus {
+  private final IBus bus;
+  private final IntConsumer written;
+
+  WatchedBus(final IBus bus, final IntConsumer written) {
+    this.bus = bus;
+    this.written = written;
+  }
+
+  @Override
+  public int cpuReadMemInstr(final int address) {
+    return bus.cpuReadMemInstr(address);
+  }
+
+  @Override
+  public int cpuReadMemByte(final int address) {
+    return bus.cpuReadMemByte(address);
+  }
+
+  @Override
+  public int cpuReadMemWord(final int address) {
+    return bus.cpuReadMemWord(address);
+  }
+
+  @Override
+  public int cpuReadPortByte(final int portNum) {
+    return bus.cpuReadPortByte(portNum);
+  }
+
+  @Override
+  public void cpuWriteMemByte(final int address, final int data) {
+    bus.cpuWriteMemByte(address, data);
+    written.accept(address);
+  }
+
+  @Override
+  public void cpuWriteMemWord(final int address, final int data) {
+    bus.cpuWriteMemWord(address, data);
+    written.accept(address);
+    written.accept((address + 1) & 0xFFFF);
+  }
+
+  @Override
+  public void cpuCopyMemBytes(
+      final int source, final int dest, final int length, final boolean increment) {
+    bus.cpuCopyMemBytes(source, dest, length, increment);
+    for (int i = 0; i < length; ++i) {
+      written.accept((increment ? dest + i : dest - i) & 0xFFFF);
+    }
+  }
+
+  @Override
+  public int cpuFindMemByte(
+      final int address, final int length, final int value, final boolean increment) {
+    return bus.cpuFindMemByte(address, length, value, increment);
+  }
+
+  @Override
+  public void cpuWritePortByte(final int portNum, final int data) {
+    bus.cpuWritePortByte(portNum, data);
+  }
+
+  @Override
+  public boolean isCacheable(final int address) {
+    return bus.isCacheable(address);
+  }
+
+  @Override
+  public int rawReadMemByte(final int address) {
+    return bus.rawReadMemByte(address);
+  }
+
+  @Override
+  public void rawReadMemBytes(
+      final int address, final byte[] dest, final int offset, final int length) {
+    bus.rawReadMemBytes(address, dest, offset, length);
+  }
+
+  @Override
+  public int rawReadPortByte(final int rawPortNum) {
+    return bus.rawReadPortByte(rawPortNum);
+  }
+
+  @Override
+  public void rawWriteMemByte(final int address, final int data) {
+    bus.rawWriteMemByte(address, data);
+  }
+
+  @Override
+  public void rawWriteMemBytes(
+      final int address, final byte[] source, final int offset, final int length) {
+    bus.rawWriteMemBytes(address, source, offset, length);
+  }
+
+  @Override
+  public void rawWritePortByte(final int portNum, final int data) {
+    bus.rawWritePortByte(portNum, data);
+  }
+}
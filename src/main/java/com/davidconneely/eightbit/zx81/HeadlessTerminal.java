@@ -0,0 +1,48 @@
+package com.davidconneely.eightbit.zx81;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+
+/**
+ * A terminal for running without one: whatever is displayed on it is discarded, and the keys read
+ * from it are the ones {@link #type(char)} queues up.
+ */
+class HeadlessTerminal extends TerminalSupport {
+  private final Queue<Character> keys = new ArrayDeque<>();
+
+  /** Queue up a key, to be read as if it had been typed. */
+  void type(final char key) {
+    keys.add(key);
+  }
+
+  @Override
+  void enableRawMode() {
+    // do nothing.
+  }
+
+  @Override
+  void reset() {
+    // do nothing.
+  }
+
+  @Override
+  int read() {
+    final Character key = keys.poll();
+    return key != null ? key : -1;
+  }
+
+  @Override
+  void write(final int data) {
+    // do nothing.
+  }
+
+  @Override
+  void write(final byte[] data, final int offset, final int length) {
+    // do nothing.
+  }
+
+  @Override
+  void print(final String text) {
+    // do nothing.
+  }
+}
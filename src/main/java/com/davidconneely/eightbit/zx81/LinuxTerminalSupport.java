@@ -0,0 +1,246 @@
+package com.davidconneely.eightbit.zx81;
+
+import static java.lang.foreign.ValueLayout.ADDRESS;
+import static java.lang.foreign.ValueLayout.JAVA_BYTE;
+import static java.lang.foreign.ValueLayout.JAVA_INT;
+import static java.lang.foreign.ValueLayout.JAVA_LONG;
+import static java.lang.foreign.ValueLayout.JAVA_SHORT;
+
+import java.lang.foreign.Arena;
+import java.lang.foreign.FunctionDescriptor;
+import java.lang.foreign.Linker;
+import java.lang.foreign.MemoryLayout;
+import java.lang.foreign.MemorySegment;
+import java.lang.invoke.MethodHandle;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A terminal on Linux that calls `read(2)`, `write(2)` and `poll(2)` directly (with the FFM API),
+ * rather than going through `System.in` and `System.out`: input is read in batches from stdin,
+ * which is made non-blocking while in raw mode, and output (e.g. a whole frame) is copied to native
+ * memory and written in one call (waiting with `poll(2)` if stdout, which usually shares stdin's
+ * non-blocking flag, is full). Setting up the terminal (termios) is still done by {@link
+ * PosixTerminalSupport}.
+ */
+final class LinuxTerminalSupport extends TerminalSupport {
+  private static final int STDIN_FILENO = 0;
+  private static final int STDOUT_FILENO = 1;
+  private static final int F_GETFL = 3;
+  private static final int F_SETFL = 4;
+  private static final int O_NONBLOCK = 0x800;
+  private static final short POLLIN = 0x1;
+  private static final short POLLOUT = 0x4;
+  private static final short POLLHUP = 0x10;
+  private static final int EINTR = 4;
+  private static final int EAGAIN = 11;
+  private static final int INPUT_SIZE = 64; // bytes read at a time.
+
+  private static final Linker LINKER = Linker.nativeLinker();
+  private static final MemoryLayout CALL_STATE = Linker.Option.captureStateLayout();
+  private static final long ERRNO =
+      CALL_STATE.byteOffset(MemoryLayout.PathElement.groupElement("errno"));
+  // ssize_t read(int fd, void *buf, size_t count), and the same for write.
+  private static final MethodHandle READ =
+      downcall("read", FunctionDescriptor.of(JAVA_LONG, JAVA_INT, ADDRESS, JAVA_LONG));
+  private static final MethodHandle WRITE =
+      downcall("write", FunctionDescriptor.of(JAVA_LONG, JAVA_INT, ADDRESS, JAVA_LONG));
+  // int poll(struct pollfd *fds, nfds_t nfds, int timeout)
+  private static final MethodHandle POLL =
+      downcall("poll", FunctionDescriptor.of(JAVA_INT, ADDRESS, JAVA_LONG, JAVA_INT));
+  // int fcntl(int fd, int cmd, ...)
+  private static final MethodHandle FCNTL =
+      downcall(
+          "fcntl",
+          FunctionDescriptor.of(JAVA_INT, JAVA_INT, JAVA_INT, JAVA_INT),
+          Linker.Option.firstVariadicArg(2));
+
+  private final PosixTerminalSupport termios;
+  private final MemorySegment input; // read from stdin, from `inputStart` to `inputEnd`.
+  private int inputStart, inputEnd;
+  private volatile boolean ended; // stdin reached end-of-file (e.g. a closed pipe), or hung up.
+  private final MemorySegment inputState; // `errno` after reading.
+  private final MemorySegment inputPoll; // struct pollfd.
+  private MemorySegment output; // written to stdout (grown if need be).
+  private final MemorySegment outputState; // `errno` after writing.
+  private final MemorySegment outputPoll; // struct pollfd.
+  private int originalFlags = -1; // stdin's flags before raw mode.
+  private boolean hooked; // whether a shutdown hook restores stdin's flags.
+
+  static LinuxTerminalSupport newInstance(final PosixTerminalSupport termios) {
+    return new LinuxTerminalSupport(termios);
+  }
+
+  // private to prevent other classes instantiating this.
+  private LinuxTerminalSupport(final PosixTerminalSupport termios) {
+    this.termios = termios;
+    final Arena arena = Arena.ofAuto(); // reading and writing can be on different threads.
+    this.input = arena.allocate(INPUT_SIZE);
+    this.inputState = arena.allocate(CALL_STATE);
+    this.inputPoll = pollfd(arena, STDIN_FILENO, POLLIN);
+    this.output = arena.allocate(0x4000);
+    this.outputState = arena.allocate(CALL_STATE);
+    this.outputPoll = pollfd(arena, STDOUT_FILENO, POLLOUT);
+  }
+
+  private static MethodHandle downcall(
+      final String name, final FunctionDescriptor function, final Linker.Option... options) {
+    final Linker.Option[] all = new Linker.Option[options.length + 1];
+    all[0] = Linker.Option.captureCallState("errno");
+    System.arraycopy(options, 0, all, 1, options.length);
+    return LINKER.downcallHandle(LINKER.defaultLookup().find(name).orElseThrow(), function, all);
+  }
+
+  private static MemorySegment pollfd(final Arena arena, final int fd, final short events) {
+    final MemorySegment pollfd = arena.allocate(8L); // int fd; short events; short revents;
+    pollfd.set(JAVA_INT, 0L, fd);
+    pollfd.set(JAVA_SHORT, 4L, events);
+    return pollfd;
+  }
+
+  @Override
+  synchronized void enableRawMode() {
+    termios.enableRawMode();
+    final int flags = fcntl(F_GETFL, 0);
+    if (flags == -1 || fcntl(F_SETFL, flags | O_NONBLOCK) == -1) {
+      throw new IllegalStateException("Failed to make stdin non-blocking: " + errno(inputState));
+    }
+    if (!hooked) { // e.g. Ctrl+C can kill the process, rather than letting it reset the terminal.
+      Runtime.getRuntime().addShutdownHook(new Thread(this::restoreFlags));
+      hooked = true;
+    }
+    originalFlags = flags;
+  }
+
+  @Override
+  void reset() {
+    restoreFlags();
+    termios.reset();
+  }
+
+  // stdin is shared with the shell (and stdout often is too), so it mustn't be left non-blocking.
+  private synchronized void restoreFlags() {
+    if (originalFlags != -1) {
+      if (fcntl(F_SETFL, originalFlags) == -1) {
+        throw new IllegalStateException("Failed to restore stdin's flags: " + errno(inputState));
+      }
+      originalFlags = -1;
+    }
+  }
+
+  /** The next byte of input, or -1 if there isn't any (without waiting). */
+  @Override
+  int read() {
+    if (inputStart == inputEnd) {
+      final long count;
+      try {
+        count = (long) READ.invokeExact(inputState, STDIN_FILENO, input, (long) INPUT_SIZE);
+      } catch (final Throwable ex) {
+        throw new IllegalStateException(ex);
+      }
+      if (count == 0L) {
+        ended = true; // there won't be any more, and `poll(2)` would keep saying it's ready.
+        return -1;
+      } else if (count < 0L) {
+        final int errno = errno(inputState);
+        if (errno != EAGAIN && errno != EINTR) {
+          throw new IllegalStateException("Failed to read from stdin: " + errno);
+        }
+        return -1; // nothing to read (yet).
+      }
+      inputStart = 0;
+      inputEnd = (int) count;
+    }
+    return input.get(JAVA_BYTE, inputStart++) & 0xFF;
+  }
+
+  /**
+   * Wait (with `poll(2)`) for input to {@link #read()}, for up to {@code timeoutMillis}. After the
+   * end of the input, this just sleeps, rather than polling a file that's always ready.
+   */
+  @Override
+  boolean awaitInput(final int timeoutMillis) {
+    if (inputStart < inputEnd) {
+      return true;
+    } else if (ended) {
+      try {
+        Thread.sleep(timeoutMillis);
+      } catch (final InterruptedException ex) {
+        Thread.currentThread().interrupt();
+      }
+      return false;
+    } else if (!poll(inputPoll, inputState, timeoutMillis)) {
+      return false;
+    }
+    if ((inputPoll.get(JAVA_SHORT, 6L) & (POLLIN | POLLHUP)) == POLLHUP) {
+      ended = true; // hung up, with nothing left to read.
+      return false;
+    }
+    return true;
+  }
+
+  @Override
+  synchronized void write(final int data) {
+    output.set(JAVA_BYTE, 0L, (byte) data);
+    writeOutput(1);
+  }
+
+  @Override
+  synchronized void write(final byte[] data, final int offset, final int length) {
+    if (length > output.byteSize()) {
+      output = Arena.ofAuto().allocate(Math.max(length, output.byteSize() * 2));
+    }
+    MemorySegment.copy(data, offset, output, JAVA_BYTE, 0L, length);
+    writeOutput(length);
+  }
+
+  @Override
+  void print(final String text) {
+    final byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+    write(bytes, 0, bytes.length);
+  }
+
+  // write the first `length` bytes of `output`, waiting for stdout when it would block.
+  private void writeOutput(final int length) {
+    long done = 0L;
+    while (done < length) {
+      final MemorySegment rest = output.asSlice(done);
+      final long count;
+      try {
+        count = (long) WRITE.invokeExact(outputState, STDOUT_FILENO, rest, length - done);
+      } catch (final Throwable ex) {
+        throw new IllegalStateException(ex);
+      }
+      if (count >= 0L) {
+        done += count;
+      } else if (errno(outputState) == EAGAIN) { // stdout shares stdin's non-blocking flag.
+        poll(outputPoll, outputState, -1);
+      } else if (errno(outputState) != EINTR) {
+        throw new IllegalStateException("Failed to write to stdout: " + errno(outputState));
+      }
+    }
+  }
+
+  private int fcntl(final int command, final int argument) {
+    try {
+      return (int) FCNTL.invokeExact(inputState, STDIN_FILENO, command, argument);
+    } catch (final Throwable ex) {
+      throw new IllegalStateException(ex);
+    }
+  }
+
+  // whether `pollfd`'s file is ready within `timeoutMillis` (-1 to wait as long as it takes).
+  private static boolean poll(
+      final MemorySegment pollfd, final MemorySegment state, final int timeoutMillis) {
+    final int result;
+    try {
+      result = (int) POLL.invokeExact(state, pollfd, 1L, timeoutMillis);
+    } catch (final Throwable ex) {
+      throw new IllegalStateException(ex);
+    }
+    return result > 0;
+  }
+
+  private static int errno(final MemorySegment state) {
+    return state.get(JAVA_INT, ERRNO);
+  }
+}
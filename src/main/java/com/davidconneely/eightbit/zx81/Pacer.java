@@ -0,0 +1,100 @@
+package com.davidconneely.eightbit.zx81;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Paces emulation to real time. The machine calls {@link #pace(long)} with the T-states it has
+ * executed, and once per slice of them (e.g. a frame), the pacer parks the thread until the wall
+ * clock reaches the time they would take at the target speed. Deadlines are measured from a fixed
+ * base rather than from the previous park, so the time taken to emulate a slice, and parks that
+ * wake up late (or early), don't accumulate as drift.
+ */
+final class Pacer {
+  /** The ZX81's Z80 runs at 3.25 MHz. */
+  static final long CLOCK_HZ = 3_250_000L;
+
+  // if it falls further behind than this (e.g. the process was suspended), it doesn't catch up.
+  private static final long MAX_LAG_NANOS = 100_000_000L;
+  private static final long REPORT_NANOS = 1_000_000_000L; // how often the real speed is measured.
+
+  private final long clockHz;
+  private final double multiplier;
+  private final double nanosPerTState; // zero when unthrottled.
+  private final long slice;
+  private long baseNanos, baseTStates; // the deadline for `baseTStates` was `baseNanos`.
+  private long nextTStates; // when the current slice ends.
+  private long reportNanos, reportTStates; // when the real speed was last measured.
+  private double speed;
+
+  /**
+   * @param clockHz the speed of the emulated clock, in T-states per second.
+   * @param multiplier how much faster than that to run, or infinity to run unthrottled (turbo).
+   * @param slice the T-states to execute between looking at the wall clock.
+   */
+  Pacer(final long clockHz, final double multiplier, final long slice) {
+    if (!(multiplier > 0.0)) {
+      throw new IllegalArgumentException("speed multiplier must be positive: " + multiplier);
+    }
+    this.clockHz = clockHz;
+    this.multiplier = multiplier;
+    this.nanosPerTState = 1e9 / (clockHz * multiplier);
+    this.slice = slice;
+    final long now = System.nanoTime();
+    this.baseNanos = now;
+    this.reportNanos = now;
+    this.nextTStates = slice;
+  }
+
+  /**
+   * Call after executing instructions, with the T-states executed so far: at the end of a slice,
+   * waits until it's time for them to have been executed (or until the thread is interrupted, which
+   * it leaves interrupted).
+   */
+  void pace(final long tStates) {
+    if (tStates < nextTStates) {
+      return;
+    }
+    nextTStates = (tStates / slice + 1L) * slice; // slices are aligned, so overshoots don't add up.
+    long now = System.nanoTime();
+    final long deadline = baseNanos + (long) ((tStates - baseTStates) * nanosPerTState);
+    if (now - deadline > MAX_LAG_NANOS) {
+      baseNanos = now; // too far behind to catch up, so measure later deadlines from now.
+      baseTStates = tStates;
+    }
+    while (deadline - now > 0L) {
+      LockSupport.parkNanos(deadline - now); // may return early (e.g. spuriously).
+      now = System.nanoTime();
+      if (Thread.currentThread().isInterrupted()) {
+        break; // parking returns at once while interrupted, so waiting would spin.
+      }
+    }
+    if (now - reportNanos >= REPORT_NANOS) {
+      speed = (tStates - reportTStates) * 1e9 / ((now - reportNanos) * (double) clockHz);
+      reportNanos = now;
+      reportTStates = tStates;
+    }
+  }
+
+  /**
+   * Pace from {@code tStates} as if it were the start (e.g. after restoring a snapshot, whose
+   * T-states the wall clock shouldn't try to catch up with, or wait for).
+   */
+  void restart(final long tStates) {
+    final long now = System.nanoTime();
+    baseNanos = now;
+    baseTStates = tStates;
+    nextTStates = (tStates / slice + 1L) * slice;
+    reportNanos = now;
+    reportTStates = tStates;
+  }
+
+  /** The real speed over the last second or so, as a multiple of the clock speed. */
+  double speed() {
+    return speed;
+  }
+
+  /** The target speed, as a multiple of the clock speed (infinity when unthrottled). */
+  double multiplier() {
+    return multiplier;
+  }
+}
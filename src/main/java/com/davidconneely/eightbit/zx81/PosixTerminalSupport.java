@@ -63,6 +63,12 @@ class PosixTerminalSupport extends TerminalSupport {
     System.out.write(data);
   }
 
+  @Override
+  void write(final byte[] data, final int offset, final int length) {
+    System.out.write(data, offset, length);
+    System.out.flush();
+  }
+
   @Override
   void print(final String text) {
     System.out.print(text);
@@ -1,8 +1,13 @@
 package com.davidconneely.eightbit.zx81;
 
 import com.davidconneely.eightbit.IBus;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 
 class TerminalDisplay {
+  /** The size of a full display file (24 lines of 32 characters and `HALT`, plus a `HALT`). */
+  static final int DFILE_SIZE = 24 * 33 + 1;
+
   private static final int LEN_STATE = 68;
   private static final int[] codepoints = {
     ' ', '▘', '▝', '▀', '▖', '▌', '▞', '▛',
@@ -18,8 +23,44 @@ class TerminalDisplay {
     '█', '▟', '▙', '▄', '▜', '▐', '▚', '▗', 0x1FB90, 0x1FB91, 0x1FB92
   };
 
+  // the UTF-8 of each character: `codepoints`, then `codepoints2` (from `GLYPH2`).
+  private static final byte[][] GLYPHS = glyphs();
+  private static final int GLYPH2 = 64;
+
+  // where the screen is in the terminal (1-based): the ZX81's 32 columns are double width.
+  private static final int FIRST_ROW = 4;
+  private static final int FIRST_COLUMN = 3;
+  private static final int STATE_ROW = FIRST_ROW + 24 + 2;
+  private static final int MAX_GAP = 3; // unchanged characters worth writing to skip a cursor move.
+  private static final int INVERSE = 1 << 31; // a character's glyph, or'd with this if inverse.
+  private static final int UNDRAWN = -1; // not a glyph (even if inverse).
+
+  // the border etc. around the screen, with the screen blank.
+  private static final byte[] BORDER =
+      utf8(
+          "\u001B[H\u001B#6 \u001b[38;5;242msinclair \u001b[38;5;202mZX81\u001B[0m\u001B[K\r\n"
+              + "\u001B#6\u001b[38;5;231m╭──────────────────────────────────╮\u001B[0m\u001B[K\r\n"
+              // the ZX81's 24 lines, with a blank line above and below.
+              + "\u001B#6\u001b[38;5;231m│\u001B[38;5;195m\u001B[7m                                  \u001B[27m\u001B[38;5;231m│\u001B[0m\u001B[K\r\n"
+                  .repeat(26)
+              + "\u001B#6\u001b[38;5;231m╰──────────────────────────────────╯\u001B[0m\u001B[K\r\n"
+              // 68 x 2 character status area under the main screen area.
+              + "\u001B#5\u001B[K\r\n\u001B#5\u001B[K");
+  private static final byte[] INK = utf8("\u001B[38;5;195m");
+  private static final byte[] INVERSE_ON = utf8("\u001B[7m");
+  private static final byte[] INVERSE_OFF = utf8("\u001B[27m");
+  private static final byte[] RESET = utf8("\u001B[0m");
+  private static final byte[] CLEAR_TO_END = utf8("  \u001B[K");
+
   private final TerminalSupport terminal;
-  private String state1 = sanitizeState(null), state2 = sanitizeState(null);
+  private final byte[] state1 = sanitizeState(null), state2 = sanitizeState(null);
+  private final byte[] shownState1 = new byte[LEN_STATE], shownState2 = new byte[LEN_STATE];
+  private final int[] cells = new int[24 * 32]; // what the terminal shows (or `UNDRAWN`).
+  private final int[] nextCells = new int[24 * 32];
+  private boolean framed; // whether the border etc. has been drawn.
+  private int attributes; // whether the terminal is in inverse video now (or `UNDRAWN`).
+  private byte[] buffer = new byte[0x2000]; // the frame, until it's written to the terminal.
+  private int length;
 
   TerminalDisplay(final TerminalSupport terminal) {
     this.terminal = terminal;
@@ -28,6 +69,7 @@ class TerminalDisplay {
   /** Call this before starting the display to prepare it for use. */
   void init() {
     terminal.print("\u001B[?25l\u001B[?1049h"); // hide the cursor, use the alternate buffer.
+    framed = false;
   }
 
   /** Call this after using the display to release and reset it. */
@@ -38,121 +80,265 @@ class TerminalDisplay {
   }
 
   void state1(final String state) {
-    this.state1 = sanitizeState(state);
+    sanitizeState(state, state1);
   }
 
   void state2(final String state) {
-    this.state2 = sanitizeState(state);
+    sanitizeState(state, state2);
   }
 
-  private static String sanitizeState(final String state) {
-    StringBuilder sb = new StringBuilder(LEN_STATE);
+  private static byte[] sanitizeState(final String state) {
+    final byte[] sanitized = new byte[LEN_STATE];
+    sanitizeState(state, sanitized);
+    return sanitized;
+  }
+
+  // the printable ASCII of `state`, padded with spaces, into `sanitized`.
+  private static void sanitizeState(final String state, final byte[] sanitized) {
+    int length = 0;
     if (state != null) {
-      for (int i = 0; i < state.length() && i < LEN_STATE; ++i) {
+      for (int i = 0; i < state.length() && length < LEN_STATE; ++i) {
         int ch = state.charAt(i);
         if (ch >= 0x20 && ch <= 0x7E) {
-          sb.append((char) ch);
+          sanitized[length++] = (byte) ch;
         }
       }
     }
-    while (sb.length() < LEN_STATE) {
-      sb.append(' ');
+    Arrays.fill(sanitized, length, LEN_STATE, (byte) ' ');
+  }
+
+  /**
+   * Update the terminal to show a screen from the display file, using UTF-8 and ANSI escapes. Only
+   * what's changed since the last update is written: the border the first time, then each run of
+   * characters that differs from what's shown (with an ANSI escape to move to it), and each status
+   * line that differs. Nothing is written if nothing changed. Always tries to show 24 lines.
+   *
+   * <p>The update is put together in a buffer (from pre-encoded characters and escapes) and written
+   * to the terminal in one go, and nothing is allocated once the buffer is big enough.
+   *
+   * @param dFile a snapshot of the display file (see {@link #snapshot}).
+   */
+  void renderDFile(final byte[] dFile) {
+    if (!framed) {
+      put(BORDER);
+      Arrays.fill(cells, UNDRAWN);
+      Arrays.fill(shownState1, (byte) 0); // not printable, so the status lines are drawn too.
+      Arrays.fill(shownState2, (byte) 0);
+      framed = true;
+    }
+    decode(dFile, nextCells);
+    attributes = UNDRAWN;
+    for (int row = 0; row < 24; ++row) {
+      renderRow(row);
+    }
+    if (attributes != UNDRAWN) {
+      put(RESET);
+    }
+    renderState(STATE_ROW, state1, shownState1);
+    renderState(STATE_ROW + 1, state2, shownState2);
+    if (length > 0) {
+      terminal.write(buffer, 0, length);
+      length = 0;
+    }
+  }
+
+  /** Write a status line, if it differs from what's shown. */
+  private void renderState(final int row, final byte[] state, final byte[] shown) {
+    if (!Arrays.equals(state, shown)) {
+      putCursor(row, 1);
+      put((byte) ' ');
+      put((byte) ' ');
+      put(state);
+      put(CLEAR_TO_END);
+      System.arraycopy(state, 0, shown, 0, LEN_STATE);
+    }
+  }
+
+  /**
+   * Write the runs of characters in a row of the screen that differ from what's shown. Runs that
+   * are separated by only a few unchanged characters are written as one, as moving the cursor past
+   * them would take more bytes than writing them.
+   */
+  private void renderRow(final int row) {
+    final int first = row * 32;
+    int column = 0;
+    while (column < 32) {
+      if (nextCells[first + column] == cells[first + column]) {
+        ++column;
+        continue;
+      }
+      int end = column + 1; // the end of the run (exclusive).
+      for (int next = end; next < 32 && next - end <= MAX_GAP; ++next) {
+        if (nextCells[first + next] != cells[first + next]) {
+          end = next + 1;
+        }
+      }
+      putCursor(FIRST_ROW + row, FIRST_COLUMN + column);
+      for (; column < end; ++column) {
+        final int cell = nextCells[first + column];
+        if (attributes == UNDRAWN) {
+          put(INK);
+          put((cell & INVERSE) != 0 ? INVERSE_ON : INVERSE_OFF);
+        } else if ((cell & INVERSE) != attributes) {
+          put((cell & INVERSE) != 0 ? INVERSE_ON : INVERSE_OFF);
+        }
+        attributes = cell & INVERSE;
+        put(GLYPHS[cell & ~INVERSE]);
+        cells[first + column] = cell;
+      }
     }
-    return sb.toString();
   }
 
   /**
-   * Convert a screen from the display file into a UTF-8 and ANSI-escapes stream that can be
-   * displayed in a terminal. The stream starts with an ANSI-escape to move to the screen home.
-   * Always tries to show 24 lines.
+   * Copy the display file into {@code dFile} (at least {@link #DFILE_SIZE} bytes), which is as much
+   * of it as rendering can read. A collapsed display file is shorter, so the copy's end is whatever
+   * follows it in memory, which rendering never reaches.
    *
    * @param bus interface to read bytes from the display file.
    */
-  void renderDFile(final IBus bus) {
-    int address = bus.cpuReadMemWord(0x400C); // value of D_FILE
-    int ch = bus.cpuReadMemByte(address);
-    if ((ch & 0x40) != 0) { // skip any initial byte with bit6 set (usually 0x76 = `HALT`)
+  static void snapshot(final IBus bus, final byte[] dFile) {
+    bus.rawReadMemBytes(bus.cpuReadMemWord(0x400C), dFile, 0, DFILE_SIZE); // from D_FILE.
+  }
+
+  /**
+   * Convert a screen from the display file into plain text: 24 lines, each without trailing spaces
+   * and ending with a newline. Inverse video is ignored, except for block graphics.
+   *
+   * @param bus interface to read bytes from the display file.
+   */
+  static String text(final IBus bus) {
+    final byte[] dFile = new byte[DFILE_SIZE];
+    snapshot(bus, dFile);
+    int address = 0;
+    if ((dFile[address] & 0x40) != 0) { // skip any initial byte with bit6 set.
       ++address;
     }
-    terminal.print(
-        "\u001B[H\u001B#6 \u001b[38;5;242msinclair \u001b[38;5;202mZX81\u001B[0m\u001B[K\r\n");
-    terminal.print(
-        "\u001B#6\u001b[38;5;231m╭──────────────────────────────────╮\u001B[0m\u001B[K\r\n");
-    terminal.print(
-        "\u001B#6\u001b[38;5;231m│\u001B[38;5;195m\u001B[7m                                  \u001B[27m\u001B[38;5;231m│\u001B[0m\u001B[K\n");
+    final StringBuilder sb = new StringBuilder(24 * 33);
     for (int i = 0; i < 24; ++i) {
-      terminal.print("\u001B#6\u001b[38;5;231m│\u001B[38;5;195m\u001B[7m ");
-      address = renderLine(bus, address);
-      terminal.print(" \u001B[27m\u001b[38;5;231m│\u001B[0m\u001B[K\r\n");
+      int column = 0;
+      while (column < 33) { // as `decode`.
+        final int ch = dFile[address++] & 0xFF;
+        if ((ch & 0x40) != 0 || column == 32) {
+          break;
+        }
+        final int index = ch & 0x3F;
+        sb.appendCodePoint(
+            ((ch & 0x80) != 0 && index <= 10) ? codepoints2[index] : codepoints[index]);
+        ++column;
+      }
+      while (!sb.isEmpty() && sb.charAt(sb.length() - 1) == ' ') {
+        sb.setLength(sb.length() - 1);
+      }
+      sb.append('\n');
     }
-    terminal.print(
-        "\u001B#6\u001b[38;5;231m│\u001B[38;5;195m\u001B[7m                                  \u001B[27m\u001B[38;5;231m│\u001B[0m\u001B[K\n");
-    terminal.print(
-        "\u001B#6\u001b[38;5;231m╰──────────────────────────────────╯\u001B[0m\u001B[K\r\n");
-    // 68 x 2 character status area under the main screen area.
-    terminal.print("  " + state1 + "  \u001B[0m\u001B[K\r\n");
-    terminal.print("  " + state2 + "  \u001B[0m\u001B[K");
+    return sb.toString();
   }
 
   /**
-   * Convert a line from the display file into a UTF-8 and ANSI-escapes stream that can be displayed
-   * in a terminal. Inverse video mode is always reset at the end of the line. Any bytes with bit 6
-   * set (usually 0x76) end the line.
+   * Convert a screen from the display file into the characters of each line (or a space, after the
+   * end of a collapsed line), with {@code INVERSE} for inverse video. Any bytes with bit 6 set
+   * (usually 0x76) end a line.
    *
-   * @param bus interface to read bytes from the display file.
-   * @param address address of start of line.
-   * @return int address to continue next line from.
+   * @param dFile a snapshot of the display file.
+   * @param grid 24 lines of 32 characters.
    */
-  private int renderLine(final IBus bus, int address) {
-    boolean inverted = true;
-    int column = 0;
-    while (column < 33) {
-      int ch = bus.cpuReadMemByte(address++);
-      if ((ch & 0x40) != 0 || column == 32)
-        break; // end translation if bit6 set (usually 0x76 = `HALT`), or line is too long.
-      int index = ch & 0x3F;
-      boolean inverse =
-          (ch & 0x80) == 0
-              || index
-                  <= 10; // inverse video unless bit7 set (except for pre-inverted block graphics).
-      if (inverted != inverse) {
-        terminal.print(inverse ? "\u001B[7m" : "\u001B[27m");
-        inverted = inverse;
+  private static void decode(final byte[] dFile, final int[] grid) {
+    int address = 0;
+    if ((dFile[address] & 0x40) != 0) { // skip any initial byte with bit6 set (usually `HALT`)
+      ++address;
+    }
+    for (int row = 0; row < 24; ++row) {
+      int column = 0;
+      while (column < 33) {
+        int ch = dFile[address++] & 0xFF;
+        if ((ch & 0x40) != 0 || column == 32)
+          break; // end translation if bit6 set (usually 0x76 = `HALT`), or line is too long.
+        int index = ch & 0x3F;
+        // inverse video unless bit7 set (except for pre-inverted block graphics).
+        boolean inverse = (ch & 0x80) == 0 || index <= 10;
+        grid[row * 32 + column] =
+            ((ch & 0x80) != 0 && index <= 10 ? GLYPH2 + index : index) | (inverse ? INVERSE : 0);
+        ++column;
       }
-      writeCodepoint(((ch & 0x80) != 0 && index <= 10) ? codepoints2[index] : codepoints[index]);
-      ++column;
+      while (column < 32) { // only used with collapsed display file.
+        grid[row * 32 + column] = INVERSE; // a space.
+        ++column;
+      }
+    }
+  }
+
+  /** Move the cursor to {@code row} and {@code column} (1-based). */
+  private void putCursor(final int row, final int column) {
+    put((byte) 0x1B);
+    put((byte) '[');
+    putDecimal(row);
+    put((byte) ';');
+    putDecimal(column);
+    put((byte) 'H');
+  }
+
+  private void putDecimal(final int value) {
+    if (value >= 10) {
+      putDecimal(value / 10);
+    }
+    put((byte) ('0' + value % 10));
+  }
+
+  private void put(final byte data) {
+    if (length == buffer.length) {
+      buffer = Arrays.copyOf(buffer, buffer.length * 2);
+    }
+    buffer[length++] = data;
+  }
+
+  private void put(final byte[] data) {
+    if (length + data.length > buffer.length) {
+      buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, length + data.length));
     }
-    if (!inverted) {
-      terminal.print("\u001B[7m");
+    System.arraycopy(data, 0, buffer, length, data.length);
+    length += data.length;
+  }
+
+  private static byte[][] glyphs() {
+    final byte[][] glyphs = new byte[GLYPH2 + codepoints2.length][];
+    for (int i = 0; i < codepoints.length; ++i) {
+      glyphs[i] = utf8(codepoints[i]);
     }
-    while (column < 32) { // only used with collapsed display file.
-      terminal.write(' ');
-      ++column;
+    for (int i = 0; i < codepoints2.length; ++i) {
+      glyphs[GLYPH2 + i] = utf8(codepoints2[i]);
     }
-    return address;
+    return glyphs;
+  }
+
+  private static byte[] utf8(final String text) {
+    return text.getBytes(StandardCharsets.UTF_8);
   }
 
   /**
-   * Writes to the `stream` in UTF-8 (note that `enableRawMode` should also set the terminal to
-   * UTF-8 encoding).
+   * Encodes in UTF-8 (note that `enableRawMode` should also set the terminal to UTF-8 encoding).
    *
-   * @param codepoint the Unicode codepoint to write as a set of UTF-8 bytes to the stream.
+   * @param codepoint the Unicode codepoint to encode as a set of UTF-8 bytes.
    */
-  private void writeCodepoint(final int codepoint) {
+  private static byte[] utf8(final int codepoint) {
     if (codepoint <= 0x7F) /* 7-bits */ {
-      terminal.write(codepoint);
+      return new byte[] {(byte) codepoint};
     } else if (codepoint <= 0x7FF) /* 5-bits,6-bits */ {
-      terminal.write(0xC0 | ((codepoint & 0x7C0) >>> 6));
-      terminal.write(0x80 | (codepoint & 0x03F));
+      return new byte[] {
+        (byte) (0xC0 | ((codepoint & 0x7C0) >>> 6)), (byte) (0x80 | (codepoint & 0x03F))
+      };
     } else if (codepoint <= 0xFFFF) /* 4-bits,6-bits,6-bits */ {
-      terminal.write(0xE0 | ((codepoint & 0xF000) >>> 12));
-      terminal.write(0x80 | ((codepoint & 0x0FC0) >>> 6));
-      terminal.write(0x80 | (codepoint & 0x3F));
-    } else if (codepoint <= 0x1FFFFF) /* 3-bits,6-bits,6-bits,6-bits */ {
-      terminal.write(0xF0 | ((codepoint & 0x1C0000) >>> 18));
-      terminal.write(0x80 | ((codepoint & 0x03F000) >>> 12));
-      terminal.write(0x80 | ((codepoint & 0x000FC0) >>> 6));
-      terminal.write(0x80 | (codepoint & 0x3F));
+      return new byte[] {
+        (byte) (0xE0 | ((codepoint & 0xF000) >>> 12)),
+        (byte) (0x80 | ((codepoint & 0x0FC0) >>> 6)),
+        (byte) (0x80 | (codepoint & 0x3F))
+      };
+    } else /* 3-bits,6-bits,6-bits,6-bits */ {
+      return new byte[] {
+        (byte) (0xF0 | ((codepoint & 0x1C0000) >>> 18)),
+        (byte) (0x80 | ((codepoint & 0x03F000) >>> 12)),
+        (byte) (0x80 | ((codepoint & 0x000FC0) >>> 6)),
+        (byte) (0x80 | (codepoint & 0x3F))
+      };
     }
   }
 }
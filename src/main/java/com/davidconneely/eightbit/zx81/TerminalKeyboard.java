@@ -1,6 +1,7 @@
 package com.davidconneely.eightbit.zx81;
 
 import java.util.Map;
+import java.util.function.LongSupplier;
 
 /**
  * To be able to emulate the keyboard in a terminal, I think I need to be able to enable terminal
@@ -8,9 +9,9 @@ import java.util.Map;
  * external process.
  */
 class TerminalKeyboard {
-  private record Key(int highPort, int data, boolean isShifted) {}
+  record Key(int highPort, int data, boolean isShifted) {}
 
-  private static final Map<Character, Key> KEY_MAP =
+  static final Map<Character, Key> KEY_MAP =
       Map.<Character, Key>ofEntries(
           Map.entry('1', new Key(0xF7, 0xFE, false)),
           Map.entry('!', new Key(0xF7, 0xFE, true)),
@@ -114,62 +115,151 @@ class TerminalKeyboard {
           Map.entry('\\', new Key(0x7F, 0xFE, true)) // use '\\' (backslash) for '£' key
           );
 
-  private final TerminalSupport terminal;
+  // the arrow keys (their escape sequences, or the arrow characters in `KEY_MAP`) are decoded to
+  // codes after those of the bytes of input, and any other character past a byte presses no keys.
+  private static final int UP = 0x100;
+  private static final int DOWN = 0x101;
+  private static final int RIGHT = 0x102;
+  private static final int LEFT = 0x103;
+  private static final int NO_KEY = 0x104;
+
+  // `KEY_MAP` compiled to the `matrix` of the keys to press for each code (see `code`), so decoding
+  // a key is an array load, without boxing the character or looking it up.
+  private static final long[] KEY_TABLE = keyTable();
+
+  // the keys pressed are published in one word: the bit for the key in column `c` of row `r` (the
+  // row read from the port with bit `r` of the high byte reset) is bit `r * 5 + c` of `MATRIX`, and
+  // each key typed adds one to `SEQUENCE` (so typing the same key again is seen as a new press).
+  private static final long MATRIX = (1L << 40) - 1L;
+  private static final long SEQUENCE = 1L << 40;
+  private static final long SHUTDOWN = Long.MIN_VALUE; // Ctrl+C was typed.
+  private static final long HOLD_MILLIS = 20L; // how long a key is held after it was last typed.
+  private static final int INPUT_WAIT_MILLIS = 100; // how often the input thread checks if closed.
 
-  private long lastKeyTime;
-  private Key lastKey;
+  private final TerminalSupport terminal;
+  private final LongSupplier clock;
+  private volatile long keys; // written only by the thread that's decoding input.
+  private long seenKeys; // the last `keys` the machine read, and when it first read it.
+  private long seenTime;
+  private Thread inputThread;
+  private volatile boolean closed;
 
-  TerminalKeyboard(final TerminalSupport terminal) {
+  /**
+   * @param clock the machine's time in milliseconds, which decides when a key that's no longer
+   *     being read from the terminal is released.
+   */
+  TerminalKeyboard(final TerminalSupport terminal, final LongSupplier clock) {
     this.terminal = terminal;
+    this.clock = clock;
   }
 
-  private void consumeVTInput() {
-    // the only Virtual Terminal Control Sequences we really care about are the arrow keys:
-    int ch = terminal.read();
-    if (ch == 27) {
-      ch = terminal.read();
-      if (ch == '[') {
-        ch = terminal.read();
-        switch (ch) {
-          case 'A' -> ch = '↑'; // up arrow
-          case 'B' -> ch = '↓'; // down arrow
-          case 'C' -> ch = '→'; // right arrow
-          case 'D' -> ch = '←'; // left arrow
-        }
+  /**
+   * Start a thread that decodes input as it arrives from the terminal, so that the machine doesn't
+   * read the terminal itself (e.g. on every `IN` of its keyboard scan). Without one, the input is
+   * only decoded when {@link #consumeInput()} is called.
+   */
+  void startInputThread() {
+    inputThread =
+        Thread.ofPlatform()
+            .name("zx81-keyboard")
+            .daemon()
+            .start(
+                () -> {
+                  while (!closed) {
+                    if (terminal.awaitInput(INPUT_WAIT_MILLIS)) {
+                      consumeInput();
+                    }
+                  }
+                });
+  }
+
+  /** Stop the input thread (if it was started). */
+  void close() {
+    closed = true;
+    if (inputThread != null) {
+      try {
+        inputThread.join();
+      } catch (final InterruptedException ex) {
+        Thread.currentThread().interrupt();
       }
     }
-    final long now = System.currentTimeMillis();
+  }
 
-    if (ch == -1) {
-      if (now - lastKeyTime >= 20L) {
-        lastKeyTime = now;
-        lastKey = null;
+  /** Decode the input that's arrived from the terminal, and publish the keys it presses. */
+  void consumeInput() {
+    for (int ch = terminal.read(); ch != -1; ch = terminal.read()) {
+      // the only Virtual Terminal Control Sequences we really care about are the arrow keys:
+      if (ch == 27) {
+        ch = terminal.read();
+        if (ch == '[') {
+          ch = terminal.read();
+          switch (ch) {
+            case 'A' -> ch = '↑'; // up arrow
+            case 'B' -> ch = '↓'; // down arrow
+            case 'C' -> ch = '→'; // right arrow
+            case 'D' -> ch = '←'; // left arrow
+          }
+        }
+      }
+      if (ch == 3) { // exit on Ctrl+C
+        keys |= SHUTDOWN;
+      } else if (ch != -1) {
+        final long sequence = (keys + SEQUENCE) & ~(MATRIX | SHUTDOWN); // (wraps around.)
+        keys = (keys & SHUTDOWN) | sequence | KEY_TABLE[code(ch)];
       }
-      return;
-    }
-    if (ch == 3) { // exit on Ctrl+C
-      throw new ShutdownException("Closing emulator because Ctrl+C pressed");
     }
-    lastKeyTime = now;
-    lastKey = KEY_MAP.get((char) ch);
   }
 
+  /**
+   * The index in `KEY_TABLE` of {@code ch}, which may be a byte (e.g. from a terminal that sends
+   * UTF-8), or a whole character (e.g. from Windows, or a headless script).
+   */
+  private static int code(final int ch) {
+    return switch (ch) {
+      case '↑' -> UP;
+      case '↓' -> DOWN;
+      case '→' -> RIGHT;
+      case '←' -> LEFT;
+      default -> ch >= 0 && ch <= 0xFF ? ch : NO_KEY;
+    };
+  }
+
+  private static long[] keyTable() {
+    final long[] table = new long[NO_KEY + 1];
+    KEY_MAP.forEach((ch, key) -> table[code(ch)] = matrix(key));
+    return table;
+  }
+
+  /** The bits of the keys to press for {@code key} (including SHIFT, if it's shifted). */
+  private static long matrix(final Key key) {
+    final int row = Integer.numberOfTrailingZeros(~key.highPort() & 0xFF);
+    return ((long) (~key.data() & 0x1F) << (row * 5)) | (key.isShifted() ? 1L : 0L);
+  }
+
+  /** Whether Ctrl+C was typed (which the machine checks between frames, not in the middle). */
+  boolean isShutdown() {
+    return (keys & SHUTDOWN) != 0L;
+  }
+
+  /**
+   * The byte read from the keyboard port {@code portNum}: the rows with their bit of the high byte
+   * reset are read, with bits 0 to 4 reset for the keys pressed in them. Reads the keys the input
+   * thread (or {@link #consumeInput()}) published, and releases them once they haven't been typed
+   * for a while of the machine's time.
+   */
   int readKeyPortByte(final int portNum) {
-    consumeVTInput();
-    if (lastKey == null) {
-      return 0xFF;
+    final long keys = this.keys;
+    if (keys != seenKeys) {
+      seenKeys = keys;
+      seenTime = clock.getAsLong();
     }
-    final int readFrom = portNum >>> 8;
-    if (lastKey.isShifted() && readFrom == 0xFE) { // handle shift key
-      if (lastKey.highPort == 0xFE) {
-        return lastKey.data & 0xFE;
-      } else {
-        return 0xFE;
-      }
-    } else if (lastKey.highPort == readFrom) { // handle unshifted keys or keys on other rows
-      return lastKey.data;
-    } else {
+    if ((keys & MATRIX) == 0L || clock.getAsLong() - seenTime >= HOLD_MILLIS) {
       return 0xFF;
     }
+    int data = 0xFF;
+    for (int rows = ~portNum >>> 8 & 0xFF; rows != 0; rows &= rows - 1) {
+      data &= ~(int) (keys >>> (Integer.numberOfTrailingZeros(rows) * 5)) | ~0x1F;
+    }
+    return data;
   }
 }
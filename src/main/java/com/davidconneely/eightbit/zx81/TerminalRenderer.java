@@ -0,0 +1,86 @@
+package com.davidconneely.eightbit.zx81;
+
+import com.davidconneely.eightbit.IBus;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Renders the display on a thread of its own, so that a slow terminal doesn't hold up the machine.
+ * The machine's thread publishes a snapshot of the display file (and the status) at the end of a
+ * frame, and the renderer draws the latest snapshot: any published while it was drawing the one
+ * before are skipped. Snapshots are handed off without locks, so the machine never waits for the
+ * renderer (or the terminal).
+ *
+ * <p>A snapshot that's been drawn (or skipped) is handed back to be reused for a later one, so once
+ * there are three (the one being drawn, the latest, and the one being copied), publishing doesn't
+ * allocate.
+ */
+final class TerminalRenderer implements AutoCloseable {
+  /** A snapshot of the display. */
+  private static final class Frame {
+    private final byte[] dFile = new byte[TerminalDisplay.DFILE_SIZE];
+    private String state1;
+  }
+
+  private final TerminalDisplay display;
+  private final AtomicReference<Frame> latest = new AtomicReference<>(); // published, not drawn.
+  private final AtomicReference<Frame> spare = new AtomicReference<>(); // to reuse.
+  private final Thread thread;
+  private volatile boolean closed;
+  private volatile long drawn; // written only by the renderer's thread.
+
+  /** Start rendering to {@code display} (which should be initialized). */
+  TerminalRenderer(final TerminalDisplay display) {
+    this.display = display;
+    this.thread = Thread.ofPlatform().name("zx81-renderer").daemon().start(this::run);
+  }
+
+  /**
+   * Publish a snapshot of the display file in {@code bus}, with the status line {@code state1}, to
+   * be drawn. Call this from the machine's thread (only), between instructions.
+   */
+  void publish(final IBus bus, final String state1) {
+    Frame frame = spare.getAndSet(null);
+    if (frame == null) {
+      frame = new Frame();
+    }
+    TerminalDisplay.snapshot(bus, frame.dFile);
+    frame.state1 = state1;
+    final Frame skipped = latest.getAndSet(frame); // the renderer didn't get to it in time.
+    if (skipped != null) {
+      spare.set(skipped);
+    }
+    LockSupport.unpark(thread);
+  }
+
+  /** How many snapshots have been drawn. */
+  long drawn() {
+    return drawn;
+  }
+
+  private void run() {
+    while (!closed) {
+      final Frame frame = latest.getAndSet(null);
+      if (frame == null) {
+        LockSupport.park(this); // until the next snapshot (or a spurious wakeup).
+        continue;
+      }
+      display.state1(frame.state1);
+      display.renderDFile(frame.dFile);
+      spare.set(frame);
+      ++drawn;
+    }
+  }
+
+  /** Stop rendering, after drawing the snapshot it's drawing (if any). */
+  @Override
+  public void close() {
+    closed = true;
+    LockSupport.unpark(thread);
+    try {
+      thread.join();
+    } catch (final InterruptedException ex) {
+      Thread.currentThread().interrupt();
+    }
+  }
+}
@@ -13,7 +13,9 @@ abstract class TerminalSupport {
       } else if (osName.startsWith("mac") || osName.startsWith("darwin")) {
         instance = PosixTerminalSupport.newInstance(MacOsTermiosBits::cfmakeraw);
       } else if (osName.startsWith("linux")) {
-        instance = PosixTerminalSupport.newInstance(LinuxTermiosBits::cfmakeraw);
+        instance =
+            LinuxTerminalSupport.newInstance(
+                PosixTerminalSupport.newInstance(LinuxTermiosBits::cfmakeraw));
       } else {
         throw new IllegalStateException("Unsupported operating system: " + osName);
       }
@@ -27,7 +29,24 @@ abstract class TerminalSupport {
 
   abstract int read();
 
+  /**
+   * Wait for input to {@link #read()}, for up to {@code timeoutMillis}. Returns false if there
+   * isn't any, but true doesn't guarantee there is: by default, this just waits a millisecond.
+   */
+  boolean awaitInput(final int timeoutMillis) {
+    try {
+      Thread.sleep(Math.min(timeoutMillis, 1));
+    } catch (final InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      return false;
+    }
+    return true;
+  }
+
   abstract void write(int data);
 
+  /** Write {@code length} bytes of {@code data} (e.g. a whole frame) in one go. */
+  abstract void write(byte[] data, int offset, int length);
+
   abstract void print(String text);
 }
@@ -0,0 +1,145 @@
+package com.davidconneely.eightbit.zx81;
+
+import com.davidconneely.eightbit.z80.Core;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Runs a batch of ZX81 programs headless and in parallel, each on a machine of its own (see {@link
+ * ZX81Headless}), and collects the screen each one ends with and how long it took. The machines
+ * share nothing that's written (not even the ROM's pages, which are shared copy-on-write), so each
+ * job is single-threaded and they need no locking.
+ *
+ * <p>{@link #jobs(Path)} makes a job for each {@code name.p} in a directory: it boots the machine,
+ * types {@code LOAD "name"}, then types the keys in {@code name.keys} (e.g. {@code r\n} to `RUN`
+ * it), if there is one.
+ */
+public final class ZX81Batch {
+  /** Frames for the ROM to start up (clear the RAM and show the `K` cursor) before typing keys. */
+  static final long BOOT_FRAMES = 100L;
+
+  /** A program to run: its name, and the keys to type (see {@link ZX81Headless}). */
+  public record Job(String name, String script) {}
+
+  /**
+   * What a job did.
+   *
+   * @param passed whether it ran without error (and found the text it was looking for, if any).
+   * @param screen the text on the screen at the end.
+   * @param frames how many frames it ran.
+   * @param nanos how long it took (including creating the machine).
+   * @param error why it failed, or null if it ran without error.
+   */
+  public record Result(
+      String name, boolean passed, String screen, long frames, long nanos, String error) {}
+
+  private final Path programs;
+  private final long frames;
+  private final String until;
+  private final Core.Option[] options;
+
+  /**
+   * @param programs the directory `LOAD` loads {@code name.p} from, or null for the program
+   *     resources.
+   * @param frames how many frames to run each job for (or at most, with {@code until}).
+   * @param until the text to run until it appears on the screen (or it fails), or null to run for
+   *     {@code frames}.
+   * @param options how the Z80 is emulated on each machine (e.g. with a decode cache).
+   */
+  public ZX81Batch(
+      final Path programs, final long frames, final String until, final Core.Option... options) {
+    this.programs = programs;
+    this.frames = frames;
+    this.until = until;
+    this.options = options;
+  }
+
+  /** A job for each {@code .p} program in {@code dir}, in order of name. */
+  public static List<Job> jobs(final Path dir) throws IOException {
+    final List<Job> jobs = new ArrayList<>();
+    try (final var files = Files.list(dir)) {
+      for (final Path file : files.sorted().toList()) {
+        final String filename = file.getFileName().toString();
+        if (filename.endsWith(".p") && Files.isRegularFile(file)) {
+          final String name = filename.substring(0, filename.length() - ".p".length());
+          final Path keys = dir.resolve(name + ".keys");
+          jobs.add(
+              new Job(
+                  name,
+                  "[%d]j\"%s\"\n%s"
+                      .formatted(
+                          BOOT_FRAMES,
+                          name,
+                          Files.isRegularFile(keys) ? Files.readString(keys) : "")));
+        }
+      }
+    }
+    return jobs;
+  }
+
+  /**
+   * Run {@code jobs} in parallel, on {@code threads} threads (in a {@link ForkJoinPool}), or on a
+   * virtual thread each if {@code threads} is zero.
+   *
+   * @return the result of each job, in the same order.
+   */
+  public List<Result> run(final List<Job> jobs, final int threads) {
+    final List<Callable<Result>> tasks = new ArrayList<>(jobs.size());
+    for (final Job job : jobs) {
+      tasks.add(() -> run(job));
+    }
+    try (final ExecutorService executor =
+        threads > 0 ? new ForkJoinPool(threads) : Executors.newVirtualThreadPerTaskExecutor()) {
+      final List<Result> results = new ArrayList<>(jobs.size());
+      for (final Future<Result> future : executor.invokeAll(tasks)) {
+        results.add(future.get());
+      }
+      return results;
+    } catch (final InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException(ex);
+    } catch (final ExecutionException ex) {
+      throw new IllegalStateException(ex.getCause()); // `run(Job)` catches what it can.
+    }
+  }
+
+  /** Run one job, on the calling thread. */
+  public Result run(final Job job) {
+    final long start = System.nanoTime();
+    final ZX81Headless zx81 = new ZX81Headless(null, programs, job.script(), options);
+    try {
+      if (until == null) {
+        final String screen = zx81.runFrames(frames);
+        return result(job, start, zx81, true, screen, null);
+      }
+      final Optional<String> screen = zx81.runUntil(until, frames);
+      return result(job, start, zx81, screen.isPresent(), screen.orElse(zx81.screen()), null);
+    } catch (final RuntimeException ex) { // e.g. `LOAD` of a program that isn't there.
+      final String error =
+          ex instanceof IllegalStateException && ex.getCause() != null
+              ? ex.getCause().toString()
+              : ex.toString();
+      return result(job, start, zx81, false, zx81.screen(), error);
+    }
+  }
+
+  private static Result result(
+      final Job job,
+      final long start,
+      final ZX81Headless zx81,
+      final boolean passed,
+      final String screen,
+      final String error) {
+    return new Result(job.name(), passed, screen, zx81.frames(), System.nanoTime() - start, error);
+  }
+}
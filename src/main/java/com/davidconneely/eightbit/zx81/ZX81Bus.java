@@ -1,51 +1,154 @@
 package com.davidconneely.eightbit.zx81;
 
 import com.davidconneely.eightbit.IBus;
+import com.davidconneely.eightbit.IMemory;
+import com.davidconneely.eightbit.PagedMemory;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
 
 class ZX81Bus implements IBus {
   private final TerminalKeyboard keyboard;
-  private final int[] rom;
-  private final int[] ram;
+  private final IMemory memory;
 
+  /** The ROM, read from the classpath once for all buses. */
+  private static final class Rom {
+    private static final byte[] BYTES = read();
+    // a memory map with the ROM loaded, that's forked for each bus, so they all share its pages.
+    private static final IMemory MEMORY = new ZX81Bus(null, new PagedMemory(0x400), BYTES).memory;
+
+    private static byte[] read() {
+      try (final InputStream in = ZX81Bus.class.getResourceAsStream("/z80/zx81/zx81.rom")) {
+        return in.readAllBytes();
+      } catch (final IOException ex) {
+        throw new UncheckedIOException(ex);
+      }
+    }
+
+    private static IMemory fork() {
+      synchronized (MEMORY) { // forking marks the pages shared in `MEMORY` too.
+        return MEMORY.fork();
+      }
+    }
+  }
+
+  /** A bus with the ROM loaded, sharing its memory copy-on-write with all the other buses. */
   ZX81Bus(final TerminalKeyboard keyboard) {
+    this(keyboard, Rom.fork(), false);
+  }
+
+  /** A bus with the ROM loaded, in {@code memory}. */
+  ZX81Bus(final TerminalKeyboard keyboard, final IMemory memory) {
+    this(keyboard, memory, Rom.BYTES);
+  }
+
+  /** A bus with {@code rom} (e.g. a test program) loaded in place of the ROM, in {@code memory}. */
+  ZX81Bus(final TerminalKeyboard keyboard, final IMemory memory, final byte[] rom) {
+    this(keyboard, memory, true);
+    memory.rawWrite(0x0000, rom, 0, rom.length);
+  }
+
+  private ZX81Bus(final TerminalKeyboard keyboard, final IMemory memory, final boolean map) {
     this.keyboard = keyboard;
-    this.rom = new int[0x2000]; // 8 kiB
-    this.ram = new int[0x4000]; // 16 kiB
+    this.memory = memory;
+    if (map) {
+      memory.map(0x0000, 0x2000, true); // 8 kiB ROM.
+      memory.mirror(0x2000, 0x2000, 0x0000, true); // shadow ROM.
+      memory.map(0x4000, 0x4000, false); // 16 kiB RAM.
+      memory.mirror(0x8000, 0x8000, 0x0000, true); // bit 15 of the address is ignored.
+    }
+  }
+
+  /**
+   * A copy of this bus (e.g. of a machine that's booted), with its own {@code keyboard}, that
+   * shares this bus's memory until either writes to it (see {@link IMemory#fork()}).
+   */
+  ZX81Bus fork(final TerminalKeyboard keyboard) {
+    return new ZX81Bus(keyboard, memory.fork(), false);
   }
 
   @Override
-  public int rawReadMemByte(final int rawAddress) {
-    final int address = rawAddress & 0x7FFF; // ignore bit 15 of address.
-    if (address < 0x4000) {
-      return rom[address & 0x1FFF] & 0xFF;
+  public int rawReadMemByte(final int address) {
+    return memory.rawRead(address & 0xFFFF);
+  }
+
+  @Override
+  public void rawReadMemBytes(
+      final int address, final byte[] dest, final int offset, final int length) {
+    if (address >= 0 && address + length <= 0x10000) {
+      memory.rawRead(address, dest, offset, length);
     } else {
-      return ram[address - 0x4000] & 0xFF;
+      IBus.super.rawReadMemBytes(address, dest, offset, length);
     }
   }
 
   @Override
   public int cpuReadMemInstr(final int address) {
     final boolean lomem = (address & 0x8000) == 0;
-    final int n = rawReadMemByte(address);
-    return (lomem || (n & 0x40) == 0x40) ? (n & 0xFF) : 0;
+    final int n = memory.rawRead(address);
+    return (lomem || (n & 0x40) == 0x40) ? n : 0;
+  }
+
+  @Override
+  public int cpuReadMemByte(final int address) {
+    return memory.rawRead(address); // no pages are hooked, so skip checking for a hook.
+  }
+
+  @Override
+  public boolean isCacheable(final int address) {
+    // above 0x8000, M1 reads depend on bit 6, and the memory is a mirror of 0x0000-0x7FFF.
+    return address < 0x8000;
+  }
+
+  @Override
+  public void rawWriteMemByte(final int address, final int data) {
+    memory.rawWrite(address & 0xFFFF, data);
   }
 
   @Override
-  public void rawWriteMemByte(final int rawAddress, final int data) {
-    final int address = rawAddress & 0x7FFF; // ignore bit 15 of address.
-    if (address < 0x4000) {
-      rom[address & 0x1FFF] = (byte) data;
+  public void rawWriteMemBytes(
+      final int address, final byte[] source, final int offset, final int length) {
+    if (address >= 0 && address + length <= 0x10000) {
+      memory.rawWrite(address, source, offset, length);
     } else {
-      ram[address - 0x4000] = (byte) data;
+      IBus.super.rawWriteMemBytes(address, source, offset, length);
     }
   }
 
   @Override
   public void cpuWriteMemByte(final int address, final int data) {
-    // don't write to ROM, shadow ROM or shadow RAM.
-    if (address >= 0x4000 && address < 0x8000) {
-      rawWriteMemByte(address, data);
-    }
+    memory.write(address, data); // ROM, shadow ROM and shadow RAM are read-only.
+  }
+
+  @Override
+  public void cpuCopyMemBytes(
+      final int source, final int dest, final int length, final boolean increment) {
+    memory.copy(source, dest, length, increment);
+  }
+
+  @Override
+  public int cpuFindMemByte(
+      final int address, final int length, final int value, final boolean increment) {
+    return memory.find(address, length, value, increment);
+  }
+
+  /** The size of the pages that {@link #collectDirty(long[])} reports. */
+  int pageSize() {
+    return memory.pageSize();
+  }
+
+  /** Start (or stop) recording which pages are written to (see {@link IMemory}). */
+  void trackDirty(final boolean enabled) {
+    memory.trackDirty(enabled);
+  }
+
+  /**
+   * Copy the set of pages written to since the last collect into {@code into}, and clear it.
+   *
+   * @see IMemory#collectDirty(long[])
+   */
+  int collectDirty(final long[] into) {
+    return memory.collectDirty(into);
   }
 
   @Override
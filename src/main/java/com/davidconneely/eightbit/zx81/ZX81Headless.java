@@ -0,0 +1,174 @@
+package com.davidconneely.eightbit.zx81;
+
+import com.davidconneely.eightbit.IMemory;
+import com.davidconneely.eightbit.PagedMemory;
+import com.davidconneely.eightbit.z80.Core;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Optional;
+import java.util.function.Function;
+
+/**
+ * A ZX81 that runs without a terminal, as fast as it can (e.g. to check programs in CI or batch
+ * jobs): its display goes nowhere, its keyboard types a script of keys, and its screen can be read
+ * as text. For example, to load a program and wait for it to print something:
+ *
+ * <pre>{@code
+ * var zx81 = new ZX81Headless(null, "[50]j\"demo\"\n");
+ * Optional<String> screen = zx81.runUntil("GAME OVER", 50L * 60L);
+ * }</pre>
+ *
+ * <p>From the command line, {@code ZX81Machine --headless} runs one (see {@link ZX81Machine}).
+ */
+public final class ZX81Headless {
+  /** Frames from one key in a script to the next (long enough for the first to be released). */
+  private static final long KEY_FRAMES = 5L;
+
+  private final HeadlessTerminal terminal = new HeadlessTerminal();
+  private final ZX81Machine machine;
+  private final long[] keyFrames; // the frame (after `firstFrame`) before which each key is typed.
+  private final char[] keys;
+  private int nextKey;
+  private long firstFrame; // the frame the script starts from (after restoring a snapshot).
+
+  /**
+   * @param memory the memory to use (e.g. a {@link com.davidconneely.eightbit.SegmentMemory}), or
+   *     null for Java arrays that share the ROM's pages with other machines.
+   * @param script the keys to type: each character is typed 5 frames after the one before (as read
+   *     from a terminal, so e.g. a newline is `NEWLINE`), and {@code [n]} waits {@code n} more
+   *     frames first.
+   */
+  public ZX81Headless(final IMemory memory, final String script) {
+    this(memory, null, script);
+  }
+
+  /**
+   * @param memory the memory to use, or null for Java arrays that share the ROM's pages.
+   * @param programs the directory `LOAD` loads {@code name.p} from, or null for the program
+   *     resources.
+   * @param script the keys to type (see {@link #ZX81Headless(IMemory, String)}).
+   * @param options how the Z80 is emulated (e.g. with a decode cache).
+   */
+  public ZX81Headless(
+      final IMemory memory,
+      final Path programs,
+      final String script,
+      final Core.Option... options) {
+    this(
+        keyboard -> memory != null ? new ZX81Bus(keyboard, memory) : new ZX81Bus(keyboard),
+        programs,
+        script,
+        options);
+  }
+
+  private ZX81Headless(
+      final Function<TerminalKeyboard, ZX81Bus> bus,
+      final Path programs,
+      final String script,
+      final Core.Option... options) {
+    this.machine =
+        ZX81Machine.withBus(
+            terminal,
+            bus,
+            programs,
+            new Pacer(Pacer.CLOCK_HZ, Double.POSITIVE_INFINITY, ZX81Machine.FRAME),
+            options);
+    final long[] frames = new long[script.length()];
+    final char[] chars = new char[script.length()];
+    int count = 0;
+    long frame = 0L;
+    for (int i = 0; i < script.length(); ++i) {
+      final int close = script.indexOf(']', i);
+      if (script.charAt(i) == '[' && close > i + 1 && isDigits(script, i + 1, close)) {
+        frame += Long.parseLong(script, i + 1, close, 10);
+        i = close;
+      } else {
+        frame += KEY_FRAMES;
+        frames[count] = frame;
+        chars[count++] = script.charAt(i);
+      }
+    }
+    this.keyFrames = Arrays.copyOf(frames, count);
+    this.keys = Arrays.copyOf(chars, count);
+  }
+
+  /**
+   * A machine that runs {@code rom} (e.g. a test program) in place of the ROM, in Java arrays of
+   * its own.
+   *
+   * @param script the keys to type (see {@link #ZX81Headless(IMemory, String)}).
+   */
+  static ZX81Headless withRom(final byte[] rom, final String script) {
+    return new ZX81Headless(
+        keyboard -> new ZX81Bus(keyboard, new PagedMemory(0x400), rom), null, script);
+  }
+
+  private static boolean isDigits(final String text, final int start, final int end) {
+    for (int i = start; i < end; ++i) {
+      if (!Character.isDigit(text.charAt(i))) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /** Run for {@code frames} frames, then return the text on the screen. */
+  public String runFrames(final long frames) {
+    for (long i = 0L; i < frames; ++i) {
+      frame();
+    }
+    return screen();
+  }
+
+  /**
+   * Run until {@code text} appears on the screen, for up to {@code maxFrames} frames.
+   *
+   * @return the text on the screen, or empty if {@code text} didn't appear.
+   */
+  public Optional<String> runUntil(final String text, final long maxFrames) {
+    for (long i = 0L; i < maxFrames; ++i) {
+      frame();
+      final String screen = screen();
+      if (screen.contains(text)) {
+        return Optional.of(screen);
+      }
+    }
+    return Optional.empty();
+  }
+
+  /**
+   * The text on the screen: 24 lines, each without trailing spaces and ending with a newline.
+   * Inverse video is ignored, except that block graphics are shown inverted.
+   */
+  public String screen() {
+    return machine.screen();
+  }
+
+  /** How many frames have been run (50 per second of the machine's time). */
+  public long frames() {
+    return machine.frames();
+  }
+
+  /**
+   * Resume from a snapshot {@code file} (see {@link #save(Path)}): the script then starts from the
+   * snapshot's frame, rather than from booting.
+   */
+  public void restore(final Path file) throws IOException {
+    machine.restore(file);
+    firstFrame = machine.frames();
+  }
+
+  /** Save the machine to a snapshot {@code file}, e.g. once it's booted or loaded a program. */
+  public void save(final Path file) throws IOException {
+    machine.save(file);
+  }
+
+  private void frame() {
+    while (nextKey < keys.length && keyFrames[nextKey] <= machine.frames() - firstFrame) {
+      terminal.type(keys[nextKey++]);
+    }
+    machine.consumeInput();
+    machine.frame();
+  }
+}
@@ -1,27 +1,171 @@
 package com.davidconneely.eightbit.zx81;
 
-import com.davidconneely.eightbit.IBus;
+import com.davidconneely.eightbit.IMemory;
+import com.davidconneely.eightbit.SegmentMemory;
 import com.davidconneely.eightbit.z80.Core;
+import com.davidconneely.eightbit.z80.State;
 import java.io.IOException;
+import java.lang.foreign.Arena;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.function.Function;
 
 public class ZX81Machine {
   private final TerminalSupport terminal;
   private final TerminalDisplay display;
   private final TerminalKeyboard keyboard;
-  private final IBus bus;
+  private final ZX81Bus bus;
   private final Core core;
+  private final Pacer pacer;
+  private final Path programs; // the directory `LOAD` loads programs from (null for resources).
+  private long frameEnd; // the T-states at which the current frame ends.
+  private long frames; // how many frames have been executed.
+  private volatile boolean stopping; // stop at the end of the frame.
 
-  ZX81Machine() {
-    this.terminal = TerminalSupport.get();
+  // Z80 T-states in a frame (50 per second).
+  static final long FRAME = Pacer.CLOCK_HZ / 50L;
+  // Slow mode spends about 80% of its time in the display code (which isn't emulated here), so each
+  // T-state the program executes counts as 5 T-states of the machine's time.
+  private static final long SLOW_MODE = 5L;
+
+  // a snapshot file is "ZX81", the version, the CPU's `State`, `frameEnd` and `frames`, then the
+  // RAM (0x4000-0x7FFF), all big-endian.
+  private static final int SNAPSHOT_MAGIC = 0x5A583831; // "ZX81"
+  private static final int SNAPSHOT_VERSION = 1;
+  private static final int RAM = 0x4000;
+  private static final int RAM_SIZE = 0x4000;
+  private static final int SNAPSHOT_SIZE = 4 + 4 + State.SIZE + 8 + 8 + RAM_SIZE;
+
+  /**
+   * @param terminal the keyboard and display.
+   * @param memory the memory to use (see {@link #memory(String)}), or null for Java arrays that
+   *     share the ROM's pages with other machines.
+   * @param programs the directory `LOAD` loads {@code name.p} from, or null for the program
+   *     resources.
+   * @param pacer paces the machine to real time (or not).
+   * @param options how the Z80 is emulated (e.g. with a decode cache).
+   */
+  ZX81Machine(
+      final TerminalSupport terminal,
+      final IMemory memory,
+      final Path programs,
+      final Pacer pacer,
+      final Core.Option... options) {
+    this(
+        terminal,
+        keyboard -> memory != null ? new ZX81Bus(keyboard, memory) : new ZX81Bus(keyboard),
+        programs,
+        pacer,
+        options);
+  }
+
+  private ZX81Machine(
+      final TerminalSupport terminal,
+      final Function<TerminalKeyboard, ZX81Bus> bus,
+      final Path programs,
+      final Pacer pacer,
+      final Core.Option... options) {
+    this.terminal = terminal;
     this.display = new TerminalDisplay(terminal);
-    this.keyboard = new TerminalKeyboard(terminal);
-    this.bus = new ZX81Bus(this.keyboard);
-    this.core = new Core(this.bus);
+    this.keyboard = new TerminalKeyboard(terminal, this::millis);
+    this.bus = bus.apply(this.keyboard);
+    this.core = new Core(this.bus, options);
+    this.pacer = pacer;
+    this.programs = programs;
+    core.trap(0x0343, this::loadTrap);
+    core.trap(0x8000, 0xFFFF, this::displayFileTrap);
+    core.state().pc(0);
+  }
+
+  /**
+   * A machine with the bus that {@code bus} makes, given the keyboard (e.g. a bus with a test
+   * program in place of the ROM).
+   */
+  static ZX81Machine withBus(
+      final TerminalSupport terminal,
+      final Function<TerminalKeyboard, ZX81Bus> bus,
+      final Path programs,
+      final Pacer pacer,
+      final Core.Option... options) {
+    return new ZX81Machine(terminal, bus, programs, pacer, options);
   }
 
   public static void main(final String[] args) throws IOException {
-    final ZX81Machine zx81 = new ZX81Machine();
-    zx81.loadRom();
+    IMemory memory = null; // in Java arrays, sharing the ROM's pages with other machines.
+    Path programs = null; // the program resources.
+    Path batch = null;
+    int threads = 0; // a virtual thread per job.
+    double speed = 1.0;
+    boolean headless = false;
+    long frames = -1L;
+    String until = null;
+    String keys = "";
+    Path snapshot = null;
+    Path save = null;
+    Core.Option[] options = {};
+    for (final String arg : args) {
+      if (arg.startsWith("--speed=")) {
+        speed = Double.parseDouble(arg.substring("--speed=".length()));
+      } else if (arg.equals("--turbo")) {
+        speed = Double.POSITIVE_INFINITY;
+      } else if (arg.equals("--headless")) {
+        headless = true;
+      } else if (arg.startsWith("--frames=")) {
+        frames = Long.parseLong(arg.substring("--frames=".length()));
+      } else if (arg.startsWith("--until=")) {
+        until = arg.substring("--until=".length());
+      } else if (arg.startsWith("--keys=")) {
+        keys = arg.substring("--keys=".length()).replace("\\n", "\n");
+      } else if (arg.startsWith("--programs=")) {
+        programs = Path.of(arg.substring("--programs=".length()));
+      } else if (arg.startsWith("--batch=")) {
+        batch = Path.of(arg.substring("--batch=".length()));
+      } else if (arg.startsWith("--threads=")) {
+        threads = Integer.parseInt(arg.substring("--threads=".length()));
+      } else if (arg.startsWith("--core=")) {
+        options = options(arg.substring("--core=".length()));
+      } else if (arg.startsWith("--snapshot=")) {
+        snapshot = Path.of(arg.substring("--snapshot=".length()));
+      } else if (arg.startsWith("--save=")) {
+        save = Path.of(arg.substring("--save=".length()));
+      } else {
+        memory = memory(arg);
+      }
+    }
+    if (batch != null) {
+      final long maxFrames = frames >= 0L ? frames : until == null ? 50L * 10L : 50L * 60L * 10L;
+      runBatch(new ZX81Batch(batch, maxFrames, until, options), ZX81Batch.jobs(batch), threads);
+      return;
+    }
+    if (headless) {
+      final ZX81Headless zx81 = new ZX81Headless(memory, programs, keys, options);
+      if (snapshot != null) {
+        zx81.restore(snapshot);
+      }
+      runHeadless(zx81, frames, until, save);
+      return;
+    }
+    final ZX81Machine zx81 =
+        new ZX81Machine(
+            TerminalSupport.get(),
+            memory,
+            programs,
+            new Pacer(Pacer.CLOCK_HZ, speed, FRAME),
+            options);
+    if (snapshot != null) {
+      zx81.restore(snapshot);
+    }
+    if (save != null) { // Ctrl+C raises SIGINT on Linux and macOS, so stop and save before exit.
+      final Thread machine = Thread.currentThread();
+      Runtime.getRuntime().addShutdownHook(new Thread(() -> zx81.stop(machine)));
+    }
     try {
       zx81.init();
       zx81.run();
@@ -30,6 +174,89 @@ public class ZX81Machine {
     } finally {
       zx81.reset();
     }
+    if (save != null) {
+      zx81.save(save);
+    }
+  }
+
+  /**
+   * The machine's memory chosen by {@code arg}: in native memory with `--off-heap`, or in a mapped
+   * file (which another process can read while the machine runs) with `--memory-file=path`.
+   */
+  private static IMemory memory(final String arg) throws IOException {
+    if (arg.equals("--off-heap")) {
+      return SegmentMemory.allocate(0x400, Arena.ofAuto());
+    } else if (arg.startsWith("--memory-file=")) {
+      final Path file = Path.of(arg.substring("--memory-file=".length()));
+      return SegmentMemory.map(0x400, file, Arena.ofAuto());
+    } else {
+      throw new IllegalArgumentException("unknown option: " + arg);
+    }
+  }
+
+  /**
+   * The `Core` options named in {@code names}, separated by commas, in lower case with hyphens
+   * (e.g. `decode-cache,lazy-flags`).
+   */
+  private static Core.Option[] options(final String names) {
+    return Arrays.stream(names.split(","))
+        .filter(name -> !name.isEmpty())
+        .map(name -> Core.Option.valueOf(name.toUpperCase(Locale.ROOT).replace('-', '_')))
+        .toArray(Core.Option[]::new);
+  }
+
+  /**
+   * Run {@code zx81} for {@code frames} frames (default 10 seconds' worth), or until {@code until}
+   * appears on the screen (within {@code frames}, default 10 minutes' worth), then print the
+   * screen, and save a snapshot to {@code save} (if not null). Exits with status 1 if {@code until}
+   * doesn't appear.
+   */
+  private static void runHeadless(
+      final ZX81Headless zx81, final long frames, final String until, final Path save)
+      throws IOException {
+    if (until == null) {
+      System.out.print(zx81.runFrames(frames >= 0L ? frames : 50L * 10L));
+    } else {
+      final var screen = zx81.runUntil(until, frames >= 0L ? frames : 50L * 60L * 10L);
+      System.out.print(screen.orElse(zx81.screen()));
+      if (screen.isEmpty()) {
+        System.exit(1);
+      }
+    }
+    if (save != null) {
+      zx81.save(save);
+    }
+  }
+
+  /**
+   * Run {@code jobs} in parallel (on {@code threads} threads, or a virtual thread each if zero),
+   * then print each one's result and screen, and a summary. Exits with status 1 if any failed.
+   */
+  private static void runBatch(
+      final ZX81Batch batch, final List<ZX81Batch.Job> jobs, final int threads) {
+    final long start = System.nanoTime();
+    final List<ZX81Batch.Result> results = batch.run(jobs, threads);
+    final long elapsed = System.nanoTime() - start;
+    long frames = 0L;
+    int failed = 0;
+    for (final ZX81Batch.Result result : results) {
+      System.out.printf(
+          "=== %s: %s (%,d frames in %,.1f ms)%s%n%s",
+          result.name(),
+          result.passed() ? "passed" : "FAILED",
+          result.frames(),
+          result.nanos() / 1e6,
+          result.error() != null ? ": " + result.error() : "",
+          result.screen());
+      frames += result.frames();
+      failed += result.passed() ? 0 : 1;
+    }
+    System.out.printf(
+        "%d jobs, %d failed, in %,.1f ms (%,.0f frames/s)%n",
+        results.size(), failed, elapsed / 1e6, frames * 1e9 / elapsed);
+    if (failed > 0) {
+      System.exit(1);
+    }
   }
 
   private void init() {
@@ -42,62 +269,170 @@ public class ZX81Machine {
     terminal.reset();
   }
 
-  private void run() throws IOException {
+  /**
+   * Run the machine a frame at a time: after each frame, publish the status and the display to the
+   * renderer's thread (if it's time to), which draws them without holding up the machine. Keys are
+   * decoded from the terminal on a thread of their own too.
+   */
+  private void run() {
     final long startup = System.currentTimeMillis();
-    long instructions = 0L;
-    long frames = 0L;
     long lastRender = startup;
-    core.state().pc(0);
-    while (true) {
-      core.step();
-      ++instructions;
-      final int pc = core.state().pc();
-      if (pc == 0x0343) {
-        if (core.state().cf()) {
-          core.state().pc(0x02F4); // LOAD requires a filename in this emulator.
-        } else {
-          loadProgram(core.state().de());
-          core.state().pc(bus.cpuReadMemWord(core.state().spInc2()));
+    keyboard.startInputThread();
+    try (final TerminalRenderer renderer = new TerminalRenderer(display)) {
+      while (true) {
+        frame();
+        final long now = System.currentTimeMillis();
+        if (now - lastRender >= 15L) { // every frame when paced, but at most about 60 fps.
+          renderer.publish(
+              bus,
+              "PC=0x%04x  |%6.1f kIPS  |%6.1f fps  |%6.2fx of %s"
+                  .formatted(
+                      core.state().pc(),
+                      core.instructions() * 1.0 / (now - startup),
+                      renderer.drawn() * 1000.0 / (now - startup),
+                      pacer.speed(),
+                      Double.isInfinite(pacer.multiplier())
+                          ? "turbo"
+                          : "%.2fx".formatted(pacer.multiplier())));
+          lastRender = now;
         }
       }
-      if (pc > 0x7FFF) { // executing display file, we're probably waiting on user input.
-        // effective RET.
-        core.state().pc(bus.cpuReadMemWord(core.state().spInc2()));
+    } finally {
+      keyboard.close();
+    }
+  }
+
+  /**
+   * Execute a frame's worth of T-states, then wait for the frame's time to pass. Stops (between
+   * instructions, so the machine can still be saved) once Ctrl+C has been typed.
+   */
+  void frame() {
+    if (stopping || keyboard.isShutdown()) {
+      throw new ShutdownException("Closing emulator because Ctrl+C pressed");
+    }
+    frameEnd += FRAME / SLOW_MODE;
+    core.run(frameEnd - core.state().cycles()); // any overshoot comes out of the next frame.
+    ++frames;
+    pacer.pace(core.state().cycles() * SLOW_MODE);
+  }
+
+  /** Stop running at the end of the frame, and wait (a while) for {@code thread} to finish. */
+  private void stop(final Thread thread) {
+    stopping = true;
+    try {
+      thread.join(1000L);
+    } catch (final InterruptedException ex) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /** Decode the input typed so far (for when there's no input thread). */
+  void consumeInput() {
+    keyboard.consumeInput();
+  }
+
+  /** How many frames have been executed. */
+  long frames() {
+    return frames;
+  }
+
+  /** The text on the screen (see {@link TerminalDisplay#text}). */
+  String screen() {
+    return TerminalDisplay.text(bus);
+  }
+
+  /**
+   * Save the machine (its CPU, RAM and frame count) to a snapshot {@code file}, which {@link
+   * #restore(Path)} can resume it from. The ROM isn't saved, as it's always the same.
+   */
+  void save(final Path file) throws IOException {
+    final ByteBuffer buffer = ByteBuffer.allocate(SNAPSHOT_SIZE);
+    buffer.putInt(SNAPSHOT_MAGIC).putInt(SNAPSHOT_VERSION);
+    core.state().save(buffer);
+    buffer.putLong(frameEnd).putLong(frames);
+    bus.rawReadMemBytes(RAM, buffer.array(), buffer.position(), RAM_SIZE);
+    buffer.position(buffer.position() + RAM_SIZE).flip();
+    // written beside `file` and renamed over it, so it's never left half-written (e.g. by Ctrl+C).
+    final Path absolute = file.toAbsolutePath();
+    final Path temp =
+        Files.createTempFile(absolute.getParent(), absolute.getFileName().toString(), ".tmp");
+    try {
+      try (final FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+        while (buffer.hasRemaining()) {
+          channel.write(buffer);
+        }
+        channel.force(false);
       }
-      final long now = System.currentTimeMillis();
-      if (now - lastRender >= 19L) {
-        ++frames;
-        display.state1(
-            "PC=0x%04x  |%6.1f kIPS  |%6.1f fps"
-                .formatted(
-                    pc, instructions * 1.0 / (now - startup), frames * 1000.0 / (now - startup)));
-        display.renderDFile(bus);
-        lastRender = now;
+      Files.move(temp, absolute, StandardCopyOption.ATOMIC_MOVE);
+    } finally {
+      Files.deleteIfExists(temp);
+    }
+  }
+
+  /** Resume the machine from a snapshot {@code file} that {@link #save(Path)} saved. */
+  void restore(final Path file) throws IOException {
+    final ByteBuffer buffer = ByteBuffer.allocate(SNAPSHOT_SIZE);
+    try (final FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      if (channel.size() != SNAPSHOT_SIZE) {
+        throw new IOException("Not a ZX81 snapshot (wrong size): " + file);
       }
-      // Z80 at 3.25MHz, assuming 0.145 instr/cycle, gives 0.47125 MIPS.
-      // Slow mode spends 80% of time in display code, so adjust 275L below until you get around for
-      // 94.25 instr/ms.
-      if (instructions % 275L == 0L) {
-        try {
-          Thread.sleep(1);
-        } catch (final InterruptedException ex) {
-          /*do nothing.*/
-        }
+      while (buffer.hasRemaining() && channel.read(buffer) != -1) {
+        // keep reading.
+      }
+    }
+    buffer.flip();
+    if (buffer.remaining() != SNAPSHOT_SIZE || buffer.getInt() != SNAPSHOT_MAGIC) {
+      throw new IOException("Not a ZX81 snapshot: " + file);
+    }
+    final int version = buffer.getInt();
+    if (version != SNAPSHOT_VERSION) {
+      throw new IOException("Unsupported ZX81 snapshot version " + version + ": " + file);
+    }
+    core.state().restore(buffer);
+    frameEnd = buffer.getLong();
+    frames = buffer.getLong();
+    bus.rawWriteMemBytes(RAM, buffer.array(), buffer.position(), RAM_SIZE);
+    core.invalidate(RAM, RAM_SIZE);
+    pacer.restart(core.state().cycles() * SLOW_MODE);
+  }
+
+  /** The machine's time, in milliseconds since it started. */
+  private long millis() {
+    return core.state().cycles() * SLOW_MODE * 1000L / Pacer.CLOCK_HZ;
+  }
+
+  /**
+   * Trap for the ROM's `LOAD` routine, which loads the named program from a resource (or the
+   * programs directory) instead.
+   */
+  private boolean loadTrap(final State state) {
+    if (state.cf()) {
+      state.pc(0x02F4); // LOAD requires a filename in this emulator.
+    } else {
+      try {
+        loadProgram(state.de());
+      } catch (final IOException ex) {
+        throw new IllegalStateException(ex);
       }
+      state.pc(bus.cpuReadMemWord(state.spInc2()));
     }
+    return false;
   }
 
-  private void loadRom() throws IOException {
-    var rom = getClass().getResourceAsStream("/z80/zx81/zx81.rom").readAllBytes();
-    bus.rawWriteMemBytes(0, rom, 0, rom.length);
+  /** Trap for executing the display file: we're probably waiting on user input. */
+  private boolean displayFileTrap(final State state) {
+    state.pc(bus.cpuReadMemWord(state.spInc2())); // effective RET.
+    return false;
   }
 
   private void loadProgram(int addressFilename) throws IOException {
+    final String filename = getFilename(addressFilename) + ".p";
     var program =
-        getClass()
-            .getResourceAsStream("/z80/zx81/" + getFilename(addressFilename) + ".p")
-            .readAllBytes();
+        programs != null
+            ? Files.readAllBytes(programs.resolve(filename))
+            : getClass().getResourceAsStream("/z80/zx81/" + filename).readAllBytes();
     bus.rawWriteMemBytes(16393, program, 0, program.length);
+    core.invalidate(16393, program.length);
   }
 
   private String getFilename(int addressFilename) {
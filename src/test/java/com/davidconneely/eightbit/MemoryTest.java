@@ -0,0 +1,373 @@
+package com.davidconneely.eightbit;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.lang.foreign.Arena;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Supplier;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+final class MemoryTest {
+  /** Read-only pages (e.g. ROM), a mirror of the RAM below it, and a hooked page. */
+  private static final int READ_ONLY = 0xE000;
+  private static final int MIRRORED = 0x4000, MIRROR = 0x8000, MIRROR_SIZE = 0x2000;
+  private static final int HOOKED = 0xC000;
+
+  static Stream<Arguments> memories() {
+    return Stream.of(
+        memory("paged, 256-byte pages", () -> new PagedMemory(0x100)),
+        memory("paged, 1 kiB pages", () -> new PagedMemory(0x400)),
+        memory("segment, 256-byte pages", () -> SegmentMemory.allocate(0x100, Arena.ofAuto())),
+        memory("segment, 1 kiB pages", () -> SegmentMemory.allocate(0x400, Arena.ofAuto())));
+  }
+
+  private static Arguments memory(final String name, final Supplier<IMemory> memory) {
+    return Arguments.of(name, memory);
+  }
+
+  /**
+   * Bulk copies (within pages, across them, overlapping in either direction, through a mirror, into
+   * read-only and hooked pages, and up to either end of the address space) leave the same memory as
+   * reading and writing a byte at a time.
+   */
+  @ParameterizedTest(name = "{0}")
+  @MethodSource("memories")
+  void copiesAreTheSameAsByteAtATime(final String name, final Supplier<IMemory> memory) {
+    final Random random = new Random(1);
+    final List<Integer> bulkHooked = new ArrayList<>(), bytesHooked = new ArrayList<>();
+    final IMemory bulk = layout(memory.get(), bulkHooked);
+    final IMemory bytes = layout(memory.get(), bytesHooked);
+    for (int i = 0; i < 2000; ++i) {
+      final boolean increment = random.nextBoolean();
+      final int length = 1 + random.nextInt(i % 4 == 0 ? 0x10 : 0x900);
+      final int source = address(random, length, increment);
+      final int dest =
+          switch (i % 5) {
+            case 0 -> source + (increment ? 1 : -1) * (1 + random.nextInt(3)); // a fill.
+            case 1 -> source ^ (MIRRORED ^ MIRROR); // the same memory, through the mirror.
+            default -> address(random, length, increment);
+          };
+      if (dest < 0 || dest > 0xFFFF || outside(dest, length, increment)) {
+        continue;
+      }
+      bulk.copy(source, dest, length, increment);
+      final int step = increment ? 1 : -1;
+      for (int j = 0; j < length; ++j) {
+        bytes.write(dest + j * step, bytes.read(source + j * step));
+      }
+      assertArrayEquals(contents(bytes), contents(bulk), "copy %d".formatted(i));
+    }
+    assertEquals(bytesHooked, bulkHooked);
+  }
+
+  /** Bulk searches count the same bytes as reading a byte at a time, and stop at hooked pages. */
+  @ParameterizedTest(name = "{0}")
+  @MethodSource("memories")
+  void findsAreTheSameAsByteAtATime(final String name, final Supplier<IMemory> memory) {
+    final Random random = new Random(2);
+    final IMemory searched = layout(memory.get(), new ArrayList<>());
+    for (int i = 0; i < 2000; ++i) {
+      final boolean increment = random.nextBoolean();
+      final int length = 1 + random.nextInt(0x900);
+      final int address = address(random, length, increment);
+      final int value = random.nextInt(0x100);
+      final int step = increment ? 1 : -1;
+      int expected = 0;
+      while (expected < length
+          && ((address + expected * step) & -searched.pageSize()) != HOOKED
+          && searched.read(address + expected * step) != value) {
+        ++expected;
+      }
+      assertEquals(
+          expected,
+          searched.find(address, length, value, increment),
+          "find 0x%02X from 0x%04X".formatted(value, address));
+    }
+  }
+
+  /**
+   * Writes to a fork (the CPU's, raw and bulk, including raw writes to read-only pages) don't
+   * change the memory it was forked from (e.g. the ROM template every ZX81 is forked from), nor its
+   * other forks, and writes to those don't change it.
+   */
+  @ParameterizedTest(name = "{0}")
+  @MethodSource("memories")
+  void forksAreIndependent(final String name, final Supplier<IMemory> memory) {
+    final IMemory template = layout(memory.get(), new ArrayList<>());
+    final byte[] original = contents(template);
+    final IMemory fork = template.fork();
+    final IMemory sibling = template.fork();
+    fork.write(0x1234, 0x01);
+    fork.rawWrite(READ_ONLY + 0x10, 0x02); // ROM, which raw writes can change.
+    fork.rawWrite(0x3000, new byte[] {3, 3, 3}, 0, 3);
+    fork.copy(0x0000, 0x4000, 0x900, true);
+    fork.write(READ_ONLY + 0x20, 0x04); // ignored, as in the template.
+    assertArrayEquals(original, contents(template));
+    assertArrayEquals(original, contents(sibling));
+    assertEquals(0x01, fork.read(0x1234));
+    assertEquals(0x02, fork.read(READ_ONLY + 0x10));
+    assertEquals(original[READ_ONLY + 0x20], (byte) fork.read(READ_ONLY + 0x20));
+    final byte[] forked = contents(fork);
+    sibling.write(0x1234, 0x05);
+    template.write(0x1235, 0x06);
+    template.rawWrite(READ_ONLY + 0x10, 0x07);
+    assertArrayEquals(forked, contents(fork));
+    assertEquals(0x05, sibling.read(0x1234));
+    assertEquals(original[0x1235], (byte) sibling.read(0x1235));
+    assertEquals(original[READ_ONLY + 0x10], (byte) sibling.read(READ_ONLY + 0x10));
+  }
+
+  /** Forks keep the memory map: the same mirrors, read-only pages and hooks. */
+  @ParameterizedTest(name = "{0}")
+  @MethodSource("memories")
+  void forksKeepTheMemoryMap(final String name, final Supplier<IMemory> memory) {
+    final List<Integer> hooked = new ArrayList<>();
+    final IMemory fork = layout(memory.get(), hooked).fork();
+    assertTrue(fork.isReadOnly(READ_ONLY));
+    assertFalse(fork.isReadOnly(READ_ONLY - 1));
+    fork.write(MIRROR + 0x10, 0x11);
+    assertEquals(0x11, fork.read(MIRRORED + 0x10));
+    assertEquals(0x42, fork.read(HOOKED + 0x42));
+    fork.write(HOOKED + 0x42, 0x12);
+    assertEquals(List.of((HOOKED + 0x42) << 8 | 0x12), hooked);
+  }
+
+  /**
+   * A page and its mirror stay one memory after a write (through either) gives a fork its own copy
+   * of them, and the memory it was forked from keeps the old one, also mirrored.
+   */
+  @ParameterizedTest(name = "{0}")
+  @MethodSource("memories")
+  void mirrorsStayMirroredInForks(final String name, final Supplier<IMemory> memory) {
+    final IMemory template = layout(memory.get(), new ArrayList<>());
+    final int before = template.read(MIRRORED + 0x20);
+    final IMemory fork = template.fork();
+    fork.write(MIRROR + 0x20, before ^ 0xFF); // through the mirror.
+    assertEquals(before ^ 0xFF, fork.read(MIRRORED + 0x20));
+    fork.write(MIRRORED + 0x21, 0x13); // then through the page itself.
+    assertEquals(0x13, fork.read(MIRROR + 0x21));
+    fork.rawWrite(MIRRORED + MIRROR_SIZE - 1, 0x14); // and raw, to another page.
+    assertEquals(0x14, fork.read(MIRROR + MIRROR_SIZE - 1));
+    assertEquals(before, template.read(MIRROR + 0x20));
+    template.write(MIRROR + 0x21, 0x15);
+    assertEquals(0x15, template.read(MIRRORED + 0x21));
+    assertEquals(0x13, fork.read(MIRRORED + 0x21));
+  }
+
+  /**
+   * Forking again, from a fork or from the memory it was forked from, after either has written to
+   * (and so unshared) some pages, shares those pages again, so none of the forks see the others'
+   * writes.
+   */
+  @ParameterizedTest(name = "{0}")
+  @MethodSource("memories")
+  void forksOfForksAreIndependent(final String name, final Supplier<IMemory> memory) {
+    final IMemory template = layout(memory.get(), new ArrayList<>());
+    final byte[] original = contents(template);
+    final IMemory fork = template.fork();
+    fork.write(0x4000, 0x21); // unshared in `fork`,
+    template.write(0x5000, 0x22); // and in `template`.
+    final IMemory forkOfFork = fork.fork();
+    final IMemory secondFork = template.fork();
+    fork.write(0x4001, 0x23);
+    fork.write(0x5000, 0x24);
+    template.write(0x5001, 0x25);
+    forkOfFork.write(0x4000, 0x26);
+    secondFork.write(0x5000, 0x27);
+    assertEquals(0x21, fork.read(0x4000));
+    assertEquals(0x23, fork.read(0x4001));
+    assertEquals(0x24, fork.read(0x5000));
+    assertEquals(original[0x5001], (byte) fork.read(0x5001));
+    assertEquals(original[0x4000], (byte) template.read(0x4000));
+    assertEquals(0x22, template.read(0x5000));
+    assertEquals(0x25, template.read(0x5001));
+    assertEquals(0x26, forkOfFork.read(0x4000));
+    assertEquals(original[0x4001], (byte) forkOfFork.read(0x4001));
+    assertEquals(original[0x5000], (byte) forkOfFork.read(0x5000));
+    assertEquals(original[0x4000], (byte) secondFork.read(0x4000));
+    assertEquals(0x27, secondFork.read(0x5000));
+    assertEquals(original[0x5001], (byte) secondFork.read(0x5001));
+  }
+
+  /**
+   * While tracking, the CPU's writes (single and bulk) and raw writes mark the pages they're made
+   * through, except the CPU's writes to read-only and hooked pages, and collecting clears them.
+   */
+  @ParameterizedTest(name = "{0}")
+  @MethodSource("memories")
+  void dirtyPagesAreTheOnesWrittenTo(final String name, final Supplier<IMemory> memory) {
+    final SimpleBus bus = new SimpleBus(layout(memory.get(), new ArrayList<>()));
+    bus.trackDirty(true);
+    assertEquals(List.of(), collectDirty(bus));
+    bus.cpuWriteMemByte(0x1234, 0x01);
+    bus.cpuWriteMemByte(0x1235, 0x02);
+    bus.cpuWriteMemByte(MIRROR + 0x10, 0x03); // not the page it mirrors.
+    bus.cpuWriteMemByte(READ_ONLY + 0x10, 0x04); // ignored.
+    bus.cpuWriteMemByte(HOOKED + 0x10, 0x05); // up to the hook.
+    bus.rawWriteMemByte(READ_ONLY + 0x400, 0x06);
+    bus.rawWriteMemBytes(0x1FFF, new byte[] {7, 7}, 0, 2);
+    bus.cpuCopyMemBytes(0x0000, 0x2F80, 0x100, true); // across a page boundary.
+    bus.cpuCopyMemBytes(0x000F, READ_ONLY + 0x80F, 0x10, false); // ignored.
+    assertEquals(
+        pages(bus, 0x1234, MIRROR, READ_ONLY + 0x400, 0x1FFF, 0x2000, 0x2F80, 0x307F),
+        collectDirty(bus));
+    assertEquals(List.of(), collectDirty(bus));
+    bus.cpuWriteMemByte(0x1236, 0x08); // a page that was dirty before the collect.
+    bus.cpuCopyMemBytes(0x0000, 0x2F80, 0x1, true);
+    assertEquals(pages(bus, 0x1236, 0x2F80), collectDirty(bus));
+  }
+
+  /** Writes made while not tracking aren't recorded, and starting to track forgets old writes. */
+  @ParameterizedTest(name = "{0}")
+  @MethodSource("memories")
+  void writesWhileNotTrackingAreNotRecorded(final String name, final Supplier<IMemory> memory) {
+    final SimpleBus bus = new SimpleBus(layout(memory.get(), new ArrayList<>()));
+    bus.cpuWriteMemByte(0x1000, 0x01);
+    bus.trackDirty(true);
+    bus.cpuWriteMemByte(0x2000, 0x02);
+    bus.trackDirty(false);
+    bus.cpuWriteMemByte(0x3000, 0x03);
+    bus.rawWriteMemByte(0x3100, 0x04);
+    bus.cpuCopyMemBytes(0x0000, 0x3200, 0x10, true);
+    assertEquals(List.of(), collectDirty(bus));
+    bus.trackDirty(true);
+    assertEquals(List.of(), collectDirty(bus));
+    bus.cpuWriteMemByte(0x4000, 0x05);
+    assertEquals(pages(bus, 0x4000), collectDirty(bus));
+    assertEquals(0x01, bus.cpuReadMemByte(0x1000)); // and they were all made.
+    assertEquals(0x02, bus.cpuReadMemByte(0x2000));
+    assertEquals(0x03, bus.cpuReadMemByte(0x3000));
+    assertEquals(0x04, bus.cpuReadMemByte(0x3100));
+    assertEquals(0x05, bus.cpuReadMemByte(0x4000));
+  }
+
+  /** Mapping or mirroring a page changes its memory, so marks it, and its writes mark it again. */
+  @ParameterizedTest(name = "{0}")
+  @MethodSource("memories")
+  void remappedPagesAreDirty(final String name, final Supplier<IMemory> memory) {
+    final IMemory remapped = layout(memory.get(), new ArrayList<>());
+    final SimpleBus bus = new SimpleBus(remapped);
+    bus.trackDirty(true);
+    remapped.map(0x6000, remapped.pageSize(), false);
+    remapped.mirror(0x7000, remapped.pageSize(), 0x1000, false);
+    assertEquals(pages(bus, 0x6000, 0x7000), collectDirty(bus));
+    bus.cpuWriteMemByte(0x6000, 0x01);
+    bus.cpuWriteMemByte(0x7000, 0x02);
+    assertEquals(pages(bus, 0x6000, 0x7000), collectDirty(bus));
+    assertEquals(0x02, bus.cpuReadMemByte(0x1000));
+  }
+
+  /**
+   * A fork starts out not tracking, and once it is, records only its own writes (including those
+   * that give it its own copy of a page), as does the memory it was forked from.
+   */
+  @ParameterizedTest(name = "{0}")
+  @MethodSource("memories")
+  void forksTrackTheirOwnDirtyPages(final String name, final Supplier<IMemory> memory) {
+    final IMemory template = layout(memory.get(), new ArrayList<>());
+    final SimpleBus parent = new SimpleBus(template);
+    parent.trackDirty(true);
+    parent.cpuWriteMemByte(0x1000, 0x01);
+    final SimpleBus fork = new SimpleBus(template.fork());
+    fork.cpuWriteMemByte(0x2000, 0x02);
+    assertEquals(List.of(), collectDirty(fork));
+    fork.trackDirty(true);
+    fork.cpuWriteMemByte(0x1000, 0x03); // dirty in the parent, before the fork.
+    fork.cpuCopyMemBytes(0x0000, 0x3000, 0x10, true);
+    parent.cpuWriteMemByte(0x2000, 0x04);
+    parent.rawWriteMemByte(0x4000, 0x05);
+    assertEquals(pages(fork, 0x1000, 0x3000), collectDirty(fork));
+    assertEquals(pages(parent, 0x1000, 0x2000, 0x4000), collectDirty(parent));
+    parent.cpuWriteMemByte(0x1001, 0x06);
+    fork.cpuWriteMemByte(0x2001, 0x07);
+    assertEquals(pages(parent, 0x1001), collectDirty(parent));
+    assertEquals(pages(fork, 0x2001), collectDirty(fork));
+    assertEquals(0x03, fork.cpuReadMemByte(0x1000));
+    assertEquals(0x01, parent.cpuReadMemByte(0x1000));
+  }
+
+  /** Random contents (with plenty of repeats to find), and the memory map described above. */
+  private static IMemory layout(final IMemory memory, final List<Integer> hooked) {
+    final byte[] contents = new byte[0x10000];
+    final Random random = new Random(0);
+    for (int i = 0; i < contents.length; ++i) {
+      contents[i] = (byte) (random.nextInt(16) * 17);
+    }
+    memory.rawWrite(0, contents, 0, contents.length);
+    memory.map(READ_ONLY, 0x10000 - READ_ONLY, true);
+    memory.rawWrite(READ_ONLY, contents, READ_ONLY, 0x10000 - READ_ONLY);
+    memory.mirror(MIRROR, MIRROR_SIZE, MIRRORED, false);
+    memory.hook(
+        HOOKED,
+        memory.pageSize(),
+        new IMemory.Hook() {
+          @Override
+          public int read(final int address) {
+            return address & 0xFF;
+          }
+
+          @Override
+          public void write(final int address, final int data) {
+            hooked.add(address << 8 | data);
+          }
+        });
+    return memory;
+  }
+
+  /** An address from which {@code length} bytes fit, often near a page or either end. */
+  private static int address(final Random random, final int length, final boolean increment) {
+    final int address =
+        switch (random.nextInt(4)) {
+          case 0 -> increment ? 0x10000 - length : length - 1; // up to either end.
+          case 1 -> (random.nextInt(0x100) << 8) + random.nextInt(5) - 2; // near a page boundary.
+          default -> random.nextInt(0x10000);
+        };
+    return Math.clamp(address, increment ? 0 : length - 1, increment ? 0x10000 - length : 0xFFFF);
+  }
+
+  private static boolean outside(final int address, final int length, final boolean increment) {
+    return increment ? address + length > 0x10000 : address - length + 1 < 0;
+  }
+
+  /** The addresses of the pages collected from {@code bus}, in order. */
+  private static List<Integer> collectDirty(final SimpleBus bus) {
+    final long[] dirty = new long[0x10000 / bus.pageSize() / 64];
+    final int count = bus.collectDirty(dirty);
+    final List<Integer> pages = new ArrayList<>();
+    for (int page = 0; page < 0x10000 / bus.pageSize(); ++page) {
+      if ((dirty[page >>> 6] & 1L << page) != 0L) {
+        pages.add(page * bus.pageSize());
+      }
+    }
+    assertEquals(pages.size(), count);
+    return pages;
+  }
+
+  /** The addresses of the pages containing {@code addresses}, in order. */
+  private static List<Integer> pages(final SimpleBus bus, final int... addresses) {
+    return IntStream.of(addresses)
+        .map(address -> address & -bus.pageSize())
+        .distinct()
+        .sorted()
+        .boxed()
+        .toList();
+  }
+
+  /** What the CPU reads from every address. */
+  private static byte[] contents(final IMemory memory) {
+    final byte[] contents = new byte[0x10000];
+    for (int address = 0; address < contents.length; ++address) {
+      contents[address] = (byte) memory.read(address);
+    }
+    return contents;
+  }
+}
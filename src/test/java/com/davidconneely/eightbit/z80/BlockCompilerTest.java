@@ -0,0 +1,171 @@
+package com.davidconneely.eightbit.z80;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import com.davidconneely.eightbit.SimpleBus;
+import java.nio.ByteBuffer;
+import java.util.HexFormat;
+import java.util.stream.Stream;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+/**
+ * Runs a loop of every form of instruction that {@link BlockCompiler} translates (and a few that it
+ * doesn't) with `BLOCK_THREADING`, so each block is compiled the first time round and executed
+ * compiled after that, and checks that it leaves the same state (registers, flags, `R` and
+ * T-states), instruction count and memory as the interpreter.
+ */
+final class BlockCompilerTest {
+  private static final int[] PROGRAM = {
+    0x31, 0x00, 0x80, // LD SP,0x8000
+    0xFD, 0x21, 0x00, 0x40, // LD IY,0x4000
+    0xDD, 0x21, 0x80, 0x40, // LD IX,0x4080
+    0xFD, 0x36, 0x00, 0x04, // LD (IY+0),4 (the loop counter)
+    0x01, 0x34, 0x12, // 0x000F: LD BC,0x1234
+    0x11, 0x78, 0x56, // LD DE,0x5678
+    0x21, 0x20, 0x40, // LD HL,0x4020
+    0x3E, 0x99, // LD A,0x99
+    0x02, // LD (BC),A
+    0x12, // LD (DE),A
+    0x0A, // LD A,(BC)
+    0x1A, // LD A,(DE)
+    0x22, 0x30, 0x40, // LD (0x4030),HL
+    0x2A, 0x30, 0x40, // LD HL,(0x4030)
+    0x32, 0x32, 0x40, // LD (0x4032),A
+    0x3A, 0x32, 0x40, // LD A,(0x4032)
+    0x04, 0x0D, 0x14, 0x1D, 0x24, 0x2D, 0x3C, // INC B, DEC C, INC D, DEC E, INC H, DEC L, INC A
+    0x05, 0x0C, 0x15, 0x1C, 0x25, 0x2C, 0x3D, // DEC B, INC C, DEC D, INC E, DEC H, INC L, DEC A
+    0x03, 0x13, 0x23, 0x33, // INC BC, INC DE, INC HL, INC SP
+    0x34, 0x34, 0x35, // INC (HL), INC (HL), DEC (HL)
+    0x0B, 0x1B, 0x2B, 0x3B, // DEC BC, DEC DE, DEC HL, DEC SP
+    0x36, 0x7F, // LD (HL),0x7F
+    0x06, 0x01, 0x0E, 0x02, 0x16, 0x03, 0x1E, 0x04, // LD B,1, LD C,2, LD D,3, LD E,4
+    0x26, 0x40, 0x2E, 0x21, 0x3E, 0x05, // LD H,0x40, LD L,0x21, LD A,5
+    0x46, 0x4E, 0x70, 0x71, 0x77, 0x7E, // LD B,(HL), LD C,(HL), LD (HL),B/C/A, LD A,(HL)
+    0x78, 0x41, 0x6F, 0x63, // LD A,B, LD B,C, LD L,A, LD H,E
+    0x5A, 0x50, 0x7D, // LD E,D, LD D,B, LD A,L
+    0x80, 0x89, 0x92, 0x9B, // ADD A,B, ADC A,C, SUB D, SBC A,E
+    0xA4, 0xAD, 0xB6, 0xBF, // AND H, XOR L, OR (HL), CP A
+    0xC6, 0x12, 0xCE, 0x34, 0xD6, 0x56, 0xDE, 0x78, // ADD A,0x12, ADC A,0x34, SUB 0x56, SBC A,0x78
+    0xE6, 0x9A, 0xEE, 0xBC, 0xF6, 0xDE, 0xFE, 0xF0, // AND 0x9A, XOR 0xBC, OR 0xDE, CP 0xF0
+    0xCB, 0x47, 0xCB, 0x5E, 0xCB, 0xC7, 0xCB, 0x9F, // BIT 0,A, BIT 3,(HL), SET 0,A, RES 3,A
+    0xCB, 0xFE, 0xCB, 0xB6, // SET 7,(HL), RES 6,(HL)
+    0xCB, 0x00, // RLC B (which isn't translated)
+    0xDD, 0x46, 0xFE, // LD B,(IX-2)
+    0xDD, 0x77, 0xFE, // LD (IX-2),A
+    0xFD, 0x36, 0x10, 0xAA, // LD (IY+16),0xAA
+    0xDD, 0x34, 0x00, // INC (IX+0)
+    0xDD, 0x35, 0x7F, // DEC (IX+127)
+    0xDD, 0x86, 0x80, // ADD A,(IX-128)
+    0xFD, 0xBE, 0x10, // CP (IY+16)
+    0xFD, 0x23, 0xDD, 0x2B, // INC IY, DEC IX
+    0xDD, 0xCB, 0x01, 0x46, // BIT 0,(IX+1)
+    0xFD, 0xCB, 0x0F, 0x7E, // BIT 7,(IY+15)
+    0xF5, // PUSH AF (with X and Y from the address, not the operand)
+    0xFD, 0xCB, 0x0F, 0x86, // RES 0,(IY+15)
+    0xFD, 0xCB, 0x0F, 0xC6, // SET 0,(IY+15)
+    0xFD, 0xCB, 0x0F, 0x06, // RLC (IY+15) (which isn't translated)
+    0xFD, 0x2B, 0xDD, 0x23, // DEC IY, INC IX
+    0xDD, 0x7C, 0xED, 0x44, // LD A,IXH, NEG (which aren't translated)
+    0xAF, // XOR A (Z, NC, PE, P)
+    0x20, 0x01, 0x1C, // JR NZ,+1 (not taken), INC E
+    0x28, 0x01, 0x1C, // JR Z,+1 (taken), INC E
+    0x30, 0x01, 0x1C, // JR NC,+1 (taken), INC E
+    0x38, 0x01, 0x1C, // JR C,+1 (not taken), INC E
+    0xC2, 0xCE, 0x00, 0x1C, // JP NZ,0x00CE (not taken), INC E
+    0xCA, 0xD2, 0x00, 0x1C, // JP Z,0x00D2 (taken), INC E
+    0xD2, 0xD6, 0x00, 0x1C, // JP NC,0x00D6 (taken), INC E
+    0xDA, 0xDA, 0x00, 0x1C, // JP C,0x00DA (not taken), INC E
+    0xE2, 0xDE, 0x00, 0x1C, // JP PO,0x00DE (not taken), INC E
+    0xEA, 0xE2, 0x00, 0x1C, // JP PE,0x00E2 (taken), INC E
+    0xF2, 0xE6, 0x00, 0x1C, // JP P,0x00E6 (taken), INC E
+    0xFA, 0xEA, 0x00, 0x1C, // JP M,0x00EA (not taken), INC E
+    0xC4, 0x64, 0x01, 0xCC, 0x64, 0x01, // CALL NZ,0x0164 (not taken), CALL Z,0x0164 (taken)
+    0xD4, 0x64, 0x01, 0xDC, 0x64, 0x01, // CALL NC,0x0164 (taken), CALL C,0x0164 (not taken)
+    0xE4, 0x64, 0x01, 0xEC, 0x64, 0x01, // CALL PO,0x0164 (not taken), CALL PE,0x0164 (taken)
+    0xF4, 0x64, 0x01, 0xFC, 0x64, 0x01, // CALL P,0x0164 (taken), CALL M,0x0164 (not taken)
+    0xD6, 0x01, // SUB 1 (NZ, C, PO, M)
+    0x20, 0x01, 0x1C, // JR NZ,+1 (taken), INC E
+    0x28, 0x01, 0x1C, // JR Z,+1 (not taken), INC E
+    0x30, 0x01, 0x1C, // JR NC,+1 (not taken), INC E
+    0x38, 0x01, 0x1C, // JR C,+1 (taken), INC E
+    0xC2, 0x14, 0x01, 0x1C, // JP NZ,0x0114 (taken), INC E
+    0xCA, 0x18, 0x01, 0x1C, // JP Z,0x0118 (not taken), INC E
+    0xD2, 0x1C, 0x01, 0x1C, // JP NC,0x011C (not taken), INC E
+    0xDA, 0x20, 0x01, 0x1C, // JP C,0x0120 (taken), INC E
+    0xE2, 0x24, 0x01, 0x1C, // JP PO,0x0124 (taken), INC E
+    0xEA, 0x28, 0x01, 0x1C, // JP PE,0x0128 (not taken), INC E
+    0xF2, 0x2C, 0x01, 0x1C, // JP P,0x012C (not taken), INC E
+    0xFA, 0x30, 0x01, 0x1C, // JP M,0x0130 (taken), INC E
+    0xC4, 0x64, 0x01, 0xCC, 0x64, 0x01, // CALL NZ,0x0164 (taken), CALL Z,0x0164 (not taken)
+    0xD4, 0x64, 0x01, 0xDC, 0x64, 0x01, // CALL NC,0x0164 (not taken), CALL C,0x0164 (taken)
+    0xE4, 0x64, 0x01, 0xEC, 0x64, 0x01, // CALL PO,0x0164 (taken), CALL PE,0x0164 (not taken)
+    0xF4, 0x64, 0x01, 0xFC, 0x64, 0x01, // CALL P,0x0164 (not taken), CALL M,0x0164 (taken)
+    0x06, 0x03, // LD B,3
+    0x0C, // 0x014A: INC C
+    0x10, 0xFD, // DJNZ 0x014A (taken twice, then not)
+    0xCD, 0x64, 0x01, // CALL 0x0164
+    0xFD, 0x7E, 0x00, // LD A,(IY+0) (the loop counter, 4 to 1)
+    0xE6, 0xFE, // AND 0xFE (4, 2, 2, 0, so this block is compiled the third time round)
+    0x32, 0x59, 0x01, // LD (0x0159),A
+    0x0E, 0x00, // 0x0158: LD C,n (whose operand was just written)
+    0xFD, 0x71, 0x40, // LD (IY+64),C
+    0xFD, 0x35, 0x00, // DEC (IY+0)
+    0xC2, 0x0F, 0x00, // JP NZ,0x000F
+    0x76, // HALT
+    0x14, // 0x0164: INC D
+    0xC9, // RET
+  };
+
+  static Stream<Arguments> options() {
+    return Stream.of(
+        Arguments.of("threaded", new Core.Option[] {Core.Option.BLOCK_THREADING}),
+        Arguments.of(
+            "threaded with lazy flags",
+            new Core.Option[] {Core.Option.BLOCK_THREADING, Core.Option.LAZY_FLAGS}),
+        Arguments.of(
+            "threaded with decode cache",
+            new Core.Option[] {Core.Option.BLOCK_THREADING, Core.Option.DECODE_CACHE}));
+  }
+
+  @ParameterizedTest(name = "{0}")
+  @MethodSource("options")
+  void compiledBlocksDoWhatTheInterpreterDoes(final String name, final Core.Option[] options) {
+    final SimpleBus interpreted = load();
+    final SimpleBus threaded = load();
+    // with a threshold of 1, so every block is compiled the first time it's reached.
+    final Core expected = run(new Core(interpreted));
+    final Core actual = run(new Core(threaded, 1, options));
+    assertEquals(describe(expected), describe(actual));
+    assertArrayEquals(memory(interpreted), memory(threaded));
+  }
+
+  private static SimpleBus load() {
+    final SimpleBus bus = new SimpleBus();
+    for (int address = 0; address < PROGRAM.length; ++address) {
+      bus.rawWriteMemByte(address, PROGRAM[address]);
+    }
+    return bus;
+  }
+
+  /** Run to the `HALT` (or, if something is wrong, for far longer than the program takes). */
+  private static Core run(final Core core) {
+    core.runUntil(100_000L);
+    return core;
+  }
+
+  /** The CPU's state (including `R` and the T-states), and the instructions executed. */
+  private static String describe(final Core core) {
+    final ByteBuffer state = ByteBuffer.allocate(State.SIZE);
+    core.state().save(state);
+    return HexFormat.of().formatHex(state.array()) + " after " + core.instructions();
+  }
+
+  private static byte[] memory(final SimpleBus bus) {
+    final byte[] memory = new byte[0x10000];
+    bus.rawReadMemBytes(0x0000, memory, 0, memory.length);
+    return memory;
+  }
+}
@@ -0,0 +1,70 @@
+package com.davidconneely.eightbit.z80;
+
+import com.davidconneely.eightbit.SimpleBus;
+
+/**
+ * Compares the throughput of {@link Core#run(long)} in the interpreter with `BLOCK_THREADING`, on a
+ * loop in the style of the ZX81 ROM: the `IY`-indexed accesses to system variables of {@link
+ * IndexedLoopBenchmark}, with a conditional jump, and a call of a subroutine that loops over a
+ * buffer with `DJNZ`. Not a JUnit test: run it with {@code main} (once with the argument {@code
+ * threaded} and once without, so neither is measured with the other's code loaded) and compare the
+ * figures.
+ */
+final class BlockThreadingBenchmark {
+  private static final int[] PROGRAM = {
+    0xFD, 0x21, 0x00, 0x40, // LD IY,0x4000
+    0xDD, 0x21, 0x00, 0x50, // LD IX,0x5000
+    0x31, 0x00, 0x80, // LD SP,0x8000
+    0xFD, 0x7E, 0x05, // 0x000B: LD A,(IY+5)
+    0xFD, 0x86, 0x06, // ADD A,(IY+6)
+    0xFD, 0x77, 0x07, // LD (IY+7),A
+    0xFD, 0xCB, 0x01, 0x96, // RES 2,(IY+1)
+    0xFD, 0xCB, 0x3B, 0x46, // BIT 0,(IY+59)
+    0x28, 0x04, // JR Z,0x0022
+    0xFD, 0xCB, 0x01, 0xD6, // SET 2,(IY+1)
+    0xFD, 0x34, 0x04, // 0x0022: INC (IY+4)
+    0xFD, 0x35, 0x21, // DEC (IY+33)
+    0xFD, 0xBE, 0x01, // CP (IY+1)
+    0xFD, 0x6E, 0x0C, // LD L,(IY+12)
+    0xFD, 0x66, 0x0D, // LD H,(IY+13)
+    0xDD, 0x7E, 0x02, // LD A,(IX+2)
+    0xDD, 0x77, 0x03, // LD (IX+3),A
+    0xCD, 0x3D, 0x00, // CALL 0x003D
+    0xC3, 0x0B, 0x00, // JP 0x000B
+    0x21, 0x00, 0x41, // 0x003D: LD HL,0x4100
+    0x06, 0x08, // LD B,8
+    0x7E, // 0x0042: LD A,(HL)
+    0x23, // INC HL
+    0xB7, // OR A
+    0x20, 0x01, // JR NZ,0x0048
+    0x3C, // INC A
+    0x10, 0xF8, // 0x0048: DJNZ 0x0042
+    0xC9, // RET
+  };
+  private static final long INSTRUCTIONS = 50_000_000L;
+  private static final long FRAME = 65_000L; // T-states in a ZX81 frame, roughly.
+  private static final int ROUNDS = 5;
+
+  public static void main(final String[] args) {
+    final boolean threaded = args.length > 0 && args[0].equals("threaded");
+    final long instructions = args.length > 1 ? Long.parseLong(args[1]) : INSTRUCTIONS;
+    final String name = threaded ? "threaded" : "interpreted";
+    double best = 0.0;
+    for (int round = 0; round < ROUNDS; ++round) {
+      final var bus = new SimpleBus();
+      for (int address = 0; address < PROGRAM.length; ++address) {
+        bus.rawWriteMemByte(address, PROGRAM[address]);
+      }
+      final var core = threaded ? new Core(bus, Core.Option.BLOCK_THREADING) : new Core(bus);
+      core.state().pc(0x0000);
+      final long start = System.nanoTime();
+      while (core.instructions() < instructions) {
+        core.run(FRAME);
+      }
+      final double kips = core.instructions() * 1e6 / (System.nanoTime() - start);
+      System.out.printf("%s round %d: %,.1f kIPS%n", name, round + 1, kips);
+      best = Math.max(best, kips);
+    }
+    System.out.printf("%s best: %,.1f kIPS%n", name, best);
+  }
+}
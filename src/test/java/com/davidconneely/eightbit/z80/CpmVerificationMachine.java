@@ -1,10 +1,13 @@
 package com.davidconneely.eightbit.z80;
 
 import com.davidconneely.eightbit.IBus;
+import com.davidconneely.eightbit.IMemory;
+import com.davidconneely.eightbit.PagedMemory;
 import com.davidconneely.eightbit.SimpleBus;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.PrintStream;
+import java.util.function.Function;
 
 /**
  * Some of the tests use a simple CPM BDOS call interface to produce test output. This class
@@ -15,7 +18,8 @@ final class CpmVerificationMachine implements AutoCloseable {
     private final InputStream in;
     private final PrintStream out;
 
-    CpmVerificationBus(final InputStream in, final PrintStream out) {
+    CpmVerificationBus(final InputStream in, final PrintStream out, final IMemory memory) {
+      super(memory);
       this.in = in;
       this.out = out;
       rawWriteMemByte(0x0000, 0x76); // `HALT`
@@ -34,6 +38,20 @@ final class CpmVerificationMachine implements AutoCloseable {
       }
     }
 
+    @Override
+    public void cpuCopyMemBytes(
+        final int source, final int dest, final int length, final boolean increment) {
+      final int from = increment ? dest : dest - length + 1;
+      if (from > 0x0007 && (from > 0xFF00 || from + length <= 0xFF00)) {
+        super.cpuCopyMemBytes(source, dest, length, increment);
+      } else { // the copy includes read-only memory addresses.
+        final int delta = increment ? 1 : -1;
+        for (int i = 0; i < length; ++i) {
+          cpuWriteMemByte(dest + i * delta, cpuReadMemByte(source + i * delta));
+        }
+      }
+    }
+
     @Override
     public int rawReadPortByte(final int portNum) {
       if ((portNum & 0xFF) != 0x01) {
@@ -66,10 +84,24 @@ final class CpmVerificationMachine implements AutoCloseable {
 
   private boolean terminated;
   private final IBus bus;
+  private final Function<IBus, Core> core;
 
   CpmVerificationMachine(final InputStream in, final PrintStream out) {
+    this(in, out, new PagedMemory(0x100), Core::new);
+  }
+
+  /**
+   * @param memory the memory of the machine.
+   * @param core makes the `Core` that runs the program on the machine's bus (e.g. with options).
+   */
+  CpmVerificationMachine(
+      final InputStream in,
+      final PrintStream out,
+      final IMemory memory,
+      final Function<IBus, Core> core) {
     this.terminated = false;
-    this.bus = new CpmVerificationBus(in, out);
+    this.bus = new CpmVerificationBus(in, out, memory);
+    this.core = core;
   }
 
   @Override
@@ -85,19 +117,22 @@ final class CpmVerificationMachine implements AutoCloseable {
 
   /** Run the loaded program. */
   void run(final int address) {
-    final Core z80 = new Core(bus);
+    final Core z80 = core.apply(bus);
+    z80.trap(
+        0x0000,
+        state -> { // `RST 0`
+          terminated = true;
+          return true;
+        });
+    z80.trap(
+        0x0005,
+        state -> { // CPM BDOS call
+          cpmBdosCall(bus, state);
+          return terminated;
+        });
     z80.state().pc(address);
-    while (!terminated) {
-      z80.step();
-      if (z80.state().halted()) { // `HALT` occurred.
-        break;
-      }
-      int pc = z80.state().pc();
-      if (pc == 0x0000) { // `RST 0`
-        terminated = true;
-      } else if (pc == 0x0005) { // CPM BDOS call
-        cpmBdosCall(bus, z80.state());
-      }
+    while (!terminated && !z80.state().halted()) { // stop when `HALT` occurred.
+      z80.runUntil(Long.MAX_VALUE);
     }
   }
 
@@ -2,17 +2,27 @@ package com.davidconneely.eightbit.z80;
 
 import static org.junit.jupiter.api.Assertions.fail;
 
+import com.davidconneely.eightbit.IBus;
+import com.davidconneely.eightbit.IMemory;
+import com.davidconneely.eightbit.PagedMemory;
+import com.davidconneely.eightbit.SegmentMemory;
 import java.io.BufferedInputStream;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.PrintStream;
+import java.lang.foreign.Arena;
 import java.nio.charset.StandardCharsets;
+import java.util.function.Function;
+import java.util.stream.Stream;
 import org.junit.jupiter.api.Disabled;
 import org.junit.jupiter.api.MethodOrderer;
 import org.junit.jupiter.api.Order;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.TestMethodOrder;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
 
 @TestMethodOrder(MethodOrderer.OrderAnnotation.class)
 final class CringleTest {
@@ -26,59 +36,99 @@ final class CringleTest {
   @Test
   @Order(1)
   void testPreliminaries() throws IOException {
-    var output = run(PRELIM_RESOURCE);
-    int failed = 0;
-    if (!output.equals(PRELIM_FINISHED)) {
-      ++failed;
-    }
-    System.out.println(output);
-    System.out.printf(
-        "===> %3$d/%1$d tests passed, %2$d/%1$d tests failed.%n%n", 1, failed, 1 - failed);
-    if (failed != 0) {
-      fail("there were test failures");
-    }
+    assertPasses(PRELIM_RESOURCE, new PagedMemory(0x100), Core::new);
   }
 
   @Test
   @Order(2)
   void testDocumentedFlags() throws IOException {
-    String output = run(ZEXDOC_RESOURCE);
-    var lines =
-        output.split(
-            "\\r?\\n\\r?"); // test output uses "\n\r" instead of more standard "\n" or "\r\n"
-    int failed = 0, passed = 0;
-    for (var line : lines) {
-      if (line.contains(ZEXANY_SUCCESS)) {
-        ++passed;
-      } else if (line.contains(ZEXANY_FAILURE)) {
-        ++failed;
-      }
-    }
-    System.out.print(output);
-    System.out.printf(
-        "===> %3$d/%1$d tests passed, %2$d/%1$d tests failed.%n%n",
-        failed + passed, failed, passed);
-    if (failed != 0) {
-      fail("there were test failures");
-    }
+    assertPasses(ZEXDOC_RESOURCE, new PagedMemory(0x100), Core::new);
   }
 
-  @Test
+  /** The same tests, with other memory or `Core` options. */
+  static Stream<Arguments> variants() {
+    return Stream.of(
+        variant(
+            "preliminaries off-heap",
+            PRELIM_RESOURCE,
+            SegmentMemory.allocate(0x100, Arena.ofAuto()),
+            Core::new),
+        // zexdoc copies its test vectors with `LDIR` and `LDDR`, so this runs bulk copies too.
+        variant(
+            "documented flags off-heap",
+            ZEXDOC_RESOURCE,
+            SegmentMemory.allocate(0x100, Arena.ofAuto()),
+            Core::new),
+        variant(
+            "documented flags lazily",
+            ZEXDOC_RESOURCE,
+            new PagedMemory(0x100),
+            bus -> new Core(bus, Core.Option.LAZY_FLAGS)),
+        // with a threshold of 1, so every block is threaded the first time it's reached.
+        variant(
+            "documented flags block-threaded",
+            ZEXDOC_RESOURCE,
+            new PagedMemory(0x100),
+            bus -> new Core(bus, 1, Core.Option.BLOCK_THREADING)),
+        variant(
+            "documented flags from the decode cache",
+            ZEXDOC_RESOURCE,
+            new PagedMemory(0x100),
+            bus -> new Core(bus, Core.Option.DECODE_CACHE)));
+  }
+
+  private static Arguments variant(
+      String name, String resource, IMemory memory, Function<IBus, Core> core) {
+    return Arguments.of(name, resource, memory, core);
+  }
+
+  @ParameterizedTest(name = "{0}")
+  @MethodSource("variants")
   @Order(3)
+  void testVariant(
+      final String name,
+      final String resource,
+      final IMemory memory,
+      final Function<IBus, Core> core)
+      throws IOException {
+    assertPasses(resource, memory, core);
+  }
+
+  @Test
+  @Order(4)
   @Disabled(
-      "Skipped because 37/67 tests pass, 30/67 tests fail - undocumented flags not currently implemented")
+      "Skipped because 66/67 tests pass, 1/67 tests fail - MEMPTR (for BIT n,(HL)) not implemented")
   void testUndocumentedFlags() throws IOException {
-    String output = run(ZEXALL_RESOURCE);
-    var lines =
-        output.split(
-            "\\r?\\n\\r?"); // test output uses "\n\r" instead of more standard "\n" or "\r\n"
+    assertPasses(ZEXALL_RESOURCE, new PagedMemory(0x100), Core::new);
+  }
+
+  /**
+   * Run {@code resource} on {@code memory} with the `Core` that {@code core} makes, print its
+   * output and a summary, and fail if any of its tests did: the preliminary tests stop at the first
+   * failure, and the `zex*` tests print a line for each test.
+   */
+  private void assertPasses(String resource, IMemory memory, Function<IBus, Core> core)
+      throws IOException {
+    String output = run(resource, memory, core);
     int failed = 0, passed = 0;
-    for (var line : lines) {
-      if (line.contains(ZEXANY_SUCCESS)) {
+    if (resource.equals(PRELIM_RESOURCE)) {
+      if (output.equals(PRELIM_FINISHED)) {
         ++passed;
-      } else if (line.contains(ZEXANY_FAILURE)) {
+      } else {
         ++failed;
       }
+      output += System.lineSeparator();
+    } else {
+      var lines =
+          output.split(
+              "\\r?\\n\\r?"); // test output uses "\n\r" instead of more standard "\n" or "\r\n"
+      for (var line : lines) {
+        if (line.contains(ZEXANY_SUCCESS)) {
+          ++passed;
+        } else if (line.contains(ZEXANY_FAILURE)) {
+          ++failed;
+        }
+      }
     }
     System.out.print(output);
     System.out.printf(
@@ -89,12 +139,13 @@ final class CringleTest {
     }
   }
 
-  private String run(String resource) throws IOException {
+  private String run(String resource, IMemory memory, Function<IBus, Core> core)
+      throws IOException {
     try (var is = new ByteArrayInputStream(new byte[0]);
         var in = new BufferedInputStream(is);
         var os = new ByteArrayOutputStream();
         var out = new PrintStream(os, true, StandardCharsets.UTF_8)) {
-      var machine = new CpmVerificationMachine(in, out);
+      var machine = new CpmVerificationMachine(in, out, memory, core);
       var data = CringleTest.class.getResourceAsStream(resource).readAllBytes();
       machine.load(0x0100, data);
       machine.run(0x100);
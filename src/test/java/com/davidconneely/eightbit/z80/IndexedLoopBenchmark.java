@@ -0,0 +1,55 @@
+package com.davidconneely.eightbit.z80;
+
+import com.davidconneely.eightbit.SimpleBus;
+
+/**
+ * Measures the throughput of {@link Core} on a tight loop of `IY`-indexed instructions, in the
+ * style of the ZX81 ROM (which keeps `IY` pointing at the system variables and uses it for all of
+ * its accesses to them). Not a JUnit test: run it with {@code main} and compare the figures.
+ */
+final class IndexedLoopBenchmark {
+  private static final int[] PROGRAM = {
+    0xFD, 0x21, 0x00, 0x40, // LD IY,0x4000
+    0xDD, 0x21, 0x00, 0x50, // LD IX,0x5000
+    // loop (0x0008):
+    0xFD, 0x7E, 0x05, // LD A,(IY+5)
+    0xFD, 0x86, 0x06, // ADD A,(IY+6)
+    0xFD, 0x77, 0x07, // LD (IY+7),A
+    0xFD, 0xCB, 0x01, 0x96, // RES 2,(IY+1)
+    0xFD, 0xCB, 0x3B, 0x46, // BIT 0,(IY+59)
+    0xFD, 0xCB, 0x01, 0xD6, // SET 2,(IY+1)
+    0xFD, 0x34, 0x04, // INC (IY+4)
+    0xFD, 0x35, 0x21, // DEC (IY+33)
+    0xFD, 0xBE, 0x01, // CP (IY+1)
+    0xFD, 0x6E, 0x0C, // LD L,(IY+12)
+    0xFD, 0x66, 0x0D, // LD H,(IY+13)
+    0xDD, 0x7E, 0x02, // LD A,(IX+2)
+    0xDD, 0x77, 0x03, // LD (IX+3),A
+    0xFD, 0xE5, // PUSH IY
+    0xFD, 0xE1, // POP IY
+    0xC3, 0x08, 0x00, // JP loop
+  };
+  private static final long INSTRUCTIONS = 50_000_000L;
+  private static final int ROUNDS = 5;
+
+  public static void main(final String[] args) {
+    final long instructions = args.length > 0 ? Long.parseLong(args[0]) : INSTRUCTIONS;
+    double best = 0.0;
+    for (int round = 0; round < ROUNDS; ++round) {
+      final var bus = new SimpleBus();
+      for (int address = 0; address < PROGRAM.length; ++address) {
+        bus.rawWriteMemByte(address, PROGRAM[address]);
+      }
+      final var core = new Core(bus);
+      core.state().pc(0x0000);
+      final long start = System.nanoTime();
+      for (long i = 0; i < instructions; ++i) {
+        core.step();
+      }
+      final double kips = instructions * 1e6 / (System.nanoTime() - start);
+      System.out.printf("round %d: %,.1f kIPS%n", round + 1, kips);
+      best = Math.max(best, kips);
+    }
+    System.out.printf("best: %,.1f kIPS%n", best);
+  }
+}
@@ -0,0 +1,74 @@
+package com.davidconneely.eightbit.z80;
+
+import com.davidconneely.eightbit.IMemory;
+import com.davidconneely.eightbit.PagedMemory;
+import com.davidconneely.eightbit.SegmentMemory;
+import com.davidconneely.eightbit.SimpleBus;
+import java.lang.foreign.Arena;
+import java.util.function.Supplier;
+
+/**
+ * Measures the throughput of {@link Core} on a loop that is mostly memory accesses (loads and
+ * stores through `HL` and `DE`, the stack, and a short `LDIR`), with the memory on the heap ({@link
+ * PagedMemory}) or, given the argument {@code off-heap}, off the heap ({@link SegmentMemory}). Not
+ * a JUnit test: run it with {@code main} (once for each, so neither is measured with the other's
+ * code loaded) and compare the figures.
+ */
+final class MemoryBenchmark {
+  private static final int[] PROGRAM = {
+    0x21, 0x00, 0x40, // LD HL,0x4000
+    0x11, 0x00, 0x60, // LD DE,0x6000
+    0x31, 0x00, 0x80, // LD SP,0x8000
+    // loop (0x0009):
+    0x7E, // LD A,(HL)
+    0x12, // LD (DE),A
+    0x23, // INC HL
+    0x13, // INC DE
+    0xE5, // PUSH HL
+    0xD5, // PUSH DE
+    0xD1, // POP DE
+    0xE1, // POP HL
+    0x01, 0x40, 0x00, // LD BC,0x0040
+    0xED, 0xB0, // LDIR
+    0x7A, // LD A,D
+    0xE6, 0x1F, // AND 0x1F
+    0xF6, 0x60, // OR 0x60
+    0x57, // LD D,A (so stores stay in 0x6000-0x8040, clear of the program)
+    0xC3, 0x09, 0x00, // JP loop
+  };
+  private static final long INSTRUCTIONS = 50_000_000L;
+  private static final int ROUNDS = 5;
+
+  public static void main(final String[] args) {
+    final boolean offHeap = args.length > 0 && args[0].equals("off-heap");
+    final long instructions = args.length > 1 ? Long.parseLong(args[1]) : INSTRUCTIONS;
+    try (var arena = Arena.ofShared()) {
+      if (offHeap) {
+        run("off-heap", () -> SegmentMemory.allocate(0x100, arena), instructions);
+      } else {
+        run("heap", () -> new PagedMemory(0x100), instructions);
+      }
+    }
+  }
+
+  private static void run(
+      final String name, final Supplier<IMemory> memory, final long instructions) {
+    double best = 0.0;
+    for (int round = 0; round < ROUNDS; ++round) {
+      final var bus = new SimpleBus(memory.get());
+      for (int address = 0; address < PROGRAM.length; ++address) {
+        bus.rawWriteMemByte(address, PROGRAM[address]);
+      }
+      final var core = new Core(bus);
+      core.state().pc(0x0000);
+      final long start = System.nanoTime();
+      for (long i = 0; i < instructions; ++i) {
+        core.step();
+      }
+      final double kips = instructions * 1e6 / (System.nanoTime() - start);
+      System.out.printf("%s round %d: %,.1f kIPS%n", name, round + 1, kips);
+      best = Math.max(best, kips);
+    }
+    System.out.printf("%s best: %,.1f kIPS%n", name, best);
+  }
+}
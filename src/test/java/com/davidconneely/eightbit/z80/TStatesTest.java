@@ -0,0 +1,166 @@
+package com.davidconneely.eightbit.z80;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import com.davidconneely.eightbit.SimpleBus;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+/**
+ * Runs short programs whose instructions take known numbers of T-states (from the Z80 data sheet,
+ * not from {@link TStates}), checking what each {@link Core#step()} returns and how far past every
+ * possible budget {@link Core#run(long)} finishes.
+ */
+final class TStatesTest {
+  /** The cores whose timing should be the same (a block-threaded core runs past budgets). */
+  private static final List<Core.Option[]> CORES =
+      List.of(
+          new Core.Option[] {},
+          new Core.Option[] {Core.Option.LAZY_FLAGS},
+          new Core.Option[] {Core.Option.DECODE_CACHE});
+
+  static Stream<Arguments> programs() {
+    return Stream.of(
+        timing(
+            "jumps",
+            new int[] {
+              0x3E, 0x01, // LD A,0x01
+              0xB7, // OR A (so NZ)
+              0x28, 0x00, // JR Z,+0 (not taken)
+              0x20, 0x00, // JR NZ,+0 (taken)
+              0xCA, 0x0B, 0x00, // JP Z,0x000B (not taken)
+              0xC2, 0x0D, 0x00, // JP NZ,0x000D (taken)
+              0x06, 0x02, // LD B,0x02
+              0x10, 0xFE, // DJNZ 0x000F (taken, then not)
+              0x18, 0x00, // JR +0
+              0x76, // HALT
+            },
+            new int[] {7, 4, 7, 12, 10, 10, 7, 13, 8, 12}),
+        timing(
+            "calls and returns",
+            new int[] {
+              0x31, 0x00, 0x80, // LD SP,0x8000
+              0xAF, // XOR A (so Z)
+              0xC4, 0x10, 0x00, // CALL NZ,0x0010 (not taken)
+              0xCC, 0x10, 0x00, // CALL Z,0x0010 (taken)
+              0xCD, 0x12, 0x00, // CALL 0x0012
+              0xDF, // RST 0x18
+              0x76, // HALT
+              0x00,
+              0xC0, // 0x0010: RET NZ (not taken)
+              0xC8, // RET Z (taken)
+              0xED, 0x4D, // 0x0012: RETI
+              0x00, 0x00, 0x00, 0x00,
+              0xC9, // 0x0018: RET
+            },
+            new int[] {10, 4, 10, 17, 5, 11, 17, 14, 11, 10}),
+        timing(
+            "prefixes",
+            new int[] {
+              0xDD, 0x21, 0x00, 0x01, // LD IX,0x0100
+              0xDD, 0x7E, 0x02, // LD A,(IX+2)
+              0xFD, 0x23, // INC IY
+              0xDD, 0x26, 0x05, // LD IXH,0x05
+              0xDD, 0x00, // NOP, after a prefix that doesn't change it
+              0xDD, 0xDD, 0x21, 0x00, 0x01, // LD IX,0x0100, after a repeated prefix
+              0xFD, 0xDD, 0x23, // INC IX, after a prefix that the next one replaces
+              0xFD, 0xCB, 0x02, 0x46, // BIT 0,(IY+2)
+              0xDD, 0xCB, 0x02, 0xC6, // SET 0,(IX+2)
+              0xDD, 0xCB, 0xFE, 0x06, // RLC (IX-2)
+              0xCB, 0x40, // BIT 0,B
+              0xCB, 0x46, // BIT 0,(HL)
+              0xCB, 0xC6, // SET 0,(HL)
+              0xED, 0x44, // NEG
+              0xED, 0x43, 0x00, 0x02, // LD (0x0200),BC
+              0xED, 0x00, // (undefined, like two `NOP`s)
+              0x76, // HALT
+            },
+            new int[] {14, 19, 10, 11, 8, 18, 14, 20, 23, 23, 8, 12, 15, 8, 20, 8}),
+        timing(
+            "block repeats",
+            new int[] {
+              0x21, 0x00, 0x01, // LD HL,0x0100
+              0x11, 0x00, 0x02, // LD DE,0x0200
+              0x01, 0x03, 0x00, // LD BC,0x0003
+              0xED, 0xB0, // LDIR (repeats twice)
+              0x01, 0x20, 0x00, // LD BC,0x0020
+              0xED, 0xB8, // LDDR (repeats 31 times, which `run` can do in bulk)
+              0x3E, 0x01, // LD A,0x01 (which the memory doesn't contain)
+              0x01, 0x03, 0x00, // LD BC,0x0003
+              0xED, 0xB1, // CPIR (repeats twice, then runs out)
+              0xAF, // XOR A (which it does)
+              0x01, 0x03, 0x00, // LD BC,0x0003
+              0xED, 0xB9, // CPDR (finds it at once)
+              0x06, 0x02, // LD B,0x02
+              0xED, 0xB3, // OTIR (repeats once)
+              0x06, 0x02, // LD B,0x02
+              0xED, 0xB2, // INIR (repeats once)
+              0x76, // HALT
+            },
+            concat(
+                IntStream.of(10, 10, 10, 21, 21, 16, 10),
+                IntStream.generate(() -> 21).limit(31),
+                IntStream.of(16, 7, 10, 21, 21, 16, 4, 10, 16, 7, 21, 16, 7, 21, 16))));
+  }
+
+  /** A program, and the T-states taken by each instruction it executes before its `HALT`. */
+  private static Arguments timing(final String name, final int[] program, final int[] tStates) {
+    return Arguments.of(name, program, tStates);
+  }
+
+  private static int[] concat(final IntStream... tStates) {
+    return Stream.of(tStates).flatMapToInt(each -> each).toArray();
+  }
+
+  /** {@link Core#step()} returns the T-states that each instruction (or repeat) took. */
+  @ParameterizedTest(name = "{0}")
+  @MethodSource("programs")
+  void stepsTakeTheirTStates(final String name, final int[] program, final int[] tStates) {
+    for (final Core.Option[] options : CORES) {
+      final Core core = load(program, options);
+      final List<Integer> stepped = new ArrayList<>();
+      while (!core.state().halted()) {
+        stepped.add(core.step());
+      }
+      stepped.removeLast(); // the `HALT`.
+      assertEquals(IntStream.of(tStates).boxed().toList(), stepped);
+      assertEquals(IntStream.of(tStates).sum() + 4L, core.state().cycles());
+    }
+  }
+
+  /**
+   * {@link Core#run(long)} stops after the instruction (or repeat) that reaches the budget, even if
+   * it could repeat a block instruction in bulk, and returns how far past the budget that was.
+   */
+  @ParameterizedTest(name = "{0}")
+  @MethodSource("programs")
+  void runsOvershootByTheRestOfTheLastInstruction(
+      final String name, final int[] program, final int[] tStates) {
+    for (final Core.Option[] options : CORES) {
+      int end = 0; // when the instruction that reaches the budget ends.
+      int next = 0;
+      for (int budget = 1; budget <= IntStream.of(tStates).sum(); ++budget) {
+        while (end < budget) {
+          end += tStates[next++];
+        }
+        final Core core = load(program, options);
+        assertEquals(end - budget, core.run(budget), "budget %d".formatted(budget));
+        assertEquals(end, core.state().cycles(), "budget %d".formatted(budget));
+        assertEquals(next, core.instructions(), "budget %d".formatted(budget));
+      }
+    }
+  }
+
+  private static Core load(final int[] program, final Core.Option... options) {
+    final SimpleBus bus = new SimpleBus();
+    for (int address = 0; address < program.length; ++address) {
+      bus.rawWriteMemByte(address, program[address]);
+    }
+    return new Core(bus, options);
+  }
+}
@@ -0,0 +1,62 @@
+package com.davidconneely.eightbit.zx81;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.TreeSet;
+
+/**
+ * Measures how {@link ZX81Batch} scales with cores: runs the same {@code JOBS} jobs (each boots a
+ * machine and runs it for {@code FRAMES} frames) on 1, 2, 4 and N threads (N being the available
+ * processors), and on a virtual thread each, and reports the throughput of each and its speedup
+ * over one thread. The machines share nothing that's written, so the speedup should be close to the
+ * number of threads, up to the number of cores. Not a JUnit test: run it with {@code main}
+ * (optionally with the number of jobs and of frames).
+ */
+final class BatchBenchmark {
+  private static final int JOBS = 64;
+  private static final long FRAMES = 500L; // 10 seconds of the machine's time.
+
+  public static void main(final String[] args) {
+    final int count = args.length > 0 ? Integer.parseInt(args[0]) : JOBS;
+    final long frames = args.length > 1 ? Long.parseLong(args[1]) : FRAMES;
+    final int cores = Runtime.getRuntime().availableProcessors();
+    final ZX81Batch batch = new ZX81Batch(null, frames, null);
+    final List<ZX81Batch.Job> jobs = new ArrayList<>(count);
+    for (int i = 0; i < count; ++i) {
+      jobs.add(new ZX81Batch.Job("job" + i, ""));
+    }
+    batch.run(jobs, cores); // warm up.
+    final TreeSet<Integer> threads = new TreeSet<>(List.of(1, 2, 4, cores));
+    double single = 0.0;
+    for (final int n : threads) {
+      final double rate = measure(batch, jobs, n, "%d thread%s".formatted(n, n > 1 ? "s" : ""));
+      single = single > 0.0 ? single : rate;
+      System.out.printf("  speedup %.2fx (%d cores available)%n", rate / single, cores);
+    }
+    measure(batch, jobs, 0, "virtual threads");
+  }
+
+  /** Run {@code jobs} on {@code threads} threads, and return how many frames per second it ran. */
+  private static double measure(
+      final ZX81Batch batch, final List<ZX81Batch.Job> jobs, final int threads, final String name) {
+    final long start = System.nanoTime();
+    final List<ZX81Batch.Result> results = batch.run(jobs, threads);
+    final long elapsed = System.nanoTime() - start;
+    long frames = 0L;
+    final List<Long> nanos = new ArrayList<>(results.size());
+    for (final ZX81Batch.Result result : results) {
+      if (!result.passed()) {
+        throw new IllegalStateException(result.name() + ": " + result.error());
+      }
+      frames += result.frames();
+      nanos.add(result.nanos());
+    }
+    Collections.sort(nanos);
+    final double rate = frames * 1e9 / elapsed;
+    System.out.printf(
+        "%s: %d jobs in %,.1f ms, %,.0f frames/s (%,.0fx real time), median job %,.1f ms%n",
+        name, results.size(), elapsed / 1e6, rate, rate / 50.0, nanos.get(nanos.size() / 2) / 1e6);
+    return rate;
+  }
+}
@@ -0,0 +1,215 @@
+package com.davidconneely.eightbit.zx81;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import com.davidconneely.eightbit.IBus;
+import com.davidconneely.eightbit.PagedMemory;
+import com.davidconneely.eightbit.SegmentMemory;
+import com.davidconneely.eightbit.SimpleBus;
+import com.davidconneely.eightbit.z80.Core;
+import com.davidconneely.eightbit.z80.State;
+import java.lang.foreign.Arena;
+import java.nio.ByteBuffer;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+/**
+ * {@link Core#run(long)} and {@link Core#runUntil(long)} may repeat `LDIR`, `LDDR`, `CPIR` and
+ * `CPDR` in bulk, but must leave the same state (registers, flags, `R` and T-states), instruction
+ * count and memory as {@link Core#step()} does a repeat at a time, wherever a budget or limit ends.
+ * Here (rather than with `Core`) so it can use a {@link ZX81Bus}, with its read-only ROM and
+ * mirrors, as well as {@link SimpleBus}es, whose memory is all RAM.
+ */
+final class BlockInstructionTest {
+  private static final int PROGRAM = 0x4100; // in RAM on both buses.
+  private static final int ZEROS = 0x7E00; // 0x200 zero bytes to copy.
+
+  /** The cores whose bulk repeats should match stepping. */
+  private static final List<Core.Option[]> CORES =
+      List.of(
+          new Core.Option[] {},
+          new Core.Option[] {Core.Option.LAZY_FLAGS},
+          new Core.Option[] {Core.Option.DECODE_CACHE});
+
+  private static final int[] FILLS = {
+    0x21, 0x00, 0x50, // LD HL,0x5000
+    0x11, 0x01, 0x50, // LD DE,0x5001
+    0x01, 0x00, 0x04, // LD BC,0x0400
+    0xED, 0xB0, // LDIR (fills 0x5001-0x5400 with the byte at 0x5000)
+    0x21, 0x00, 0x54, // LD HL,0x5400
+    0x11, 0x02, 0x54, // LD DE,0x5402
+    0x01, 0x00, 0x01, // LD BC,0x0100
+    0xED, 0xB0, // LDIR (repeats the 2 bytes at 0x5400)
+    0x21, 0xFF, 0x5F, // LD HL,0x5FFF
+    0x11, 0xFE, 0x5F, // LD DE,0x5FFE
+    0x01, 0x00, 0x04, // LD BC,0x0400
+    0xED, 0xB8, // LDDR (fills 0x5BFE-0x5FFE with the byte at 0x5FFF)
+    0x21, 0x00, 0xC0, // LD HL,0xC000
+    0x11, 0x01, 0x40, // LD DE,0x4001
+    0x01, 0x80, 0x00, // LD BC,0x0080
+    0xED, 0xB0, // LDIR (on a ZX81, a fill through the mirror of 0x4000)
+    0x76, // HALT
+  };
+
+  private static final int[] OVERWRITES_ITSELF = {
+    0x21, 0x00, 0x7E, // LD HL,ZEROS
+    0x11, 0xF0, 0x40, // LD DE,0x40F0
+    0x01, 0x00, 0x01, // LD BC,0x0100
+    0xED, 0xB0, // 0x4109: LDIR (until it copies a `NOP` over its `0xED`)
+    0x21, 0xFF, 0x7F, // LD HL,ZEROS+0x1FF
+    0x11, 0x30, 0x41, // LD DE,0x4130
+    0x01, 0x40, 0x00, // LD BC,0x0040
+    0xED, 0xB8, // 0x4114: LDDR (until it copies a `NOP` over its `0xB8`)
+    0x3C, 0x3C, 0x3C, 0x3C, 0x3C, 0x3C, 0x3C, 0x3C, // INC A (until overwritten)
+    0x3C, 0x3C, 0x3C, 0x3C, 0x3C, 0x3C, 0x3C, 0x3C,
+    0x3C, 0x3C, 0x3C, 0x3C, 0x3C, 0x3C, 0x3C, 0x3C,
+    0x3C, 0x3C, 0x3C,
+    0x76, // 0x4131: HALT
+  };
+
+  private static final int[] ALL_64K = {
+    0x21, 0x00, 0x00, // LD HL,0x0000
+    0x11, 0x00, 0x80, // LD DE,0x8000
+    0x01, 0x00, 0x00, // LD BC,0x0000
+    0xED, 0xB0, // LDIR (65,536 bytes, around to where it started, leaving the memory the same)
+    0xAF, // XOR A
+    0x3D, // DEC A (0xFF, which the memory doesn't contain)
+    0xED, 0xB9, // CPDR (BC is 0 again, so 65,536 bytes)
+    0x76, // HALT
+  };
+
+  private static final int[] ROM_AND_MIRRORS = {
+    0x21, 0x00, 0x44, // LD HL,0x4400
+    0x11, 0x80, 0x1F, // LD DE,0x1F80
+    0x01, 0x00, 0x01, // LD BC,0x0100
+    0xED, 0xB0, // LDIR (on a ZX81, into the ROM and the shadow ROM, so nothing is written)
+    0x21, 0xFF, 0xC5, // LD HL,0xC5FF
+    0x11, 0xFF, 0x80, // LD DE,0x80FF
+    0x01, 0x00, 0x02, // LD BC,0x0200
+    0xED, 0xB8, // LDDR (on a ZX81, from a mirror of the RAM, into a read-only mirror, then RAM)
+    0x21, 0xF0, 0x1F, // LD HL,0x1FF0
+    0x01, 0x00, 0x01, // LD BC,0x0100
+    0x3A, 0x20, 0x20, // LD A,(0x2020)
+    0xED, 0xB1, // CPIR (on a ZX81, out of the ROM and into the shadow ROM)
+    0x21, 0x10, 0xC0, // LD HL,0xC010
+    0x01, 0x00, 0x01, // LD BC,0x0100
+    0x3A, 0xF0, 0xBF, // LD A,(0xBFF0)
+    0xED, 0xB9, // CPDR (on a ZX81, through the mirrors of the RAM and then the ROM)
+    0x76, // HALT
+  };
+
+  static Stream<Arguments> programs() {
+    return Stream.of(
+            on("fills", FILLS),
+            on("overwrites itself", OVERWRITES_ITSELF),
+            on("all 64K", ALL_64K),
+            on("ROM and mirrors", ROM_AND_MIRRORS))
+        .flatMap(buses -> buses);
+  }
+
+  /** {@code program} on each of the buses. */
+  private static Stream<Arguments> on(final String name, final int[] program) {
+    return Stream.of(
+        bus(name + " on paged", program, () -> new SimpleBus(new PagedMemory(0x100))),
+        bus(
+            name + " on segment",
+            program,
+            () -> new SimpleBus(SegmentMemory.allocate(0x400, Arena.ofAuto()))),
+        // `load` writes the ROM, as it does the RAM.
+        bus(
+            name + " on ZX81",
+            program,
+            () -> new ZX81Bus(null, new PagedMemory(0x400), new byte[0])));
+  }
+
+  private static Arguments bus(final String name, final int[] program, final Supplier<IBus> bus) {
+    return Arguments.of(name, program, bus);
+  }
+
+  /** Budgets that end anywhere, including part way through the repeats. */
+  @ParameterizedTest(name = "{0}")
+  @MethodSource("programs")
+  void runIsTheSameAsStepping(final String name, final int[] program, final Supplier<IBus> bus) {
+    for (final Core.Option[] options : CORES) {
+      final Random random = new Random(1);
+      final Machine stepped = load(bus.get(), program, options);
+      final Machine ran = load(bus.get(), program, options);
+      long end = 0L;
+      while (!stepped.core().state().halted()) {
+        end += 1 + random.nextInt(1500);
+        ran.core().run(end - ran.core().state().cycles());
+        while (stepped.core().state().cycles() < end) {
+          stepped.core().step();
+        }
+        assertEquals(stepped.describe(), ran.describe(), "budget ending at %d".formatted(end));
+      }
+      assertArrayEquals(stepped.memory(), ran.memory());
+    }
+  }
+
+  /** Limits that end anywhere, including part way through the repeats. */
+  @ParameterizedTest(name = "{0}")
+  @MethodSource("programs")
+  void runUntilIsTheSameAsStepping(
+      final String name, final int[] program, final Supplier<IBus> bus) {
+    for (final Core.Option[] options : CORES) {
+      final Random random = new Random(2);
+      final Machine stepped = load(bus.get(), program, options);
+      final Machine ran = load(bus.get(), program, options);
+      while (!stepped.core().state().halted()) {
+        final int limit = 1 + random.nextInt(100);
+        ran.core().runUntil(limit);
+        for (int i = 0; i < limit && !stepped.core().state().halted(); ++i) {
+          stepped.core().step();
+        }
+        assertEquals(
+            stepped.describe(),
+            ran.describe(),
+            "limit ending at %d".formatted(stepped.core().instructions()));
+      }
+      assertArrayEquals(stepped.memory(), ran.memory());
+    }
+  }
+
+  /**
+   * A core on {@code bus}, with random memory (without any 0xFF bytes), {@link #ZEROS} and {@code
+   * program} at {@link #PROGRAM}.
+   */
+  private static Machine load(final IBus bus, final int[] program, final Core.Option... options) {
+    final byte[] memory = new byte[0x10000];
+    final Random random = new Random(0);
+    for (int i = 0; i < memory.length; ++i) {
+      memory[i] = (byte) random.nextInt(0xFF);
+    }
+    bus.rawWriteMemBytes(0x0000, memory, 0, memory.length);
+    bus.rawWriteMemBytes(ZEROS, new byte[0x200], 0, 0x200);
+    for (int i = 0; i < program.length; ++i) {
+      bus.rawWriteMemByte(PROGRAM + i, program[i]);
+    }
+    final Core core = new Core(bus, options);
+    core.state().pc(PROGRAM);
+    return new Machine(bus, core);
+  }
+
+  private record Machine(IBus bus, Core core) {
+    /** The CPU's state (including `R` and the T-states), and the instructions executed. */
+    String describe() {
+      final ByteBuffer state = ByteBuffer.allocate(State.SIZE);
+      core.state().save(state);
+      return HexFormat.of().formatHex(state.array()) + " after " + core.instructions();
+    }
+
+    byte[] memory() {
+      final byte[] memory = new byte[0x10000];
+      bus.rawReadMemBytes(0x0000, memory, 0, memory.length);
+      return memory;
+    }
+  }
+}
@@ -0,0 +1,87 @@
+package com.davidconneely.eightbit.zx81;
+
+import com.davidconneely.eightbit.PagedMemory;
+import com.davidconneely.eightbit.z80.Core;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * Measures how cheaply a booted ZX81 can be forked into many machines: boots one (to the `K`
+ * cursor, waiting for a key), forks it {@code MACHINES} times with {@link ZX81Bus#fork}, runs each
+ * fork for a while (so it writes to its RAM), and reports the latency of a fork and the heap used
+ * per machine. Then does the same with machines that each have their own memory, for comparison.
+ * Not a JUnit test: run it with {@code main} (optionally with the number of machines).
+ */
+final class ForkBenchmark {
+  private static final int MACHINES = 1000;
+  private static final long BOOT = 1_000_000L; // instructions to reach the `K` cursor.
+  private static final long RUN = 20_000L; // instructions for each machine after it's created.
+
+  private record Machine(ZX81Bus bus, Core core) {}
+
+  public static void main(final String[] args) {
+    final int machines = args.length > 0 ? Integer.parseInt(args[0]) : MACHINES;
+    final var keyboard = new TerminalKeyboard(new HeadlessTerminal(), () -> 0L);
+    final Machine booted = machine(new ZX81Bus(keyboard));
+    run(booted, BOOT);
+    measure("forked", machines, () -> fork(booted, keyboard));
+    measure(
+        "separate",
+        machines,
+        () -> {
+          final Machine machine = machine(new ZX81Bus(keyboard, new PagedMemory(0x400)));
+          run(machine, BOOT);
+          return machine;
+        });
+  }
+
+  private static void measure(
+      final String name, final int count, final Supplier<Machine> machines) {
+    final List<Machine> kept = new ArrayList<>(count);
+    final long before = usedHeap();
+    final long start = System.nanoTime();
+    for (int i = 0; i < count; ++i) {
+      kept.add(machines.get());
+    }
+    final long elapsed = System.nanoTime() - start;
+    final long created = usedHeap();
+    for (final Machine machine : kept) {
+      run(machine, RUN);
+    }
+    final long ran = usedHeap();
+    System.out.printf(
+        "%s: %,.1f us to create each, %,d bytes each when created, %,d bytes each after running%n",
+        name, elapsed / 1e3 / count, (created - before) / count, (ran - before) / count);
+  }
+
+  private static Machine machine(final ZX81Bus bus) {
+    final Core core = new Core(bus);
+    core.trap( // effective `RET` from executing the display file, as `ZX81Machine` does.
+        0x8000, 0xFFFF, state -> {
+          state.pc(bus.cpuReadMemWord(state.spInc2()));
+          return false;
+        });
+    return new Machine(bus, core);
+  }
+
+  private static Machine fork(final Machine parent, final TerminalKeyboard keyboard) {
+    final Machine child = machine(parent.bus().fork(keyboard));
+    child.core().state().copyFrom(parent.core().state());
+    return child;
+  }
+
+  private static void run(final Machine machine, final long instructions) {
+    for (long done = 0L; done < instructions; ) {
+      done += machine.core().runUntil(instructions - done);
+    }
+  }
+
+  private static long usedHeap() {
+    final Runtime runtime = Runtime.getRuntime();
+    for (int i = 0; i < 3; ++i) {
+      System.gc();
+    }
+    return runtime.totalMemory() - runtime.freeMemory();
+  }
+}
@@ -0,0 +1,135 @@
+package com.davidconneely.eightbit.zx81;
+
+import java.util.Arrays;
+
+/**
+ * Measures how much {@link TerminalDisplay} writes to the terminal, and how long it takes, for
+ * display files that change the way typical screens do, rendered at 50 frames per second: the idle
+ * BASIC prompt (with the status line changing every frame, as {@code ZX81Machine} does), a game
+ * that redraws a block graphics view a few times a second (like 3D Monster Maze), and a screen that
+ * changes completely every frame. Not a JUnit test: run it with {@code main} (optionally with the
+ * number of frames).
+ */
+final class RenderBenchmark {
+  private static final int FRAMES = 5_000;
+
+  /** Counts the bytes written to it (in UTF-8), and discards them. */
+  private static final class CountingTerminal extends TerminalSupport {
+    private long bytes;
+    private long calls;
+
+    @Override
+    void enableRawMode() {
+      // do nothing.
+    }
+
+    @Override
+    void reset() {
+      // do nothing.
+    }
+
+    @Override
+    int read() {
+      return -1;
+    }
+
+    @Override
+    void write(final int data) {
+      ++bytes;
+      ++calls;
+    }
+
+    @Override
+    void write(final byte[] data, final int offset, final int length) {
+      bytes += length;
+      ++calls;
+    }
+
+    @Override
+    void print(final String text) {
+      ++calls;
+      for (int i = 0; i < text.length(); ++i) {
+        final char ch = text.charAt(i);
+        bytes += ch < 0x80 ? 1 : ch < 0x800 ? 2 : Character.isSurrogate(ch) ? 2 : 3;
+      }
+    }
+  }
+
+  public static void main(final String[] args) {
+    final int frames = args.length > 0 ? Integer.parseInt(args[0]) : FRAMES;
+    measure("idle prompt", frames, RenderBenchmark::idle);
+    measure("maze-like game", frames, RenderBenchmark::maze);
+    measure("whole screen", frames, RenderBenchmark::whole);
+  }
+
+  private static void measure(final String name, final int frames, final FrameMaker maker) {
+    final CountingTerminal terminal = new CountingTerminal();
+    final TerminalDisplay display = new TerminalDisplay(terminal);
+    final byte[] dFile = new byte[TerminalDisplay.DFILE_SIZE];
+    for (int frame = 0; frame < frames / 10; ++frame) { // warm up.
+      maker.make(frame, dFile);
+      display.renderDFile(dFile);
+    }
+    final String[] states = new String[100];
+    for (int i = 0; i < states.length; ++i) { // the status line changes every frame.
+      states[i] = "PC=0x%04x  |%6.1f kIPS  |%6.1f fps".formatted(i, 1.0, 50.0);
+    }
+    terminal.bytes = 0L;
+    terminal.calls = 0L;
+    final long start = System.nanoTime();
+    for (int frame = 0; frame < frames; ++frame) {
+      maker.make(frame, dFile);
+      display.state1(states[frame % states.length]);
+      display.renderDFile(dFile);
+    }
+    final long elapsed = System.nanoTime() - start;
+    System.out.printf(
+        "%s: %,d bytes per frame (%,.0f bytes/s at 50 fps) in %,.1f writes, %,.1f us a frame%n",
+        name,
+        terminal.bytes / frames,
+        terminal.bytes * 50.0 / frames,
+        terminal.calls * 1.0 / frames,
+        elapsed / 1e3 / frames);
+  }
+
+  @FunctionalInterface
+  private interface FrameMaker {
+    /** Fill {@code dFile} with the display file for frame {@code frame}. */
+    void make(int frame, byte[] dFile);
+  }
+
+  /** A collapsed display file, with the `K` cursor at the bottom. */
+  private static void idle(final int frame, final byte[] dFile) {
+    Arrays.fill(dFile, (byte) 0x76);
+    dFile[24] = (byte) 0xB0; // inverse `K` on the 24th line.
+  }
+
+  /** A full display file: a view that's redrawn every 10 frames, and a score that counts up. */
+  private static void maze(final int frame, final byte[] dFile) {
+    final int view = frame / 10;
+    dFile[0] = 0x76;
+    for (int row = 0; row < 24; ++row) {
+      for (int column = 0; column < 32; ++column) {
+        final boolean inView = row < 18 && column < 24;
+        dFile[1 + row * 33 + column] =
+            (byte) (!inView ? 0x00 : (row + column + view) % 3 == 0 ? 0x80 : 0x03);
+      }
+      dFile[1 + row * 33 + 32] = 0x76;
+    }
+    final String score = Integer.toString(frame / 25);
+    for (int i = 0; i < score.length(); ++i) {
+      dFile[1 + 20 * 33 + 26 + i] = (byte) (28 + score.charAt(i) - '0');
+    }
+  }
+
+  /** A full display file in which every character changes every frame. */
+  private static void whole(final int frame, final byte[] dFile) {
+    dFile[0] = 0x76;
+    for (int row = 0; row < 24; ++row) {
+      for (int column = 0; column < 32; ++column) {
+        dFile[1 + row * 33 + column] = (byte) ((row + column + frame) & 0xBF);
+      }
+      dFile[1 + row * 33 + 32] = 0x76;
+    }
+  }
+}
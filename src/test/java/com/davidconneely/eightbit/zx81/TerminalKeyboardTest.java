@@ -0,0 +1,56 @@
+package com.davidconneely.eightbit.zx81;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+
+final class TerminalKeyboardTest {
+  private static final Map<Character, String> ARROWS =
+      Map.of('↑', "\u001B[A", '↓', "\u001B[B", '→', "\u001B[C", '←', "\u001B[D");
+
+  /** Both bytes (from a terminal) and whole characters (from Windows, or a script) are read. */
+  @Test
+  void everyCharacterReadsTheKeysInTheMap() {
+    for (char ch = 0; ch < Character.MAX_VALUE; ++ch) {
+      if (ch != 3 && ch != 27) { // Ctrl+C (shuts down) and ESC (starts a sequence).
+        assertKeys(ch, String.valueOf(ch));
+      }
+    }
+  }
+
+  @Test
+  void arrowSequencesReadTheKeysInTheMap() {
+    ARROWS.forEach(TerminalKeyboardTest::assertKeys);
+  }
+
+  /** Type {@code input}, and check each row of the keyboard reads as {@code ch}'s key would. */
+  private static void assertKeys(final char ch, final String input) {
+    final HeadlessTerminal terminal = new HeadlessTerminal();
+    final TerminalKeyboard keyboard = new TerminalKeyboard(terminal, () -> 0L);
+    for (int i = 0; i < input.length(); ++i) {
+      terminal.type(input.charAt(i));
+    }
+    keyboard.consumeInput();
+    final TerminalKeyboard.Key key = TerminalKeyboard.KEY_MAP.get(ch);
+    for (int row = 0; row < 8; ++row) {
+      final int highPort = ~(1 << row) & 0xFF;
+      assertEquals(
+          expected(key, highPort),
+          keyboard.readKeyPortByte(highPort << 8 | 0xFE),
+          "key %d, port 0x%02XFE".formatted((int) ch, highPort));
+    }
+  }
+
+  /** The byte read from the row {@code highPort} with {@code key} (or no key) pressed. */
+  private static int expected(final TerminalKeyboard.Key key, final int highPort) {
+    if (key == null) {
+      return 0xFF;
+    }
+    int data = key.highPort() == highPort ? key.data() : 0xFF;
+    if (key.isShifted() && highPort == 0xFE) {
+      data &= 0xFE;
+    }
+    return data;
+  }
+}
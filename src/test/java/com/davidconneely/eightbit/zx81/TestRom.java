@@ -0,0 +1,64 @@
+package com.davidconneely.eightbit.zx81;
+
+/**
+ * Small programs to run in place of the ZX81 ROM (which isn't in the repository), so that tests of
+ * the machine around the CPU run anywhere.
+ */
+final class TestRom {
+  private static final int[] KEYBOARD_PROGRAM = {
+    0x21, 0x00, 0x41, // LD HL,0x4100
+    0x22, 0x0C, 0x40, // LD (0x400C),HL (D_FILE)
+    0x36, 0x76, // LD (HL),0x76
+    0x23, // INC HL
+    0x06, 0x08, // LD B,8
+    0x36, 0x1C, // 0x000B: LD (HL),0x1C ('0')
+    0x23, // INC HL
+    0x36, 0x1C, // LD (HL),0x1C
+    0x23, // INC HL
+    0x36, 0x76, // LD (HL),0x76 (the end of the line)
+    0x23, // INC HL
+    0x10, 0xF5, // DJNZ 0x000B
+    0x06, 0x10, // LD B,16
+    0x36, 0x76, // 0x0018: LD (HL),0x76 (an empty line)
+    0x23, // INC HL
+    0x10, 0xFB, // DJNZ 0x0018
+    0x21, 0x01, 0x41, // 0x001D: LD HL,0x4101
+    0x06, 0xFE, // LD B,0xFE
+    0x0E, 0xFE, // 0x0022: LD C,0xFE
+    0xED, 0x78, // IN A,(C) (the row with B's reset bit)
+    0x2F, // CPL
+    0xE6, 0x1F, // AND 0x1F
+    0x4F, // LD C,A
+    0x0F, 0x0F, 0x0F, 0x0F, // RRCA (x4)
+    0xE6, 0x0F, // AND 0x0F
+    0xC6, 0x1C, // ADD A,0x1C ('0' to 'F' are consecutive)
+    0x77, // LD (HL),A
+    0x23, // INC HL
+    0x79, // LD A,C
+    0xE6, 0x0F, // AND 0x0F
+    0xC6, 0x1C, // ADD A,0x1C
+    0x77, // LD (HL),A
+    0x23, // INC HL
+    0x23, // INC HL (past the end of the line)
+    0xCB, 0x00, // RLC B
+    0x38, 0xE2, // JR C,0x0022 (until the reset bit has been through all 8)
+    0x18, 0xDB, // JR 0x001D
+  };
+
+  /**
+   * Shows the keyboard: sets up a display file whose first 8 lines each show a row of keys as two
+   * hex digits (bit {@code n} set while the key in column {@code n} is pressed, e.g. `01` in the
+   * first line for SHIFT), then reads the rows into it forever.
+   */
+  static final byte[] KEYBOARD = bytes(KEYBOARD_PROGRAM);
+
+  private TestRom() {}
+
+  private static byte[] bytes(final int... program) {
+    final byte[] bytes = new byte[program.length];
+    for (int i = 0; i < program.length; ++i) {
+      bytes[i] = (byte) program[i];
+    }
+    return bytes;
+  }
+}
@@ -0,0 +1,128 @@
+package com.davidconneely.eightbit.zx81;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Most of these run {@link TestRom#KEYBOARD} in place of the ZX81 ROM. The ones that need the ROM
+ * (see the README) are skipped without it.
+ */
+final class ZX81HeadlessTest {
+  /**
+   * An arrow presses SHIFT and its digit key, for a frame, and characters without keys press
+   * nothing.
+   */
+  @Test
+  void scriptsTypeArrowsAndNothingForCharactersWithoutKeys() {
+    final ZX81Headless zx81 = ZX81Headless.withRom(TestRom.KEYBOARD, "[10]←[10]£Āÿ[10]→↑↓");
+    final List<String> screens = new ArrayList<>(); // each different screen, in order.
+    for (int i = 0; i < 100; ++i) {
+      final String screen = zx81.runFrames(1L);
+      if (screens.isEmpty() || !screens.getLast().equals(screen)) {
+        screens.add(screen);
+      }
+    }
+    assertEquals(
+        List.of(
+            keys(),
+            keys(0x01, 0x00, 0x00, 0x10), // SHIFT and 5.
+            keys(),
+            keys(0x01, 0x00, 0x00, 0x00, 0x04), // SHIFT and 8.
+            keys(),
+            keys(0x01, 0x00, 0x00, 0x00, 0x08), // SHIFT and 7.
+            keys(),
+            keys(0x01, 0x00, 0x00, 0x00, 0x10), // SHIFT and 6.
+            keys()),
+        screens);
+  }
+
+  /** With the ROM, the arrows move the cursor along the line being edited, and back again. */
+  @Test
+  void arrowsMoveTheCursorInTheEditLine() {
+    assumeRom();
+    final String typed = new ZX81Headless(null, "[100]10pa").runFrames(150L);
+    final String left = new ZX81Headless(null, "[100]10pa←").runFrames(150L);
+    final String back = new ZX81Headless(null, "[100]10pa←→").runFrames(150L);
+    final String noKeys = new ZX81Headless(null, "[100]10pa£Āÿ").runFrames(150L);
+    assertTrue(typed.contains("PRINT A"), typed);
+    assertNotEquals(typed, left);
+    assertEquals(typed, back);
+    assertEquals(typed, noKeys);
+  }
+
+  /**
+   * A machine restored from a snapshot saves the same snapshot (CPU, RAM and frame count), and goes
+   * on to show the same screens as the machine that saved it, given the same keys.
+   */
+  @Test
+  void snapshotsResumeWhereTheyWereSaved(@TempDir final Path dir) throws IOException {
+    // keys at frames 105 (before the snapshot at 200) and 210 (after it).
+    final ZX81Headless saved = ZX81Headless.withRom(TestRom.KEYBOARD, "[100]←[100]→");
+    saved.runFrames(200L);
+    final Path snapshot = dir.resolve("saved.z81");
+    saved.save(snapshot);
+    final ZX81Headless restored = ZX81Headless.withRom(TestRom.KEYBOARD, "[5]→");
+    restored.restore(snapshot);
+    assertEquals(saved.frames(), restored.frames());
+    assertEquals(saved.screen(), restored.screen());
+    final Path resaved = dir.resolve("resaved.z81");
+    restored.save(resaved);
+    assertArrayEquals(Files.readAllBytes(snapshot), Files.readAllBytes(resaved));
+    boolean typed = false;
+    for (int i = 0; i < 100; ++i) {
+      final String screen = saved.runFrames(1L);
+      assertEquals(screen, restored.runFrames(1L));
+      typed |= screen.equals(keys(0x01, 0x00, 0x00, 0x00, 0x04));
+    }
+    assertTrue(typed, "the key typed after the snapshot");
+    assertEquals(saved.frames(), restored.frames());
+  }
+
+  @Test
+  void snapshotsWithTheWrongMagicVersionOrSizeAreRejected(@TempDir final Path dir)
+      throws IOException {
+    final ZX81Headless zx81 = ZX81Headless.withRom(TestRom.KEYBOARD, "");
+    zx81.runFrames(50L);
+    final Path snapshot = dir.resolve("good.z81");
+    zx81.save(snapshot);
+    final byte[] good = Files.readAllBytes(snapshot);
+    final byte[] magic = good.clone();
+    magic[0] ^= 0x01;
+    final byte[] version = good.clone();
+    ByteBuffer.wrap(version).putInt(4, 2);
+    final byte[][] bad = {
+      magic, version, Arrays.copyOf(good, good.length - 1), Arrays.copyOf(good, good.length + 1)
+    };
+    for (int i = 0; i < bad.length; ++i) {
+      final Path file = Files.write(dir.resolve("bad" + i + ".z81"), bad[i]);
+      assertThrows(IOException.class, () -> zx81.restore(file), file.toString());
+    }
+  }
+
+  private void assumeRom() {
+    assumeTrue(getClass().getResource("/z80/zx81/zx81.rom") != null, "no ZX81 ROM");
+  }
+
+  /** The screen of {@link TestRom#KEYBOARD} with the keys in each row (bit n for column n). */
+  private static String keys(final int... rows) {
+    final StringBuilder screen = new StringBuilder();
+    for (int row = 0; row < 8; ++row) {
+      screen.append("%02X\n".formatted(row < rows.length ? rows[row] : 0x00));
+    }
+    return screen.append("\n".repeat(16)).toString();
+  }
+}